@@ -23,11 +23,16 @@ import com.google.inject.Injector;
 import dk.dma.ais.abnormal.analyzer.reports.ReportScheduler;
 import dk.dma.ais.abnormal.analyzer.userargs.UserArguments;
 import dk.dma.ais.abnormal.application.ApplicationSupport;
+import dk.dma.ais.abnormal.application.statistics.MetricsServer;
 import dk.dma.ais.reader.AisReader;
 import dk.dma.commons.app.AbstractDaemon;
+import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_APPL_METRICS_PORT;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_INGEST_QUEUE_CAPACITY;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_INGEST_QUEUE_POLICY;
 import static java.lang.System.exit;
 
 /**
@@ -63,6 +68,11 @@ public class AbnormalAnalyzerApp extends AbstractDaemon {
     @Inject
     private ReportScheduler reportScheduler;
 
+    @Inject
+    private Configuration configuration;
+
+    private MetricsServer metricsServer;
+
     @Override
     protected void runDaemon(Injector injector) throws Exception {
         LOG.info("Starting AbnormalAnalyzerApp");
@@ -70,14 +80,40 @@ public class AbnormalAnalyzerApp extends AbstractDaemon {
         statisticsService.start();
         reportScheduler.start();
 
-        reader.registerPacketHandler(packetHandler);
+        int metricsPort = configuration.getInt(CONFKEY_APPL_METRICS_PORT, 0);
+        if (metricsPort > 0) {
+            metricsServer = new MetricsServer(statisticsService, metricsPort);
+            metricsServer.start();
+        }
+
+        IngestQueue ingestQueue = null;
+        int ingestQueueCapacity = configuration.getInt(CONFKEY_INGEST_QUEUE_CAPACITY, 0);
+        if (ingestQueueCapacity > 0) {
+            String ingestQueuePolicy = configuration.getString(CONFKEY_INGEST_QUEUE_POLICY, "");
+            IngestQueue.OverloadPolicy overloadPolicy = ingestQueuePolicy.trim().isEmpty() ? IngestQueue.OverloadPolicy.BLOCK : IngestQueue.OverloadPolicy.parse(ingestQueuePolicy);
+            ingestQueue = new IngestQueue(packetHandler, statisticsService, ingestQueueCapacity, overloadPolicy);
+            ingestQueue.start();
+            reader.registerPacketHandler(ingestQueue);
+        } else {
+            reader.registerPacketHandler(packetHandler);
+        }
+
         LOG.info("Starting AisDirectoryReader thread.");
         reader.start();
         LOG.info("Joining AisDirectoryReader thread.");
         reader.join();
         LOG.info("AisDirectoryReader thread finished.");
 
+        if (ingestQueue != null) {
+            LOG.info("Waiting for ingest queue to drain.");
+            ingestQueue.drainAndStop();
+        }
+
         statisticsService.dumpStatistics();
+
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
     }
 
     @Override
@@ -23,6 +23,8 @@ import com.google.inject.Provides;
 import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import dk.dma.ais.abnormal.analyzer.analysis.Analysis;
+import dk.dma.ais.abnormal.analyzer.analysis.HandlerTracingInterceptor;
 import dk.dma.ais.abnormal.analyzer.behaviour.BehaviourManager;
 import dk.dma.ais.abnormal.analyzer.behaviour.BehaviourManagerImpl;
 import dk.dma.ais.abnormal.analyzer.reports.ReportJobFactory;
@@ -31,8 +33,12 @@ import dk.dma.ais.abnormal.analyzer.reports.ReportScheduler;
 import dk.dma.ais.abnormal.analyzer.services.SafetyZoneService;
 import dk.dma.ais.abnormal.event.db.EventRepository;
 import dk.dma.ais.abnormal.event.db.csv.CsvEventRepository;
+import dk.dma.ais.abnormal.event.db.feed.ChangeLoggingEventRepository;
+import dk.dma.ais.abnormal.event.db.feed.EventChangeLog;
 import dk.dma.ais.abnormal.event.db.jpa.JpaEventRepository;
 import dk.dma.ais.abnormal.event.db.jpa.JpaSessionFactoryFactory;
+import dk.dma.ais.abnormal.event.db.jpa.JpaSettings;
+import dk.dma.ais.abnormal.event.db.log.BinaryEventRepository;
 import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
 import dk.dma.ais.abnormal.stat.db.data.DatasetMetaData;
 import dk.dma.ais.abnormal.stat.db.data.ShipTypeAndSizeStatisticData;
@@ -84,6 +90,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
 
@@ -91,8 +98,19 @@ import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_AIS_DATA
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_AIS_DATASOURCE_URL;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_APPL_GRID_RESOLUTION_DEFAULT;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_APPL_STATISTICS_DUMP_PERIOD;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_APPL_TRACING_SAMPLE_RATE;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_APPL_TRACING_SLOWCALL_THRESHOLD;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_CHANGES_FILE;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_CSV_FILE;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_H2_FILE;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_JPA_BATCH_SIZE;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_JPA_CACHE_ENABLED;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_JPA_FETCH_SIZE;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_JPA_POOL_MAX_SIZE;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_JPA_POOL_MIN_SIZE;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_JPA_STATEMENT_CACHE_SIZE;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_LOG_FILE;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_LOG_FLUSH_INTERVAL;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_PGSQL_HOST;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_PGSQL_NAME;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_PGSQL_PASSWORD;
@@ -106,6 +124,7 @@ import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_FILTER_L
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_FILTER_LOCATION_BBOX_WEST;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_FILTER_SHIPNAME_SKIP;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_STATISTICS_FILE;
+import static com.google.inject.matcher.Matchers.subclassesOf;
 import static dk.dma.ais.packet.AisPacketFilters.parseExpressionFilter;
 import static org.apache.commons.lang.StringUtils.isBlank;
 
@@ -140,6 +159,28 @@ public class AbnormalAnalyzerAppModule extends AbstractModule {
         bind(ReportScheduler.class).in(Scopes.SINGLETON);
         bind(ReportMailer.class).in(Scopes.SINGLETON);
         bind(SafetyZoneService.class).in(Scopes.SINGLETON);
+        bindHandlerTracing();
+    }
+
+    /**
+     * Trace the handlers of all analyses, if tracing is enabled. The configuration is read directly from the
+     * configuration file, because the injector providing it is not available while the module is configured.
+     */
+    private void bindHandlerTracing() {
+        if (configFile == null || !Files.exists(configFile)) {
+            return;
+        }
+        try {
+            Configuration configuration = new PropertiesConfiguration(configFile.toFile());
+            int sampleRate = configuration.getInt(CONFKEY_APPL_TRACING_SAMPLE_RATE, 0);
+            if (sampleRate > 0) {
+                long slowCallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getLong(CONFKEY_APPL_TRACING_SLOWCALL_THRESHOLD, 50));
+                bindInterceptor(subclassesOf(Analysis.class), HandlerTracingInterceptor.tracedMethods(), new HandlerTracingInterceptor(getProvider(AppStatisticsService.class), sampleRate, slowCallThresholdNanos));
+                LOG.info("Tracing one in " + sampleRate + " calls to analysis handlers.");
+            }
+        } catch (ConfigurationException | ConversionException e) {
+            LOG.warn("Analysis handlers not traced: " + e.getMessage());
+        }
     }
 
     @Provides
@@ -230,21 +271,32 @@ public class AbnormalAnalyzerAppModule extends AbstractModule {
             if ("csv".equalsIgnoreCase(eventRepositoryType)) {
                 String csvFileName = configuration.getString(CONFKEY_EVENTS_CSV_FILE);
                 eventRepository = new CsvEventRepository(Files.newOutputStream(Paths.get(csvFileName), StandardOpenOption.CREATE_NEW), false);
+            } else if ("log".equalsIgnoreCase(eventRepositoryType)) {
+                String logFileName = configuration.getString(CONFKEY_EVENTS_LOG_FILE);
+                eventRepository = new BinaryEventRepository(Paths.get(logFileName), false, configuration.getLong(CONFKEY_EVENTS_LOG_FLUSH_INTERVAL, 1000));
             } else if ("h2".equalsIgnoreCase(eventRepositoryType)) {
-                SessionFactory sessionFactory = JpaSessionFactoryFactory.newH2SessionFactory(new File(configuration.getString(CONFKEY_EVENTS_H2_FILE)));
-                eventRepository = new JpaEventRepository(sessionFactory, false);
+                JpaSettings jpaSettings = jpaSettings(JpaSettings.forH2(), configuration);
+                SessionFactory sessionFactory = JpaSessionFactoryFactory.newH2SessionFactory(new File(configuration.getString(CONFKEY_EVENTS_H2_FILE)), jpaSettings);
+                eventRepository = new JpaEventRepository(sessionFactory, false, jpaSettings.getBatchSize());
             } else if ("pgsql".equalsIgnoreCase(eventRepositoryType)) {
+                JpaSettings jpaSettings = jpaSettings(JpaSettings.forPgsql(), configuration);
                 SessionFactory sessionFactory = JpaSessionFactoryFactory.newPostgresSessionFactory(
                     configuration.getString(CONFKEY_EVENTS_PGSQL_HOST),
                     configuration.getInt(CONFKEY_EVENTS_PGSQL_PORT, 8432),
                     configuration.getString(CONFKEY_EVENTS_PGSQL_NAME),
                     configuration.getString(CONFKEY_EVENTS_PGSQL_USERNAME),
-                    configuration.getString(CONFKEY_EVENTS_PGSQL_PASSWORD)
+                    configuration.getString(CONFKEY_EVENTS_PGSQL_PASSWORD),
+                    jpaSettings
                 );
-                eventRepository = new JpaEventRepository(sessionFactory, false);
+                eventRepository = new JpaEventRepository(sessionFactory, false, jpaSettings.getBatchSize());
             } else {
                 throw new IllegalArgumentException("eventRepositoryType: " + eventRepositoryType);
             }
+
+            String changesFileName = configuration.getString(CONFKEY_EVENTS_CHANGES_FILE);
+            if (!isBlank(changesFileName)) {
+                eventRepository = new ChangeLoggingEventRepository(eventRepository, new EventChangeLog(Paths.get(changesFileName)));
+            }
         } catch (HibernateException e) {
             LOG.error(e.getMessage(), e);
             throw e;
@@ -253,7 +305,32 @@ public class AbnormalAnalyzerAppModule extends AbstractModule {
             throw new RuntimeException(e);
         }
 
-        return eventRepository;
+        return new MeteredEventRepository(eventRepository, getOrCreateAppStatisticsService());
+    }
+
+    /**
+     * Override the given default JPA settings with the ones set in the configuration. Blank values keep the default.
+     */
+    private static JpaSettings jpaSettings(JpaSettings settings, Configuration configuration) {
+        if (!isBlank(configuration.getString(CONFKEY_EVENTS_JPA_POOL_MIN_SIZE))) {
+            settings.minPoolSize(configuration.getInt(CONFKEY_EVENTS_JPA_POOL_MIN_SIZE));
+        }
+        if (!isBlank(configuration.getString(CONFKEY_EVENTS_JPA_POOL_MAX_SIZE))) {
+            settings.maxPoolSize(configuration.getInt(CONFKEY_EVENTS_JPA_POOL_MAX_SIZE));
+        }
+        if (!isBlank(configuration.getString(CONFKEY_EVENTS_JPA_STATEMENT_CACHE_SIZE))) {
+            settings.statementCacheSize(configuration.getInt(CONFKEY_EVENTS_JPA_STATEMENT_CACHE_SIZE));
+        }
+        if (!isBlank(configuration.getString(CONFKEY_EVENTS_JPA_BATCH_SIZE))) {
+            settings.batchSize(configuration.getInt(CONFKEY_EVENTS_JPA_BATCH_SIZE));
+        }
+        if (!isBlank(configuration.getString(CONFKEY_EVENTS_JPA_FETCH_SIZE))) {
+            settings.fetchSize(configuration.getInt(CONFKEY_EVENTS_JPA_FETCH_SIZE));
+        }
+        if (!isBlank(configuration.getString(CONFKEY_EVENTS_JPA_CACHE_ENABLED))) {
+            settings.cacheEnabled(configuration.getBoolean(CONFKEY_EVENTS_JPA_CACHE_ENABLED));
+        }
+        return settings;
     }
 
     @Provides
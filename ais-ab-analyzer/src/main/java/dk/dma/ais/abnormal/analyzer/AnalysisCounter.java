@@ -0,0 +1,83 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A handle to a single named statistic of an analysis.
+ *
+ * Handles are obtained once from the AppStatisticsService (typically when the analysis is constructed)
+ * and can thereafter be updated from any thread without further lookups or allocations.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class AnalysisCounter {
+
+    private final String analysisName;
+    private final String statisticName;
+    private final LongAdder value = new LongAdder();
+
+    AnalysisCounter(String analysisName, String statisticName) {
+        this.analysisName = analysisName;
+        this.statisticName = statisticName;
+    }
+
+    public String getAnalysisName() {
+        return analysisName;
+    }
+
+    public String getStatisticName() {
+        return statisticName;
+    }
+
+    /** Increment the counter by one. */
+    public void increment() {
+        value.increment();
+    }
+
+    /** Increment the counter by the given amount. */
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    /**
+     * Set the counter to an absolute value. Intended for gauge-like statistics which are
+     * updated rarely; concurrent increments during the update may be lost.
+     */
+    public void set(long newValue) {
+        value.reset();
+        value.add(newValue);
+    }
+
+    /** Return the current value of the counter. */
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisCounter{" +
+                "analysisName='" + analysisName + '\'' +
+                ", statisticName='" + statisticName + '\'' +
+                ", value=" + value.sum() +
+                '}';
+    }
+}
@@ -16,6 +16,8 @@
 
 package dk.dma.ais.abnormal.analyzer;
 
+import java.util.Map;
+
 /**
  * A statistics service class which can be called with updates for certain events, such as reception of
  * a packet or a message. Via the dumpStatistics() method the service can dump its collected statistics
@@ -23,6 +25,23 @@ package dk.dma.ais.abnormal.analyzer;
  */
 
 public interface AppStatisticsService extends dk.dma.ais.abnormal.application.statistics.AppStatisticsService {
+    /**
+     * Get the counter handle for the given statistic of the given analysis. The handle is created on first request,
+     * and the same handle is returned on subsequent requests with the same names.
+     *
+     * @param analysis the name of the analysis.
+     * @param statistic the name of the statistic.
+     * @return the counter handle.
+     */
+    AnalysisCounter getAnalysisCounter(String analysis, String statistic);
+
+    /**
+     * Take a snapshot of the current values of all analysis statistics.
+     *
+     * @return map of analysis name to (map of statistic name to value).
+     */
+    Map<String, Map<String, Long>> getAnalysisStatisticsSnapshot();
+
     void incAnalysisStatistics(String analysis, String statistic);
     void setAnalysisStatistics(String analysis, String statistic, long value);
 }
@@ -15,13 +15,15 @@
  */
 package dk.dma.ais.abnormal.analyzer;
 
+import dk.dma.ais.abnormal.application.statistics.MetricsWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Class for holding information on the file processing process
@@ -33,7 +35,7 @@ public class AppStatisticsServiceImpl extends dk.dma.ais.abnormal.application.st
         LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
     }
 
-    private Map<String, HashMap<String, Long>> allAnalysisStatistics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, AnalysisCounter>> allAnalysisStatistics = new ConcurrentHashMap<>();
 
     public AppStatisticsServiceImpl() {
     }
@@ -47,44 +49,46 @@ public class AppStatisticsServiceImpl extends dk.dma.ais.abnormal.application.st
         super.dumpStatistics();
 
         LOG.info("==== Abnormal analyzer statistics ====");
-        Set<String> statisticNames = this.allAnalysisStatistics.keySet();
-        for (String statisticName : statisticNames) {
-            LOG.info(String.format("%-30s %s", "Statistic name", statisticName));
+        Map<String, Map<String, Long>> snapshot = getAnalysisStatisticsSnapshot();
+        snapshot.forEach((analysisName, analysisStatistics) -> {
+            LOG.info(String.format("%-30s %s", "Statistic name", analysisName));
+            analysisStatistics.forEach((statisticName, value) ->
+                LOG.info(String.format("     %-25s %9d", statisticName, value))
+            );
+        });
+        LOG.info("==== Abnormal analyzer statistics ====");
+    }
 
-            HashMap<String, Long> statisticStatistics = this.allAnalysisStatistics.get(statisticName);
-            Set<String> statisticsNames = statisticStatistics.keySet();
-            for (String statisticsName : statisticsNames) {
-                Long statistics = statisticStatistics.get(statisticsName);
-                LOG.info(String.format("     %-25s %9d", statisticsName, statistics));
-            }
+    @Override
+    public void writeMetrics(MetricsWriter writer) {
+        super.writeMetrics(writer);
+        writer.gauge("ais_ab_analysis_statistic", "Statistics of the individual analyses", "analysis", "statistic", getAnalysisStatisticsSnapshot());
+    }
 
-        }
-        LOG.info("==== Abnormal analyzer statistics ====");
+    @Override
+    public AnalysisCounter getAnalysisCounter(String analysisName, String statisticName) {
+        ConcurrentMap<String, AnalysisCounter> analysisStatistics = allAnalysisStatistics.computeIfAbsent(analysisName, name -> new ConcurrentHashMap<>());
+        return analysisStatistics.computeIfAbsent(statisticName, name -> new AnalysisCounter(analysisName, name));
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getAnalysisStatisticsSnapshot() {
+        Map<String, Map<String, Long>> snapshot = new TreeMap<>();
+        allAnalysisStatistics.forEach((analysisName, analysisStatistics) -> {
+            Map<String, Long> analysisSnapshot = new TreeMap<>();
+            analysisStatistics.forEach((statisticName, counter) -> analysisSnapshot.put(statisticName, counter.get()));
+            snapshot.put(analysisName, Collections.unmodifiableMap(analysisSnapshot));
+        });
+        return Collections.unmodifiableMap(snapshot);
     }
 
     @Override
     public void incAnalysisStatistics(String analysisName, String statisticsName) {
-        HashMap<String, Long> analysisStatistics = (HashMap<String, Long>) this.allAnalysisStatistics.get(analysisName);
-        if (analysisStatistics == null) {
-            analysisStatistics = new HashMap<>();
-            this.allAnalysisStatistics.put(analysisName, analysisStatistics);
-        }
-        Long statistic = analysisStatistics.get(statisticsName);
-        if (statistic == null) {
-            statistic = 0L;
-            analysisStatistics.put(statisticsName, statistic);
-        }
-        statistic++;
-        analysisStatistics.put(statisticsName, statistic);
+        getAnalysisCounter(analysisName, statisticsName).increment();
     }
 
     @Override
     public void setAnalysisStatistics(String analysisName, String statisticsName, long value) {
-        HashMap<String, Long> analysisStatistics = (HashMap<String, Long>) this.allAnalysisStatistics.get(analysisName);
-        if (analysisStatistics == null) {
-            analysisStatistics = new HashMap<>();
-            this.allAnalysisStatistics.put(analysisName, analysisStatistics);
-        }
-        analysisStatistics.put(statisticsName, Long.valueOf(value));
+        getAnalysisCounter(analysisName, statisticsName).set(value);
     }
 }
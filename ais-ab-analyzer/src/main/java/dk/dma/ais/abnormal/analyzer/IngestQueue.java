@@ -0,0 +1,265 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dma.ais.abnormal.analyzer;
+
+import dk.dma.ais.message.AisMessage;
+import dk.dma.ais.packet.AisPacket;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded queue between the AisReader and the PacketHandler.
+ *
+ * Packets offered by the reader thread are buffered in a fixed-size ring buffer and handed to the
+ * packet handler by a single worker thread, so that packet order is preserved while the reader is
+ * decoupled from the time spent on analysis. When the buffer is full, the configured overload
+ * policy decides what happens:
+ *
+ * <ul>
+ *     <li>BLOCK: the reader waits until there is room (no packets are lost).</li>
+ *     <li>DROP_OLDEST: the oldest buffered packet is discarded to make room.</li>
+ *     <li>DROP_BY_TYPE: the incoming packet is discarded, unless it is a static and voyage related
+ *     message (type 5), in which case the oldest buffered packet of another type is discarded to make
+ *     room. If all buffered packets are of type 5, the incoming packet is discarded.</li>
+ * </ul>
+ *
+ * Shed packets are counted in the "IngestQueue" statistics by reason - including packets offered
+ * after the queue has been stopped.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class IngestQueue implements Consumer<AisPacket> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IngestQueue.class);
+
+    static final String STATISTICS_NAME = "IngestQueue";
+
+    private static final int STATIC_MESSAGE_TYPE = 5;
+    private static final int MAX_MESSAGE_TYPE = 27;
+    private static final int MAX_BATCH_SIZE = 256;
+
+    public enum OverloadPolicy {
+        BLOCK, DROP_OLDEST, DROP_BY_TYPE;
+
+        /**
+         * Parse a policy name as written in the configuration file ("block", "dropoldest" or "droptype").
+         */
+        public static OverloadPolicy parse(String name) {
+            String s = name == null ? "" : name.trim().toLowerCase();
+            switch (s) {
+                case "block": return BLOCK;
+                case "dropoldest": return DROP_OLDEST;
+                case "droptype": return DROP_BY_TYPE;
+                default: throw new IllegalArgumentException("Unknown overload policy: '" + name + "'. Only 'block', 'dropoldest' or 'droptype' allowed.");
+            }
+        }
+    }
+
+    private final Consumer<AisPacket> packetHandler;
+    private final OverloadPolicy overloadPolicy;
+    private final BlockingQueue<AisPacket> queue;
+    private final AppStatisticsService statisticsService;
+
+    private final AnalysisCounter packetsQueuedCounter;
+    private final AnalysisCounter packetsShedOldestCounter;
+    private final AnalysisCounter packetsShedForStaticCounter;
+    private final AnalysisCounter packetsShedStoppedCounter;
+
+    /** "Shed: type n" counters by message type n; index 0 for packets which cannot be decoded. Resolved on first use. */
+    private final AtomicReferenceArray<AnalysisCounter> packetsShedByTypeCounters = new AtomicReferenceArray<>(MAX_MESSAGE_TYPE + 1);
+
+    private final Thread worker;
+    private volatile boolean stopping;
+
+    /** No. of calls to accept() in progress; the worker does not stop while a packet may still be queued */
+    private final AtomicInteger offering = new AtomicInteger();
+
+    public IngestQueue(Consumer<AisPacket> packetHandler, AppStatisticsService statisticsService, int capacity, OverloadPolicy overloadPolicy) {
+        this.packetHandler = packetHandler;
+        this.statisticsService = statisticsService;
+        this.overloadPolicy = overloadPolicy;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        this.packetsQueuedCounter = statisticsService.getAnalysisCounter(STATISTICS_NAME, "Packets queued");
+        this.packetsShedOldestCounter = statisticsService.getAnalysisCounter(STATISTICS_NAME, "Shed: oldest dropped");
+        this.packetsShedForStaticCounter = statisticsService.getAnalysisCounter(STATISTICS_NAME, "Shed: oldest dropped for type " + STATIC_MESSAGE_TYPE);
+        this.packetsShedStoppedCounter = statisticsService.getAnalysisCounter(STATISTICS_NAME, "Shed: stopped");
+        statisticsService.registerGauge("ingest.queue.size", queue::size);
+
+        this.worker = new Thread(this::processPackets, "ingest-queue");
+
+        LOG.info(this.getClass().getSimpleName() + " created (capacity " + capacity + ", overload policy " + overloadPolicy + ").");
+    }
+
+    public void start() {
+        worker.start();
+    }
+
+    /**
+     * Stop accepting new packets, wait for all buffered packets to be handled, and stop the worker thread.
+     * Packets offered after this are counted as shed.
+     */
+    public void drainAndStop() throws InterruptedException {
+        stopping = true;
+        worker.join();
+    }
+
+    /**
+     * Offer a packet for processing. Called by the reader thread.
+     */
+    @Override
+    public void accept(AisPacket packet) {
+        offering.incrementAndGet();
+        try {
+            offer(packet);
+        } finally {
+            offering.decrementAndGet();
+        }
+    }
+
+    private void offer(AisPacket packet) {
+        if (stopping) {
+            packetsShedStoppedCounter.increment();
+            return;
+        }
+
+        switch (overloadPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(packet);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    packetsShedStoppedCounter.increment();
+                    return;
+                }
+                break;
+            case DROP_OLDEST:
+                offerDroppingOldest(packet, packetsShedOldestCounter);
+                break;
+            case DROP_BY_TYPE:
+                if (!queue.offer(packet)) {
+                    int messageType = messageTypeOf(packet);
+                    if (messageType != STATIC_MESSAGE_TYPE || !offerDroppingOldestNonStatic(packet)) {
+                        packetsShedCounterFor(messageType).increment();
+                        return;
+                    }
+                }
+                break;
+        }
+
+        packetsQueuedCounter.increment();
+    }
+
+    private void offerDroppingOldest(AisPacket packet, AnalysisCounter shedCounter) {
+        while (!queue.offer(packet)) {
+            if (queue.poll() != null) {
+                shedCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * Offer packet, discarding the oldest buffered packets which are not static messages to make room.
+     *
+     * @return false if there was no room for packet and all buffered packets are static messages.
+     */
+    private boolean offerDroppingOldestNonStatic(AisPacket packet) {
+        while (!queue.offer(packet)) {
+            if (!removeOldestNonStatic()) {
+                return false;
+            }
+            packetsShedForStaticCounter.increment();
+        }
+        return true;
+    }
+
+    private boolean removeOldestNonStatic() {
+        Iterator<AisPacket> packets = queue.iterator();
+        while (packets.hasNext()) {
+            if (messageTypeOf(packets.next()) != STATIC_MESSAGE_TYPE) {
+                packets.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AnalysisCounter packetsShedCounterFor(int messageType) {
+        final int i = messageType >= 1 && messageType <= MAX_MESSAGE_TYPE ? messageType : 0;
+        AnalysisCounter counter = packetsShedByTypeCounters.get(i);
+        if (counter == null) {
+            counter = statisticsService.getAnalysisCounter(STATISTICS_NAME, "Shed: type " + (i == 0 ? "unknown" : String.valueOf(i)));
+            packetsShedByTypeCounters.set(i, counter);
+        }
+        return counter;
+    }
+
+    private static int messageTypeOf(AisPacket packet) {
+        AisMessage message = packet.tryGetAisMessage();
+        return message == null ? -1 : message.getMsgId();
+    }
+
+    private void processPackets() {
+        final List<AisPacket> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (true) {
+            if (queue.drainTo(batch, MAX_BATCH_SIZE) == 0) {
+                if (stopping && offering.get() == 0 && queue.isEmpty()) {
+                    break;
+                }
+                try {
+                    AisPacket packet = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (packet != null) {
+                        batch.add(packet);
+                    }
+                } catch (InterruptedException e) {
+                    LOG.warn("Ingest queue worker interrupted; " + queue.size() + " packets not processed.");
+                    break;
+                }
+            }
+
+            for (AisPacket packet : batch) {
+                try {
+                    packetHandler.accept(packet);
+                } catch (RuntimeException e) {
+                    LOG.error(e.getMessage(), e);
+                }
+            }
+            batch.clear();
+        }
+        LOG.info("Ingest queue worker stopped.");
+    }
+
+    @Override
+    public String toString() {
+        return "IngestQueue{" +
+                "overloadPolicy=" + overloadPolicy +
+                ", capacity=" + (queue.size() + queue.remainingCapacity()) +
+                ", size=" + queue.size() +
+                '}';
+    }
+}
@@ -0,0 +1,122 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dma.ais.abnormal.analyzer;
+
+import dk.dma.ais.abnormal.application.statistics.LatencyHistogram;
+import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * EventRepository decorator which records the latency of the calls made by the analyses
+ * on their hot path (saving events, appending tracking points and looking up ongoing events).
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+final class MeteredEventRepository implements EventRepository {
+
+    private final EventRepository eventRepository;
+    private final LatencyHistogram saveLatency;
+    private final LatencyHistogram appendTrackingPointsLatency;
+    private final LatencyHistogram findOngoingLatency;
+
+    MeteredEventRepository(EventRepository eventRepository, AppStatisticsService statisticsService) {
+        this.eventRepository = eventRepository;
+        this.saveLatency = statisticsService.getLatencyHistogram("event.save");
+        this.appendTrackingPointsLatency = statisticsService.getLatencyHistogram("event.appendTrackingPoints");
+        this.findOngoingLatency = statisticsService.getLatencyHistogram("event.findOngoing");
+    }
+
+    @Override
+    public List<String> getEventTypes() {
+        return eventRepository.getEventTypes();
+    }
+
+    @Override
+    public void save(Event event) {
+        final long startNanos = System.nanoTime();
+        try {
+            eventRepository.save(event);
+        } finally {
+            saveLatency.recordSince(startNanos);
+        }
+    }
+
+    @Override
+    public void appendTrackingPoints(Event event, int mmsi, List<TrackingPoint> trackingPoints) {
+        final long startNanos = System.nanoTime();
+        try {
+            eventRepository.appendTrackingPoints(event, mmsi, trackingPoints);
+        } finally {
+            appendTrackingPointsLatency.recordSince(startNanos);
+        }
+    }
+
+    @Override
+    public Event getEvent(long eventId) {
+        return eventRepository.getEvent(eventId);
+    }
+
+    @Override
+    public List<Event> findEventsByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        return eventRepository.findEventsByFromAndToAndTypeAndVesselAndArea(from, to, type, vessel, north, east, south, west);
+    }
+
+    @Override
+    public List<Event> findEventsByFromAndTo(Date from, Date to) {
+        return eventRepository.findEventsByFromAndTo(from, to);
+    }
+
+    @Override
+    public List<Event> findRecentEvents(int numberOfEvents) {
+        return eventRepository.findRecentEvents(numberOfEvents);
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndTo(Date from, Date to) {
+        return eventRepository.findEventSummariesByFromAndTo(from, to);
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        return eventRepository.findEventSummariesByFromAndToAndTypeAndVesselAndArea(from, to, type, vessel, north, east, south, west);
+    }
+
+    @Override
+    public List<EventSummary> findRecentEventSummaries(int numberOfEvents) {
+        return eventRepository.findRecentEventSummaries(numberOfEvents);
+    }
+
+    @Override
+    public <T extends Event> T findOngoingEventByVessel(int mmsi, Class<T> eventClass) {
+        final long startNanos = System.nanoTime();
+        try {
+            return eventRepository.findOngoingEventByVessel(mmsi, eventClass);
+        } finally {
+            findOngoingLatency.recordSince(startNanos);
+        }
+    }
+
+    @Override
+    public int archiveEventsStartedBefore(Date before, Path archiveDirectory) {
+        return eventRepository.archiveEventsStartedBefore(before, archiveDirectory);
+    }
+}
@@ -27,12 +27,14 @@ import dk.dma.ais.abnormal.analyzer.analysis.FreeFlowAnalysis;
 import dk.dma.ais.abnormal.analyzer.analysis.ShipTypeAndSizeAnalysis;
 import dk.dma.ais.abnormal.analyzer.analysis.SpeedOverGroundAnalysis;
 import dk.dma.ais.abnormal.analyzer.analysis.SuddenSpeedChangeAnalysis;
+import dk.dma.ais.abnormal.application.statistics.LatencyHistogram;
 import dk.dma.ais.filter.IPacketFilter;
 import dk.dma.ais.message.AisMessage;
 import dk.dma.ais.message.AisMessage5;
 import dk.dma.ais.message.IPositionMessage;
 import dk.dma.ais.packet.AisPacket;
 import dk.dma.ais.tracker.eventEmittingTracker.EventEmittingTracker;
+import dk.dma.ais.tracker.eventEmittingTracker.EventEmittingTrackerImpl;
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +59,7 @@ public class PacketHandlerImpl implements PacketHandler {
     private final Set<IPacketFilter> filters;
     private final Predicate<AisPacket> shipNameFilter;
     private final Injector injector;
+    private final LatencyHistogram packetLatency;
 
     private final Set<Analysis> analyses;
 
@@ -75,6 +78,7 @@ public class PacketHandlerImpl implements PacketHandler {
         this.tracker = tracker;
         this.filters = filters;
         this.shipNameFilter = shipNameFilter;
+        this.packetLatency = statisticsService.getLatencyHistogram("packet");
         this.analyses = initAnalyses();
 
         this.analyses.forEach(analysis -> analysis.start());
@@ -92,6 +96,7 @@ public class PacketHandlerImpl implements PacketHandler {
 
             AisMessage message = packet.tryGetAisMessage();
             if (message == null) {
+                statisticsService.incInvalidPacketCount();
                 LOG.warn("Invalid packet: " + packet.getStringMessage());
                 return;
             }
@@ -142,7 +147,13 @@ public class PacketHandlerImpl implements PacketHandler {
     }
 
     private void doWork(AisPacket packet) {
+        final long startNanos = System.nanoTime();
         tracker.update(packet);
+        packetLatency.recordSince(startNanos);
+
+        if (tracker instanceof EventEmittingTrackerImpl) {
+            statisticsService.setTrackCount(((EventEmittingTrackerImpl) tracker).getNumberOfTracks());
+        }
     }
 
     Set<Analysis> initAnalyses() {
@@ -0,0 +1,238 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
+import dk.dma.ais.abnormal.stat.db.data.FourKeyStatisticData;
+import dk.dma.ais.abnormal.stat.db.data.ShipTypeAndSizeStatisticData;
+import dk.dma.ais.abnormal.stat.db.data.StatisticData;
+import dk.dma.ais.abnormal.util.Categorizer;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A table of precomputed abnormality decisions for the cells of one statistic.
+ *
+ * The first time a cell is looked up, its statistic data are loaded from the StatisticDataRepository and
+ * compiled into a bitmask with one bit per (ship type, ship size, bucket) combination. A bit is set if
+ * p(d) = shipCount / totalCount &lt; PD and totalCount &gt; TOTAL_SHIP_COUNT_THRESHOLD for that combination.
+ * All subsequent lookups for the cell are a single bit test.
+ *
+ * At most maxCells cells are kept compiled. When more cells are visited, the least recently used
+ * ones are evicted and compiled again if they are visited later.
+ *
+ * If aggregated, the ship type is ignored and shipCount is summed over all ship types (as
+ * FourKeyStatisticData.aggregateSumOverKey1 does).
+ *
+ * The statistic data are assumed not to change while the table is in use.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+final class AbnormalityTable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbnormalityTable.class);
+
+    /** The name of the ship count statistic; the same in all supported statistic data. */
+    private static final String STAT_SHIP_COUNT = "shipCount";
+
+    /** Mask used for cells without (sufficient) statistic data. */
+    private static final long[] NO_DATA = new long[0];
+
+    /** The default maximum number of compiled cells to keep. */
+    static final int DEFAULT_MAX_CELLS = 100000;
+
+    private final StatisticDataRepository statisticsRepository;
+    private final String statisticName;
+    private final int numBuckets;
+
+    private final int TOTAL_SHIP_COUNT_THRESHOLD;
+    private final float PD;
+    private final boolean USE_AGGREGATED_STATS;
+
+    /** The decision for cells without sufficient statistic data (p(d) = 1). */
+    private final boolean abnormalWithoutData;
+
+    private final LoadingCache<Long, long[]> masks;
+
+    /**
+     * @param statisticsRepository the repository to load statistic data from.
+     * @param statisticName the name of the statistic in the repository.
+     * @param numBuckets the number of buckets in the third key of the statistic (1 for ShipTypeAndSizeStatisticData).
+     * @param totalShipCountThreshold the minimum total ship count for a cell to be analysed.
+     * @param pd the probability below which a combination is abnormal.
+     * @param useAggregatedStats true to sum ship counts over all ship types.
+     */
+    AbnormalityTable(StatisticDataRepository statisticsRepository, String statisticName, int numBuckets, int totalShipCountThreshold, float pd, boolean useAggregatedStats) {
+        this(statisticsRepository, statisticName, numBuckets, totalShipCountThreshold, pd, useAggregatedStats, DEFAULT_MAX_CELLS);
+    }
+
+    /**
+     * @param statisticsRepository the repository to load statistic data from.
+     * @param statisticName the name of the statistic in the repository.
+     * @param numBuckets the number of buckets in the third key of the statistic (1 for ShipTypeAndSizeStatisticData).
+     * @param totalShipCountThreshold the minimum total ship count for a cell to be analysed.
+     * @param pd the probability below which a combination is abnormal.
+     * @param useAggregatedStats true to sum ship counts over all ship types.
+     * @param maxCells the maximum number of compiled cells to keep.
+     */
+    AbnormalityTable(StatisticDataRepository statisticsRepository, String statisticName, int numBuckets, int totalShipCountThreshold, float pd, boolean useAggregatedStats, int maxCells) {
+        this.statisticsRepository = statisticsRepository;
+        this.statisticName = statisticName;
+        this.numBuckets = numBuckets;
+        this.TOTAL_SHIP_COUNT_THRESHOLD = totalShipCountThreshold;
+        this.PD = pd;
+        this.USE_AGGREGATED_STATS = useAggregatedStats;
+        this.abnormalWithoutData = 1.0f < pd;
+        this.masks = CacheBuilder.newBuilder().maximumSize(maxCells).build(new CacheLoader<Long, long[]>() {
+            @Override
+            public long[] load(Long cellId) {
+                return compile(cellId);
+            }
+        });
+    }
+
+    /**
+     * Look up whether the given combination of ship type, ship size and bucket is abnormal in the given cell.
+     *
+     * @param cellId the cell.
+     * @param shipTypeKey the ship type category - 1.
+     * @param shipSizeKey the ship size category - 1.
+     * @param bucketKey the bucket (cog or sog category) - 1; or 0 if the statistic has no buckets.
+     * @return true if abnormal, false if normal or inconclusive.
+     */
+    boolean isAbnormal(long cellId, int shipTypeKey, int shipSizeKey, int bucketKey) {
+        final long[] mask = masks.getUnchecked(cellId);
+
+        if (mask == NO_DATA) {
+            return abnormalWithoutData;
+        }
+
+        final int bit = bitIndexOf(shipTypeKey, shipSizeKey, bucketKey);
+        return (mask[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return the number of compiled cells currently kept.
+     */
+    int getNumberOfCompiledCells() {
+        return (int) masks.size();
+    }
+
+    private int bitIndexOf(int shipTypeKey, int shipSizeKey, int bucketKey) {
+        if (!USE_AGGREGATED_STATS && (shipTypeKey < 0 || shipTypeKey >= Categorizer.NUM_SHIP_TYPE_CATEGORIES)) {
+            throw new IllegalArgumentException("shipTypeKey must be 0-" + (Categorizer.NUM_SHIP_TYPE_CATEGORIES - 1) + " - not " + shipTypeKey + ".");
+        }
+        if (shipSizeKey < 0 || shipSizeKey >= Categorizer.NUM_SHIP_SIZE_CATEGORIES) {
+            throw new IllegalArgumentException("shipSizeKey must be 0-" + (Categorizer.NUM_SHIP_SIZE_CATEGORIES - 1) + " - not " + shipSizeKey + ".");
+        }
+        if (bucketKey < 0 || bucketKey >= numBuckets) {
+            throw new IllegalArgumentException("bucketKey must be 0-" + (numBuckets - 1) + " - not " + bucketKey + ".");
+        }
+
+        final int typeIndex = USE_AGGREGATED_STATS ? 0 : shipTypeKey;
+        return (typeIndex * Categorizer.NUM_SHIP_SIZE_CATEGORIES + shipSizeKey) * numBuckets + bucketKey;
+    }
+
+    private int numberOfBits() {
+        final int numTypes = USE_AGGREGATED_STATS ? 1 : Categorizer.NUM_SHIP_TYPE_CATEGORIES;
+        return numTypes * Categorizer.NUM_SHIP_SIZE_CATEGORIES * numBuckets;
+    }
+
+    private long[] compile(long cellId) {
+        StatisticData statisticData = statisticsRepository.getStatisticData(statisticName, cellId);
+
+        long[] mask;
+        if (statisticData instanceof FourKeyStatisticData) {
+            mask = compile((FourKeyStatisticData) statisticData);
+        } else if (statisticData instanceof ShipTypeAndSizeStatisticData) {
+            mask = compile((ShipTypeAndSizeStatisticData) statisticData);
+        } else {
+            mask = NO_DATA;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Compiled " + statisticName + " for cell " + cellId + (mask == NO_DATA ? " (no sufficient data)." : "."));
+        }
+        return mask;
+    }
+
+    private long[] compile(FourKeyStatisticData statisticData) {
+        final int totalCount = statisticData.getSumFor(STAT_SHIP_COUNT);
+        if (totalCount <= TOTAL_SHIP_COUNT_THRESHOLD) {
+            return NO_DATA;
+        }
+
+        final long[] mask = new long[(numberOfBits() + 63) >>> 6];
+        final int numTypes = USE_AGGREGATED_STATS ? 1 : Categorizer.NUM_SHIP_TYPE_CATEGORIES;
+        for (int type = 0; type < numTypes; type++) {
+            for (int size = 0; size < Categorizer.NUM_SHIP_SIZE_CATEGORIES; size++) {
+                for (int bucket = 0; bucket < numBuckets; bucket++) {
+                    int shipCount;
+                    if (USE_AGGREGATED_STATS) {
+                        shipCount = statisticData.aggregateSumOverKey1(size, bucket, STAT_SHIP_COUNT);
+                    } else {
+                        Integer value = statisticData.getValue(type, size, bucket, STAT_SHIP_COUNT);
+                        shipCount = value == null ? 0 : value;
+                    }
+                    setIfAbnormal(mask, bitIndexOf(type, size, bucket), shipCount, totalCount);
+                }
+            }
+        }
+
+        return mask;
+    }
+
+    private long[] compile(ShipTypeAndSizeStatisticData statisticData) {
+        final int totalCount = statisticData.getSumFor(STAT_SHIP_COUNT);
+        if (totalCount <= TOTAL_SHIP_COUNT_THRESHOLD) {
+            return NO_DATA;
+        }
+
+        final long[] mask = new long[(numberOfBits() + 63) >>> 6];
+        for (int type = 0; type < Categorizer.NUM_SHIP_TYPE_CATEGORIES; type++) {
+            for (int size = 0; size < Categorizer.NUM_SHIP_SIZE_CATEGORIES; size++) {
+                Integer value = statisticData.getValue(type, size, STAT_SHIP_COUNT);
+                setIfAbnormal(mask, bitIndexOf(type, size, 0), value == null ? 0 : value, totalCount);
+            }
+        }
+
+        return mask;
+    }
+
+    private void setIfAbnormal(long[] mask, int bit, int shipCount, int totalCount) {
+        float pd = (float) shipCount / (float) totalCount;
+        if (pd < PD) {
+            mask[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AbnormalityTable{" +
+                "statisticName='" + statisticName + '\'' +
+                ", TOTAL_SHIP_COUNT_THRESHOLD=" + TOTAL_SHIP_COUNT_THRESHOLD +
+                ", PD=" + PD +
+                ", USE_AGGREGATED_STATS=" + USE_AGGREGATED_STATS +
+                ", compiledCells=" + masks.size() +
+                '}';
+    }
+}
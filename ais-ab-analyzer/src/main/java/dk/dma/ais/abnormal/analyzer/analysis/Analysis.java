@@ -17,7 +17,6 @@
 package dk.dma.ais.abnormal.analyzer.analysis;
 
 import dk.dma.ais.abnormal.analyzer.behaviour.BehaviourManager;
-import dk.dma.ais.abnormal.analyzer.behaviour.BehaviourManagerImpl;
 import dk.dma.ais.abnormal.analyzer.behaviour.EventCertainty;
 import dk.dma.ais.abnormal.event.db.EventRepository;
 import dk.dma.ais.abnormal.event.db.domain.CloseEncounterEvent;
@@ -38,6 +37,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.Iterator;
 import java.util.List;
 
+import static java.util.Collections.singletonList;
+
 /**
  * An Analysis is a class which is known to the ais-ab-analyzer application and possesses certain public
  * methods which can be called to analyze and detect events.
@@ -67,7 +68,7 @@ public abstract class Analysis {
         this.trackingService = trackingService;
         this.behaviourManager = behaviourManager;
         this.trackPredictionTimeMax = -1;
-        this.analysisName = getClass().getSimpleName();
+        this.analysisName = analysisNameOf(getClass());
         init(behaviourManager);
     }
 
@@ -94,7 +95,7 @@ public abstract class Analysis {
      * has been called.
      */
     public void start() {
-        LOG.info(this.getClass().getSimpleName() + " starts to listen for tracking events.");
+        LOG.info(analysisName + " starts to listen for tracking events.");
         trackingService.registerSubscriber(this);
     }
 
@@ -103,6 +104,17 @@ public abstract class Analysis {
         return analysisName;
     }
 
+    /**
+     * The name of an analysis class. Analyses created by Guice with method interceptors (see HandlerTracingInterceptor)
+     * are instances of a generated subclass; they are named after the analysis class they extend.
+     */
+    static String analysisNameOf(Class<?> analysisClass) {
+        while (analysisClass.getSimpleName().contains("$$EnhancerByGuice$$")) {
+            analysisClass = analysisClass.getSuperclass();
+        }
+        return analysisClass.getSimpleName();
+    }
+
     /**
      * This abstract method is intended to be implemented by subclasses, so that they can build
      * and return the proper Event entity when a new event is raised.
@@ -156,30 +168,31 @@ public abstract class Analysis {
                 }
             }
 
-            addTrackingPoint(event, mmsi, positionTimestamp, position, cog, sog, hdg, interpolated, certainty);
+            eventRepository.appendTrackingPoints(event, mmsi, singletonList(buildTrackingPoint(positionTimestamp, position, cog, sog, hdg, interpolated, certainty)));
         } else {
             event = buildEvent(primaryTrack, otherTracks);
+            eventRepository.save(event);
         }
-
-        eventRepository.save(event);
     }
 
     /**
      * Add a tracking point to an event and a target.
      */
     protected static void addTrackingPoint(Event event, int mmsi, LocalDateTime positionTimestamp, Position position, Float cog, Float sog, Float hdg, Boolean interpolated, TrackingPoint.EventCertainty eventCertainty) {
-        event.getBehaviour(mmsi).addTrackingPoint(
-                TrackingPointBuilder.TrackingPoint()
-                        .timestamp(positionTimestamp)
-                        .positionInterpolated(interpolated)
-                        .eventCertainty(eventCertainty)
-                        .speedOverGround(sog)
-                        .courseOverGround(cog)
-                        .trueHeading(hdg)
-                        .latitude(position.getLatitude())
-                        .longitude(position.getLongitude())
-                        .getTrackingPoint()
-        );
+        event.getBehaviour(mmsi).addTrackingPoint(buildTrackingPoint(positionTimestamp, position, cog, sog, hdg, interpolated, eventCertainty));
+    }
+
+    private static TrackingPoint buildTrackingPoint(LocalDateTime positionTimestamp, Position position, Float cog, Float sog, Float hdg, Boolean interpolated, TrackingPoint.EventCertainty eventCertainty) {
+        return TrackingPointBuilder.TrackingPoint()
+                .timestamp(positionTimestamp)
+                .positionInterpolated(interpolated)
+                .eventCertainty(eventCertainty)
+                .speedOverGround(sog)
+                .courseOverGround(cog)
+                .trueHeading(hdg)
+                .latitude(position.getLatitude())
+                .longitude(position.getLongitude())
+                .getTrackingPoint();
     }
 
     /**
@@ -196,11 +209,11 @@ public abstract class Analysis {
             TrackingReport trackingReport = positionReportIterator.next();
 
             if (trackingReport.getTimestamp() < track.getTimeOfLastPositionReport() /* Do not add the last one - duplicate */) {
-                TrackingPoint.EventCertainty certainty = null;
-
-                String eventCertaintyKey = BehaviourManagerImpl.getEventCertaintyKey(event.getClass());
-                EventCertainty eventCertaintyTmp = (EventCertainty) trackingReport.getProperty(eventCertaintyKey);
-                TrackingPoint.EventCertainty eventCertainty = eventCertaintyTmp == null ? TrackingPoint.EventCertainty.UNDEFINED : TrackingPoint.EventCertainty.create(eventCertaintyTmp.getCertainty());
+                TrackingPoint.EventCertainty eventCertainty = TrackingPoint.EventCertainty.UNDEFINED;
+                if (behaviourManager != null) {
+                    EventCertainty eventCertaintyTmp = behaviourManager.getEventCertaintyAt(event.getClass(), track, trackingReport.getTimestamp());
+                    eventCertainty = TrackingPoint.EventCertainty.create(eventCertaintyTmp.getCertainty());
+                }
 
                 if (event instanceof CloseEncounterEvent || eventCertainty != TrackingPoint.EventCertainty.UNDEFINED) /* Small hack to store one TP per grid cell for some event types TODO */ {
                     addTrackingPoint(event, track.getMmsi(),
@@ -0,0 +1,129 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import dk.dma.ais.abnormal.util.Categorizer;
+import dk.dma.ais.tracker.eventEmittingTracker.Track;
+import dk.dma.ais.tracker.eventEmittingTracker.events.CellChangedEvent;
+import net.jcip.annotations.Immutable;
+
+/**
+ * The track data needed by the statistic based analyses when a track changes cell.
+ *
+ * The same CellChangedEvent is delivered to every statistic based analysis. The first analysis to
+ * handle the event reads the cell id and the relevant track data, and maps them to their categories.
+ * The remaining analyses reuse the result instead of doing the same work again.
+ *
+ * Contexts are cached by the identity of the event, so a context is never reused for another cell
+ * change and needs no validation against the track. Analyses handling the same event concurrently
+ * wait for the one context to be made, and a context is discarded when its event is no longer referenced.
+ *
+ * Keys are category - 1 (as used by the statistic data) or -1 if the underlying value is unknown.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@Immutable
+public final class CellContext {
+
+    private static final LoadingCache<CellChangedEvent, CellContext> CELL_CONTEXTS = CacheBuilder.newBuilder().weakKeys().build(new CacheLoader<CellChangedEvent, CellContext>() {
+        @Override
+        public CellContext load(CellChangedEvent event) {
+            return new CellContext(event.getTrack());
+        }
+    });
+
+    private final Long cellId;
+    private final Integer shipType;
+    private final Integer shipLength;
+    private final Float courseOverGround;
+    private final Float speedOverGround;
+
+    private final int shipTypeKey;
+    private final int shipLengthKey;
+    private final int courseOverGroundKey;
+    private final int speedOverGroundKey;
+
+    private CellContext(Track track) {
+        this.cellId = (Long) track.getProperty(Track.CELL_ID);
+        this.shipType = track.getShipType();
+        this.shipLength = track.getVesselLength();
+        this.courseOverGround = track.getCourseOverGround();
+        this.speedOverGround = track.getSpeedOverGround();
+
+        this.shipTypeKey = shipType == null ? -1 : Categorizer.mapShipTypeToCategory(shipType) - 1;
+        this.shipLengthKey = shipLength == null ? -1 : Categorizer.mapShipLengthToCategory(shipLength) - 1;
+        this.courseOverGroundKey = courseOverGround == null ? -1 : Categorizer.mapCourseOverGroundToCategory(courseOverGround) - 1;
+        this.speedOverGroundKey = speedOverGround == null ? -1 : Categorizer.mapSpeedOverGroundToCategory(speedOverGround) - 1;
+    }
+
+    /**
+     * Get the cell context for the given event - creating it if no analysis has done so yet.
+     */
+    public static CellContext of(CellChangedEvent event) {
+        return CELL_CONTEXTS.getUnchecked(event);
+    }
+
+    public Long getCellId() {
+        return cellId;
+    }
+
+    public Integer getShipType() {
+        return shipType;
+    }
+
+    public Integer getShipLength() {
+        return shipLength;
+    }
+
+    public Float getCourseOverGround() {
+        return courseOverGround;
+    }
+
+    public Float getSpeedOverGround() {
+        return speedOverGround;
+    }
+
+    public int getShipTypeKey() {
+        return shipTypeKey;
+    }
+
+    public int getShipLengthKey() {
+        return shipLengthKey;
+    }
+
+    public int getCourseOverGroundKey() {
+        return courseOverGroundKey;
+    }
+
+    public int getSpeedOverGroundKey() {
+        return speedOverGroundKey;
+    }
+
+    @Override
+    public String toString() {
+        return "CellContext{" +
+                "cellId=" + cellId +
+                ", shipType=" + shipType +
+                ", shipLength=" + shipLength +
+                ", courseOverGround=" + courseOverGround +
+                ", speedOverGround=" + speedOverGround +
+                '}';
+    }
+}
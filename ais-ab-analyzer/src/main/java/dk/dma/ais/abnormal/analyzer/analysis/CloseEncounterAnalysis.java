@@ -17,7 +17,11 @@
 package dk.dma.ais.abnormal.analyzer.analysis;
 
 import com.google.inject.Inject;
+import dk.dma.ais.abnormal.analyzer.AnalysisCounter;
 import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
+import dk.dma.ais.abnormal.analyzer.geometry.CartesianEllipse;
+import dk.dma.ais.abnormal.analyzer.geometry.ClosestPointOfApproach;
+import dk.dma.ais.abnormal.analyzer.geometry.LocalProjection;
 import dk.dma.ais.abnormal.analyzer.services.SafetyZoneService;
 import dk.dma.ais.abnormal.event.db.EventRepository;
 import dk.dma.ais.abnormal.event.db.domain.CloseEncounterEvent;
@@ -31,18 +35,21 @@ import dk.dma.ais.tracker.eventEmittingTracker.Track;
 import dk.dma.ais.tracker.eventEmittingTracker.TrackingReport;
 import dk.dma.enav.model.geometry.CoordinateSystem;
 import dk.dma.enav.model.geometry.Ellipse;
-import dk.dma.enav.util.CoordinateConverter;
+import dk.dma.enav.model.geometry.Position;
 import net.jcip.annotations.NotThreadSafe;
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_CLOSEENCOUNTER_CPA_HORIZON;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_CLOSEENCOUNTER_PREDICTIONTIME_MAX;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_CLOSEENCOUNTER_RUN_PERIOD;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_CLOSEENCOUNTER_SOG_MIN;
@@ -55,8 +62,11 @@ import static dk.dma.ais.abnormal.util.TrackPredicates.isSmallVessel;
 import static dk.dma.ais.abnormal.util.TrackPredicates.isSpeedInvalid;
 import static dk.dma.ais.abnormal.util.TrackPredicates.isSupportVessel;
 import static dk.dma.ais.abnormal.util.TrackPredicates.isUndefinedVessel;
+import static dk.dma.commons.util.DateTimeUtil.MILLIS_TO_LOCALDATETIME_UTC;
+import static java.lang.Math.hypot;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 /**
@@ -68,6 +78,11 @@ import static java.util.stream.Collectors.toSet;
  * a larger area in front of the vessel. If two ellipses intersect there is a risk of collision and this is registered
  * as an abnormal event.
  *
+ * If a CPA horizon is configured, the analysis also computes the closest point of approach (CPA) and the time to
+ * closest point of approach (TCPA) of each track and all its near-by tracks in one batch. If the ellipses of a
+ * pair will intersect at their closest point of approach within the horizon, this is registered as a (predicted)
+ * close encounter too - giving earlier warning than the intersection of the current ellipses.
+ *
  * This analysis is rather extensive, and we can therefore now allow to block the EventBus
  * for the duration of a complete analysis. Instead the worked is spawned to a separate worker
  * thread.
@@ -78,20 +93,38 @@ import static java.util.stream.Collectors.toSet;
 public class CloseEncounterAnalysis extends PeriodicAnalysis {
     private static final Logger LOG = LoggerFactory.getLogger(CloseEncounterAnalysis.class);
 
-    private final AppStatisticsService statisticsService;
+    private final AnalysisCounter analysesPerformedCounter;
+    private final AnalysisCounter eventsRaisedCounter;
+    private final AnalysisCounter exactIntersectionTestsCounter;
+    private final AnalysisCounter exactIntersectionTestsSavedCounter;
+    private final AnalysisCounter predictedEncountersCounter;
+    private final AnalysisCounter predictionsSkippedCounter;
     private final SafetyZoneService safetyZoneService;
 
     /** Minimum speed over ground to consider close encounter (in knots) */
     private final float sogMin;
 
+    /** Max. time to closest point of approach for predicted close encounters (in seconds); 0 to disable */
+    private final int cpaHorizon;
+
+    /** Key of track property holding the time of the close encounter (which may be predicted) */
+    private static final String ENCOUNTER_TIME_KEY = "close-encounter-time";
+
     @Inject
     public CloseEncounterAnalysis(Configuration configuration, AppStatisticsService statisticsService, EventEmittingTracker trackingService, EventRepository eventRepository, SafetyZoneService safetyZoneService) {
         super(eventRepository, trackingService, null);
-        this.statisticsService = statisticsService;
         this.safetyZoneService = safetyZoneService;
         this.sogMin = configuration.getFloat(CONFKEY_ANALYSIS_CLOSEENCOUNTER_SOG_MIN, 5.0f);
+        this.cpaHorizon = max(configuration.getInt(CONFKEY_ANALYSIS_CLOSEENCOUNTER_CPA_HORIZON, 0), 0);
         setTrackPredictionTimeMax(configuration.getInteger(CONFKEY_ANALYSIS_CLOSEENCOUNTER_PREDICTIONTIME_MAX, -1));
         setAnalysisPeriodMillis(configuration.getInt(CONFKEY_ANALYSIS_CLOSEENCOUNTER_RUN_PERIOD, 30000) * 1000);
+        this.analysesPerformedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Analyses performed");
+        this.eventsRaisedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Events raised");
+        this.exactIntersectionTestsCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Exact intersection tests");
+        this.exactIntersectionTestsSavedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Exact intersection tests saved");
+        this.predictedEncountersCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Predicted encounters");
+        this.predictionsSkippedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Predictions skipped by DCPA");
+
         LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
     }
 
@@ -99,6 +132,7 @@ public class CloseEncounterAnalysis extends PeriodicAnalysis {
     public String toString() {
         return "CloseEncounterAnalysis{" +
                 "sogMin=" + sogMin +
+                ", cpaHorizon=" + cpaHorizon +
                 "} " + super.toString();
     }
 
@@ -112,11 +146,11 @@ public class CloseEncounterAnalysis extends PeriodicAnalysis {
         );
 
         final long systemTimeMillisAfterAnalysis = System.currentTimeMillis();
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Analyses performed");
+        analysesPerformedCounter.increment();
         LOG.debug(getAnalysisName() + " of " + tracks.size() + " tracks completed in " + (systemTimeMillisAfterAnalysis - systemTimeMillisBeforeAnalysis) + " msecs.");
     }
 
-    private void analyseCloseEncounters(Collection<Track> allTracks, Track track) {
+    void analyseCloseEncounters(Collection<Track> allTracks, Track track) {
         clearTrackPairsAnalyzed();
         if (
             isSupportVessel.negate().test(track)   &&
@@ -124,38 +158,107 @@ public class CloseEncounterAnalysis extends PeriodicAnalysis {
             isSpeedInvalid.negate().test(track)    &&
             (track.getSpeedOverGround() == null || track.getSpeedOverGround() > sogMin)
         ) {
-            findNearByTracks(allTracks, track, 60000, 1852)
+            List<Track> nearByTracks = findNearByTracks(allTracks, track, 60000, 1852)
                 .stream()
                 .filter(isSupportVessel.negate())
                 .filter(isEngagedInTowing.negate())
-                .forEach(nearByTrack -> {
-                    if (isTrackPairAnalyzed(track, nearByTrack)) {
-                        return;
-                    }
-                    if (isSlowVessel.test(nearByTrack)) {
-                        return;
-                    }
-                    if (nearByTrack.getSpeedOverGround() != null && nearByTrack.getSpeedOverGround() < sogMin) {
-                        return;
-                    }
-                    if (isSmallVessel.test(track) && isSmallVessel.test(nearByTrack)) {
-                        return;
-                    }
-                    if (isFishingVessel.test(track) && isFishingVessel.test(nearByTrack)) {
-                        return;
-                    }
-                    if (isEngagedInFishing.test(track) && isEngagedInFishing.test(nearByTrack)) {
-                        return;
-                    }
-                    if (isUndefinedVessel.test(track) && isUndefinedVessel.test(nearByTrack)) {
-                        return;
-                    }
-                    analyseCloseEncounter(track, nearByTrack);
-            });
+                .filter(nearByTrack -> isCandidatePair(track, nearByTrack))
+                .collect(toList());
+
+            if (cpaHorizon > 0) {
+                computeClosestPointsOfApproach(track, nearByTracks);
+                final long t = track.getTimeOfLastPositionReport();
+                for (int i = 0; i < nearByTracks.size(); i++) {
+                    final long timeOfClosestApproach = cpaTcpa[i] > 0.0 ? t + (long) (cpaTcpa[i] * 1000.0) : -1L;
+                    analyseCloseEncounter(track, nearByTracks.get(i), timeOfClosestApproach, cpaDcpa[i]);
+                }
+            } else {
+                nearByTracks.forEach(nearByTrack -> analyseCloseEncounter(track, nearByTrack));
+            }
         }
     }
 
+    private boolean isCandidatePair(Track track, Track nearByTrack) {
+        if (isTrackPairAnalyzed(track, nearByTrack)) {
+            return false;
+        }
+        if (isSlowVessel.test(nearByTrack)) {
+            return false;
+        }
+        if (nearByTrack.getSpeedOverGround() != null && nearByTrack.getSpeedOverGround() < sogMin) {
+            return false;
+        }
+        if (isSmallVessel.test(track) && isSmallVessel.test(nearByTrack)) {
+            return false;
+        }
+        if (isFishingVessel.test(track) && isFishingVessel.test(nearByTrack)) {
+            return false;
+        }
+        if (isEngagedInFishing.test(track) && isEngagedInFishing.test(nearByTrack)) {
+            return false;
+        }
+        if (isUndefinedVessel.test(track) && isUndefinedVessel.test(nearByTrack)) {
+            return false;
+        }
+        return true;
+    }
+
+    /* Batch buffers for computing closest points of approach; one element per near-by track */
+    private double[] cpaDx = new double[0], cpaDy = new double[0], cpaDvx = new double[0], cpaDvy = new double[0];
+    private double[] cpaTcpa = new double[0], cpaDcpa = new double[0];
+
+    /**
+     * Compute the time to closest point of approach between track and each of the nearByTracks into cpaTcpa
+     * (and the distance into cpaDcpa). All positions are dead reckoned to the time of track's last position report.
+     */
+    private void computeClosestPointsOfApproach(Track track, List<Track> nearByTracks) {
+        final int n = nearByTracks.size();
+        if (cpaDx.length < n) {
+            final int capacity = max(n, 2 * cpaDx.length);
+            cpaDx = Arrays.copyOf(cpaDx, capacity);
+            cpaDy = Arrays.copyOf(cpaDy, capacity);
+            cpaDvx = Arrays.copyOf(cpaDvx, capacity);
+            cpaDvy = Arrays.copyOf(cpaDvy, capacity);
+            cpaTcpa = Arrays.copyOf(cpaTcpa, capacity);
+            cpaDcpa = Arrays.copyOf(cpaDcpa, capacity);
+        }
+
+        projection = LocalProjection.reuseOrAnchorAt(projection, track.getPosition());
+        final long t = track.getTimeOfLastPositionReport();
+        final double vx = velocityX(track), vy = velocityY(track);
+        for (int i = 0; i < n; i++) {
+            final Track nearByTrack = nearByTracks.get(i);
+            final double dt = (t - nearByTrack.getTimeOfLastPositionReport()) / 1000.0;
+            final double nearByVx = velocityX(nearByTrack), nearByVy = velocityY(nearByTrack);
+            cpaDx[i] = projection.x(nearByTrack.getPosition()) + nearByVx * dt;
+            cpaDy[i] = projection.y(nearByTrack.getPosition()) + nearByVy * dt;
+            cpaDvx[i] = nearByVx - vx;
+            cpaDvy[i] = nearByVy - vy;
+        }
+
+        ClosestPointOfApproach.compute(n, cpaDx, cpaDy, cpaDvx, cpaDvy, cpaHorizon, cpaTcpa, cpaDcpa);
+    }
+
+    private static double velocityX(Track track) {
+        final Float cog = track.getCourseOverGround(), sog = track.getSpeedOverGround();
+        return cog == null || sog == null ? 0.0 : ClosestPointOfApproach.velocityX(cog, sog);
+    }
+
+    private static double velocityY(Track track) {
+        final Float cog = track.getCourseOverGround(), sog = track.getSpeedOverGround();
+        return cog == null || sog == null ? 0.0 : ClosestPointOfApproach.velocityY(cog, sog);
+    }
+
     void analyseCloseEncounter(Track track1, Track track2) {
+        analyseCloseEncounter(track1, track2, -1L, Double.NaN);
+    }
+
+    /**
+     * @param timeOfClosestApproach the time when track1 and track2 will be closest to each other, or
+     *                              a negative value if predicted close encounters are not to be analysed.
+     * @param distanceOfClosestApproach the distance (in meters) between track1 and track2 at timeOfClosestApproach.
+     */
+    void analyseCloseEncounter(Track track1, Track track2, long timeOfClosestApproach, double distanceOfClosestApproach) {
         final long t = max(track1.getTimeOfLastPositionReport(), track2.getTimeOfLastPositionReport());
 
         if (t > track1.getTimeOfLastPositionReport()) {
@@ -194,12 +297,42 @@ public class CloseEncounterAnalysis extends PeriodicAnalysis {
         }
 
         if (allValuesPresent && !Float.isNaN(track1Cog) && !Float.isNaN(track2Hdg)) {
-            Ellipse safetyEllipseTrack1 = safetyZoneService.safetyZone(track1.getPosition(), track1.getPosition(), track1Cog, track1Sog, track1Loa, track1Beam, track1Stern, track1Starboard);
-            Ellipse extentTrack2 = safetyZoneService.vesselExtent(track1.getPosition(), track2.getPosition(), track2Hdg, track2Loa, track2Beam, track2Stern, track2Starboard);
+            projection = LocalProjection.reuseOrAnchorAt(projection, track1.getPosition());
+            CartesianEllipse safetyEllipseTrack1 = safetyZoneService.safetyZone(projection, track1.getPosition(), track1Cog, track1Sog, track1Loa, track1Beam, track1Stern, track1Starboard);
+            CartesianEllipse extentTrack2 = safetyZoneService.vesselExtent(projection, track2.getPosition(), track2Hdg, track2Loa, track2Beam, track2Stern, track2Starboard);
+
+            long encounterTime = t;
+            boolean intersects = intersects(safetyEllipseTrack1, extentTrack2);
+
+            final Float track2Cog = track2.getCourseOverGround(), track2Sog = track2.getSpeedOverGround();
+            if (!intersects && timeOfClosestApproach > t && track2Cog != null && track2Sog != null) {
+                final double track1X = projection.x(track1.getPosition()), track1Y = projection.y(track1.getPosition());
+                final double track2X = projection.x(track2.getPosition()), track2Y = projection.y(track2.getPosition());
+                if (!canIntersectAtDistance(safetyEllipseTrack1, track1X, track1Y, extentTrack2, track2X, track2Y, distanceOfClosestApproach)) {
+                    /* The tracks pass too far from each other for the ellipses to intersect at their closest point of approach */
+                    predictionsSkippedCounter.increment();
+                } else {
+                    /* Dead reckon both tracks to their closest point of approach, and test the ellipses there */
+                    final double dt = (timeOfClosestApproach - t) / 1000.0;
+                    final Position track1PositionAtCpa = projection.position(track1X + ClosestPointOfApproach.velocityX(track1Cog, track1Sog) * dt, track1Y + ClosestPointOfApproach.velocityY(track1Cog, track1Sog) * dt);
+                    final Position track2PositionAtCpa = projection.position(track2X + ClosestPointOfApproach.velocityX(track2Cog, track2Sog) * dt, track2Y + ClosestPointOfApproach.velocityY(track2Cog, track2Sog) * dt);
+
+                    CartesianEllipse predictedSafetyEllipseTrack1 = safetyZoneService.safetyZone(projection, track1PositionAtCpa, track1Cog, track1Sog, track1Loa, track1Beam, track1Stern, track1Starboard);
+                    CartesianEllipse predictedExtentTrack2 = safetyZoneService.vesselExtent(projection, track2PositionAtCpa, track2Hdg, track2Loa, track2Beam, track2Stern, track2Starboard);
+                    if (intersects(predictedSafetyEllipseTrack1, predictedExtentTrack2)) {
+                        predictedEncountersCounter.increment();
+                        safetyEllipseTrack1 = predictedSafetyEllipseTrack1;
+                        extentTrack2 = predictedExtentTrack2;
+                        encounterTime = timeOfClosestApproach;
+                        intersects = true;
+                    }
+                }
+            }
 
-            if (safetyEllipseTrack1 != null && extentTrack2 != null && safetyEllipseTrack1.intersects(extentTrack2)) {
-                track1.setProperty(Track.SAFETY_ZONE, safetyEllipseTrack1);
-                track2.setProperty(Track.EXTENT, extentTrack2);
+            if (intersects) {
+                track1.setProperty(Track.SAFETY_ZONE, safetyEllipseTrack1.toEllipse(projection.getGeodeticReference()));
+                track2.setProperty(Track.EXTENT, extentTrack2.toEllipse(projection.getGeodeticReference()));
+                track1.setProperty(ENCOUNTER_TIME_KEY, encounterTime);
                 raiseOrMaintainAbnormalEvent(CloseEncounterEvent.class, track1, track2);
             } else {
                 lowerExistingAbnormalEventIfExists(CloseEncounterEvent.class, track1);
@@ -209,6 +342,41 @@ public class CloseEncounterAnalysis extends PeriodicAnalysis {
         markTrackPairAnalyzed(track1, track2);
     }
 
+    /**
+     * Test if two ellipses - each fixed relative to the position of its vessel - can intersect, when the vessels are
+     * the given distance apart. The ellipses keep their offsets and sizes when the vessels are dead reckoned.
+     *
+     * @param ellipse1 the ellipse of the first vessel.
+     * @param x1 x-coordinate of the first vessel's position.
+     * @param y1 y-coordinate of the first vessel's position.
+     * @param ellipse2 the ellipse of the second vessel.
+     * @param x2 x-coordinate of the second vessel's position.
+     * @param y2 y-coordinate of the second vessel's position.
+     * @param distance the distance between the vessels (in meters); NaN if unknown.
+     * @return false if the ellipses certainly do not intersect at this distance; true if they may.
+     */
+    private static boolean canIntersectAtDistance(CartesianEllipse ellipse1, double x1, double y1, CartesianEllipse ellipse2, double x2, double y2, double distance) {
+        final double reach1 = hypot(ellipse1.getX() - x1, ellipse1.getY() - y1) + ellipse1.getBoundingRadius();
+        final double reach2 = hypot(ellipse2.getX() - x2, ellipse2.getY() - y2) + ellipse2.getBoundingRadius();
+        return !(distance > reach1 + reach2);
+    }
+
+    /**
+     * Test if two ellipses intersect - running the exact test only if their bounding circles overlap.
+     */
+    private boolean intersects(CartesianEllipse ellipse1, CartesianEllipse ellipse2) {
+        if (ellipse1.mayIntersect(ellipse2)) {
+            exactIntersectionTestsCounter.increment();
+            return ellipse1.intersects(ellipse2);
+        } else {
+            exactIntersectionTestsSavedCounter.increment();
+            return false;
+        }
+    }
+
+    /** Projection anchored at the position of the track currently analysed; reused for all of its near-by tracks */
+    private LocalProjection projection;
+
     private Set<String> trackPairsAnalyzed;
 
     void clearTrackPairsAnalyzed() {
@@ -291,42 +459,46 @@ public class CloseEncounterAnalysis extends PeriodicAnalysis {
         }
         short secondaryShipLengthCategory = Categorizer.mapShipLengthToCategory(secondaryTrack.getVesselLength());
 
+        Long encounterTimeBoxed = (Long) primaryTrack.getProperty(ENCOUNTER_TIME_KEY);
+        final long encounterTime = encounterTimeBoxed == null ? primaryTrack.getTimeOfLastPositionReport() : encounterTimeBoxed;
+        final boolean predicted = encounterTime > primaryTrack.getTimeOfLastPositionReport();
+
         StringBuffer title = new StringBuffer();
         title.append("Close encounter");
 
         StringBuffer description = new StringBuffer();
-        description.append("Close encounter between ");
+        description.append(predicted ? "Predicted close encounter between " : "Close encounter between ");
         description.append(primaryShipName);
         description.append(" (" + primaryShipType + ") and ");
         description.append(secondaryShipName);
         description.append(" (" + secondaryShipType + ") on ");
-        description.append(DATE_FORMAT.format(primaryTrack.getTimeOfLastPositionReportTyped()));
+        description.append(DATE_FORMAT.format(predicted ? MILLIS_TO_LOCALDATETIME_UTC.apply(encounterTime) : primaryTrack.getTimeOfLastPositionReportTyped()));
         description.append(".");
 
         Ellipse primaryTrackSafetyEllipse = (Ellipse) primaryTrack.getProperty(Track.SAFETY_ZONE);
         Ellipse secondaryTrackExtent = (Ellipse) secondaryTrack.getProperty(Track.EXTENT);
 
-        CoordinateConverter CoordinateConverter = new CoordinateConverter(primaryTrackSafetyEllipse.getGeodeticReference().getLongitude(), primaryTrackSafetyEllipse.getGeodeticReference().getLatitude());
-        double primaryTrackLatitude = CoordinateConverter.y2Lat(primaryTrackSafetyEllipse.getX(), primaryTrackSafetyEllipse.getY());
-        double primaryTrackLongitude = CoordinateConverter.x2Lon(primaryTrackSafetyEllipse.getX(), primaryTrackSafetyEllipse.getY());
-        double secondaryTrackLatitude = CoordinateConverter.y2Lat(secondaryTrackExtent.getX(), secondaryTrackExtent.getY());
-        double secondaryTrackLongitude = CoordinateConverter.x2Lon(secondaryTrackExtent.getX(), secondaryTrackExtent.getY());
+        LocalProjection eventProjection = LocalProjection.reuseOrAnchorAt(projection, primaryTrackSafetyEllipse.getGeodeticReference());
+        double primaryTrackLatitude = eventProjection.latitude(primaryTrackSafetyEllipse.getX(), primaryTrackSafetyEllipse.getY());
+        double primaryTrackLongitude = eventProjection.longitude(primaryTrackSafetyEllipse.getX(), primaryTrackSafetyEllipse.getY());
+        double secondaryTrackLatitude = eventProjection.latitude(secondaryTrackExtent.getX(), secondaryTrackExtent.getY());
+        double secondaryTrackLongitude = eventProjection.longitude(secondaryTrackExtent.getX(), secondaryTrackExtent.getY());
 
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Events raised");
+        eventsRaisedCounter.increment();
 
         LOG.info(description.toString());
 
         Event event =
             CloseEncounterEventBuilder.CloseEncounterEvent()
                     .safetyZoneOfPrimaryVessel()
-                        .targetTimestamp(new Date(primaryTrack.getTimeOfLastPositionReport()))
+                        .targetTimestamp(new Date(encounterTime))
                         .centerLatitude(primaryTrackLatitude)
                         .centerLongitude(primaryTrackLongitude)
                         .majorAxisHeading(primaryTrackSafetyEllipse.getMajorAxisGeodeticHeading())
                         .majorSemiAxisLength(primaryTrackSafetyEllipse.getAlpha())
                         .minorSemiAxisLength(primaryTrackSafetyEllipse.getBeta())
                     .extentOfSecondaryVessel()
-                        .targetTimestamp(new Date(secondaryTrack.getTimeOfLastPositionReport()))
+                        .targetTimestamp(new Date(predicted ? encounterTime : secondaryTrack.getTimeOfLastPositionReport()))
                         .centerLatitude(secondaryTrackLatitude)
                         .centerLongitude(secondaryTrackLongitude)
                         .majorAxisHeading(secondaryTrackExtent.getMajorAxisGeodeticHeading())
@@ -19,6 +19,7 @@ package dk.dma.ais.abnormal.analyzer.analysis;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
+import dk.dma.ais.abnormal.analyzer.AnalysisCounter;
 import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
 import dk.dma.ais.abnormal.analyzer.behaviour.BehaviourManager;
 import dk.dma.ais.abnormal.analyzer.behaviour.EventCertainty;
@@ -30,9 +31,8 @@ import dk.dma.ais.abnormal.event.db.domain.CourseOverGroundEvent;
 import dk.dma.ais.abnormal.event.db.domain.Event;
 import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
 import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
-import dk.dma.ais.abnormal.stat.db.data.CourseOverGroundStatisticData;
-import dk.dma.ais.abnormal.stat.db.data.StatisticData;
 import dk.dma.ais.abnormal.util.Categorizer;
+import dk.dma.ais.abnormal.util.VesselClass;
 import dk.dma.ais.tracker.eventEmittingTracker.EventEmittingTracker;
 import dk.dma.ais.tracker.eventEmittingTracker.InterpolatedTrackingReport;
 import dk.dma.ais.tracker.eventEmittingTracker.Track;
@@ -52,13 +52,13 @@ import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_COG_USE_AGGREGATED_STATS;
 import static dk.dma.ais.abnormal.event.db.domain.builders.CourseOverGroundEventBuilder.CourseOverGroundEvent;
 import static dk.dma.ais.abnormal.util.AisDataHelper.nameOrMmsi;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isClassB;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isEngagedInTowing;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isFishingVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isSlowVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isSmallVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isSpecialCraft;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isUnknownTypeOrSize;
+import static dk.dma.ais.abnormal.util.VesselClass.CLASS_B;
+import static dk.dma.ais.abnormal.util.VesselClass.ENGAGED_IN_TOWING;
+import static dk.dma.ais.abnormal.util.VesselClass.FISHING_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SLOW_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SMALL_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SPECIAL_CRAFT;
+import static dk.dma.ais.abnormal.util.VesselClass.UNKNOWN_TYPE_OR_SIZE;
 
 /**
  * This analysis manages events where a vessel has an "abnormal" course over ground
@@ -70,23 +70,44 @@ import static dk.dma.ais.abnormal.util.TrackPredicates.isUnknownTypeOrSize;
 public class CourseOverGroundAnalysis extends StatisticBasedAnalysis {
     private static final Logger LOG = LoggerFactory.getLogger(CourseOverGroundAnalysis.class);
 
-    private final AppStatisticsService statisticsService;
+    /** Vessel classes not analysed */
+    private static final int EXCLUDED_VESSEL_CLASSES = CLASS_B | UNKNOWN_TYPE_OR_SIZE | FISHING_VESSEL | SLOW_VESSEL | SMALL_VESSEL | SPECIAL_CRAFT | ENGAGED_IN_TOWING;
+
+    private final AnalysisCounter eventsReceivedCounter;
+    private final AnalysisCounter unknownCellIdCounter;
+    private final AnalysisCounter unknownShipTypeCounter;
+    private final AnalysisCounter unknownShipLengthCounter;
+    private final AnalysisCounter unknownCourseOverGroundCounter;
+    private final AnalysisCounter shipLengthTooSmallCounter;
+    private final AnalysisCounter analysesPerformedCounter;
+    private final AnalysisCounter eventsRaisedCounter;
 
     private final int TOTAL_SHIP_COUNT_THRESHOLD;
     private final float PD;
     private final int SHIP_LENGTH_MIN;
     private final boolean USE_AGGREGATED_STATS;
 
+    private final AbnormalityTable abnormalityTable;
+
     @Inject
     public CourseOverGroundAnalysis(Configuration configuration, AppStatisticsService statisticsService, StatisticDataRepository statisticsRepository, EventEmittingTracker trackingService, EventRepository eventRepository, BehaviourManager behaviourManager) {
         super(eventRepository, statisticsRepository, trackingService, behaviourManager);
-        this.statisticsService = statisticsService;
         setTrackPredictionTimeMax(configuration.getInteger(CONFKEY_ANALYSIS_COG_PREDICTIONTIME_MAX, -1));
 
         TOTAL_SHIP_COUNT_THRESHOLD = configuration.getInt(CONFKEY_ANALYSIS_COG_CELL_SHIPCOUNT_MIN, 1000);
         PD = configuration.getFloat(CONFKEY_ANALYSIS_COG_PD, 0.001f);
         SHIP_LENGTH_MIN = configuration.getInt(CONFKEY_ANALYSIS_COG_SHIPLENGTH_MIN, 50);
         USE_AGGREGATED_STATS = configuration.getBoolean(CONFKEY_ANALYSIS_COG_USE_AGGREGATED_STATS, false);
+        abnormalityTable = new AbnormalityTable(statisticsRepository, "CourseOverGroundStatistic", Categorizer.NUM_COURSE_OVER_GROUND_CATEGORIES, TOTAL_SHIP_COUNT_THRESHOLD, PD, USE_AGGREGATED_STATS);
+
+        this.eventsReceivedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Events received");
+        this.unknownCellIdCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown cell id");
+        this.unknownShipTypeCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown ship type");
+        this.unknownShipLengthCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown ship length");
+        this.unknownCourseOverGroundCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown course over ground");
+        this.shipLengthTooSmallCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "LOA < " + SHIP_LENGTH_MIN);
+        this.analysesPerformedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Analyses performed");
+        this.eventsRaisedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Events raised");
 
         LOG.info(getAnalysisName() + " created (" + this + ").");
     }
@@ -104,11 +125,11 @@ public class CourseOverGroundAnalysis extends StatisticBasedAnalysis {
     @AllowConcurrentEvents
     @Subscribe
     public void onCellIdChanged(CellChangedEvent trackEvent) {
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Events received");
+        eventsReceivedCounter.increment();
 
         Track track = trackEvent.getTrack();
 
-        if (isClassB.test(track) || isUnknownTypeOrSize.test(track) || isFishingVessel.test(track) || isSlowVessel.test(track) || isSmallVessel.test(track) || isSpecialCraft.test(track) || isEngagedInTowing.test(track)) {
+        if ((VesselClass.of(track) & EXCLUDED_VESSEL_CLASSES) != 0) {
             return;
         }
 
@@ -118,41 +139,38 @@ public class CourseOverGroundAnalysis extends StatisticBasedAnalysis {
             return;
         }
 
-        Long cellId = (Long) track.getProperty(Track.CELL_ID);
-        Integer shipType = track.getShipType();
-        Integer shipLength = track.getVesselLength();
-        Float courseOverGround = track.getCourseOverGround();
+        CellContext cellContext = CellContext.of(trackEvent);
+        Long cellId = cellContext.getCellId();
+        Integer shipType = cellContext.getShipType();
+        Integer shipLength = cellContext.getShipLength();
+        Float courseOverGround = cellContext.getCourseOverGround();
 
         if (cellId == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown cell id");
+            unknownCellIdCounter.increment();
             return;
         }
 
         if (shipType == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown ship type");
+            unknownShipTypeCounter.increment();
             return;
         }
 
         if (shipLength == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown ship length");
+            unknownShipLengthCounter.increment();
             return;
         }
 
         if (courseOverGround == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown course over ground");
+            unknownCourseOverGroundCounter.increment();
             return;
         }
 
         if (shipLength < SHIP_LENGTH_MIN) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "LOA < " + SHIP_LENGTH_MIN);
+            shipLengthTooSmallCounter.increment();
             return;
         }
 
-        int shipTypeKey = Categorizer.mapShipTypeToCategory(shipType) - 1;
-        int shipLengthKey = Categorizer.mapShipLengthToCategory(shipLength) - 1;
-        int courseOverGroundKey = Categorizer.mapCourseOverGroundToCategory(courseOverGround) - 1;
-
-        if (isAbnormalCourseOverGround(cellId, shipTypeKey, shipLengthKey, courseOverGroundKey)) {
+        if (isAbnormalCourseOverGround(cellId, cellContext.getShipTypeKey(), cellContext.getShipLengthKey(), cellContext.getCourseOverGroundKey())) {
             getBehaviourManager().abnormalBehaviourDetected(CourseOverGroundEvent.class, track);
         } else {
             getBehaviourManager().normalBehaviourDetected(CourseOverGroundEvent.class, track);
@@ -200,42 +218,18 @@ public class CourseOverGroundAnalysis extends StatisticBasedAnalysis {
      * @return true if the presence of size/type with this cog in this cell is abnormal. False otherwise.
      */
     boolean isAbnormalCourseOverGround(Long cellId, int shipTypeKey, int shipSizeKey, int courseOverGroundKey) {
-        float pd = 1.0f;
-
-        StatisticData courseOverGroundStatisticData = getStatisticDataRepository().getStatisticData("CourseOverGroundStatistic", cellId);
-
-        if (courseOverGroundStatisticData instanceof CourseOverGroundStatisticData) {
-            Integer totalCount  = ((CourseOverGroundStatisticData) courseOverGroundStatisticData).getSumFor(CourseOverGroundStatisticData.STAT_SHIP_COUNT);
-            if (totalCount > TOTAL_SHIP_COUNT_THRESHOLD) {
-                int shipCount = calculateShipCount((CourseOverGroundStatisticData) courseOverGroundStatisticData, shipTypeKey, shipSizeKey, courseOverGroundKey);
-                pd = (float) shipCount / (float) totalCount;
-                LOG.debug("cellId=" + cellId + ", shipType=" + shipTypeKey + ", shipSize=" + shipSizeKey + ", cog=" + courseOverGroundKey + ", shipCount=" + shipCount + ", totalCount=" + totalCount + ", pd=" + pd);
+        boolean isAbnormal = abnormalityTable.isAbnormal(cellId, shipTypeKey, shipSizeKey, courseOverGroundKey);
+        if (LOG.isDebugEnabled()) {
+            if (isAbnormal) {
+                LOG.debug("Abnormal event detected (cellId=" + cellId + ", shipType=" + shipTypeKey + ", shipSize=" + shipSizeKey + ", cog=" + courseOverGroundKey + ").");
             } else {
-                LOG.debug("totalCount of " + totalCount + " is not enough statistical data for cell " + cellId);
+                LOG.debug("Normal or inconclusive event detected.");
             }
         }
 
-        LOG.debug("pd = " + pd);
+        analysesPerformedCounter.increment();
 
-        boolean isAbnormalCourseOverGround = pd < PD;
-        if (isAbnormalCourseOverGround) {
-            LOG.debug("Abnormal event detected.");
-        } else {
-            LOG.debug("Normal or inconclusive event detected.");
-        }
-
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Analyses performed");
-
-        return isAbnormalCourseOverGround;
-    }
-
-    private int calculateShipCount(CourseOverGroundStatisticData courseOverGroundStatisticData, int shipTypeKey, int shipSizeKey, int courseOverGroundKey) {
-        if (USE_AGGREGATED_STATS) {
-            return courseOverGroundStatisticData.aggregateSumOverKey1(shipSizeKey, courseOverGroundKey, CourseOverGroundStatisticData.STAT_SHIP_COUNT);
-        } else {
-            Integer value = courseOverGroundStatisticData.getValue(shipTypeKey, shipSizeKey, courseOverGroundKey, CourseOverGroundStatisticData.STAT_SHIP_COUNT);
-            return value == null ? 0 : value;
-        }
+        return isAbnormal;
     }
 
     @Override
@@ -315,7 +309,7 @@ public class CourseOverGroundAnalysis extends StatisticBasedAnalysis {
 
         addPreviousTrackingPoints(event, track);
 
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Events raised");
+        eventsRaisedCounter.increment();
 
         return event;
     }
@@ -19,12 +19,16 @@ package dk.dma.ais.abnormal.analyzer.analysis;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
+import dk.dma.ais.abnormal.analyzer.AnalysisCounter;
 import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
 import dk.dma.ais.abnormal.event.db.EventRepository;
 import dk.dma.ais.abnormal.event.db.domain.DriftEvent;
 import dk.dma.ais.abnormal.event.db.domain.Event;
 import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
 import dk.dma.ais.abnormal.event.db.domain.builders.DriftEventBuilder;
+import dk.dma.ais.abnormal.util.ConcurrentIntMap;
+import dk.dma.ais.abnormal.util.ConcurrentIntSet;
+import dk.dma.ais.abnormal.util.VesselClass;
 import dk.dma.ais.tracker.eventEmittingTracker.EventEmittingTracker;
 import dk.dma.ais.tracker.eventEmittingTracker.InterpolatedTrackingReport;
 import dk.dma.ais.tracker.eventEmittingTracker.Track;
@@ -37,8 +41,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.TreeSet;
 
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_DRIFT_COGHDG;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_DRIFT_DISTANCE;
@@ -51,14 +53,14 @@ import static dk.dma.ais.abnormal.util.AisDataHelper.isCourseOverGroundAvailable
 import static dk.dma.ais.abnormal.util.AisDataHelper.isSpeedOverGroundAvailable;
 import static dk.dma.ais.abnormal.util.AisDataHelper.isTrueHeadingAvailable;
 import static dk.dma.ais.abnormal.util.AisDataHelper.nameOrMmsi;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isCargoVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isClassB;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isEngagedInTowing;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isPassengerVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isSpecialCraft;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isTankerVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isUnknownTypeOrSize;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isVeryLongVessel;
+import static dk.dma.ais.abnormal.util.VesselClass.CARGO_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.CLASS_B;
+import static dk.dma.ais.abnormal.util.VesselClass.ENGAGED_IN_TOWING;
+import static dk.dma.ais.abnormal.util.VesselClass.PASSENGER_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SPECIAL_CRAFT;
+import static dk.dma.ais.abnormal.util.VesselClass.TANKER_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.UNKNOWN_TYPE_OR_SIZE;
+import static dk.dma.ais.abnormal.util.VesselClass.VERY_LONG_VESSEL;
 import static dk.dma.enav.util.compass.CompassUtils.absoluteDirectionalDifference;
 
 /**
@@ -76,7 +78,16 @@ import static dk.dma.enav.util.compass.CompassUtils.absoluteDirectionalDifferenc
 public class DriftAnalysis extends Analysis {
     private static final Logger LOG = LoggerFactory.getLogger(DriftAnalysis.class);
 
-    private final AppStatisticsService statisticsService;
+    /** Vessel classes not analysed */
+    private static final int EXCLUDED_VESSEL_CLASSES = CLASS_B | UNKNOWN_TYPE_OR_SIZE | SPECIAL_CRAFT | ENGAGED_IN_TOWING;
+
+    /** Vessel classes analysed (unless excluded) */
+    private static final int INCLUDED_VESSEL_CLASSES = VERY_LONG_VESSEL | CARGO_VESSEL | TANKER_VESSEL | PASSENGER_VESSEL;
+
+    private final AnalysisCounter shipLengthTooSmallCounter;
+    private final AnalysisCounter analysesPerformedCounter;
+    private final AnalysisCounter eventsRaisedCounter;
+    private final AnalysisCounter observationListSizeCounter;
 
     /** Track must have sustained sog below this mark to a cause drift event */
     final float SPEED_HIGH_MARK;
@@ -96,14 +107,15 @@ public class DriftAnalysis extends Analysis {
     /** Min. length of vessel (in meters) for analysis to be performed */
     final int SHIP_LENGTH_MIN;
 
-    private TreeSet<Integer> tracksPossiblyDrifting = new TreeSet<>();
+    final ConcurrentIntSet tracksPossiblyDrifting = new ConcurrentIntSet();
+
+    private final ConcurrentIntMap<DriftRun> driftRuns = new ConcurrentIntMap<>();
 
     private int statCount = 0;
 
     @Inject
     public DriftAnalysis(Configuration configuration, AppStatisticsService statisticsService, EventEmittingTracker trackingService, EventRepository eventRepository) {
         super(eventRepository, trackingService, null);
-        this.statisticsService = statisticsService;
 
         setTrackPredictionTimeMax(configuration.getInteger(CONFKEY_ANALYSIS_DRIFT_PREDICTIONTIME_MAX, -1));
 
@@ -114,6 +126,11 @@ public class DriftAnalysis extends Analysis {
         OBSERVATION_DISTANCE_METERS = configuration.getFloat(CONFKEY_ANALYSIS_DRIFT_DISTANCE, 500f);
         SHIP_LENGTH_MIN = configuration.getInt(CONFKEY_ANALYSIS_DRIFT_SHIPLENGTH_MIN, 50);
 
+        this.shipLengthTooSmallCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "LOA < " + SHIP_LENGTH_MIN);
+        this.analysesPerformedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Analyses performed");
+        this.eventsRaisedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Events raised");
+        this.observationListSizeCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "# observation list");
+
         LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
     }
 
@@ -136,22 +153,27 @@ public class DriftAnalysis extends Analysis {
 
         Integer vesselLength = track.getVesselLength();
         if (vesselLength != null && vesselLength < SHIP_LENGTH_MIN) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "LOA < " + SHIP_LENGTH_MIN);
+            shipLengthTooSmallCounter.increment();
             return;
         }
 
-        if (  !isSpeedOverGroundAvailable(track.getSpeedOverGround())
-           || !isCourseOverGroundAvailable(track.getCourseOverGround())
-           || !isTrueHeadingAvailable(track.getTrueHeading())) {
+        /* Do not perform analysis for vessels with these characteristics: */
+        final int vesselClass = VesselClass.of(track);
+        if ((vesselClass & EXCLUDED_VESSEL_CLASSES) != 0) {
             return;
         }
 
-        /* Do not perform analysis for vessels with these characteristics: */
-        if (isClassB.test(track)
-            || isUnknownTypeOrSize.test(track)
-            || isSpecialCraft.test(track)
-            || isEngagedInTowing.test(track)
-        ) {
+        /* Perform analysis only for very long vessels and some other vessels: */
+        if ((vesselClass & INCLUDED_VESSEL_CLASSES) == 0) {
+            return;
+        }
+
+        /* Keep the drift run up to date - also with reports which are not analysed themselves */
+        getDriftRun(track);
+
+        if (  !isSpeedOverGroundAvailable(track.getSpeedOverGround())
+           || !isCourseOverGroundAvailable(track.getCourseOverGround())
+           || !isTrueHeadingAvailable(track.getTrueHeading())) {
             return;
         }
 
@@ -161,17 +183,14 @@ public class DriftAnalysis extends Analysis {
             return;
         }
 
-        /* Perform analysis only for very long vessels and some other vessels: */
-        if (isVeryLongVessel.test(track) || (isCargoVessel.test(track) || isTankerVessel.test(track) || isPassengerVessel.test(track))) {
-            performAnalysis(track);
-            updateApplicationStatistics();
-        }
+        performAnalysis(track);
+        updateApplicationStatistics();
     }
 
     private void updateApplicationStatistics() {
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Analyses performed");
+        analysesPerformedCounter.increment();
         if (statCount++ % 10000 == 0) {
-            statisticsService.setAnalysisStatistics(getAnalysisName(), "# observation list", tracksPossiblyDrifting.size());
+            observationListSizeCounter.set(tracksPossiblyDrifting.size());
         }
     }
 
@@ -179,9 +198,9 @@ public class DriftAnalysis extends Analysis {
     @Subscribe
     public void onTrackStale(TrackStaleEvent trackEvent) {
         final int mmsi = trackEvent.getTrack().getMmsi();
-        if (tracksPossiblyDrifting.contains(mmsi)) {
+        driftRuns.remove(mmsi);
+        if (tracksPossiblyDrifting.remove(mmsi)) {
             LOG.debug(nameOrMmsi(trackEvent.getTrack().getShipName(), mmsi) + " is now stale. Removed from observation list.");
-            tracksPossiblyDrifting.remove(mmsi);
             // TODO lowerEventIfRaised();
         }
     }
@@ -199,9 +218,8 @@ public class DriftAnalysis extends Analysis {
                 LOG.debug(nameOrMmsi(track.getShipName(), mmsi) + " exhibits sustained drift. Event raised or maintained.");
                 raiseOrMaintainAbnormalEvent(DriftEvent.class, track);
             }
-        } else if (tracksPossiblyDrifting.contains(mmsi)) {
+        } else if (tracksPossiblyDrifting.remove(mmsi)) {
             LOG.debug(nameOrMmsi(track.getShipName(), mmsi) + " appears not be drifting anymore. Removed from observation list.");
-            tracksPossiblyDrifting.remove(mmsi);
             lowerExistingAbnormalEventIfExists(DriftEvent.class, track);
         }
     }
@@ -229,10 +247,7 @@ public class DriftAnalysis extends Analysis {
 
     boolean isDriftPeriodLongEnough(Track track) {
         final long t1 = track.getNewestTrackingReport().getTimestamp() - OBSERVATION_PERIOD_MINUTES*60*1000;
-        return track.getTrackingReports()
-            .stream()
-            .filter(tr -> tr.getTimestamp() >= t1)
-            .allMatch(tr -> isDrifting(tr));
+        return getDriftRun(track).getTimeOfLastNonDriftingReport() < t1;
     }
 
     /**
@@ -242,33 +257,61 @@ public class DriftAnalysis extends Analysis {
      * @return
      */
     boolean isDriftDistanceLongEnough(Track track) {
-        TrackingReport driftStart, driftEnd;
-
-        // Find driftEnd
-        driftEnd = track.getNewestTrackingReport();
-        if (!isDrifting(driftEnd)) {
+        DriftRun driftRun = getDriftRun(track);
+        if (!driftRun.isDrifting()) {
             return false;
         }
 
-        // Find drift start
-        driftStart = driftEnd;
-        List<TrackingReport> trackingReports = track.getTrackingReports();
-        final int n = trackingReports.size();
-        for (int i = n - 1; i >= 0; i--) {
-            TrackingReport trackingReport = trackingReports.get(i);
-            if (isDrifting(trackingReport)) {
-                driftStart = trackingReport;
-            } else {
-                break;
-            }
+        // Drift start cannot be earlier than the oldest tracking report still held by the track
+        Position driftStart = driftRun.getPositionOfRunStart();
+        TrackingReport oldestTrackingReport = track.getOldestTrackingReport();
+        if (driftRun.getTimeOfRunStart() < oldestTrackingReport.getTimestamp()) {
+            driftStart = oldestTrackingReport.getPosition();
         }
+        Position driftEnd = driftRun.getPositionOfLastReport();
 
         // Calc distance drifted
-        final double distanceDriftedInMeters = driftStart.getPosition().rhumbLineDistanceTo(driftEnd.getPosition());
+        final double distanceDriftedInMeters = driftStart.rhumbLineDistanceTo(driftEnd);
 
         return distanceDriftedInMeters > OBSERVATION_DISTANCE_METERS;
     }
 
+    /**
+     * Get the drift run of the track, brought up to date with the track's newest tracking report.
+     *
+     * A new drift run is built from all the tracking reports held by the track; after that
+     * only the newest report is fed to it.
+     *
+     * @param track
+     * @return the drift run.
+     */
+    private DriftRun getDriftRun(Track track) {
+        final int mmsi = track.getMmsi();
+
+        DriftRun driftRun = driftRuns.get(mmsi);
+        if (driftRun == null || !driftRun.isFor(track)) {
+            DriftRun newDriftRun = new DriftRun(track);
+            DriftRun existingDriftRun = driftRun == null ? driftRuns.putIfAbsent(mmsi, newDriftRun) : driftRuns.put(mmsi, newDriftRun);
+            driftRun = existingDriftRun != null && existingDriftRun.isFor(track) ? existingDriftRun : newDriftRun;
+        }
+
+        // Events for the same track may be handled concurrently; a new run must be built completely before it is fed newer reports
+        synchronized (driftRun) {
+            TrackingReport newestTrackingReport = track.getNewestTrackingReport();
+            if (newestTrackingReport != null && newestTrackingReport.getTimestamp() > driftRun.getTimeOfLastReport()) {
+                if (driftRun.isEmpty()) {
+                    for (TrackingReport trackingReport : track.getTrackingReports()) {
+                        driftRun.update(trackingReport.getTimestamp(), trackingReport.getPosition(), isDrifting(trackingReport));
+                    }
+                } else {
+                    driftRun.update(newestTrackingReport.getTimestamp(), newestTrackingReport.getPosition(), isDrifting(newestTrackingReport));
+                }
+            }
+        }
+
+        return driftRun;
+    }
+
     @Override
     protected Event buildEvent(Track track, Track... otherTracks) {
         if (otherTracks != null && otherTracks.length > 0) {
@@ -327,7 +370,7 @@ public class DriftAnalysis extends Analysis {
 
         addPreviousTrackingPoints(event, track);
 
-        statisticsService.incAnalysisStatistics(this.getClass().getSimpleName(), "Events raised");
+        eventsRaisedCounter.increment();
 
         return event;
     }
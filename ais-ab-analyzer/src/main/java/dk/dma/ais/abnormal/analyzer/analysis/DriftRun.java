@@ -0,0 +1,139 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import dk.dma.ais.tracker.eventEmittingTracker.Track;
+import dk.dma.enav.model.geometry.Position;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Incremental per-track state maintained by the DriftAnalysis.
+ *
+ * The run is fed with the tracking reports of a track in time order - each marked as drifting or not - and
+ * keeps the start time and position of the current uninterrupted sequence of drifting reports (if any), and
+ * the time of the latest report which was not drifting.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+final class DriftRun {
+
+    private final Track track;
+
+    private long timeOfLastReport = Long.MIN_VALUE;
+    private Position positionOfLastReport;
+    private boolean drifting;
+
+    private long timeOfRunStart = Long.MIN_VALUE;
+    private Position positionOfRunStart;
+
+    private long timeOfLastNonDriftingReport = Long.MIN_VALUE;
+
+    DriftRun(Track track) {
+        this.track = track;
+    }
+
+    /**
+     * @return true if this run was created for the given track object.
+     */
+    boolean isFor(Track track) {
+        return this.track == track;
+    }
+
+    /**
+     * Feed a tracking report to the run. Reports which are not newer than the previously fed report are ignored.
+     *
+     * @param timestamp the time of the report.
+     * @param position the position of the report.
+     * @param isDrifting true if the report indicates drift.
+     */
+    synchronized void update(long timestamp, Position position, boolean isDrifting) {
+        if (timestamp <= timeOfLastReport) {
+            return;
+        }
+
+        if (isDrifting) {
+            if (!drifting) {
+                timeOfRunStart = timestamp;
+                positionOfRunStart = position;
+            }
+        } else {
+            timeOfLastNonDriftingReport = timestamp;
+        }
+
+        drifting = isDrifting;
+        timeOfLastReport = timestamp;
+        positionOfLastReport = position;
+    }
+
+    /**
+     * @return true if no reports have been fed to this run yet.
+     */
+    synchronized boolean isEmpty() {
+        return timeOfLastReport == Long.MIN_VALUE;
+    }
+
+    synchronized long getTimeOfLastReport() {
+        return timeOfLastReport;
+    }
+
+    /**
+     * @return true if the most recent report indicated drift.
+     */
+    synchronized boolean isDrifting() {
+        return drifting;
+    }
+
+    /**
+     * @return the time of the latest report which did not indicate drift; or Long.MIN_VALUE if none.
+     */
+    synchronized long getTimeOfLastNonDriftingReport() {
+        return timeOfLastNonDriftingReport;
+    }
+
+    /**
+     * @return the time of the first report in the current drift run. Only meaningful if isDrifting().
+     */
+    synchronized long getTimeOfRunStart() {
+        return timeOfRunStart;
+    }
+
+    /**
+     * @return the position of the first report in the current drift run. Only meaningful if isDrifting().
+     */
+    synchronized Position getPositionOfRunStart() {
+        return positionOfRunStart;
+    }
+
+    /**
+     * @return the position of the most recent report.
+     */
+    synchronized Position getPositionOfLastReport() {
+        return positionOfLastReport;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DriftRun{" +
+                "mmsi=" + track.getMmsi() +
+                ", timeOfLastReport=" + timeOfLastReport +
+                ", drifting=" + drifting +
+                ", timeOfRunStart=" + timeOfRunStart +
+                ", timeOfLastNonDriftingReport=" + timeOfLastNonDriftingReport +
+                '}';
+    }
+}
@@ -19,7 +19,10 @@ package dk.dma.ais.abnormal.analyzer.analysis;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import dk.dma.ais.abnormal.analyzer.AnalysisCounter;
 import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
+import dk.dma.ais.abnormal.analyzer.geometry.CartesianEllipse;
+import dk.dma.ais.abnormal.analyzer.geometry.LocalProjection;
 import dk.dma.ais.abnormal.event.db.EventRepository;
 import dk.dma.ais.abnormal.event.db.domain.Event;
 import dk.dma.ais.tracker.eventEmittingTracker.EventEmittingTracker;
@@ -28,8 +31,6 @@ import dk.dma.enav.model.geometry.BoundingBox;
 import dk.dma.enav.model.geometry.CoordinateSystem;
 import dk.dma.enav.model.geometry.Ellipse;
 import dk.dma.enav.model.geometry.Position;
-import dk.dma.enav.util.CoordinateConverter;
-import dk.dma.enav.util.geometry.Point;
 import net.jcip.annotations.NotThreadSafe;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.csv.CSVFormat;
@@ -85,7 +86,7 @@ import static org.apache.commons.lang.StringUtils.isBlank;
 public class FreeFlowAnalysis extends PeriodicAnalysis {
     private static final Logger LOG = LoggerFactory.getLogger(FreeFlowAnalysis.class);
 
-    private final AppStatisticsService statisticsService;
+    private final AnalysisCounter analysesPerformedCounter;
     private BoundingBox areaToBeAnalysed = null;
 
     /** Major axis of ellipse is xL times vessel's length-over-all */
@@ -106,7 +107,6 @@ public class FreeFlowAnalysis extends PeriodicAnalysis {
     @Inject
     public FreeFlowAnalysis(Configuration configuration, AppStatisticsService statisticsService, EventEmittingTracker trackingService, EventRepository eventRepository) {
         super(eventRepository, trackingService, null);
-        this.statisticsService = statisticsService;
 
         this.xL = configuration.getInt(CONFKEY_ANALYSIS_FREEFLOW_XL, 8);
         this.xB = configuration.getInt(CONFKEY_ANALYSIS_FREEFLOW_XB, 8);
@@ -134,6 +134,8 @@ public class FreeFlowAnalysis extends PeriodicAnalysis {
         setTrackPredictionTimeMax(configuration.getInteger(CONFKEY_ANALYSIS_FREEFLOW_PREDICTIONTIME_MAX, -1));
         setAnalysisPeriodMillis(configuration.getInt(CONFKEY_ANALYSIS_FREEFLOW_RUN_PERIOD, 30000) * 1000);
 
+        this.analysesPerformedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Analyses performed");
+
         LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
     }
 
@@ -165,7 +167,7 @@ public class FreeFlowAnalysis extends PeriodicAnalysis {
 
         analyseFreeFlow(allRelevantTracksPredictedToNow);
 
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Analyses performed");
+        analysesPerformedCounter.increment();
         final long systemTimeNanosAfterAnalysis = nanoTime();
         LOG.debug(getAnalysisName() + " of " + allTracks.size() + " tracks completed in " + (systemTimeNanosAfterAnalysis - systemTimeNanosBeforeAnalysis) + " nsecs.");
     }
@@ -211,9 +213,12 @@ public class FreeFlowAnalysis extends PeriodicAnalysis {
 
             LOG.debug("ellipse: " + ellipse);
 
+            final LocalProjection projection = LocalProjection.anchoredAt(ellipse.getGeodeticReference());
+            final CartesianEllipse cartesianEllipse = CartesianEllipse.of(ellipse);
+
             List<Track> tracksSailingSameDirectionAndContainedInEllipse = tracksSailingSameDirection
                 .stream()
-                .filter(t -> ellipse.contains(centerOfVessel(t.getPosition(), t.getTrueHeading(), t.getShipDimensionStern(), t.getShipDimensionBow(), t.getShipDimensionPort(), t.getShipDimensionStarboard())))
+                .filter(t -> isCenterOfVesselInside(cartesianEllipse, projection, t.getPosition(), t.getTrueHeading(), t.getShipDimensionStern(), t.getShipDimensionBow(), t.getShipDimensionPort(), t.getShipDimensionStarboard()))
                 .collect(Collectors.toList());
 
             if (tracksSailingSameDirectionAndContainedInEllipse.size() > 0) {
@@ -300,28 +305,46 @@ public class FreeFlowAnalysis extends PeriodicAnalysis {
      * @return
      */
     static Position centerOfVessel(Position aisPosition, float hdg, int dimStern, int dimBow, int dimPort, int dimStarboard) {
-        // Compute direction of half axis alpha
-        final double thetaDeg = compass2cartesian(hdg);
-
         // Transform latitude/longitude to cartesian coordinates
-        final Position geodeticReference = aisPosition;
-        final CoordinateConverter coordinateConverter = new CoordinateConverter(geodeticReference.getLongitude(), geodeticReference.getLatitude());
-        final double trackLatitude = aisPosition.getLatitude();
-        final double trackLongitude = aisPosition.getLongitude();
-        final double x = coordinateConverter.lon2x(trackLongitude, trackLatitude);
-        final double y = coordinateConverter.lat2y(trackLongitude, trackLatitude);
+        final LocalProjection projection = LocalProjection.anchoredAt(aisPosition);
+        final double xAis = projection.x(aisPosition);
+        final double yAis = projection.y(aisPosition);
 
-        // Cartesion point of AIS position
-        final Point pAis = new Point(x, y);
+        // Compute cartesian center of vessel and rotate to comply with hdg
+        final double thetaDeg = compass2cartesian(hdg);
+        final double xc = xAis + (dimBow + dimStern)/2 - dimStern;
+        final double yc = yAis + (dimPort + dimStarboard)/2 - dimStarboard;
+        final double xcr = LocalProjection.rotateX(xc, yc, xAis, yAis, thetaDeg);
+        final double ycr = LocalProjection.rotateY(xc, yc, xAis, yAis, thetaDeg);
+
+        // Convert back to geodesic coordinates
+        return projection.position(xcr, ycr);
+    }
 
-        // Compute cartesian center of vessel
-        final Point pc = new Point((dimBow + dimStern)/2 - dimStern, (dimPort+dimStarboard)/2 - dimStarboard);
+    /**
+     * Determine whether the vessel's center point is inside the ellipse - without converting the center
+     * point back to geodesic coordinates.
+     *
+     * The center point is computed in the ellipse's projection rather than in a projection anchored at
+     * the vessel's own AIS position (as centerOfVessel does). For vessels within a few nautical miles of the
+     * projection's reference, the two differ by much less than a meter.
+     *
+     * @param ellipse the ellipse in the projection's cartesian coordinates.
+     * @param projection the projection of the ellipse.
+     * @return true if the vessel's center is inside or on the ellipse.
+     */
+    static boolean isCenterOfVesselInside(CartesianEllipse ellipse, LocalProjection projection, Position aisPosition, float hdg, int dimStern, int dimBow, int dimPort, int dimStarboard) {
+        final double xAis = projection.x(aisPosition);
+        final double yAis = projection.y(aisPosition);
 
-        // Rotate to comply with hdg
-        final Point pcr = pc.rotate(pAis, thetaDeg);
+        final double thetaDeg = compass2cartesian(hdg);
+        final double xc = xAis + (dimBow + dimStern)/2 - dimStern;
+        final double yc = yAis + (dimPort + dimStarboard)/2 - dimStarboard;
 
-        // Convert back to geodesic coordinates
-        return Position.create(coordinateConverter.y2Lat(pcr.getX(), pcr.getY()), coordinateConverter.x2Lon(pcr.getX(), pcr.getY()));
+        return ellipse.contains(
+            LocalProjection.rotateX(xc, yc, xAis, yAis, thetaDeg),
+            LocalProjection.rotateY(xc, yc, xAis, yAis, thetaDeg)
+        );
     }
 
     @Override
@@ -0,0 +1,127 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import dk.dma.ais.abnormal.analyzer.AnalysisCounter;
+import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
+import dk.dma.ais.abnormal.application.statistics.LatencyHistogram;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Latency and allocation tracing of a single handler method of an analysis.
+ *
+ * The HandlerTracingInterceptor brackets a sample of the calls to the handler with enter() and exit(). Each
+ * bracketed call is timed into a latency histogram named "analysis.&lt;analysis name&gt;.&lt;handler name&gt;".
+ * Where the JVM supports it, the bytes allocated by the call are counted too. Calls slower than the configured
+ * threshold are logged together with the MMSI being processed.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class HandlerProbe {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HandlerProbe.class);
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION_MX_BEAN = allocationMXBean();
+
+    private final String analysisName;
+    private final String handlerName;
+    private final long slowCallThresholdNanos;
+
+    private final LatencyHistogram latency;
+    private final AnalysisCounter allocatedBytes;
+    private final AnalysisCounter sampledCalls;
+
+    private final ThreadLocal<long[]> allocatedBytesAtEnter = ThreadLocal.withInitial(() -> new long[1]);
+
+    HandlerProbe(AppStatisticsService statisticsService, String analysisName, String handlerName, long slowCallThresholdNanos) {
+        this.analysisName = analysisName;
+        this.handlerName = handlerName;
+        this.slowCallThresholdNanos = slowCallThresholdNanos;
+        this.latency = statisticsService.getLatencyHistogram("analysis." + analysisName + "." + handlerName);
+        this.allocatedBytes = ALLOCATION_MX_BEAN == null ? null : statisticsService.getAnalysisCounter(analysisName, handlerName + " bytes allocated (sampled)");
+        this.sampledCalls = statisticsService.getAnalysisCounter(analysisName, handlerName + " calls (sampled)");
+    }
+
+    public String getHandlerName() {
+        return handlerName;
+    }
+
+    /**
+     * Mark the start of a handler invocation.
+     *
+     * @return a token to pass to exit().
+     */
+    public long enter() {
+        if (allocatedBytes != null) {
+            allocatedBytesAtEnter.get()[0] = ALLOCATION_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Mark the end of a handler invocation.
+     *
+     * @param startToken the value returned by the matching call to enter().
+     * @param mmsi the MMSI being processed by the handler, or -1 if the handler is not specific to one vessel.
+     */
+    public void exit(long startToken, int mmsi) {
+        final long elapsedNanos = System.nanoTime() - startToken;
+
+        latency.record(elapsedNanos);
+        sampledCalls.increment();
+        if (allocatedBytes != null) {
+            allocatedBytes.add(ALLOCATION_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBytesAtEnter.get()[0]);
+        }
+
+        if (elapsedNanos > slowCallThresholdNanos) {
+            if (mmsi < 0) {
+                LOG.warn("Slow call: " + analysisName + "." + handlerName + " took " + elapsedNanos / 1000 + " usecs.");
+            } else {
+                LOG.warn("Slow call: " + analysisName + "." + handlerName + " took " + elapsedNanos / 1000 + " usecs for mmsi " + mmsi + ".");
+            }
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationMXBean() {
+        try {
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+                if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                    return bean;
+                }
+            }
+        } catch (LinkageError | RuntimeException e) {
+            LOG.debug("Thread allocation tracking not available: " + e.getMessage());
+        }
+        LOG.info("Thread allocation tracking not supported by this JVM; only latencies will be traced.");
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "HandlerProbe{" +
+                "analysisName='" + analysisName + '\'' +
+                ", handlerName='" + handlerName + '\'' +
+                '}';
+    }
+}
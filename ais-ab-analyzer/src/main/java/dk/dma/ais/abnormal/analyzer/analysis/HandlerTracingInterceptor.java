@@ -0,0 +1,111 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import com.google.common.eventbus.Subscribe;
+import com.google.inject.Provider;
+import com.google.inject.matcher.AbstractMatcher;
+import com.google.inject.matcher.Matcher;
+import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
+import dk.dma.ais.abnormal.analyzer.behaviour.events.AbnormalAbstractEvent;
+import dk.dma.ais.tracker.eventEmittingTracker.events.TrackEvent;
+import net.jcip.annotations.ThreadSafe;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.google.inject.matcher.Matchers.annotatedWith;
+
+/**
+ * Guice method interceptor which traces a random sample of the calls to the handler methods of the analyses
+ * with a HandlerProbe per analysis and handler.
+ *
+ * The interceptor is bound to the methods matched by tracedMethods() of all subclasses of Analysis, and only
+ * when tracing is enabled in the configuration - so untraced analyses are not intercepted at all.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class HandlerTracingInterceptor implements MethodInterceptor {
+
+    private final Provider<? extends AppStatisticsService> statisticsService;
+    private final int sampleRate;
+    private final long slowCallThresholdNanos;
+
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, HandlerProbe>> probes = new ConcurrentHashMap<>();
+
+    /**
+     * @param statisticsService the service in which to publish the traced latencies.
+     * @param sampleRate trace on average one in this many calls.
+     * @param slowCallThresholdNanos log traced calls slower than this.
+     */
+    public HandlerTracingInterceptor(Provider<? extends AppStatisticsService> statisticsService, int sampleRate, long slowCallThresholdNanos) {
+        this.statisticsService = statisticsService;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.slowCallThresholdNanos = slowCallThresholdNanos;
+    }
+
+    /**
+     * @return a matcher of the event handlers (@Subscribe) of the analyses, and the periodic performAnalysis().
+     */
+    public static Matcher<Method> tracedMethods() {
+        return annotatedWith(Subscribe.class).or(new AbstractMatcher<Method>() {
+            @Override
+            public boolean matches(Method method) {
+                return "performAnalysis".equals(method.getName()) && method.getParameterCount() == 0;
+            }
+        });
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return invocation.proceed();
+        }
+
+        final HandlerProbe probe = probeFor(invocation.getThis().getClass(), invocation.getMethod());
+        final long probeStart = probe.enter();
+        try {
+            return invocation.proceed();
+        } finally {
+            probe.exit(probeStart, mmsiOf(invocation.getArguments()));
+        }
+    }
+
+    private HandlerProbe probeFor(Class<?> analysisClass, Method method) {
+        return probes
+            .computeIfAbsent(analysisClass, c -> new ConcurrentHashMap<>())
+            .computeIfAbsent(method, m -> new HandlerProbe(statisticsService.get(), Analysis.analysisNameOf(analysisClass), m.getName(), slowCallThresholdNanos));
+    }
+
+    /** @return the MMSI of the track an event handler is called for; -1 if not specific to one vessel. */
+    static int mmsiOf(Object[] arguments) {
+        if (arguments.length == 1) {
+            Object event = arguments[0];
+            if (event instanceof TrackEvent) {
+                return ((TrackEvent) event).getTrack().getMmsi();
+            } else if (event instanceof AbnormalAbstractEvent) {
+                return ((AbnormalAbstractEvent) event).getTrack().getMmsi();
+            }
+        }
+        return -1;
+    }
+}
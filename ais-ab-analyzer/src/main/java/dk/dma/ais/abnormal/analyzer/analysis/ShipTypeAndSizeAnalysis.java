@@ -19,6 +19,7 @@ package dk.dma.ais.abnormal.analyzer.analysis;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
+import dk.dma.ais.abnormal.analyzer.AnalysisCounter;
 import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
 import dk.dma.ais.abnormal.analyzer.behaviour.BehaviourManager;
 import dk.dma.ais.abnormal.analyzer.behaviour.EventCertainty;
@@ -30,9 +31,8 @@ import dk.dma.ais.abnormal.event.db.domain.Event;
 import dk.dma.ais.abnormal.event.db.domain.ShipSizeOrTypeEvent;
 import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
 import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
-import dk.dma.ais.abnormal.stat.db.data.ShipTypeAndSizeStatisticData;
-import dk.dma.ais.abnormal.stat.db.data.StatisticData;
 import dk.dma.ais.abnormal.util.Categorizer;
+import dk.dma.ais.abnormal.util.VesselClass;
 import dk.dma.ais.tracker.eventEmittingTracker.EventEmittingTracker;
 import dk.dma.ais.tracker.eventEmittingTracker.InterpolatedTrackingReport;
 import dk.dma.ais.tracker.eventEmittingTracker.Track;
@@ -51,12 +51,12 @@ import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_TYPESIZE_SHIPLENGTH_MIN;
 import static dk.dma.ais.abnormal.event.db.domain.builders.ShipSizeOrTypeEventBuilder.ShipSizeOrTypeEvent;
 import static dk.dma.ais.abnormal.util.AisDataHelper.nameOrMmsi;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isClassB;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isEngagedInTowing;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isFishingVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isSmallVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isSpecialCraft;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isUnknownTypeOrSize;
+import static dk.dma.ais.abnormal.util.VesselClass.CLASS_B;
+import static dk.dma.ais.abnormal.util.VesselClass.ENGAGED_IN_TOWING;
+import static dk.dma.ais.abnormal.util.VesselClass.FISHING_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SMALL_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SPECIAL_CRAFT;
+import static dk.dma.ais.abnormal.util.VesselClass.UNKNOWN_TYPE_OR_SIZE;
 
 /**
  * This analysis manages events where the presence of a vessel of the given type
@@ -69,22 +69,42 @@ import static dk.dma.ais.abnormal.util.TrackPredicates.isUnknownTypeOrSize;
 public class ShipTypeAndSizeAnalysis extends StatisticBasedAnalysis {
     private static final Logger LOG = LoggerFactory.getLogger(ShipTypeAndSizeAnalysis.class);
 
-    private final AppStatisticsService statisticsService;
+    /** Vessel classes not analysed */
+    private static final int EXCLUDED_VESSEL_CLASSES = CLASS_B | UNKNOWN_TYPE_OR_SIZE | FISHING_VESSEL | SMALL_VESSEL | SPECIAL_CRAFT | ENGAGED_IN_TOWING;
+
+    private final AnalysisCounter eventsReceivedCounter;
+    private final AnalysisCounter unknownMmsiCounter;
+    private final AnalysisCounter unknownShipTypeCounter;
+    private final AnalysisCounter unknownShipLengthCounter;
+    private final AnalysisCounter shipLengthTooSmallCounter;
+    private final AnalysisCounter analysesPerformedCounter;
+    private final AnalysisCounter eventsRaisedCounter;
 
     private final int TOTAL_SHIP_COUNT_THRESHOLD;
     private final float PD;
     private final int SHIP_LENGTH_MIN;
 
+    private final AbnormalityTable abnormalityTable;
+
     @Inject
     public ShipTypeAndSizeAnalysis(Configuration configuration, AppStatisticsService statisticsService, StatisticDataRepository statisticsRepository, EventEmittingTracker trackingService, EventRepository eventRepository, BehaviourManager behaviourManager) {
         super(eventRepository, statisticsRepository, trackingService, behaviourManager);
-        this.statisticsService = statisticsService;
 
         setTrackPredictionTimeMax(configuration.getInteger(CONFKEY_ANALYSIS_TYPESIZE_PREDICTIONTIME_MAX, -1));
 
         TOTAL_SHIP_COUNT_THRESHOLD = configuration.getInt(CONFKEY_ANALYSIS_TYPESIZE_CELL_SHIPCOUNT_MIN, 1000);
         PD = configuration.getFloat(CONFKEY_ANALYSIS_TYPESIZE_PD, 0.001f);
         SHIP_LENGTH_MIN = configuration.getInt(CONFKEY_ANALYSIS_TYPESIZE_SHIPLENGTH_MIN, 50);
+        abnormalityTable = new AbnormalityTable(statisticsRepository, "ShipTypeAndSizeStatistic", 1, TOTAL_SHIP_COUNT_THRESHOLD, PD, false);
+
+        this.eventsReceivedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Events received");
+        this.unknownMmsiCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown mmsi");
+        this.unknownShipTypeCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown ship type");
+        this.unknownShipLengthCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown ship length");
+        this.shipLengthTooSmallCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "LOA < " + SHIP_LENGTH_MIN);
+        this.analysesPerformedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Analyses performed");
+        this.eventsRaisedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Events raised");
+
         LOG.info(getAnalysisName() + " created (" + this + ").");
     }
 
@@ -100,11 +120,11 @@ public class ShipTypeAndSizeAnalysis extends StatisticBasedAnalysis {
     @AllowConcurrentEvents
     @Subscribe
     public void onCellIdChanged(CellChangedEvent trackEvent) {
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Events received");
+        eventsReceivedCounter.increment();
 
         Track track = trackEvent.getTrack();
 
-        if (isClassB.test(track) || isUnknownTypeOrSize.test(track) || isFishingVessel.test(track) || isSmallVessel.test(track) || isSpecialCraft.test(track) || isEngagedInTowing.test(track)) {
+        if ((VesselClass.of(track) & EXCLUDED_VESSEL_CLASSES) != 0) {
             return;
         }
 
@@ -114,34 +134,32 @@ public class ShipTypeAndSizeAnalysis extends StatisticBasedAnalysis {
             return;
         }
 
-        Long cellId = (Long) track.getProperty(Track.CELL_ID);
-        Integer shipType = track.getShipType();
-        Integer shipLength = track.getVesselLength();
+        CellContext cellContext = CellContext.of(trackEvent);
+        Long cellId = cellContext.getCellId();
+        Integer shipType = cellContext.getShipType();
+        Integer shipLength = cellContext.getShipLength();
 
         if (cellId == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown mmsi");
+            unknownMmsiCounter.increment();
             return;
         }
 
         if (shipType == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown ship type");
+            unknownShipTypeCounter.increment();
             return;
         }
 
         if (shipLength == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown ship length");
+            unknownShipLengthCounter.increment();
             return;
         }
 
         if (shipLength < SHIP_LENGTH_MIN) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "LOA < " + SHIP_LENGTH_MIN);
+            shipLengthTooSmallCounter.increment();
             return;
         }
 
-        int shipTypeKey = Categorizer.mapShipTypeToCategory(shipType) - 1;
-        int shipLengthKey = Categorizer.mapShipLengthToCategory(shipLength) - 1;
-
-        if (isAbnormalCellForShipTypeAndSize(cellId, shipTypeKey, shipLengthKey)) {
+        if (isAbnormalCellForShipTypeAndSize(cellId, cellContext.getShipTypeKey(), cellContext.getShipLengthKey())) {
             getBehaviourManager().abnormalBehaviourDetected(ShipSizeOrTypeEvent.class, track);
         } else {
             getBehaviourManager().normalBehaviourDetected(ShipSizeOrTypeEvent.class, track);
@@ -188,36 +206,18 @@ public class ShipTypeAndSizeAnalysis extends StatisticBasedAnalysis {
      * @return true if the presence of size/type in this cell is abnormal. False otherwise.
      */
     boolean isAbnormalCellForShipTypeAndSize(Long cellId, int shipTypeKey, int shipSizeKey) {
-        float pd = 1.0f;
-
-        StatisticData shipSizeAndTypeData = getStatisticDataRepository().getStatisticData("ShipTypeAndSizeStatistic", cellId);
-
-        if (shipSizeAndTypeData instanceof ShipTypeAndSizeStatisticData) {
-            Integer totalCount  = ((ShipTypeAndSizeStatisticData) shipSizeAndTypeData).getSumFor("shipCount");
-            if (totalCount > TOTAL_SHIP_COUNT_THRESHOLD) {
-                Integer shipCount = ((ShipTypeAndSizeStatisticData) shipSizeAndTypeData).getValue(shipTypeKey, shipSizeKey, ShipTypeAndSizeStatisticData.STAT_SHIP_COUNT);
-                if (shipCount == null) {
-                    shipCount = 0;
-                }
-                pd = (float) shipCount / (float) totalCount;
-                LOG.debug("cellId=" + cellId + ", shipType=" + shipTypeKey + ", shipSize=" + shipSizeKey + ", shipCount=" + shipCount + ", totalCount=" + totalCount + ", pd=" + pd);
+        boolean isAbnormal = abnormalityTable.isAbnormal(cellId, shipTypeKey, shipSizeKey, 0);
+        if (LOG.isDebugEnabled()) {
+            if (isAbnormal) {
+                LOG.debug("Abnormal event detected (cellId=" + cellId + ", shipType=" + shipTypeKey + ", shipSize=" + shipSizeKey + ").");
             } else {
-                LOG.debug("totalCount of " + totalCount + " is not enough statistical data for cell " + cellId);
+                LOG.debug("Normal or inconclusive event detected.");
             }
         }
 
-        LOG.debug("pd = " + pd);
-
-        boolean isAbnormalCellForShipTypeAndSize = pd < PD;
-        if (isAbnormalCellForShipTypeAndSize) {
-            LOG.debug("Abnormal event detected.");
-        } else {
-            LOG.debug("Normal or inconclusive event detected.");
-        }
-
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Analyses performed");
+        analysesPerformedCounter.increment();
 
-        return isAbnormalCellForShipTypeAndSize;
+        return isAbnormal;
     }
 
     @Override
@@ -292,7 +292,7 @@ public class ShipTypeAndSizeAnalysis extends StatisticBasedAnalysis {
 
         addPreviousTrackingPoints(event, track);
 
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Events raised");
+        eventsRaisedCounter.increment();
 
         return event;
     }
@@ -19,6 +19,7 @@ package dk.dma.ais.abnormal.analyzer.analysis;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
+import dk.dma.ais.abnormal.analyzer.AnalysisCounter;
 import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
 import dk.dma.ais.abnormal.analyzer.behaviour.BehaviourManager;
 import dk.dma.ais.abnormal.analyzer.behaviour.EventCertainty;
@@ -30,9 +31,8 @@ import dk.dma.ais.abnormal.event.db.domain.Event;
 import dk.dma.ais.abnormal.event.db.domain.SpeedOverGroundEvent;
 import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
 import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
-import dk.dma.ais.abnormal.stat.db.data.SpeedOverGroundStatisticData;
-import dk.dma.ais.abnormal.stat.db.data.StatisticData;
 import dk.dma.ais.abnormal.util.Categorizer;
+import dk.dma.ais.abnormal.util.VesselClass;
 import dk.dma.ais.tracker.eventEmittingTracker.EventEmittingTracker;
 import dk.dma.ais.tracker.eventEmittingTracker.InterpolatedTrackingReport;
 import dk.dma.ais.tracker.eventEmittingTracker.Track;
@@ -52,12 +52,12 @@ import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_SOG_USE_AGGREGATED_STATS;
 import static dk.dma.ais.abnormal.event.db.domain.builders.SpeedOverGroundEventBuilder.SpeedOverGroundEvent;
 import static dk.dma.ais.abnormal.util.AisDataHelper.nameOrMmsi;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isClassB;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isEngagedInTowing;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isFishingVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isSmallVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isSpecialCraft;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isUnknownTypeOrSize;
+import static dk.dma.ais.abnormal.util.VesselClass.CLASS_B;
+import static dk.dma.ais.abnormal.util.VesselClass.ENGAGED_IN_TOWING;
+import static dk.dma.ais.abnormal.util.VesselClass.FISHING_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SMALL_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SPECIAL_CRAFT;
+import static dk.dma.ais.abnormal.util.VesselClass.UNKNOWN_TYPE_OR_SIZE;
 
 /**
  * This analysis manages events where a vessel has an "abnormal" speed over ground
@@ -69,17 +69,28 @@ import static dk.dma.ais.abnormal.util.TrackPredicates.isUnknownTypeOrSize;
 public class SpeedOverGroundAnalysis extends StatisticBasedAnalysis {
     private static final Logger LOG = LoggerFactory.getLogger(SpeedOverGroundAnalysis.class);
 
-    private final AppStatisticsService statisticsService;
+    /** Vessel classes not analysed */
+    private static final int EXCLUDED_VESSEL_CLASSES = CLASS_B | UNKNOWN_TYPE_OR_SIZE | FISHING_VESSEL | SMALL_VESSEL | SPECIAL_CRAFT | ENGAGED_IN_TOWING;
+
+    private final AnalysisCounter eventsReceivedCounter;
+    private final AnalysisCounter unknownMmsiCounter;
+    private final AnalysisCounter unknownShipTypeCounter;
+    private final AnalysisCounter unknownShipLengthCounter;
+    private final AnalysisCounter unknownCourseOverGroundCounter;
+    private final AnalysisCounter shipLengthTooSmallCounter;
+    private final AnalysisCounter analysesPerformedCounter;
+    private final AnalysisCounter eventsRaisedCounter;
 
     private final int TOTAL_SHIP_COUNT_THRESHOLD;
     private final float PD;
     private final int SHIP_LENGTH_MIN;
     private final boolean USE_AGGREGATED_STATS;
 
+    private final AbnormalityTable abnormalityTable;
+
     @Inject
     public SpeedOverGroundAnalysis(Configuration configuration, AppStatisticsService statisticsService, StatisticDataRepository statisticsRepository, EventEmittingTracker trackingService, EventRepository eventRepository, BehaviourManager behaviourManager) {
         super(eventRepository, statisticsRepository, trackingService, behaviourManager);
-        this.statisticsService = statisticsService;
 
         setTrackPredictionTimeMax(configuration.getInteger(CONFKEY_ANALYSIS_SOG_PREDICTIONTIME_MAX, -1));
 
@@ -87,6 +98,16 @@ public class SpeedOverGroundAnalysis extends StatisticBasedAnalysis {
         PD = configuration.getFloat(CONFKEY_ANALYSIS_SOG_PD, 0.001f);
         SHIP_LENGTH_MIN = configuration.getInt(CONFKEY_ANALYSIS_SOG_SHIPLENGTH_MIN, 50);
         USE_AGGREGATED_STATS = configuration.getBoolean(CONFKEY_ANALYSIS_SOG_USE_AGGREGATED_STATS, false);
+        abnormalityTable = new AbnormalityTable(statisticsRepository, "SpeedOverGroundStatistic", Categorizer.NUM_SPEED_OVER_GROUND_CATEGORIES, TOTAL_SHIP_COUNT_THRESHOLD, PD, USE_AGGREGATED_STATS);
+
+        this.eventsReceivedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Events received");
+        this.unknownMmsiCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown mmsi");
+        this.unknownShipTypeCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown ship type");
+        this.unknownShipLengthCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown ship length");
+        this.unknownCourseOverGroundCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Unknown course over ground");
+        this.shipLengthTooSmallCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "LOA < " + SHIP_LENGTH_MIN);
+        this.analysesPerformedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Analyses performed");
+        this.eventsRaisedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Events raised");
 
         LOG.info(getAnalysisName() + " created (" + this + ").");
     }
@@ -104,11 +125,11 @@ public class SpeedOverGroundAnalysis extends StatisticBasedAnalysis {
     @AllowConcurrentEvents
     @Subscribe
     public void onCellIdChanged(CellChangedEvent trackEvent) {
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Events received");
+        eventsReceivedCounter.increment();
 
         Track track = trackEvent.getTrack();
 
-        if (isClassB.test(track) || isUnknownTypeOrSize.test(track) || isFishingVessel.test(track) || isSmallVessel.test(track) || isSpecialCraft.test(track) || isEngagedInTowing.test(track)) {
+        if ((VesselClass.of(track) & EXCLUDED_VESSEL_CLASSES) != 0) {
             return;
         }
 
@@ -118,41 +139,38 @@ public class SpeedOverGroundAnalysis extends StatisticBasedAnalysis {
             return;
         }
 
-        Long cellId = (Long) track.getProperty(Track.CELL_ID);
-        Integer shipType = track.getShipType();
-        Integer shipLength = track.getVesselLength();
-        Float speedOverGround = track.getSpeedOverGround();
+        CellContext cellContext = CellContext.of(trackEvent);
+        Long cellId = cellContext.getCellId();
+        Integer shipType = cellContext.getShipType();
+        Integer shipLength = cellContext.getShipLength();
+        Float speedOverGround = cellContext.getSpeedOverGround();
 
         if (cellId == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown mmsi");
+            unknownMmsiCounter.increment();
             return;
         }
 
         if (shipType == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown ship type");
+            unknownShipTypeCounter.increment();
             return;
         }
 
         if (shipLength == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown ship length");
+            unknownShipLengthCounter.increment();
             return;
         }
 
         if (speedOverGround == null) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "Unknown course over ground");
+            unknownCourseOverGroundCounter.increment();
             return;
         }
 
         if (shipLength < SHIP_LENGTH_MIN) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "LOA < " + SHIP_LENGTH_MIN);
+            shipLengthTooSmallCounter.increment();
             return;
         }
 
-        int shipTypeKey = Categorizer.mapShipTypeToCategory(shipType) - 1;
-        int shipLengthKey = Categorizer.mapShipLengthToCategory(shipLength) - 1;
-        int speedOverGroundKey = Categorizer.mapSpeedOverGroundToCategory(speedOverGround) - 1;
-
-        if (isAbnormalSpeedOverGround(cellId, shipTypeKey, shipLengthKey, speedOverGroundKey)) {
+        if (isAbnormalSpeedOverGround(cellId, cellContext.getShipTypeKey(), cellContext.getShipLengthKey(), cellContext.getSpeedOverGroundKey())) {
             getBehaviourManager().abnormalBehaviourDetected(SpeedOverGroundEvent.class, track);
         } else {
             getBehaviourManager().normalBehaviourDetected(SpeedOverGroundEvent.class, track);
@@ -199,42 +217,18 @@ public class SpeedOverGroundAnalysis extends StatisticBasedAnalysis {
      * @return true if the presence of size/type with this sog in this cell is abnormal. False otherwise.
      */
     boolean isAbnormalSpeedOverGround(Long cellId, int shipTypeKey, int shipSizeKey, int speedOverGroundKey) {
-        float pd = 1.0f;
-
-        StatisticData speedOverGroundStatisticData = getStatisticDataRepository().getStatisticData("SpeedOverGroundStatistic", cellId);
-
-        if (speedOverGroundStatisticData instanceof SpeedOverGroundStatisticData) {
-            Integer totalCount  = ((SpeedOverGroundStatisticData) speedOverGroundStatisticData).getSumFor(SpeedOverGroundStatisticData.STAT_SHIP_COUNT);
-            if (totalCount > TOTAL_SHIP_COUNT_THRESHOLD) {
-                int shipCount = calculateShipCount((SpeedOverGroundStatisticData) speedOverGroundStatisticData, shipTypeKey, shipSizeKey, speedOverGroundKey);
-                pd = (float) shipCount / (float) totalCount;
-                LOG.debug("cellId=" + cellId + ", shipType=" + shipTypeKey + ", shipSize=" + shipSizeKey + ", sog=" + speedOverGroundKey + ", shipCount=" + shipCount + ", totalCount=" + totalCount + ", pd=" + pd);
+        boolean isAbnormal = abnormalityTable.isAbnormal(cellId, shipTypeKey, shipSizeKey, speedOverGroundKey);
+        if (LOG.isDebugEnabled()) {
+            if (isAbnormal) {
+                LOG.debug("Abnormal event detected (cellId=" + cellId + ", shipType=" + shipTypeKey + ", shipSize=" + shipSizeKey + ", sog=" + speedOverGroundKey + ").");
             } else {
-                LOG.debug("totalCount of " + totalCount + " is not enough statistical data for cell " + cellId);
+                LOG.debug("Normal or inconclusive event detected.");
             }
         }
 
-        LOG.debug("pd = " + pd);
+        analysesPerformedCounter.increment();
 
-        boolean isAbnormalSpeedOverGround = pd < PD;
-        if (isAbnormalSpeedOverGround) {
-            LOG.debug("Abnormal event detected.");
-        } else {
-            LOG.debug("Normal or inconclusive event detected.");
-        }
-
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Analyses performed");
-
-        return isAbnormalSpeedOverGround;
-    }
-
-    private int calculateShipCount(SpeedOverGroundStatisticData speedOverGroundStatisticData, int shipTypeKey, int shipSizeKey, int speedOverGroundKey) {
-        if (USE_AGGREGATED_STATS) {
-            return speedOverGroundStatisticData.aggregateSumOverKey1(shipSizeKey, speedOverGroundKey, SpeedOverGroundStatisticData.STAT_SHIP_COUNT);
-        } else {
-            Integer value = speedOverGroundStatisticData.getValue(shipTypeKey, shipSizeKey, speedOverGroundKey, SpeedOverGroundStatisticData.STAT_SHIP_COUNT);
-            return value == null ? 0 : value;
-        }
+        return isAbnormal;
     }
 
     @Override
@@ -312,7 +306,7 @@ public class SpeedOverGroundAnalysis extends StatisticBasedAnalysis {
 
         addPreviousTrackingPoints(event, track);
 
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Events raised");
+        eventsRaisedCounter.increment();
 
         return event;
     }
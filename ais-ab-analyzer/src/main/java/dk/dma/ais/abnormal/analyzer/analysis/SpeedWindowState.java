@@ -0,0 +1,170 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import dk.dma.enav.model.geometry.Position;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Incremental per-track state maintained by the SuddenSpeedChangeAnalysis.
+ *
+ * The state is fed with the tracking reports of a track in time order, and keeps:
+ *
+ * <ul>
+ *     <li>a monotonic deque of the reported speeds, so that the max. reported speed since
+ *     any point in time within the window is available in O(1) amortized time,</li>
+ *     <li>the time of the latest report with a valid speed above the high mark,</li>
+ *     <li>the time of the latest pair of consecutive reports whose calculated speed was above the low mark.</li>
+ * </ul>
+ *
+ * Apart from the occasional growth of the deque, no allocations take place when the state is updated or read.
+ *
+ * Reports of the same track may be analysed concurrently, and reading the state also evicts reports from the
+ * deque, so all access is synchronized on the state.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+final class SpeedWindowState {
+
+    /** 1 m/s = 1.9438444924406046 knots */
+    private static final double METERS_PER_SECOND_TO_KNOTS = 1.9438444924406046;
+
+    private final float speedHighMark;
+    private final float speedLowMark;
+    private final float maxValidSpeed;
+
+    /* Circular deque of reports with non-increasing reported speeds (front is the max.) */
+    private long[] timestamps = new long[16];
+    private float[] speeds = new float[16];
+    private int head = 0;
+    private int size = 0;
+
+    private long timeOfLastReport = Long.MIN_VALUE;
+    private Position positionOfLastReport;
+
+    private long timeOfLastReportAboveHighMark = -1;
+    private long timeOfLastCalculatedSpeedAboveLowMark = Long.MIN_VALUE;
+
+    SpeedWindowState(float speedHighMark, float speedLowMark, float maxValidSpeed) {
+        this.speedHighMark = speedHighMark;
+        this.speedLowMark = speedLowMark;
+        this.maxValidSpeed = maxValidSpeed;
+    }
+
+    /**
+     * Feed a tracking report to the state. Reports which are not newer than the previously fed report are ignored.
+     *
+     * @param timestamp the time of the report.
+     * @param position the position of the report.
+     * @param speedOverGround the reported speed over ground.
+     * @return true if the report was added to the state; false if ignored.
+     */
+    synchronized boolean update(long timestamp, Position position, float speedOverGround) {
+        if (timestamp <= timeOfLastReport) {
+            return false;
+        }
+
+        if (speedOverGround <= maxValidSpeed && speedOverGround >= speedHighMark) {
+            timeOfLastReportAboveHighMark = timestamp;
+        }
+
+        if (positionOfLastReport != null && position != null) {
+            double dp = position.rhumbLineDistanceTo(positionOfLastReport);
+            double dt = (timestamp - timeOfLastReport) / 1e3;
+            double vKnots = dp / dt * METERS_PER_SECOND_TO_KNOTS;
+            if (vKnots > speedLowMark) {
+                timeOfLastCalculatedSpeedAboveLowMark = timeOfLastReport;
+            }
+        }
+
+        while (size > 0 && speeds[indexOf(size - 1)] <= speedOverGround) {
+            size--;
+        }
+        if (size == timestamps.length) {
+            grow();
+        }
+        final int i = indexOf(size++);
+        timestamps[i] = timestamp;
+        speeds[i] = speedOverGround;
+
+        timeOfLastReport = timestamp;
+        positionOfLastReport = position;
+
+        return true;
+    }
+
+    /**
+     * @return the time of the latest report with a valid reported speed at or above the high mark; or -1 if none.
+     */
+    synchronized long getTimeOfLastReportAboveHighMark() {
+        return timeOfLastReportAboveHighMark;
+    }
+
+    /**
+     * Evaluate whether all reported speeds since the given time are at or below the low mark.
+     *
+     * @param windowStart the start of the window. Reports older than windowStart are evicted, so a later call
+     *                    with an earlier windowStart only sees the reports which were kept.
+     * @return true if there are reports in the window, and all of them are at or below the low mark.
+     */
+    synchronized boolean isReportedSpeedAtOrBelowLowMarkSince(long windowStart) {
+        while (size > 0 && timestamps[head] < windowStart) {
+            head = (head + 1) % timestamps.length;
+            size--;
+        }
+        return size > 0 && speeds[head] <= speedLowMark;
+    }
+
+    /**
+     * Evaluate whether the speeds calculated from consecutive positions since the given time are
+     * all at or below the low mark.
+     *
+     * @param windowStart the start of the window.
+     * @return true if no pair of consecutive reports starting at or after windowStart moved faster than the low mark.
+     */
+    synchronized boolean isCalculatedSpeedAtOrBelowLowMarkSince(long windowStart) {
+        return timeOfLastCalculatedSpeedAboveLowMark < windowStart;
+    }
+
+    private int indexOf(int n) {
+        return (head + n) % timestamps.length;
+    }
+
+    private void grow() {
+        final int n = timestamps.length;
+        long[] newTimestamps = new long[n * 2];
+        float[] newSpeeds = new float[n * 2];
+        for (int k = 0; k < size; k++) {
+            newTimestamps[k] = timestamps[indexOf(k)];
+            newSpeeds[k] = speeds[indexOf(k)];
+        }
+        timestamps = newTimestamps;
+        speeds = newSpeeds;
+        head = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SpeedWindowState{" +
+                "timeOfLastReport=" + timeOfLastReport +
+                ", timeOfLastReportAboveHighMark=" + timeOfLastReportAboveHighMark +
+                ", timeOfLastCalculatedSpeedAboveLowMark=" + timeOfLastCalculatedSpeedAboveLowMark +
+                ", size=" + size +
+                '}';
+    }
+}
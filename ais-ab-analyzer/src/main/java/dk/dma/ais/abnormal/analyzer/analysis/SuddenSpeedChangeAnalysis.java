@@ -19,6 +19,7 @@ package dk.dma.ais.abnormal.analyzer.analysis;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
+import dk.dma.ais.abnormal.analyzer.AnalysisCounter;
 import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
 import dk.dma.ais.abnormal.event.db.EventRepository;
 import dk.dma.ais.abnormal.event.db.domain.Event;
@@ -27,6 +28,8 @@ import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
 import dk.dma.ais.abnormal.event.db.domain.builders.SuddenSpeedChangeEventBuilder;
 import dk.dma.ais.abnormal.event.db.domain.builders.TrackingPointBuilder;
 import dk.dma.ais.abnormal.util.Categorizer;
+import dk.dma.ais.abnormal.util.ConcurrentIntSet;
+import dk.dma.ais.abnormal.util.VesselClass;
 import dk.dma.ais.tracker.eventEmittingTracker.EventEmittingTracker;
 import dk.dma.ais.tracker.eventEmittingTracker.InterpolatedTrackingReport;
 import dk.dma.ais.tracker.eventEmittingTracker.Track;
@@ -41,8 +44,6 @@ import org.slf4j.LoggerFactory;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
 
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_SUDDENSPEEDCHANGE_DROP_DECAY;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_SUDDENSPEEDCHANGE_DROP_SUSTAIN;
@@ -53,15 +54,15 @@ import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS
 import static dk.dma.ais.abnormal.util.AisDataHelper.isSpeedOverGroundAvailable;
 import static dk.dma.ais.abnormal.util.AisDataHelper.nameMmsiOrMmsi;
 import static dk.dma.ais.abnormal.util.AisDataHelper.nameOrMmsi;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isCargoVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isClassB;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isEngagedInTowing;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isFishingVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isPassengerVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isSpecialCraft;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isTankerVessel;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isUnknownTypeOrSize;
-import static dk.dma.ais.abnormal.util.TrackPredicates.isVeryLongVessel;
+import static dk.dma.ais.abnormal.util.VesselClass.CARGO_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.CLASS_B;
+import static dk.dma.ais.abnormal.util.VesselClass.ENGAGED_IN_TOWING;
+import static dk.dma.ais.abnormal.util.VesselClass.FISHING_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.PASSENGER_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SPECIAL_CRAFT;
+import static dk.dma.ais.abnormal.util.VesselClass.TANKER_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.UNKNOWN_TYPE_OR_SIZE;
+import static dk.dma.ais.abnormal.util.VesselClass.VERY_LONG_VESSEL;
 import static dk.dma.commons.util.DateTimeUtil.MILLIS_TO_LOCALDATETIME_UTC;
 
 /**
@@ -81,7 +82,16 @@ import static dk.dma.commons.util.DateTimeUtil.MILLIS_TO_LOCALDATETIME_UTC;
 public class SuddenSpeedChangeAnalysis extends Analysis {
     private static final Logger LOG = LoggerFactory.getLogger(SuddenSpeedChangeAnalysis.class);
 
-    private final AppStatisticsService statisticsService;
+    /** Vessel classes not analysed */
+    private static final int EXCLUDED_VESSEL_CLASSES = CLASS_B | UNKNOWN_TYPE_OR_SIZE | FISHING_VESSEL | SPECIAL_CRAFT | ENGAGED_IN_TOWING;
+
+    /** Vessel classes analysed (unless excluded) */
+    private static final int INCLUDED_VESSEL_CLASSES = VERY_LONG_VESSEL | CARGO_VESSEL | TANKER_VESSEL | PASSENGER_VESSEL;
+
+    private final AnalysisCounter shipLengthTooSmallCounter;
+    private final AnalysisCounter analysesPerformedCounter;
+    private final AnalysisCounter eventsRaisedCounter;
+    private final AnalysisCounter observationListSizeCounter;
 
     /** Track must come from SOG above this value to cause sudden speed change event */
     final float SPEED_HIGH_MARK;
@@ -100,14 +110,15 @@ public class SuddenSpeedChangeAnalysis extends Analysis {
 
     final float MAX_VALID_SPEED = (float) 102.2;
 
-    private TreeSet<Integer> tracksWithSuddenSpeedDecrease = new TreeSet<>();
+    private static final String SPEED_WINDOW_STATE_KEY = "sudden-speed-change-state";
+
+    final ConcurrentIntSet tracksWithSuddenSpeedDecrease = new ConcurrentIntSet();
 
     private int statCount = 0;
 
     @Inject
     public SuddenSpeedChangeAnalysis(Configuration configuration, AppStatisticsService statisticsService, EventEmittingTracker trackingService, EventRepository eventRepository) {
         super(eventRepository, trackingService, null);
-        this.statisticsService = statisticsService;
 
         setTrackPredictionTimeMax(configuration.getInteger(CONFKEY_ANALYSIS_SUDDENSPEEDCHANGE_PREDICTIONTIME_MAX, -1));
 
@@ -117,6 +128,11 @@ public class SuddenSpeedChangeAnalysis extends Analysis {
         SPEED_SUSTAIN_SECS = configuration.getInt(CONFKEY_ANALYSIS_SUDDENSPEEDCHANGE_DROP_SUSTAIN, 60);
         SHIP_LENGTH_MIN = configuration.getInt(CONFKEY_ANALYSIS_SUDDENSPEEDCHANGE_SHIPLENGTH_MIN, 50);
 
+        this.shipLengthTooSmallCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "LOA < " + SHIP_LENGTH_MIN);
+        this.analysesPerformedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Analyses performed");
+        this.eventsRaisedCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "Events raised");
+        this.observationListSizeCounter = statisticsService.getAnalysisCounter(getAnalysisName(), "# observation list");
+
         LOG.info(getAnalysisName() + " created (" + this + ").");
     }
 
@@ -138,22 +154,26 @@ public class SuddenSpeedChangeAnalysis extends Analysis {
 
         Integer vesselLength = track.getVesselLength();
         if (vesselLength != null && vesselLength < SHIP_LENGTH_MIN) {
-            statisticsService.incAnalysisStatistics(getAnalysisName(), "LOA < " + SHIP_LENGTH_MIN);
+            shipLengthTooSmallCounter.increment();
             return;
         }
 
-        /* Do not perform analysis if reported speed is invalid */
-        if (!isSpeedOverGroundAvailable(track.getSpeedOverGround())) {
+        /* Do not perform analysis for vessels with these characteristics: */
+        final int vesselClass = VesselClass.of(track);
+        if ((vesselClass & EXCLUDED_VESSEL_CLASSES) != 0) {
             return;
         }
 
-        /* Do not perform analysis for vessels with these characteristics: */
-        if (isClassB.test(track)
-            || isUnknownTypeOrSize.test(track)
-            || isFishingVessel.test(track)
-            || isSpecialCraft.test(track)
-            || isEngagedInTowing.test(track)
-        ) {
+        /* Perform analysis only for very long vessels and some other vessels: */
+        if ((vesselClass & INCLUDED_VESSEL_CLASSES) == 0) {
+            return;
+        }
+
+        /* Keep the speed window up to date - also with reports which are not analysed themselves */
+        updateSpeedWindowState(track);
+
+        /* Do not perform analysis if reported speed is invalid */
+        if (!isSpeedOverGroundAvailable(track.getSpeedOverGround())) {
             return;
         }
 
@@ -164,17 +184,14 @@ public class SuddenSpeedChangeAnalysis extends Analysis {
             return;
         }
 
-        /* Perform analysis only for very long vessels and some other vessels: */
-        if (isVeryLongVessel.test(track) || (isCargoVessel.test(track) || isTankerVessel.test(track) || isPassengerVessel.test(track))) {
-            performAnalysis(track);
-            updateApplicationStatistics();
-        }
+        performAnalysis(track);
+        updateApplicationStatistics();
     }
 
     private void updateApplicationStatistics() {
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Analyses performed");
+        analysesPerformedCounter.increment();
         if (statCount++ % 10000 == 0) {
-            statisticsService.setAnalysisStatistics(getAnalysisName(), "# observation list", tracksWithSuddenSpeedDecrease.size());
+            observationListSizeCounter.set(tracksWithSuddenSpeedDecrease.size());
         }
     }
 
@@ -182,9 +199,8 @@ public class SuddenSpeedChangeAnalysis extends Analysis {
     @Subscribe
     public void onTrackStale(TrackStaleEvent trackEvent) {
         final int mmsi = trackEvent.getTrack().getMmsi();
-        if (tracksWithSuddenSpeedDecrease.contains(mmsi)) {
+        if (tracksWithSuddenSpeedDecrease.remove(mmsi)) {
             LOG.debug(nameOrMmsi(trackEvent.getTrack().getShipName(), mmsi) + " is now stale. Removed from observation list.");
-            tracksWithSuddenSpeedDecrease.remove(mmsi);
         }
     }
 
@@ -194,27 +210,55 @@ public class SuddenSpeedChangeAnalysis extends Analysis {
 
         if (speedOverGround != null && speedOverGround <= SPEED_LOW_MARK) {
             if (!tracksWithSuddenSpeedDecrease.contains(mmsi)) {
-                if (isSuddenSpeedDecrease(track)) {
+                if (isSuddenSpeedDecrease(track) && tracksWithSuddenSpeedDecrease.add(mmsi)) {
                     LOG.debug(nameOrMmsi(track.getShipName(), mmsi) + " experienced sudden speed decrease. Added to observation list.");
                     track.setPositionReportPurgeEnable(false);
-                    tracksWithSuddenSpeedDecrease.add(mmsi);
                 }
             } else {
-                if (isSustainedReportedSpeedDecrease(track) && isSustainedCalculatedSpeedDecrease(track)) {
+                if (isSustainedReportedSpeedDecrease(track) && isSustainedCalculatedSpeedDecrease(track) && tracksWithSuddenSpeedDecrease.remove(mmsi)) {
                     LOG.debug(nameOrMmsi(track.getShipName(), mmsi) + " experienced sustained speed decrease. Event raised.");
                     raiseAndLowerSuddenSpeedChangeEvent(track);
-                    tracksWithSuddenSpeedDecrease.remove(mmsi);
                 }
             }
         } else {
-            if (tracksWithSuddenSpeedDecrease.contains(mmsi)) {
+            if (tracksWithSuddenSpeedDecrease.remove(mmsi)) {
                 LOG.debug(nameOrMmsi(track.getShipName(), mmsi) + " speed above low mark. Removed from observation list.");
-                tracksWithSuddenSpeedDecrease.remove(mmsi);
                 track.setPositionReportPurgeEnable(true);
             }
         }
     }
 
+    /**
+     * Feed the newest tracking report of the track to its speed window state.
+     *
+     * @param track
+     */
+    private void updateSpeedWindowState(Track track) {
+        TrackingReport newestTrackingReport = track.getNewestTrackingReport();
+        if (newestTrackingReport != null) {
+            getOrCreateSpeedWindowState(track).update(newestTrackingReport.getTimestamp(), newestTrackingReport.getPosition(), newestTrackingReport.getSpeedOverGround());
+        }
+    }
+
+    /**
+     * Get the speed window state of the track - creating it if it does not exist.
+     * @param track
+     * @return the speed window state.
+     */
+    private SpeedWindowState getOrCreateSpeedWindowState(Track track) {
+        SpeedWindowState state = (SpeedWindowState) track.getProperty(SPEED_WINDOW_STATE_KEY);
+        if (state == null) {
+            synchronized (track) {
+                state = (SpeedWindowState) track.getProperty(SPEED_WINDOW_STATE_KEY);
+                if (state == null) {
+                    state = new SpeedWindowState(SPEED_HIGH_MARK, SPEED_LOW_MARK, MAX_VALID_SPEED);
+                    track.setProperty(SPEED_WINDOW_STATE_KEY, state);
+                }
+            }
+        }
+        return state;
+    }
+
     /**
      * Evaluate whether this track has kept its speed below SPEED_LOW_MARK
      * for a sustained period of at least SPEED_SUSTAIN_SECS seconds.
@@ -225,13 +269,7 @@ public class SuddenSpeedChangeAnalysis extends Analysis {
      * @return
      */
     private boolean isSustainedReportedSpeedDecrease(Track track) {
-        Optional<Float> maxSog = track.getTrackingReports()
-            .stream()
-            .filter(tr -> tr.getTimestamp() >= track.getTimeOfLastPositionReport() - SPEED_SUSTAIN_SECS * 1000)
-            .map(tr -> Float.valueOf(tr.getSpeedOverGround()))
-            .max(Comparator.<Float>naturalOrder());
-
-        return maxSog.isPresent() ? maxSog.get() <= SPEED_LOW_MARK : false;
+        return getOrCreateSpeedWindowState(track).isReportedSpeedAtOrBelowLowMarkSince(track.getTimeOfLastPositionReport() - SPEED_SUSTAIN_SECS * 1000);
     }
 
     /**
@@ -244,31 +282,7 @@ public class SuddenSpeedChangeAnalysis extends Analysis {
      * @return
      */
     private boolean isSustainedCalculatedSpeedDecrease(Track track) {
-        List<TrackingReport> trackingReports = track.getTrackingReports()
-            .stream()
-            .filter(tr -> tr.getTimestamp() >= track.getTimeOfLastPositionReport() - SPEED_SUSTAIN_SECS * 1000)
-            .collect(Collectors.toList());
-
-        final int n = trackingReports.size();
-        boolean calculatedSogsAllBelowLowMark = true;
-        for (int i=0; i<n-1 && calculatedSogsAllBelowLowMark == true; i++) {
-            TrackingReport tr1 = trackingReports.get(i);
-            TrackingReport tr2 = trackingReports.get(i+1);
-
-            Position p1 = tr1.getPosition();
-            Position p2 = tr2.getPosition();
-
-            double dp = p2.rhumbLineDistanceTo(p1);
-            double dt = (tr2.getTimestamp() - tr1.getTimestamp()) / 1e3;
-
-            double v = dp/dt; // meters per second
-            double vKnots = v * 1.9438444924406046; // 1 m/s = 1.9438444924406046 knots
-
-            if (vKnots > SPEED_LOW_MARK) {
-                calculatedSogsAllBelowLowMark = false;
-                LOG.debug("Calculated sog = " + vKnots + " is larger than " + SPEED_LOW_MARK);
-            }
-        }
+        boolean calculatedSogsAllBelowLowMark = getOrCreateSpeedWindowState(track).isCalculatedSpeedAtOrBelowLowMarkSince(track.getTimeOfLastPositionReport() - SPEED_SUSTAIN_SECS * 1000);
 
         if (LOG.isDebugEnabled()) {
             LOG.debug(nameMmsiOrMmsi(track.getShipName(), track.getMmsi()) + ": " + (calculatedSogsAllBelowLowMark ? "Calculated sog's are all below " + SPEED_LOW_MARK : "Not all calculated sog's are all below " + SPEED_LOW_MARK));
@@ -292,7 +306,7 @@ public class SuddenSpeedChangeAnalysis extends Analysis {
             return false;
         }
 
-        long t1 = timeOfLastTrackingReportAboveHighMark(track.getTrackingReports());
+        long t1 = getOrCreateSpeedWindowState(track).getTimeOfLastReportAboveHighMark();
         long t2 = track.getTimeOfLastPositionReport();
 
         return t1 >= 0 && (t2 - t1) <= SPEED_DECAY_SECS *1000;
@@ -418,7 +432,7 @@ public class SuddenSpeedChangeAnalysis extends Analysis {
 
         addPreviousTrackingPoints(event, track);
 
-        statisticsService.incAnalysisStatistics(getAnalysisName(), "Events raised");
+        eventsRaisedCounter.increment();
 
         return event;
     }
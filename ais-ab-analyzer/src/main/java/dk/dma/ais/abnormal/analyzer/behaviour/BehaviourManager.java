@@ -58,4 +58,12 @@ public interface BehaviourManager {
      * @return
      */
     EventCertainty getEventCertaintyAtCurrentPosition(Class<? extends Event> eventClass, Track track);
+
+    /**
+     * Get the event certainty computed for the track's position report with the given timestamp.
+     * @param eventClass
+     * @param timestamp
+     * @return
+     */
+    EventCertainty getEventCertaintyAt(Class<? extends Event> eventClass, Track track, long timestamp);
 }
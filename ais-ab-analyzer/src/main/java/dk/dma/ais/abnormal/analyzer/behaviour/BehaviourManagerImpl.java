@@ -59,9 +59,10 @@ public class BehaviourManagerImpl implements BehaviourManager {
      */
     static final int LOWER_EVENT_SCORE_THRESHOLD = 5;
 
-    private static final String SCORE_KEY_PREFIX = "event-score-";
-    private static final String EVENT_STATE_KEY_PREFIX = "event-raised-";
-    private static final String CERTAINTY_KEY_PREFIX = "event-certainty-";
+    /**
+     * Key under which the per-track BehaviourState is stored as a track property.
+     */
+    static final String BEHAVIOUR_STATE_KEY = "behaviour-state";
 
     @Inject
     public BehaviourManagerImpl(EventEmittingTracker trackingService) {
@@ -79,28 +80,33 @@ public class BehaviourManagerImpl implements BehaviourManager {
      */
     @Override
     public void abnormalBehaviourDetected(Class<? extends Event> eventClass, Track track, Track... otherTracks) {
-        if (!getEventRaised(eventClass, track)) {
-            int score = getEventScore(eventClass, track);
-
-            if (score < RAISE_EVENT_SCORE_THRESHOLD) {
-                score++;
-                if (score == RAISE_EVENT_SCORE_THRESHOLD) {
-                    // Threshold reached. Raise event.
-                    setEventRaised(eventClass, track, true);
-                    setEventScore(eventClass, track, 0);
-                    setEventCertaintyOnCurrentPositionReport(eventClass, track);
-                    fireRaiseEvent(eventClass, track, otherTracks);
-                } else {
-                    // Threshold not reached. Keep counting.
-                    setEventScore(eventClass, track, score);
-                    setEventCertaintyOnCurrentPositionReport(eventClass, track);
+        final int ordinal = BehaviourState.ordinalOf(eventClass);
+        final BehaviourState state = getOrCreateBehaviourState(track);
+
+        synchronized (state) {
+            if (!state.isRaised(ordinal)) {
+                int score = state.getScore(ordinal);
+
+                if (score < RAISE_EVENT_SCORE_THRESHOLD) {
+                    score++;
+                    if (score == RAISE_EVENT_SCORE_THRESHOLD) {
+                        // Threshold reached. Raise event.
+                        state.setRaised(ordinal, true);
+                        state.setScore(ordinal, 0);
+                        setEventCertaintyOnCurrentPositionReport(state, ordinal, track);
+                        fireRaiseEvent(eventClass, state.getEventCertainty(ordinal), track, otherTracks);
+                    } else {
+                        // Threshold not reached. Keep counting.
+                        state.setScore(ordinal, score);
+                        setEventCertaintyOnCurrentPositionReport(state, ordinal, track);
+                    }
                 }
+            } else {
+                // Maintain existing event
+                state.setScore(ordinal, 0);
+                setEventCertaintyOnCurrentPositionReport(state, ordinal, track);
+                fireMaintainEvent(eventClass, state.getEventCertainty(ordinal), track);
             }
-        } else {
-            // Maintain existing event
-            setEventScore(eventClass, track, 0);
-            setEventCertaintyOnCurrentPositionReport(eventClass, track);
-            fireMaintainEvent(eventClass, track);
         }
     }
 
@@ -114,30 +120,35 @@ public class BehaviourManagerImpl implements BehaviourManager {
      */
     @Override
     public void normalBehaviourDetected(Class<? extends Event> eventClass, Track track) {
-        if (getEventRaised(eventClass, track)) {
-            int score = getEventScore(eventClass, track);
-
-            if (score < LOWER_EVENT_SCORE_THRESHOLD) {
-                score++;
-                if (score == LOWER_EVENT_SCORE_THRESHOLD) {
-                    // Threshold reached. Lower event.
-                    fireLowerEvent(eventClass, track);
-                    removeEventRaised(eventClass, track);
-                    removeEventScore(eventClass, track);
-                    setEventCertaintyOnCurrentPositionReport(eventClass, track);
-                } else {
-                    // Threshold not reached. Keep counting. And maintain event raised.
-                    setEventScore(eventClass, track, score);
-                    setEventRaised(eventClass, track, true);
-                    setEventCertaintyOnCurrentPositionReport(eventClass, track);
-                    LOG.debug("fireMaintainEvent (normal) - " + track.getMmsi() + " - " + eventClass);
-                    fireMaintainEvent(eventClass, track);
+        final int ordinal = BehaviourState.ordinalOf(eventClass);
+        final BehaviourState state = getOrCreateBehaviourState(track);
+
+        synchronized (state) {
+            if (state.isRaised(ordinal)) {
+                int score = state.getScore(ordinal);
+
+                if (score < LOWER_EVENT_SCORE_THRESHOLD) {
+                    score++;
+                    if (score == LOWER_EVENT_SCORE_THRESHOLD) {
+                        // Threshold reached. Lower event.
+                        fireLowerEvent(eventClass, state.getEventCertainty(ordinal), track);
+                        state.clear(ordinal);
+                        setEventCertaintyOnCurrentPositionReport(state, ordinal, track);
+                    } else {
+                        // Threshold not reached. Keep counting. And maintain event raised.
+                        state.setScore(ordinal, score);
+                        setEventCertaintyOnCurrentPositionReport(state, ordinal, track);
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("fireMaintainEvent (normal) - " + track.getMmsi() + " - " + eventClass);
+                        }
+                        fireMaintainEvent(eventClass, state.getEventCertainty(ordinal), track);
+                    }
                 }
+            } else {
+                // No event raised and no need to count.
+                state.setScore(ordinal, 0);
+                setEventCertaintyOnCurrentPositionReport(state, ordinal, track);
             }
-        } else {
-            // No event raised and no need to count.
-            setEventScore(eventClass, track, 0);
-            setEventCertaintyOnCurrentPositionReport(eventClass, track);
         }
     }
 
@@ -150,8 +161,12 @@ public class BehaviourManagerImpl implements BehaviourManager {
      */
     @Override
     public void trackStaleDetected(Class<? extends Event> eventClass, Track track) {
-        removeEventRaised(eventClass, track);
-        removeEventScore(eventClass, track);
+        final BehaviourState state = getBehaviourState(track);
+        if (state != null) {
+            synchronized (state) {
+                state.clear(BehaviourState.ordinalOf(eventClass));
+            }
+        }
     }
 
     @Override
@@ -168,15 +183,27 @@ public class BehaviourManagerImpl implements BehaviourManager {
      */
     @Override
     public EventCertainty getEventCertaintyAtCurrentPosition(Class<? extends Event> eventClass, Track track) {
-        EventCertainty eventCertainty = null;
-
         TrackingReport trackingReport = track.getNewestTrackingReport();
-        if (trackingReport != null) {
-            String eventCertaintyKey = getEventCertaintyKey(eventClass);
-            eventCertainty = (EventCertainty) trackingReport.getProperty(eventCertaintyKey);
-        }
+        return trackingReport == null ? EventCertainty.UNDEFINED : getEventCertaintyAt(eventClass, track, trackingReport.getTimestamp());
+    }
 
-        return eventCertainty == null ? EventCertainty.UNDEFINED : eventCertainty;
+    /**
+     * Get the EventCertainty recorded for the given event class on the track's tracking report with the given timestamp.
+     *
+     * @param eventClass the event class.
+     * @param track the track.
+     * @param timestamp the timestamp of the tracking report.
+     * @return the event certainty.
+     */
+    @Override
+    public EventCertainty getEventCertaintyAt(Class<? extends Event> eventClass, Track track, long timestamp) {
+        final BehaviourState state = getBehaviourState(track);
+        if (state == null) {
+            return EventCertainty.UNDEFINED;
+        }
+        synchronized (state) {
+            return state.getEventCertaintyAt(BehaviourState.ordinalOf(eventClass), timestamp);
+        }
     }
 
     @Subscribe
@@ -185,138 +212,56 @@ public class BehaviourManagerImpl implements BehaviourManager {
         LOG.trace("No subscribers were interested in this event: " + event.getEvent());
     }
 
-    private static EventCertainty getEventCertainty(Class<? extends Event> eventClass, Track track) {
-        boolean eventRaised = getEventRaised(eventClass, track);
-        int eventScore = getEventScore(eventClass, track);
-        EventCertainty eventCertainty;
-
-        if (eventRaised == false && eventScore == 0) {
-            eventCertainty = EventCertainty.LOWERED;
-        } else if (eventRaised == true && eventScore == 0) {
-            eventCertainty = EventCertainty.RAISED;
-        } else {
-            eventCertainty = EventCertainty.UNCERTAIN;
-        }
-
-        return eventCertainty;
-    }
-
-    private void fireMaintainEvent(Class<? extends Event> eventClass, Track track) {
-        eventBus.post(new AbnormalEventMaintain(eventClass, getEventCertainty(eventClass, track), track));
-    }
-
-    private void fireRaiseEvent(Class<? extends Event> eventClass, Track track, Track... otherTracks) {
-        eventBus.post(new AbnormalEventRaise(eventClass, getEventCertainty(eventClass, track), track, otherTracks));
-    }
-
-    private void fireLowerEvent(Class<? extends Event> eventClass, Track track) {
-        eventBus.post(new AbnormalEventLower(eventClass, getEventCertainty(eventClass, track), track));
-    }
-
-    public static String getEventRaisedKey(Class<? extends Event> eventClass) {
-        return EVENT_STATE_KEY_PREFIX + eventClass.getSimpleName();
-    }
-
-    public static String getScoreKey(Class<? extends Event> eventClass) {
-        return SCORE_KEY_PREFIX + eventClass.getSimpleName();
+    private void fireMaintainEvent(Class<? extends Event> eventClass, EventCertainty eventCertainty, Track track) {
+        eventBus.post(new AbnormalEventMaintain(eventClass, eventCertainty, track));
     }
 
-    public static String getEventCertaintyKey(Class<? extends Event> eventClass) {
-        return CERTAINTY_KEY_PREFIX + eventClass.getSimpleName();
+    private void fireRaiseEvent(Class<? extends Event> eventClass, EventCertainty eventCertainty, Track track, Track... otherTracks) {
+        eventBus.post(new AbnormalEventRaise(eventClass, eventCertainty, track, otherTracks));
     }
 
-    /**
-     * Remove the event-raised flag from the track.
-     * @param eventClass
-     * @param track
-     */
-    private static void removeEventRaised(Class<? extends Event> eventClass, Track track) {
-        String eventRaisedKey = getEventRaisedKey(eventClass);
-        track.removeProperty(eventRaisedKey);
+    private void fireLowerEvent(Class<? extends Event> eventClass, EventCertainty eventCertainty, Track track) {
+        eventBus.post(new AbnormalEventLower(eventClass, eventCertainty, track));
     }
 
     /**
-     * Set the value of the event-raised flag on the track
-     * @param eventClass
+     * Get the behaviour state block of the track.
      * @param track
-     * @param raised
+     * @return the behaviour state or null if no behaviour has been registered for the track yet.
      */
-    private static void setEventRaised(Class<? extends Event> eventClass, Track track, boolean raised) {
-        String eventRaisedKey = getEventRaisedKey(eventClass);
-        track.setProperty(eventRaisedKey, Boolean.valueOf(raised));
+    private static BehaviourState getBehaviourState(Track track) {
+        return (BehaviourState) track.getProperty(BEHAVIOUR_STATE_KEY);
     }
 
     /**
-     * Get the value of the event-raised flag on the track
-     * @param eventClass
+     * Get the behaviour state block of the track - creating it if it does not exist.
      * @param track
-     * @return
+     * @return the behaviour state.
      */
-    private static boolean getEventRaised(Class<? extends Event> eventClass, Track track) {
-        boolean eventRaised;
-
-        String eventRaisedKey = getEventRaisedKey(eventClass);
-        Boolean eventRaisedTmp = (Boolean) track.getProperty(eventRaisedKey);
-        if (eventRaisedTmp == null) {
-            eventRaised = false;
-        } else {
-            eventRaised = eventRaisedTmp.booleanValue();
-        }
-
-        return eventRaised;
-    }
-
-    /**
-     * Remove the event score from the track.
-     * @param eventClass
-     * @param track
-     */
-    private static void removeEventScore(Class<? extends Event> eventClass, Track track) {
-        String scoreKey = getScoreKey(eventClass);
-        track.removeProperty(scoreKey);
-    }
-
-    /**
-     * Set the event score on the track.
-     * @param eventClass
-     * @param track
-     * @param score
-     */
-    private static void setEventScore(Class<? extends Event> eventClass, Track track, int score) {
-        String scoreKey = getScoreKey(eventClass);
-        track.setProperty(scoreKey, Integer.valueOf(score));
-    }
-
-    /**
-     * Get the event score from the track.
-     * @param eventClass
-     * @param track
-     * @return
-     */
-    private static int getEventScore(Class<? extends Event> eventClass, Track track) {
-        int score;
-
-        String scoreKey = getScoreKey(eventClass);
-
-        Integer scoreTmp = (Integer) track.getProperty(scoreKey);
-        if (scoreTmp == null) {
-            score = 0;
-        } else {
-            score = scoreTmp.intValue();
+    private static BehaviourState getOrCreateBehaviourState(Track track) {
+        BehaviourState state = getBehaviourState(track);
+        if (state == null) {
+            synchronized (track) {
+                state = getBehaviourState(track);
+                if (state == null) {
+                    state = new BehaviourState();
+                    track.setProperty(BEHAVIOUR_STATE_KEY, state);
+                }
+            }
         }
-
-        return score;
+        return state;
     }
 
     /**
-     * Set the event score on the most recent position report of the track.
-     * @param eventClass
+     * Record the current event certainty against the most recent position report of the track.
+     * @param state
+     * @param ordinal
      * @param track
      */
-    private static void setEventCertaintyOnCurrentPositionReport(Class<? extends Event> eventClass, Track track) {
+    private static void setEventCertaintyOnCurrentPositionReport(BehaviourState state, int ordinal, Track track) {
         TrackingReport trackingReport = track.getNewestTrackingReport();
         if (trackingReport != null) {
-            trackingReport.setProperty(getEventCertaintyKey(eventClass), getEventCertainty(eventClass, track));
+            state.recordEventCertainty(ordinal, trackingReport.getTimestamp(), state.getEventCertainty(ordinal));
         }
     }
 }
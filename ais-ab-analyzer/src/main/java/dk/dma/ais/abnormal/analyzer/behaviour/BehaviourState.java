@@ -0,0 +1,165 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.behaviour;
+
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compact per-track state block maintained by the BehaviourManagerImpl.
+ *
+ * The state holds the current score of each event class in a small int array indexed by the
+ * event class' ordinal, the raised flags of all event classes in a single bitset, and a short
+ * history of event certainties in a ring buffer. The certainty history has one slot per tracking
+ * report on which a behaviour was registered; each slot packs the certainties of all event classes
+ * into one long (2 bits per event class).
+ *
+ * Once created, no allocations take place when the state is read or updated.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@NotThreadSafe
+final class BehaviourState {
+
+    /** Max. no. of distinct event classes which can be tracked (limited by 2 bits per certainty in a long). */
+    static final int MAX_EVENT_CLASSES = Long.SIZE / 2;
+
+    /** No. of tracking reports for which event certainties are remembered. */
+    static final int CERTAINTY_HISTORY_LENGTH = 32;
+
+    private static final AtomicInteger nextOrdinal = new AtomicInteger(0);
+
+    private static final ClassValue<Integer> ordinals = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> eventClass) {
+            int ordinal = nextOrdinal.getAndIncrement();
+            if (ordinal >= MAX_EVENT_CLASSES) {
+                throw new IllegalStateException("Cannot track more than " + MAX_EVENT_CLASSES + " event classes: " + eventClass.getName());
+            }
+            return ordinal;
+        }
+    };
+
+    /**
+     * Return the ordinal assigned to the given event class. Ordinals are assigned on first use
+     * and remain fixed for the lifetime of the JVM.
+     */
+    static int ordinalOf(Class<? extends Event> eventClass) {
+        return ordinals.get(eventClass);
+    }
+
+    private int[] scores = new int[8];
+    private long raised;
+
+    private final long[] certaintyTimestamps = new long[CERTAINTY_HISTORY_LENGTH];
+    private final long[] certainties = new long[CERTAINTY_HISTORY_LENGTH];
+    private int certaintyHead = -1;
+    private int certaintyCount = 0;
+
+    int getScore(int ordinal) {
+        return ordinal < scores.length ? scores[ordinal] : 0;
+    }
+
+    void setScore(int ordinal, int score) {
+        if (ordinal >= scores.length) {
+            int[] newScores = new int[MAX_EVENT_CLASSES];
+            System.arraycopy(scores, 0, newScores, 0, scores.length);
+            scores = newScores;
+        }
+        scores[ordinal] = score;
+    }
+
+    boolean isRaised(int ordinal) {
+        return (raised & (1L << ordinal)) != 0;
+    }
+
+    void setRaised(int ordinal, boolean isRaised) {
+        if (isRaised) {
+            raised |= 1L << ordinal;
+        } else {
+            raised &= ~(1L << ordinal);
+        }
+    }
+
+    /**
+     * Compute the current event certainty of the given event class from its score and raised flag.
+     */
+    EventCertainty getEventCertainty(int ordinal) {
+        final boolean eventRaised = isRaised(ordinal);
+        final int eventScore = getScore(ordinal);
+
+        EventCertainty eventCertainty;
+        if (eventRaised == false && eventScore == 0) {
+            eventCertainty = EventCertainty.LOWERED;
+        } else if (eventRaised == true && eventScore == 0) {
+            eventCertainty = EventCertainty.RAISED;
+        } else {
+            eventCertainty = EventCertainty.UNCERTAIN;
+        }
+
+        return eventCertainty;
+    }
+
+    /**
+     * Record the certainty of an event class for the tracking report with the given timestamp.
+     * Timestamps are expected in non-decreasing order; the oldest entry is overwritten when the
+     * history is full.
+     */
+    void recordEventCertainty(int ordinal, long timestamp, EventCertainty eventCertainty) {
+        if (certaintyCount == 0 || certaintyTimestamps[certaintyHead] != timestamp) {
+            certaintyHead = (certaintyHead + 1) % CERTAINTY_HISTORY_LENGTH;
+            certaintyTimestamps[certaintyHead] = timestamp;
+            certainties[certaintyHead] = 0L;
+            if (certaintyCount < CERTAINTY_HISTORY_LENGTH) {
+                certaintyCount++;
+            }
+        }
+
+        final int shift = ordinal * 2;
+        certainties[certaintyHead] = (certainties[certaintyHead] & ~(3L << shift)) | ((long) eventCertainty.getCertainty() << shift);
+    }
+
+    /**
+     * Return the certainty recorded for an event class on the tracking report with the given timestamp, or
+     * EventCertainty.UNDEFINED if no certainty was recorded (or has since been overwritten).
+     */
+    EventCertainty getEventCertaintyAt(int ordinal, long timestamp) {
+        int slot = certaintyHead;
+        for (int i = 0; i < certaintyCount; i++) {
+            final long slotTimestamp = certaintyTimestamps[slot];
+            if (slotTimestamp == timestamp) {
+                return EventCertainty.create((int) (certainties[slot] >>> (ordinal * 2)) & 3);
+            } else if (slotTimestamp < timestamp) {
+                break;
+            }
+            slot = slot == 0 ? CERTAINTY_HISTORY_LENGTH - 1 : slot - 1;
+        }
+        return EventCertainty.UNDEFINED;
+    }
+
+    /**
+     * Forget score and raised flag for the given event class.
+     */
+    void clear(int ordinal) {
+        setRaised(ordinal, false);
+        if (ordinal < scores.length) {
+            scores[ordinal] = 0;
+        }
+    }
+}
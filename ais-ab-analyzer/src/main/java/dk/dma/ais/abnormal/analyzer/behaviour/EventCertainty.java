@@ -41,8 +41,10 @@ public enum EventCertainty {
      */
     RAISED(3);
 
+    private static final EventCertainty[] VALUES = values();
+
     public static EventCertainty create(int certainty) {
-        return EventCertainty.values()[certainty];
+        return VALUES[certainty];
     }
 
     private int certainty;
@@ -2,6 +2,7 @@ package dk.dma.ais.abnormal.analyzer.config;
 
 import com.google.common.collect.Lists;
 import com.google.inject.Singleton;
+import dk.dma.ais.abnormal.analyzer.IngestQueue;
 import org.apache.commons.configuration.ConversionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +24,9 @@ public final class Configuration {
 
     public static final String CONFKEY_BLACKLIST_MMSI = "blacklist.mmsi";
     public static final String CONFKEY_APPL_STATISTICS_DUMP_PERIOD = "application.stats.dump.period";
+    public static final String CONFKEY_APPL_METRICS_PORT = "application.metrics.port";
+    public static final String CONFKEY_APPL_TRACING_SAMPLE_RATE = "application.tracing.sample.rate";
+    public static final String CONFKEY_APPL_TRACING_SLOWCALL_THRESHOLD = "application.tracing.slowcall.threshold";
     public static final String CONFKEY_APPL_GRID_RESOLUTION_DEFAULT = "application.grid.resolution.default";
     public static final String CONFKEY_FILTER_LOCATION_BBOX_NORTH = "filter.location.bbox.north";
     public static final String CONFKEY_FILTER_LOCATION_BBOX_SOUTH = "filter.location.bbox.south";
@@ -66,6 +70,7 @@ public final class Configuration {
     public static final String CONFKEY_ANALYSIS_CLOSEENCOUNTER_RUN_PERIOD = "analysis.closeencounter.run.period";
     public static final String CONFKEY_ANALYSIS_CLOSEENCOUNTER_SOG_MIN = "analysis.closeencounter.sog.min";
     public static final String CONFKEY_ANALYSIS_CLOSEENCOUNTER_PREDICTIONTIME_MAX = "analysis.closeencounter.predictiontime.max";
+    public static final String CONFKEY_ANALYSIS_CLOSEENCOUNTER_CPA_HORIZON = "analysis.closeencounter.cpa.horizon";
     public static final String CONFKEY_ANALYSIS_FREEFLOW_ENABLED = "analysis.freeflow.enabled";
     public static final String CONFKEY_ANALYSIS_FREEFLOW_RUN_PERIOD = "analysis.freeflow.run.period";
     public static final String CONFKEY_ANALYSIS_FREEFLOW_BBOX = "analysis.freeflow.bbox";
@@ -84,8 +89,25 @@ public final class Configuration {
     public static final String CONFKEY_EVENTS_PGSQL_PASSWORD = "events.pgsql.password";
     public static final String CONFKEY_EVENTS_H2_FILE = "events.h2.file";
     public static final String CONFKEY_EVENTS_CSV_FILE = "events.csv.file";
+    public static final String CONFKEY_EVENTS_LOG_FILE = "events.log.file";
+    public static final String CONFKEY_EVENTS_LOG_FLUSH_INTERVAL = "events.log.flush.interval";
+    public static final String CONFKEY_EVENTS_JPA_POOL_MIN_SIZE = "events.jpa.pool.min.size";
+    public static final String CONFKEY_EVENTS_JPA_POOL_MAX_SIZE = "events.jpa.pool.max.size";
+    public static final String CONFKEY_EVENTS_JPA_STATEMENT_CACHE_SIZE = "events.jpa.statement.cache.size";
+    public static final String CONFKEY_EVENTS_JPA_BATCH_SIZE = "events.jpa.batch.size";
+    public static final String CONFKEY_EVENTS_JPA_FETCH_SIZE = "events.jpa.fetch.size";
+    public static final String CONFKEY_EVENTS_JPA_CACHE_ENABLED = "events.jpa.cache.enabled";
+    public static final String CONFKEY_EVENTS_CHANGES_FILE = "events.changes.file";
+    public static final String CONFKEY_EVENTS_RETENTION_MONTHS = "events.retention.months";
+    public static final String CONFKEY_EVENTS_RETENTION_ARCHIVE_DIR = "events.retention.archive.dir";
+    public static final String CONFKEY_EVENTS_RETENTION_CRON = "events.retention.cron";
+    public static final String CONFKEY_EVENTS_ARCHIVE_DIR = "events.archive.dir";
+    public static final String CONFKEY_EVENTS_ARCHIVE_CRON = "events.archive.cron";
+    public static final String CONFKEY_EVENTS_ARCHIVE_DELAY_DAYS = "events.archive.delay.days";
     public static final String CONFKEY_AIS_DATASOURCE_URL = "ais.datasource.url";
     public static final String CONFKEY_AIS_DATASOURCE_DOWNSAMPLING = "ais.datasource.downsampling";
+    public static final String CONFKEY_INGEST_QUEUE_CAPACITY = "ingest.queue.capacity";
+    public static final String CONFKEY_INGEST_QUEUE_POLICY = "ingest.queue.policy";
     public static final String CONFKEY_REPORTS_ENABLED = "reports.enabled";
     public static final String CONFKEY_REPORTS_RECENTEVENTS_CRON = "reports.recentevents.cron";
     public static final String CONFKEY_REPORTS_MAILER_SMTP_HOST = "reports.mailer.smtp.host";
@@ -157,8 +179,8 @@ public final class Configuration {
             return false;
         } else {
             String t = eventsRepositoryType.toLowerCase().trim();
-            if (! ("h2".equals(t) || "pgsql".equals(t) || "csv".equals(t))) {
-                LOG.error("Illegal value: '" + t + "'. Only 'pgsql', 'h2' or 'csv' allowed for configuration key: " + CONFKEY_EVENTS_REPOSITORY_TYPE);
+            if (! ("h2".equals(t) || "pgsql".equals(t) || "csv".equals(t) || "log".equals(t))) {
+                LOG.error("Illegal value: '" + t + "'. Only 'pgsql', 'h2', 'csv' or 'log' allowed for configuration key: " + CONFKEY_EVENTS_REPOSITORY_TYPE);
                 return false;
             }
         }
@@ -213,6 +235,35 @@ public final class Configuration {
             }
         }
 
+        // Validate JPA settings
+        if ("h2".equals(eventsRepositoryType.toLowerCase().trim()) || "pgsql".equals(eventsRepositoryType.toLowerCase().trim())) {
+            if (!isValidPositiveOrZeroIntegerOrBlank(configuration, CONFKEY_EVENTS_JPA_POOL_MIN_SIZE)) return false;
+            if (!isValidPositiveOrZeroIntegerOrBlank(configuration, CONFKEY_EVENTS_JPA_POOL_MAX_SIZE)) return false;
+            if (!isValidPositiveOrZeroIntegerOrBlank(configuration, CONFKEY_EVENTS_JPA_STATEMENT_CACHE_SIZE)) return false;
+            if (!isValidPositiveOrZeroIntegerOrBlank(configuration, CONFKEY_EVENTS_JPA_BATCH_SIZE)) return false;
+            if (!isValidPositiveOrZeroIntegerOrBlank(configuration, CONFKEY_EVENTS_JPA_FETCH_SIZE)) return false;
+        }
+
+        // Validate event log
+        if ("log".equals(eventsRepositoryType.toLowerCase().trim())) {
+            String eventsLogFile = configuration.getString(CONFKEY_EVENTS_LOG_FILE);
+            if (eventsLogFile == null || isBlank(eventsLogFile)) {
+                LOG.error("Missing value for: " + CONFKEY_EVENTS_LOG_FILE);
+                return false;
+            }
+        }
+
+        // Validate ingest queue
+        String ingestQueuePolicy = configuration.getString(CONFKEY_INGEST_QUEUE_POLICY);
+        if (! isBlank(ingestQueuePolicy)) {
+            try {
+                IngestQueue.OverloadPolicy.parse(ingestQueuePolicy);
+            } catch (IllegalArgumentException e) {
+                LOG.error(e.getMessage() + " Configuration key: " + CONFKEY_INGEST_QUEUE_POLICY);
+                return false;
+            }
+        }
+
         // Validate analysis - drift
         if (!isValidPositiveFloat(configuration, CONFKEY_ANALYSIS_DRIFT_PERIOD)) return false;
         if (!isValidPositiveFloat(configuration, CONFKEY_ANALYSIS_DRIFT_DISTANCE)) return false;
@@ -275,6 +326,24 @@ public final class Configuration {
         return true;
     }
 
+    private static boolean isValidPositiveOrZeroIntegerOrBlank(org.apache.commons.configuration.Configuration configuration, String confKey) {
+        if (isBlank(configuration.getString(confKey))) {
+            return true;
+        }
+        int i;
+        try {
+            i = configuration.getInt(confKey);
+        } catch(ConversionException e) {
+            LOG.error("Must be an integer or blank: " + confKey);
+            return false;
+        }
+        if (i < 0) {
+            LOG.error("Must be positive or zero integer: " + confKey);
+            return false;
+        }
+        return true;
+    }
+
     private static List<String> getAllConfigurationKeys() {
         List<String> confkeys = Lists.newArrayList();
 
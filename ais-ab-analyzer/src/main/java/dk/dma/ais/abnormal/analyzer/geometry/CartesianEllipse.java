@@ -0,0 +1,262 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.geometry;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Ellipse;
+import dk.dma.enav.model.geometry.Position;
+import net.jcip.annotations.Immutable;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.hypot;
+import static java.lang.Math.max;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toRadians;
+
+/**
+ * A filled ellipse in the local cartesian coordinates of a LocalProjection.
+ *
+ * Unlike Ellipse, this class holds no geodetic reference and all its computations are done on primitive
+ * doubles. Ellipses must be in the same projection to be compared.
+ *
+ * intersects() is an exact test (up to floating point precision): one ellipse is mapped to the unit circle,
+ * and the distance from its center to the other (mapped) ellipse is found by bisection. Semi-axes shorter
+ * than MIN_SEMI_AXIS meters are treated as MIN_SEMI_AXIS meters.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@Immutable
+public final class CartesianEllipse {
+
+    /** Semi-axes are at least this long (in meters) */
+    static final double MIN_SEMI_AXIS = 1e-3;
+
+    private static final int MAX_BISECTION_ITERATIONS = 200;
+
+    private final double x;
+    private final double y;
+    private final double alpha;
+    private final double beta;
+    private final double thetaDeg;
+
+    private final double cosTheta;
+    private final double sinTheta;
+
+    /**
+     * @param x x-coordinate of the center.
+     * @param y y-coordinate of the center.
+     * @param alpha length of the semi-axis along thetaDeg.
+     * @param beta length of the other semi-axis.
+     * @param thetaDeg direction of alpha in cartesian degrees (counter-clockwise from the x-axis).
+     */
+    public CartesianEllipse(double x, double y, double alpha, double beta, double thetaDeg) {
+        this.x = x;
+        this.y = y;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.thetaDeg = thetaDeg;
+
+        final double theta = toRadians(thetaDeg);
+        this.cosTheta = cos(theta);
+        this.sinTheta = sin(theta);
+    }
+
+    /**
+     * Create a CartesianEllipse with the same cartesian parameters as ellipse.
+     */
+    public static CartesianEllipse of(Ellipse ellipse) {
+        return new CartesianEllipse(ellipse.getX(), ellipse.getY(), ellipse.getAlpha(), ellipse.getBeta(), ellipse.getThetaDeg());
+    }
+
+    /**
+     * @param geodeticReference the reference of the projection this ellipse lives in.
+     * @return an equivalent Ellipse.
+     */
+    public Ellipse toEllipse(Position geodeticReference) {
+        return new Ellipse(geodeticReference, x, y, alpha, beta, thetaDeg, CoordinateSystem.CARTESIAN);
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getBeta() {
+        return beta;
+    }
+
+    public double getThetaDeg() {
+        return thetaDeg;
+    }
+
+    /**
+     * @return the radius of the smallest circle around the center which contains the ellipse.
+     */
+    public double getBoundingRadius() {
+        return max(max(alpha, beta), MIN_SEMI_AXIS);
+    }
+
+    /**
+     * Conservative intersection test comparing the distance between the centers with the sum of the
+     * bounding radii. Much cheaper than intersects().
+     *
+     * @return false if this ellipse and other certainly do not intersect; true if they may intersect.
+     */
+    public boolean mayIntersect(CartesianEllipse other) {
+        final double dx = other.x - x;
+        final double dy = other.y - y;
+        final double r = getBoundingRadius() + other.getBoundingRadius();
+        return dx * dx + dy * dy <= r * r;
+    }
+
+    /**
+     * @return true if point (px, py) is inside or on this ellipse.
+     */
+    public boolean contains(double px, double py) {
+        final double dx = px - x;
+        final double dy = py - y;
+        final double u = (cosTheta * dx + sinTheta * dy) / max(alpha, MIN_SEMI_AXIS);
+        final double v = (-sinTheta * dx + cosTheta * dy) / max(beta, MIN_SEMI_AXIS);
+        return u * u + v * v <= 1.0;
+    }
+
+    /**
+     * @return true if this ellipse and other share at least one point.
+     */
+    public boolean intersects(CartesianEllipse other) {
+        final double a = max(alpha, MIN_SEMI_AXIS);
+        final double b = max(beta, MIN_SEMI_AXIS);
+        final double otherA = max(other.alpha, MIN_SEMI_AXIS);
+        final double otherB = max(other.beta, MIN_SEMI_AXIS);
+
+        // Map to the frame where this ellipse is the unit circle; other becomes { c + L*u : |u| <= 1 }
+        final double dx = other.x - x;
+        final double dy = other.y - y;
+        final double cx = (cosTheta * dx + sinTheta * dy) / a;
+        final double cy = (-sinTheta * dx + cosTheta * dy) / b;
+
+        final double cosDelta = cosTheta * other.cosTheta + sinTheta * other.sinTheta;
+        final double sinDelta = cosTheta * other.sinTheta - sinTheta * other.cosTheta;
+        final double l11 = cosDelta * otherA / a, l12 = -sinDelta * otherB / a;
+        final double l21 = sinDelta * otherA / b, l22 = cosDelta * otherB / b;
+
+        // Principal semi-axes and direction of the mapped ellipse from the eigen decomposition of L*L^T
+        final double p = l11 * l11 + l12 * l12;
+        final double r = l11 * l21 + l12 * l22;
+        final double s = l21 * l21 + l22 * l22;
+        final double mean = (p + s) / 2.0;
+        final double radius = hypot((p - s) / 2.0, r);
+        final double e0 = sqrt(mean + radius);
+        final double e1 = sqrt(max(mean - radius, 0.0));
+        final double phi = atan2(2.0 * r, p - s) / 2.0;
+
+        // The unit circle's center relative to the mapped ellipse, in the mapped ellipse's principal frame
+        final double cosPhi = cos(phi), sinPhi = sin(phi);
+        final double u = abs(-cosPhi * cx - sinPhi * cy);
+        final double v = abs(sinPhi * cx - cosPhi * cy);
+
+        return distanceToEllipse(e0, e1, u, v) <= 1.0;
+    }
+
+    /**
+     * Distance from point (y0, y1) in the first quadrant to the filled, axis aligned ellipse with semi-axes
+     * e0 >= e1 centered at origin. Zero if the point is inside the ellipse.
+     *
+     * Follows D. Eberly, "Distance from a Point to an Ellipse, an Ellipsoid, or a Hyperellipsoid".
+     */
+    static double distanceToEllipse(double e0, double e1, double y0, double y1) {
+        if (e1 <= 0.0) {
+            // Degenerate to a line segment along the first axis
+            return hypot(max(y0 - e0, 0.0), y1);
+        }
+
+        final double z0 = y0 / e0;
+        final double z1 = y1 / e1;
+        final double g = z0 * z0 + z1 * z1 - 1.0;
+        if (g <= 0.0) {
+            return 0.0;
+        }
+
+        if (y1 > 0.0) {
+            if (y0 > 0.0) {
+                final double r0 = (e0 / e1) * (e0 / e1);
+                final double sbar = rootOf(r0, z0, z1);
+                final double x0 = r0 * y0 / (sbar + r0);
+                final double x1 = y1 / (sbar + 1.0);
+                return hypot(x0 - y0, x1 - y1);
+            } else {
+                return abs(y1 - e1);
+            }
+        } else {
+            final double numer0 = e0 * y0;
+            final double denom0 = e0 * e0 - e1 * e1;
+            if (numer0 < denom0) {
+                final double xde0 = numer0 / denom0;
+                final double x0 = e0 * xde0;
+                final double x1 = e1 * sqrt(1.0 - xde0 * xde0);
+                return hypot(x0 - y0, x1);
+            } else {
+                return abs(y0 - e0);
+            }
+        }
+    }
+
+    private static double rootOf(double r0, double z0, double z1) {
+        final double n0 = r0 * z0;
+        double s0 = z1 - 1.0;
+        double s1 = hypot(n0, z1) - 1.0;
+        double s = 0.0;
+        for (int i = 0; i < MAX_BISECTION_ITERATIONS; i++) {
+            s = (s0 + s1) / 2.0;
+            if (s == s0 || s == s1) {
+                break;
+            }
+            final double ratio0 = n0 / (s + r0);
+            final double ratio1 = z1 / (s + 1.0);
+            final double g = ratio0 * ratio0 + ratio1 * ratio1 - 1.0;
+            if (g > 0.0) {
+                s0 = s;
+            } else if (g < 0.0) {
+                s1 = s;
+            } else {
+                break;
+            }
+        }
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        return "CartesianEllipse{" +
+                "x=" + x +
+                ", y=" + y +
+                ", alpha=" + alpha +
+                ", beta=" + beta +
+                ", thetaDeg=" + thetaDeg +
+                '}';
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.geometry;
+
+import net.jcip.annotations.ThreadSafe;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toRadians;
+
+/**
+ * Closest point of approach (CPA) and time to closest point of approach (TCPA) for pairs of vessels, which
+ * keep their current course and speed over ground.
+ *
+ * All pairs are computed in one pass over primitive arrays holding the position and velocity of the second
+ * vessel of each pair relative to the first (one array per quantity). The loop body is straight-line
+ * arithmetic without calls or data dependent branches, so that the JIT compiler can unroll and vectorize it.
+ *
+ * Positions are in meters in the cartesian coordinates of a LocalProjection, velocities in meters per second,
+ * and times in seconds.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class ClosestPointOfApproach {
+
+    private static final double KNOTS_TO_METERS_PER_SECOND = 1852.0 / 3600.0;
+
+    /** Relative speeds below this (in meters per second) are considered zero */
+    private static final double MIN_RELATIVE_SPEED = 1e-6;
+
+    private ClosestPointOfApproach() {
+    }
+
+    /**
+     * Compute the time to closest point of approach and the distance at closest point of approach for n pairs
+     * of vessels.
+     *
+     * The time to closest point of approach is clamped to [0; horizon], so vessels which are moving apart have
+     * tcpa 0 and their current distance as dcpa.
+     *
+     * @param n the number of pairs.
+     * @param dx x-coordinates of the second vessels relative to the first vessels.
+     * @param dy y-coordinates of the second vessels relative to the first vessels.
+     * @param dvx x-velocities of the second vessels relative to the first vessels.
+     * @param dvy y-velocities of the second vessels relative to the first vessels.
+     * @param horizon the max. time to look ahead (in seconds).
+     * @param tcpa output: the time to closest point of approach of each pair (in seconds).
+     * @param dcpa output: the distance at closest point of approach of each pair (in meters).
+     */
+    public static void compute(int n, double[] dx, double[] dy, double[] dvx, double[] dvy, double horizon, double[] tcpa, double[] dcpa) {
+        for (int i = 0; i < n; i++) {
+            final double vv = dvx[i] * dvx[i] + dvy[i] * dvy[i];
+            final double t = min(max(-(dx[i] * dvx[i] + dy[i] * dvy[i]) / max(vv, MIN_RELATIVE_SPEED * MIN_RELATIVE_SPEED), 0.0), horizon);
+            final double cx = dx[i] + dvx[i] * t;
+            final double cy = dy[i] + dvy[i] * t;
+            tcpa[i] = t;
+            dcpa[i] = sqrt(cx * cx + cy * cy);
+        }
+    }
+
+    /**
+     * @param cog course over ground (in compass degrees).
+     * @param sog speed over ground (in knots).
+     * @return the velocity along the x-axis (eastwards) in meters per second.
+     */
+    public static double velocityX(float cog, float sog) {
+        return sog * KNOTS_TO_METERS_PER_SECOND * sin(toRadians(cog));
+    }
+
+    /**
+     * @param cog course over ground (in compass degrees).
+     * @param sog speed over ground (in knots).
+     * @return the velocity along the y-axis (northwards) in meters per second.
+     */
+    public static double velocityY(float cog, float sog) {
+        return sog * KNOTS_TO_METERS_PER_SECOND * cos(toRadians(cog));
+    }
+}
@@ -0,0 +1,122 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.geometry;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.util.CoordinateConverter;
+import net.jcip.annotations.Immutable;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.toRadians;
+
+/**
+ * A mapping between geodetic positions and local cartesian coordinates (in meters) anchored at a
+ * geodetic reference.
+ *
+ * The projection wraps one CoordinateConverter, so that an analysis can create it once per reference and
+ * reuse it for all the positions it needs to map - instead of creating a new converter for each position.
+ * All mappings work on primitive doubles.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@Immutable
+public final class LocalProjection {
+
+    private final Position geodeticReference;
+    private final CoordinateConverter coordinateConverter;
+
+    private LocalProjection(Position geodeticReference) {
+        this.geodeticReference = geodeticReference;
+        this.coordinateConverter = new CoordinateConverter(geodeticReference.getLongitude(), geodeticReference.getLatitude());
+    }
+
+    /**
+     * Create a projection anchored at geodeticReference.
+     */
+    public static LocalProjection anchoredAt(Position geodeticReference) {
+        return new LocalProjection(geodeticReference);
+    }
+
+    /**
+     * Return projection if it is anchored at geodeticReference; otherwise create a new projection anchored there.
+     *
+     * @param projection a previously created projection or null.
+     */
+    public static LocalProjection reuseOrAnchorAt(LocalProjection projection, Position geodeticReference) {
+        return projection != null && projection.isAnchoredAt(geodeticReference) ? projection : anchoredAt(geodeticReference);
+    }
+
+    public boolean isAnchoredAt(Position position) {
+        return geodeticReference.getLatitude() == position.getLatitude() && geodeticReference.getLongitude() == position.getLongitude();
+    }
+
+    public Position getGeodeticReference() {
+        return geodeticReference;
+    }
+
+    public double x(double latitude, double longitude) {
+        return coordinateConverter.lon2x(longitude, latitude);
+    }
+
+    public double y(double latitude, double longitude) {
+        return coordinateConverter.lat2y(longitude, latitude);
+    }
+
+    public double x(Position position) {
+        return x(position.getLatitude(), position.getLongitude());
+    }
+
+    public double y(Position position) {
+        return y(position.getLatitude(), position.getLongitude());
+    }
+
+    public double latitude(double x, double y) {
+        return coordinateConverter.y2Lat(x, y);
+    }
+
+    public double longitude(double x, double y) {
+        return coordinateConverter.x2Lon(x, y);
+    }
+
+    public Position position(double x, double y) {
+        return Position.create(latitude(x, y), longitude(x, y));
+    }
+
+    /**
+     * Rotate the x-coordinate of point (x, y) thetaDeg degrees counter-clockwise around (cx, cy).
+     */
+    public static double rotateX(double x, double y, double cx, double cy, double thetaDeg) {
+        final double theta = toRadians(thetaDeg);
+        return cx + cos(theta) * (x - cx) - sin(theta) * (y - cy);
+    }
+
+    /**
+     * Rotate the y-coordinate of point (x, y) thetaDeg degrees counter-clockwise around (cx, cy).
+     */
+    public static double rotateY(double x, double y, double cx, double cy, double thetaDeg) {
+        final double theta = toRadians(thetaDeg);
+        return cy + sin(theta) * (x - cx) + cos(theta) * (y - cy);
+    }
+
+    @Override
+    public String toString() {
+        return "LocalProjection{" +
+                "geodeticReference=" + geodeticReference +
+                '}';
+    }
+}
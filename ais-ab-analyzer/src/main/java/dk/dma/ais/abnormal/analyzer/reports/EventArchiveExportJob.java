@@ -0,0 +1,105 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.analyzer.reports;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.archive.ColumnarEventArchive;
+import net.jcip.annotations.NotThreadSafe;
+import org.apache.commons.configuration.Configuration;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_ARCHIVE_DELAY_DAYS;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_ARCHIVE_DIR;
+
+/**
+ * This class is a Job which is executed to export past events from the event repository to the
+ * columnar event archive - one partition per day and event type.
+ *
+ * Each run exports the day which is the configured number of days old, and exports the days before it
+ * again - so that days missed (e.g. because the analyzer was not running) are caught up on, and events
+ * which were still ongoing when their day was exported are added once they are past.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@NotThreadSafe
+@Singleton
+public class EventArchiveExportJob implements Job {
+
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger(EventArchiveExportJob.class);
+    {
+        LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
+    }
+
+    /** The max. no. of days before the most recent day to export, which are exported if missing */
+    static final int CATCH_UP_DAYS = 7;
+
+    @Inject
+    private Configuration configuration;
+
+    @Inject
+    private EventRepository eventRepository;
+
+    public EventArchiveExportJob() {
+    }
+
+    /**
+     * The execute method is triggered by the scheduler, when events should be exported to the archive.
+     *
+     * @param jobExecutionContext
+     * @throws JobExecutionException
+     */
+    @Override
+    public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+        LOG.debug("EventArchiveExportJob triggered");
+
+        Path archiveDirectory = Paths.get(configuration.getString(CONFKEY_EVENTS_ARCHIVE_DIR));
+        LocalDate lastDay = lastDayToExport(LocalDate.now(ZoneOffset.UTC), configuration.getInt(CONFKEY_EVENTS_ARCHIVE_DELAY_DAYS, 1));
+        try {
+            for (LocalDate day = lastDay.minusDays(CATCH_UP_DAYS); ! day.isAfter(lastDay); day = day.plusDays(1)) {
+                int numberOfExportedEvents = ColumnarEventArchive.exportDay(eventRepository, archiveDirectory, day);
+                if (numberOfExportedEvents > 0) {
+                    LOG.info("Exported " + numberOfExportedEvents + " events started on " + day + " to " + archiveDirectory.toAbsolutePath());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new JobExecutionException(e);
+        }
+
+        LOG.debug("EventArchiveExportJob finished");
+    }
+
+    /**
+     * @return the most recent day to export, when the events started on a day are exported delayDays later.
+     */
+    static LocalDate lastDayToExport(LocalDate today, int delayDays) {
+        return today.minusDays(Math.max(delayDays, 1));
+    }
+}
@@ -0,0 +1,100 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.analyzer.reports;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import dk.dma.ais.abnormal.event.db.EventRepository;
+import net.jcip.annotations.NotThreadSafe;
+import org.apache.commons.configuration.Configuration;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_RETENTION_ARCHIVE_DIR;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_RETENTION_MONTHS;
+
+/**
+ * This class is a Job which is executed to enforce the retention period of the event repository.
+ *
+ * Past events which started before the retained number of whole months are moved out of the event
+ * repository and into monthly archive files - so that the repository (and the cost of querying it)
+ * does not grow without bound.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@NotThreadSafe
+@Singleton
+public class EventRetentionJob implements Job {
+
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger(EventRetentionJob.class);
+    {
+        LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
+    }
+
+    @Inject
+    private Configuration configuration;
+
+    @Inject
+    private EventRepository eventRepository;
+
+    public EventRetentionJob() {
+    }
+
+    /**
+     * The execute method is triggered by the scheduler, when the retention period should be enforced.
+     *
+     * @param jobExecutionContext
+     * @throws JobExecutionException
+     */
+    @Override
+    public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+        LOG.debug("EventRetentionJob triggered");
+
+        final int retentionMonths = configuration.getInt(CONFKEY_EVENTS_RETENTION_MONTHS, 0);
+        if (retentionMonths > 0) {
+            Date cutoff = retentionCutoff(YearMonth.now(ZoneOffset.UTC), retentionMonths);
+            Path archiveDirectory = Paths.get(configuration.getString(CONFKEY_EVENTS_RETENTION_ARCHIVE_DIR, "."));
+            try {
+                int numberOfArchivedEvents = eventRepository.archiveEventsStartedBefore(cutoff, archiveDirectory);
+                LOG.info("Moved " + numberOfArchivedEvents + " events started before " + cutoff + " to " + archiveDirectory.toAbsolutePath());
+            } catch (RuntimeException e) {
+                throw new JobExecutionException(e);
+            }
+        }
+
+        LOG.debug("EventRetentionJob finished");
+    }
+
+    /**
+     * @return the start of the oldest month to keep, when the current month and the preceding
+     * retentionMonths whole months are kept.
+     */
+    static Date retentionCutoff(YearMonth currentMonth, int retentionMonths) {
+        return Date.from(currentMonth.minusMonths(retentionMonths).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+}
@@ -20,7 +20,7 @@ import com.google.common.collect.Multimap;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import dk.dma.ais.abnormal.event.db.EventRepository;
-import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
 import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
 import dk.dma.ais.abnormal.event.db.domain.Vessel;
 import dk.dma.ais.abnormal.util.Categorizer;
@@ -86,21 +86,21 @@ public class RecentEventsReportJob implements Job {
         DateTime t1 = lastRun >= 0 ? new DateTime(lastRun) : t2.minusHours(24);
         lastRun = t2.getMillis();
 
-        Multimap<Class<? extends Event>, Event> eventsByType = getEventsByType(t1.toDate(), t2.toDate());
+        Multimap<String, EventSummary> eventsByType = getEventsByType(t1.toDate(), t2.toDate());
         String reportBody = generateReportBody(t1.toDate(), t2.toDate(), eventsByType);
         reportMailer.send("Abnormal events", reportBody);
 
         LOG.debug("RecentEventsReportJob finished");
     }
 
-    private Multimap<Class<? extends Event>, Event> getEventsByType(Date from, Date to) {
-        List<Event> events = eventRepository.findEventsByFromAndTo(from, to);
-        ArrayListMultimap<Class<? extends Event>, Event> eventsByType = ArrayListMultimap.create();
-        events.stream().forEach(event -> eventsByType.put(event.getClass(), event));
+    private Multimap<String, EventSummary> getEventsByType(Date from, Date to) {
+        List<EventSummary> events = eventRepository.findEventSummariesByFromAndTo(from, to);
+        ArrayListMultimap<String, EventSummary> eventsByType = ArrayListMultimap.create();
+        events.stream().forEach(event -> eventsByType.put(event.getEventType(), event));
         return eventsByType;
     }
 
-    private String generateReportBody(Date date0, Date date1, Multimap<Class<? extends Event>, Event> eventsByType) {
+    private String generateReportBody(Date date0, Date date1, Multimap<String, EventSummary> eventsByType) {
         StringBuffer email = new StringBuffer();
 
         email.append("<html>");
@@ -110,13 +110,13 @@ public class RecentEventsReportJob implements Job {
 
         email.append("<pre>");
         eventsByType.keySet().forEach(eventType -> {
-            email.append(eventType.getSimpleName() + " (" + eventsByType.get(eventType).size() + ")\n\n");
+            email.append(eventType + " (" + eventsByType.get(eventType).size() + ")\n\n");
             email.append(String.format("%-8s %-16s %-16s %-9s %-20s %-3s %-9s %-7s %-7s %-4s %-5s %-3s%n",
                 "#", "BEGIN", "END", "MMSI", "NAME", "LOA", "TYPE", "LAT", "LON", "SOG", "COG", "HDG"));
             email.append("----------------------------------------------------------------------------------------------------------------------\n");
             eventsByType.get(eventType).forEach(event -> {
-                Vessel vessel = event.getBehaviours().iterator().next().getVessel();
-                TrackingPoint tp = event.getBehaviours().iterator().next().getTrackingPoints().last();
+                Vessel vessel = event.getVessel();
+                TrackingPoint tp = event.getLastTrackingPoint();
                 email.append(String.format("%8d ", event.getId()));
                 email.append(String.format("%16s ", DATE_FORMAT.format(event.getStartTime())));
                 email.append(String.format("%16s ", event.getEndTime() == null ? " " : DATE_FORMAT.format(event.getStartTime())));
@@ -124,11 +124,11 @@ public class RecentEventsReportJob implements Job {
                 email.append(String.format("%-20s ", vessel.getName() == null ? "" : vessel.getName()));
                 email.append(String.format("%3d ", vessel.getLength() == null ? -1 : vessel.getLength()));
                 email.append(String.format("%-9s ", vessel.getType() == null ? "" : Categorizer.mapShipTypeCategoryToString(Categorizer.mapShipTypeToCategory(vessel.getType()))).toUpperCase());
-                email.append(String.format("%7.4f ", tp.getLatitude() == null ? Float.NaN : tp.getLatitude()));
-                email.append(String.format("%7.4f ", tp.getLongitude() == null ? Float.NaN : tp.getLongitude()));
-                email.append(String.format("%4.1f ", tp.getSpeedOverGround() == null ? Float.NaN : tp.getSpeedOverGround()));
-                email.append(String.format("%5.1f ", tp.getCourseOverGround() == null ? Float.NaN : tp.getCourseOverGround()));
-                email.append(String.format("%3.0f ", tp.getTrueHeading() == null ? Float.NaN : tp.getTrueHeading()));
+                email.append(String.format("%7.4f ", tp == null || tp.getLatitude() == null ? Float.NaN : tp.getLatitude()));
+                email.append(String.format("%7.4f ", tp == null || tp.getLongitude() == null ? Float.NaN : tp.getLongitude()));
+                email.append(String.format("%4.1f ", tp == null || tp.getSpeedOverGround() == null ? Float.NaN : tp.getSpeedOverGround()));
+                email.append(String.format("%5.1f ", tp == null || tp.getCourseOverGround() == null ? Float.NaN : tp.getCourseOverGround()));
+                email.append(String.format("%3.0f ", tp == null || tp.getTrueHeading() == null ? Float.NaN : tp.getTrueHeading()));
                 email.append('\n');
             });
             email.append("======================================================================================================================\n");
@@ -25,15 +25,22 @@ import org.quartz.Trigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_ARCHIVE_CRON;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_ARCHIVE_DIR;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_RETENTION_CRON;
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_EVENTS_RETENTION_MONTHS;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_REPORTS_ENABLED;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_REPORTS_RECENTEVENTS_CRON;
+import static org.apache.commons.lang.StringUtils.isBlank;
 import static org.quartz.CronScheduleBuilder.cronSchedule;
 import static org.quartz.JobBuilder.newJob;
 import static org.quartz.TriggerBuilder.newTrigger;
 
 /**
  * The Report Scheduler configures a schedule of all periodic reports to be
- * automatically generated and distributed.
+ * automatically generated and distributed - and of the periodic enforcement of
+ * the event repository's retention period and of the export of events to
+ * the columnar event archive.
  *
  * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
  */
@@ -68,16 +75,36 @@ public class ReportScheduler {
         if (isEnabled()) {
             scheduler = factory.getScheduler();
             scheduler.setJobFactory(jobFactory);
-            addDailyEventsReportJob();
+            if (isReportsEnabled()) {
+                addDailyEventsReportJob();
+            }
+            if (isRetentionEnabled()) {
+                addEventRetentionJob();
+            }
+            if (isArchiveExportEnabled()) {
+                addEventArchiveExportJob();
+            }
         } else {
             scheduler = null;
         }
     }
 
     private boolean isEnabled() {
+        return isReportsEnabled() || isRetentionEnabled() || isArchiveExportEnabled();
+    }
+
+    private boolean isReportsEnabled() {
         return configuration.getBoolean(CONFKEY_REPORTS_ENABLED, false);
     }
 
+    private boolean isRetentionEnabled() {
+        return configuration.getInt(CONFKEY_EVENTS_RETENTION_MONTHS, 0) > 0;
+    }
+
+    private boolean isArchiveExportEnabled() {
+        return ! isBlank(configuration.getString(CONFKEY_EVENTS_ARCHIVE_DIR));
+    }
+
     @Override
     protected void finalize() throws Throwable {
         super.finalize();
@@ -103,4 +130,40 @@ public class ReportScheduler {
             LOG.error(se.getMessage(), se);
         }
     }
-}
\ No newline at end of file
+
+    private void addEventRetentionJob() {
+        try {
+            Trigger trigger = newTrigger()
+                    .withIdentity("EventRetentionJobTrigger")
+                    .startNow()
+                    .withSchedule(cronSchedule(configuration.getString(CONFKEY_EVENTS_RETENTION_CRON, "0 0 3 * * ?")))
+                    .build();
+
+            JobDetail job = newJob(EventRetentionJob.class)
+                .withIdentity("EventRetentionJob")
+                .build();
+
+            scheduler.scheduleJob(job, trigger);
+        } catch (SchedulerException se) {
+            LOG.error(se.getMessage(), se);
+        }
+    }
+
+    private void addEventArchiveExportJob() {
+        try {
+            Trigger trigger = newTrigger()
+                    .withIdentity("EventArchiveExportJobTrigger")
+                    .startNow()
+                    .withSchedule(cronSchedule(configuration.getString(CONFKEY_EVENTS_ARCHIVE_CRON, "0 30 2 * * ?")))
+                    .build();
+
+            JobDetail job = newJob(EventArchiveExportJob.class)
+                .withIdentity("EventArchiveExportJob")
+                .build();
+
+            scheduler.scheduleJob(job, trigger);
+        } catch (SchedulerException se) {
+            LOG.error(se.getMessage(), se);
+        }
+    }
+}
@@ -17,11 +17,10 @@ package dk.dma.ais.abnormal.analyzer.services;
 
 import com.google.inject.Inject;
 import dk.dma.ais.abnormal.analyzer.analysis.ShipTypeAndSizeAnalysis;
-import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.ais.abnormal.analyzer.geometry.CartesianEllipse;
+import dk.dma.ais.abnormal.analyzer.geometry.LocalProjection;
 import dk.dma.enav.model.geometry.Ellipse;
 import dk.dma.enav.model.geometry.Position;
-import dk.dma.enav.util.CoordinateConverter;
-import dk.dma.enav.util.geometry.Point;
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -88,7 +87,24 @@ public class SafetyZoneService {
      * @return an Ellipse approximately covering the vessel's extent.
      */
     public Ellipse vesselExtent(Position geodeticReference, Position position, float hdg, float loa, float beam, float dimStern, float dimStarboard) {
-        return createEllipse(geodeticReference, position, hdg, loa, beam, dimStern, dimStarboard, 1.0, 1.0, 0.5);
+        return vesselExtent(LocalProjection.anchoredAt(geodeticReference), position, hdg, loa, beam, dimStern, dimStarboard).toEllipse(geodeticReference);
+    }
+
+    /**
+     * Compute the an elliptic zone which roughly corresponds to the vessel's physical extent - in the cartesian
+     * coordinates of the given projection.
+     *
+     * @param projection the projection to compute the ellipse in. Can be reused for any number of calls.
+     * @param position The reported position of the vessel.
+     * @param hdg heading measured in compass degrees.
+     * @param loa The vessel's length-overall (in meters).
+     * @param beam The vessel's beam (in meters).
+     * @param dimStern Distance from GPS antenna to vessel's stern (in meters).
+     * @param dimStarboard Distance from GPS antenne to vessel's starboard beam (in meters).
+     * @return an ellipse approximately covering the vessel's extent.
+     */
+    public CartesianEllipse vesselExtent(LocalProjection projection, Position position, float hdg, float loa, float beam, float dimStern, float dimStarboard) {
+        return createEllipse(projection, position, hdg, loa, beam, dimStern, dimStarboard, 1.0, 1.0, 0.5);
     }
 
     /**
@@ -109,11 +125,28 @@ public class SafetyZoneService {
      * @return an Ellipse approximately covering the vessel's extent.
      */
     public Ellipse safetyZone(Position geodeticReference, Position position, float cog, float sog, float loa, float beam, float dimStern, float dimStarboard) {
+        return safetyZone(LocalProjection.anchoredAt(geodeticReference), position, cog, sog, loa, beam, dimStern, dimStarboard).toEllipse(geodeticReference);
+    }
+
+    /**
+     * Compute the safety zone of track - in the cartesian coordinates of the given projection.
+     *
+     * @param projection the projection to compute the ellipse in. Can be reused for any number of calls.
+     * @param position The reported position of the vessel.
+     * @param cog Course over ground in compass degrees.
+     * @param sog Speed over ground in knots.
+     * @param loa The vessel's length-overall (in meters).
+     * @param beam The vessel's beam (in meters).
+     * @param dimStern Distance from GPS antenna to vessel's stern (in meters).
+     * @param dimStarboard Distance from GPS antenne to vessel's starboard beam (in meters).
+     * @return an ellipse approximately covering the vessel's safety zone.
+     */
+    public CartesianEllipse safetyZone(LocalProjection projection, Position position, float cog, float sog, float loa, float beam, float dimStern, float dimStarboard) {
         final double v = 1.0;  /* TODO should depend on sog */
         final double l1 = max(safetyEllipseLength*v, 1.0 + safetyEllipseBehind*v*2.0);
         final double b1 = max(safetyEllipseBreadth*v, 1.5);
         final double xc = -safetyEllipseBehind*v + 0.5*l1;
-        return createEllipse(geodeticReference, position, cog, loa, beam, dimStern, dimStarboard, l1, b1, xc);
+        return createEllipse(projection, position, cog, loa, beam, dimStern, dimStarboard, l1, b1, xc);
     }
 
 
@@ -122,7 +155,7 @@ public class SafetyZoneService {
      *
      * The position, offset, orientation and scale of the ellipse will follow characteristics of properties of a track.
      *
-     * @param geodeticReference geodetic reference point for geographic->cartesian mappings
+     * @param projection projection for geographic->cartesian mappings
      * @param position Initial position of ellipse center.
      * @param direction Direction of ellipse's major axis (in compass degrees).
      * @param loa Length of the related vessel's major axis (in meters).
@@ -134,24 +167,19 @@ public class SafetyZoneService {
      * @param xc
      * @return
      */
-    private Ellipse createEllipse(Position geodeticReference, Position position, float direction, float loa, float beam, float dimStern, float dimStarboard, double l1, double b1, double xc) {
+    private static CartesianEllipse createEllipse(LocalProjection projection, Position position, float direction, float loa, float beam, float dimStern, float dimStarboard, double l1, double b1, double xc) {
         // Compute direction of half axis alpha
         final double thetaDeg = compass2cartesian(direction);
 
         // Transform latitude/longitude to cartesian coordinates
-        final double centerLatitude = geodeticReference.getLatitude();
-        final double centerLongitude = geodeticReference.getLongitude();
-        final CoordinateConverter CoordinateConverter = new CoordinateConverter(centerLongitude, centerLatitude);
-
-        final double trackLatitude = position.getLatitude();
-        final double trackLongitude = position.getLongitude();
-        final double x = CoordinateConverter.lon2x(trackLongitude, trackLatitude);
-        final double y = CoordinateConverter.lat2y(trackLongitude, trackLatitude);
+        final double x0 = projection.x(position);
+        final double y0 = projection.y(position);
 
         // Compute center of ellipse
-        final Point pt0 = new Point(x, y);
-        Point pt1 = new Point(pt0.getX() - dimStern + loa*xc, pt0.getY() + dimStarboard - beam/2.0);
-        pt1 = pt1.rotate(pt0, thetaDeg);
+        final double x1 = x0 - dimStern + loa*xc;
+        final double y1 = y0 + dimStarboard - beam/2.0;
+        final double xr = LocalProjection.rotateX(x1, y1, x0, y0, thetaDeg);
+        final double yr = LocalProjection.rotateY(x1, y1, x0, y0, thetaDeg);
 
         // Compute length of half axis alpha
         final double alpha = loa*l1/2.0;
@@ -159,7 +187,7 @@ public class SafetyZoneService {
         // Compute length of half axis beta
         final double beta = beam*b1/2.0;
 
-        return new Ellipse(geodeticReference, pt1.getX(), pt1.getY(), alpha, beta, thetaDeg, CoordinateSystem.CARTESIAN);
+        return new CartesianEllipse(xr, yr, alpha, beta, thetaDeg);
     }
 
 }
@@ -0,0 +1,162 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dma.ais.abnormal.analyzer;
+
+import dk.dma.ais.packet.AisPacket;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IngestQueueTest {
+
+    final AisPacket staticPacket = AisPacket.from(
+        "$PGHP,1,2014,4,10,13,30,29,165,219,,2190067,1,28*22\r\n" +
+        "!BSVDM,2,1,1,A,53@ng7P1uN6PuLpl000I8TLN1=T@ITDp0000000u1Pr844@P07PSiBQ1,0*7B\r\n" +
+        "!BSVDM,2,2,1,A,CcAVCTj0EP00000,2*53");
+
+    final AisPacket positionPacket1 = AisPacket.from("!BSVDM,1,1,,A,1:02Ih001U0d=V:Op85<2aT>0<0F,0*3B");
+    final AisPacket positionPacket2 = AisPacket.from("!BSVDM,1,1,,B,1:02Ih001T0d=IjOp8bsvqTR089@,0*5D");
+    final AisPacket positionPacket3 = AisPacket.from("!BSVDM,1,1,,A,1:02Ih0PAM0d=?POp9=ct9Nl0<0F,0*30");
+
+    AppStatisticsService statisticsService;
+    List<AisPacket> handledPackets;
+    CountDownLatch handlerEntered;
+    CountDownLatch handlerReleased;
+    Consumer<AisPacket> blockingHandler;
+
+    @Before
+    public void setUp() {
+        statisticsService = new AppStatisticsServiceImpl();
+        handledPackets = new CopyOnWriteArrayList<>();
+        handlerEntered = new CountDownLatch(1);
+        handlerReleased = new CountDownLatch(1);
+        blockingHandler = packet -> {
+            handlerEntered.countDown();
+            try {
+                handlerReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handledPackets.add(packet);
+        };
+    }
+
+    @Test
+    public void packetsAreHandledInOrder() throws Exception {
+        IngestQueue ingestQueue = new IngestQueue(handledPackets::add, statisticsService, 10, IngestQueue.OverloadPolicy.BLOCK);
+        ingestQueue.start();
+
+        ingestQueue.accept(positionPacket1);
+        ingestQueue.accept(staticPacket);
+        ingestQueue.accept(positionPacket2);
+        ingestQueue.drainAndStop();
+
+        assertEquals(asList(positionPacket1, staticPacket, positionPacket2), handledPackets);
+        assertEquals(3L, statisticsService.getAnalysisCounter(IngestQueue.STATISTICS_NAME, "Packets queued").get());
+    }
+
+    @Test
+    public void dropOldestWhenFull() throws Exception {
+        IngestQueue ingestQueue = new IngestQueue(blockingHandler, statisticsService, 2, IngestQueue.OverloadPolicy.DROP_OLDEST);
+        ingestQueue.start();
+
+        ingestQueue.accept(positionPacket1);
+        assertTrue(handlerEntered.await(10, TimeUnit.SECONDS));
+
+        ingestQueue.accept(staticPacket);
+        ingestQueue.accept(positionPacket2);
+        ingestQueue.accept(positionPacket3);
+
+        handlerReleased.countDown();
+        ingestQueue.drainAndStop();
+
+        assertEquals(asList(positionPacket1, positionPacket2, positionPacket3), handledPackets);
+        assertEquals(1L, statisticsService.getAnalysisCounter(IngestQueue.STATISTICS_NAME, "Shed: oldest dropped").get());
+    }
+
+    @Test
+    public void dropByTypeKeepsStaticMessages() throws Exception {
+        IngestQueue ingestQueue = new IngestQueue(blockingHandler, statisticsService, 2, IngestQueue.OverloadPolicy.DROP_BY_TYPE);
+        ingestQueue.start();
+
+        ingestQueue.accept(positionPacket1);
+        assertTrue(handlerEntered.await(10, TimeUnit.SECONDS));
+
+        ingestQueue.accept(positionPacket2);
+        ingestQueue.accept(positionPacket3);
+        ingestQueue.accept(positionPacket1);
+        ingestQueue.accept(staticPacket);
+
+        handlerReleased.countDown();
+        ingestQueue.drainAndStop();
+
+        assertEquals(asList(positionPacket1, positionPacket3, staticPacket), handledPackets);
+        assertEquals(1L, statisticsService.getAnalysisCounter(IngestQueue.STATISTICS_NAME, "Shed: type 1").get());
+        assertEquals(1L, statisticsService.getAnalysisCounter(IngestQueue.STATISTICS_NAME, "Shed: oldest dropped for type 5").get());
+    }
+
+    @Test
+    public void dropByTypeDoesNotShedStaticMessagesForStaticMessages() throws Exception {
+        IngestQueue ingestQueue = new IngestQueue(blockingHandler, statisticsService, 2, IngestQueue.OverloadPolicy.DROP_BY_TYPE);
+        ingestQueue.start();
+
+        ingestQueue.accept(positionPacket1);
+        assertTrue(handlerEntered.await(10, TimeUnit.SECONDS));
+
+        AisPacket staticPacket2 = AisPacket.from(staticPacket.getStringMessage());
+        AisPacket staticPacket3 = AisPacket.from(staticPacket.getStringMessage());
+        ingestQueue.accept(staticPacket);
+        ingestQueue.accept(positionPacket2);
+        ingestQueue.accept(staticPacket2);
+        ingestQueue.accept(staticPacket3);
+
+        handlerReleased.countDown();
+        ingestQueue.drainAndStop();
+
+        assertEquals(asList(positionPacket1, staticPacket, staticPacket2), handledPackets);
+        assertEquals(1L, statisticsService.getAnalysisCounter(IngestQueue.STATISTICS_NAME, "Shed: oldest dropped for type 5").get());
+        assertEquals(1L, statisticsService.getAnalysisCounter(IngestQueue.STATISTICS_NAME, "Shed: type 5").get());
+    }
+
+    @Test
+    public void packetsOfferedAfterStopAreCountedAsShed() throws Exception {
+        IngestQueue ingestQueue = new IngestQueue(handledPackets::add, statisticsService, 10, IngestQueue.OverloadPolicy.BLOCK);
+        ingestQueue.start();
+
+        ingestQueue.accept(positionPacket1);
+        ingestQueue.drainAndStop();
+        ingestQueue.accept(positionPacket2);
+        ingestQueue.accept(staticPacket);
+
+        assertEquals(asList(positionPacket1), handledPackets);
+        assertEquals(1L, statisticsService.getAnalysisCounter(IngestQueue.STATISTICS_NAME, "Packets queued").get());
+        assertEquals(2L, statisticsService.getAnalysisCounter(IngestQueue.STATISTICS_NAME, "Shed: stopped").get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOverloadPolicy() {
+        IngestQueue.OverloadPolicy.parse("dropall");
+    }
+}
@@ -46,11 +46,12 @@ public class PacketHandlerImplTest {
 
         final JUnit4Mockery context = new JUnit4Mockery();
         Injector injectorMock = context.mock(Injector.class);
+        AppStatisticsService statisticsService = new AppStatisticsServiceImpl();
 
         context.checking(new Expectations() {{
         }});
 
-        PacketHandlerImpl sut = new PacketHandlerImpl(configuration, injectorMock, null, null, null, null);
+        PacketHandlerImpl sut = new PacketHandlerImpl(configuration, injectorMock, statisticsService, null, null, null);
         Set<Analysis> analyses = sut.getAnalyses();
 
         assertEquals(0, analyses.size());
@@ -76,19 +77,20 @@ public class PacketHandlerImplTest {
         EventEmittingTracker trackingServiceMock = context.mock(EventEmittingTracker.class);
 
         SafetyZoneService safetyZoneService = new SafetyZoneService(configuration);
+        AppStatisticsService statisticsService = new AppStatisticsServiceImpl();
 
         context.checking(new Expectations() {{
             ignoring(trackingServiceMock);
-            oneOf(injectorMock).getInstance(with(CourseOverGroundAnalysis.class)); will(returnValue(new CourseOverGroundAnalysis(configuration, null, null, trackingServiceMock, null, null)));
-            oneOf(injectorMock).getInstance(with(SpeedOverGroundAnalysis.class)); will(returnValue(new SpeedOverGroundAnalysis(configuration, null, null, trackingServiceMock, null, null)));
-            oneOf(injectorMock).getInstance(with(ShipTypeAndSizeAnalysis.class)); will(returnValue(new ShipTypeAndSizeAnalysis(configuration, null, null, trackingServiceMock, null, null)));
-            oneOf(injectorMock).getInstance(with(DriftAnalysis.class)); will(returnValue(new DriftAnalysis(configuration, null, trackingServiceMock, null)));
-            oneOf(injectorMock).getInstance(with(SuddenSpeedChangeAnalysis.class)); will(returnValue(new SuddenSpeedChangeAnalysis(configuration, null, trackingServiceMock, null)));
-            oneOf(injectorMock).getInstance(with(CloseEncounterAnalysis.class)); will(returnValue(new CloseEncounterAnalysis(configuration, null, trackingServiceMock, null, safetyZoneService)));
-            oneOf(injectorMock).getInstance(with(FreeFlowAnalysis.class)); will(returnValue(new FreeFlowAnalysis(configuration, null, trackingServiceMock, null)));
+            oneOf(injectorMock).getInstance(with(CourseOverGroundAnalysis.class)); will(returnValue(new CourseOverGroundAnalysis(configuration, statisticsService, null, trackingServiceMock, null, null)));
+            oneOf(injectorMock).getInstance(with(SpeedOverGroundAnalysis.class)); will(returnValue(new SpeedOverGroundAnalysis(configuration, statisticsService, null, trackingServiceMock, null, null)));
+            oneOf(injectorMock).getInstance(with(ShipTypeAndSizeAnalysis.class)); will(returnValue(new ShipTypeAndSizeAnalysis(configuration, statisticsService, null, trackingServiceMock, null, null)));
+            oneOf(injectorMock).getInstance(with(DriftAnalysis.class)); will(returnValue(new DriftAnalysis(configuration, statisticsService, trackingServiceMock, null)));
+            oneOf(injectorMock).getInstance(with(SuddenSpeedChangeAnalysis.class)); will(returnValue(new SuddenSpeedChangeAnalysis(configuration, statisticsService, trackingServiceMock, null)));
+            oneOf(injectorMock).getInstance(with(CloseEncounterAnalysis.class)); will(returnValue(new CloseEncounterAnalysis(configuration, statisticsService, trackingServiceMock, null, safetyZoneService)));
+            oneOf(injectorMock).getInstance(with(FreeFlowAnalysis.class)); will(returnValue(new FreeFlowAnalysis(configuration, statisticsService, trackingServiceMock, null)));
         }});
 
-        PacketHandlerImpl sut = new PacketHandlerImpl(configuration, injectorMock, null, null, null, null);
+        PacketHandlerImpl sut = new PacketHandlerImpl(configuration, injectorMock, statisticsService, null, null, null);
 
         Set<Analysis> analyses = sut.getAnalyses();
         assertEquals(7, analyses.size());
@@ -120,14 +122,15 @@ public class PacketHandlerImplTest {
         EventEmittingTracker trackingServiceMock = context.mock(EventEmittingTracker.class);
 
         SafetyZoneService safetyZoneService = new SafetyZoneService(configuration);
+        AppStatisticsService statisticsService = new AppStatisticsServiceImpl();
 
         context.checking(new Expectations() {{
             ignoring(trackingServiceMock);
-            oneOf(injectorMock).getInstance(with(SuddenSpeedChangeAnalysis.class)); will(returnValue(new SuddenSpeedChangeAnalysis(configuration, null, trackingServiceMock, null)));
-            oneOf(injectorMock).getInstance(with(CloseEncounterAnalysis.class)); will(returnValue(new CloseEncounterAnalysis(configuration, null, trackingServiceMock, null, safetyZoneService)));
+            oneOf(injectorMock).getInstance(with(SuddenSpeedChangeAnalysis.class)); will(returnValue(new SuddenSpeedChangeAnalysis(configuration, statisticsService, trackingServiceMock, null)));
+            oneOf(injectorMock).getInstance(with(CloseEncounterAnalysis.class)); will(returnValue(new CloseEncounterAnalysis(configuration, statisticsService, trackingServiceMock, null, safetyZoneService)));
         }});
 
-        PacketHandlerImpl sut = new PacketHandlerImpl(configuration, injectorMock, null, null, null, null);
+        PacketHandlerImpl sut = new PacketHandlerImpl(configuration, injectorMock, statisticsService, null, null, null);
 
         Set<Analysis> analyses = sut.getAnalyses();
         assertEquals(2, analyses.size());
@@ -0,0 +1,185 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
+import dk.dma.ais.abnormal.stat.db.data.CourseOverGroundStatisticData;
+import dk.dma.ais.abnormal.stat.db.data.ShipTypeAndSizeStatisticData;
+import dk.dma.ais.abnormal.util.Categorizer;
+import org.jmock.Expectations;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AbnormalityTableTest {
+
+    private static final float PD = 0.01f;
+    private static final int TOTAL_SHIP_COUNT_THRESHOLD = 1000;
+
+    private JUnit4Mockery context;
+    private StatisticDataRepository statisticsRepository;
+    private CourseOverGroundStatisticData courseOverGroundStatistics;
+    private ShipTypeAndSizeStatisticData shipTypeAndSizeStatistics;
+
+    @Before
+    public void setUp() {
+        context = new JUnit4Mockery();
+        statisticsRepository = context.mock(StatisticDataRepository.class);
+
+        Random random = new Random(42);
+
+        courseOverGroundStatistics = CourseOverGroundStatisticData.create();
+        for (int type = 0; type < Categorizer.NUM_SHIP_TYPE_CATEGORIES; type++) {
+            for (int size = 0; size < Categorizer.NUM_SHIP_SIZE_CATEGORIES; size++) {
+                for (int cog = 0; cog < Categorizer.NUM_COURSE_OVER_GROUND_CATEGORIES; cog++) {
+                    if (random.nextInt(3) > 0) {
+                        courseOverGroundStatistics.setValue(type, size, cog, CourseOverGroundStatisticData.STAT_SHIP_COUNT, random.nextInt(10) == 0 ? 500 : random.nextInt(10));
+                    }
+                }
+            }
+        }
+
+        shipTypeAndSizeStatistics = ShipTypeAndSizeStatisticData.create();
+        for (int type = 0; type < Categorizer.NUM_SHIP_TYPE_CATEGORIES; type++) {
+            for (int size = 0; size < Categorizer.NUM_SHIP_SIZE_CATEGORIES; size++) {
+                if (random.nextInt(3) > 0) {
+                    shipTypeAndSizeStatistics.setValue(type, size, ShipTypeAndSizeStatisticData.STAT_SHIP_COUNT, random.nextInt(4) == 0 ? 2000 : random.nextInt(50));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fourKeyTableIsEquivalentToDirectComputation() {
+        context.checking(new Expectations() {{
+            oneOf(statisticsRepository).getStatisticData("CourseOverGroundStatistic", 1L); will(returnValue(courseOverGroundStatistics));
+        }});
+
+        AbnormalityTable table = new AbnormalityTable(statisticsRepository, "CourseOverGroundStatistic", Categorizer.NUM_COURSE_OVER_GROUND_CATEGORIES, TOTAL_SHIP_COUNT_THRESHOLD, PD, false);
+
+        final int totalCount = courseOverGroundStatistics.getSumFor(CourseOverGroundStatisticData.STAT_SHIP_COUNT);
+        assertTrue(totalCount > TOTAL_SHIP_COUNT_THRESHOLD);
+
+        int numAbnormal = 0;
+        for (int type = 0; type < Categorizer.NUM_SHIP_TYPE_CATEGORIES; type++) {
+            for (int size = 0; size < Categorizer.NUM_SHIP_SIZE_CATEGORIES; size++) {
+                for (int cog = 0; cog < Categorizer.NUM_COURSE_OVER_GROUND_CATEGORIES; cog++) {
+                    Integer shipCount = courseOverGroundStatistics.getValue(type, size, cog, CourseOverGroundStatisticData.STAT_SHIP_COUNT);
+                    boolean expected = (float) (shipCount == null ? 0 : shipCount) / (float) totalCount < PD;
+                    assertEquals(expected, table.isAbnormal(1L, type, size, cog));
+                    numAbnormal += expected ? 1 : 0;
+                }
+            }
+        }
+
+        assertTrue(numAbnormal > 0);
+        assertEquals(1, table.getNumberOfCompiledCells());
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void aggregatedFourKeyTableIsEquivalentToDirectComputation() {
+        context.checking(new Expectations() {{
+            oneOf(statisticsRepository).getStatisticData("CourseOverGroundStatistic", 1L); will(returnValue(courseOverGroundStatistics));
+        }});
+
+        AbnormalityTable table = new AbnormalityTable(statisticsRepository, "CourseOverGroundStatistic", Categorizer.NUM_COURSE_OVER_GROUND_CATEGORIES, TOTAL_SHIP_COUNT_THRESHOLD, PD, true);
+
+        final int totalCount = courseOverGroundStatistics.getSumFor(CourseOverGroundStatisticData.STAT_SHIP_COUNT);
+        for (int type = 0; type < Categorizer.NUM_SHIP_TYPE_CATEGORIES; type++) {
+            for (int size = 0; size < Categorizer.NUM_SHIP_SIZE_CATEGORIES; size++) {
+                for (int cog = 0; cog < Categorizer.NUM_COURSE_OVER_GROUND_CATEGORIES; cog++) {
+                    int shipCount = courseOverGroundStatistics.aggregateSumOverKey1(size, cog, CourseOverGroundStatisticData.STAT_SHIP_COUNT);
+                    boolean expected = (float) shipCount / (float) totalCount < PD;
+                    assertEquals(expected, table.isAbnormal(1L, type, size, cog));
+                }
+            }
+        }
+
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void threeKeyTableIsEquivalentToDirectComputation() {
+        context.checking(new Expectations() {{
+            oneOf(statisticsRepository).getStatisticData("ShipTypeAndSizeStatistic", 2L); will(returnValue(shipTypeAndSizeStatistics));
+        }});
+
+        AbnormalityTable table = new AbnormalityTable(statisticsRepository, "ShipTypeAndSizeStatistic", 1, TOTAL_SHIP_COUNT_THRESHOLD, PD, false);
+
+        final int totalCount = shipTypeAndSizeStatistics.getSumFor(ShipTypeAndSizeStatisticData.STAT_SHIP_COUNT);
+        assertTrue(totalCount > TOTAL_SHIP_COUNT_THRESHOLD);
+
+        for (int type = 0; type < Categorizer.NUM_SHIP_TYPE_CATEGORIES; type++) {
+            for (int size = 0; size < Categorizer.NUM_SHIP_SIZE_CATEGORIES; size++) {
+                Integer shipCount = shipTypeAndSizeStatistics.getValue(type, size, ShipTypeAndSizeStatisticData.STAT_SHIP_COUNT);
+                boolean expected = (float) (shipCount == null ? 0 : shipCount) / (float) totalCount < PD;
+                assertEquals(expected, table.isAbnormal(2L, type, size, 0));
+            }
+        }
+
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void neverAbnormalWithoutSufficientData() {
+        context.checking(new Expectations() {{
+            oneOf(statisticsRepository).getStatisticData("CourseOverGroundStatistic", 1L); will(returnValue(courseOverGroundStatistics));
+            oneOf(statisticsRepository).getStatisticData("CourseOverGroundStatistic", 2L); will(returnValue(null));
+        }});
+
+        AbnormalityTable table = new AbnormalityTable(statisticsRepository, "CourseOverGroundStatistic", Categorizer.NUM_COURSE_OVER_GROUND_CATEGORIES, Integer.MAX_VALUE, PD, false);
+
+        assertFalse(table.isAbnormal(1L, 0, 0, 0));
+        assertFalse(table.isAbnormal(2L, 0, 0, 0));
+        assertFalse(table.isAbnormal(2L, 1, 1, 1));
+        assertEquals(2, table.getNumberOfCompiledCells());
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void numberOfCompiledCellsIsBounded() {
+        context.checking(new Expectations() {{
+            allowing(statisticsRepository).getStatisticData(with("CourseOverGroundStatistic"), with(any(Long.class))); will(returnValue(courseOverGroundStatistics));
+        }});
+
+        AbnormalityTable table = new AbnormalityTable(statisticsRepository, "CourseOverGroundStatistic", Categorizer.NUM_COURSE_OVER_GROUND_CATEGORIES, TOTAL_SHIP_COUNT_THRESHOLD, PD, false, 10);
+
+        boolean abnormal = table.isAbnormal(0L, 2, 3, 4);
+        for (long cellId = 1; cellId < 100; cellId++) {
+            table.isAbnormal(cellId, 2, 3, 4);
+            assertTrue(table.getNumberOfCompiledCells() <= 10);
+        }
+        assertEquals(abnormal, table.isAbnormal(0L, 2, 3, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bucketKeyOutOfRange() {
+        context.checking(new Expectations() {{
+            oneOf(statisticsRepository).getStatisticData("CourseOverGroundStatistic", 1L); will(returnValue(courseOverGroundStatistics));
+        }});
+
+        AbnormalityTable table = new AbnormalityTable(statisticsRepository, "CourseOverGroundStatistic", Categorizer.NUM_COURSE_OVER_GROUND_CATEGORIES, TOTAL_SHIP_COUNT_THRESHOLD, PD, false);
+        table.isAbnormal(1L, 0, 0, Categorizer.NUM_COURSE_OVER_GROUND_CATEGORIES);
+    }
+}
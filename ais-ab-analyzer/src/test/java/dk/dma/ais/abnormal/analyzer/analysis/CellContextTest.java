@@ -0,0 +1,90 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import dk.dma.ais.tracker.eventEmittingTracker.Track;
+import dk.dma.ais.tracker.eventEmittingTracker.events.CellChangedEvent;
+import dk.dma.enav.model.geometry.Position;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CellContextTest {
+
+    @Test
+    public void contextIsSharedForSameCellChange() {
+        Track track = new Track(219000606);
+        track.setProperty(Track.CELL_ID, 123L);
+        track.update(System.currentTimeMillis(), Position.create(56, 12), 45.0f, 10.1f, 45.0f);
+        CellChangedEvent event = new CellChangedEvent(track, null);
+
+        CellContext cellContext1 = CellContext.of(event);
+        CellContext cellContext2 = CellContext.of(event);
+
+        assertSame(cellContext1, cellContext2);
+        assertEquals((Long) 123L, cellContext1.getCellId());
+        assertEquals(1, cellContext1.getCourseOverGroundKey());
+        assertEquals(3, cellContext1.getSpeedOverGroundKey());
+        assertEquals(-1, cellContext1.getShipTypeKey());
+        assertNull(cellContext1.getShipType());
+    }
+
+    @Test
+    public void contextIsMadeAgainForNextCellChange() {
+        Track track = new Track(219000606);
+        track.setProperty(Track.CELL_ID, 123L);
+
+        CellContext cellContext1 = CellContext.of(new CellChangedEvent(track, null));
+        track.setProperty(Track.CELL_ID, 124L);
+        CellContext cellContext2 = CellContext.of(new CellChangedEvent(track, 123L));
+
+        assertNotSame(cellContext1, cellContext2);
+        assertEquals((Long) 123L, cellContext1.getCellId());
+        assertEquals((Long) 124L, cellContext2.getCellId());
+    }
+
+    @Test
+    public void contextIsSharedBetweenConcurrentAnalyses() throws Exception {
+        Track track = new Track(219000606);
+        track.setProperty(Track.CELL_ID, 123L);
+        CellChangedEvent event = new CellChangedEvent(track, null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Callable<CellContext>> analyses = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                analyses.add(() -> CellContext.of(event));
+            }
+            List<Future<CellContext>> cellContexts = executor.invokeAll(analyses);
+            for (Future<CellContext> cellContext : cellContexts) {
+                assertSame(cellContexts.get(0).get(), cellContext.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
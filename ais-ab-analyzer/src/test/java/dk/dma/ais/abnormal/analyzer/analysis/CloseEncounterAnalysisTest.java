@@ -16,7 +16,7 @@
 package dk.dma.ais.abnormal.analyzer.analysis;
 
 import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
-import dk.dma.ais.abnormal.analyzer.behaviour.EventCertainty;
+import dk.dma.ais.abnormal.analyzer.AppStatisticsServiceImpl;
 import dk.dma.ais.abnormal.analyzer.services.SafetyZoneService;
 import dk.dma.ais.abnormal.event.db.EventRepository;
 import dk.dma.ais.abnormal.event.db.domain.Behaviour;
@@ -37,6 +37,7 @@ import org.junit.Test;
 import java.util.HashSet;
 import java.util.Set;
 
+import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_ANALYSIS_CLOSEENCOUNTER_CPA_HORIZON;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_SAFETYZONES_SAFETY_ELLIPSE_BEHIND;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_SAFETYZONES_SAFETY_ELLIPSE_BREADTH;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_SAFETYZONES_SAFETY_ELLIPSE_LENGTH;
@@ -82,7 +83,7 @@ public class CloseEncounterAnalysisTest {
 
         context = new JUnit4Mockery();
         trackingService = context.mock(EventEmittingTracker.class);
-        statisticsService = context.mock(AppStatisticsService.class);
+        statisticsService = new AppStatisticsServiceImpl();
         eventRepository = context.mock(EventRepository.class);
         safetyZoneService = new SafetyZoneService(configuration);
         analysis = new CloseEncounterAnalysis(new PropertiesConfiguration(), statisticsService, trackingService, eventRepository, safetyZoneService);
@@ -110,7 +111,6 @@ public class CloseEncounterAnalysisTest {
         closeTrack.update(timestamp - 20000, Position.create(56.0600, 12.0010), 180.0f, 10.0f, 180.0f);
         closeTrack.update(timestamp - 10000, Position.create(56.0400, 12.0010), 180.0f, 10.0f, 180.0f);
         closeTrack.update(timestamp,         Position.create(56.00001, 12.0000), 180.0f, 10.0f, 180.0f);
-        closeTrack.getTrackingReports().forEach( tr -> { tr.setProperty("event-certainty-CloseEncounterEvent", EventCertainty.LOWERED);});
         assertTrue(closeTrack.getPosition().equals(Position.create(56.00001, 12.0000)));
         assertTrue(track.getPosition().distanceTo(closeTrack.getPosition(), CoordinateSystem.CARTESIAN) < 200);
 
@@ -184,8 +184,6 @@ public class CloseEncounterAnalysisTest {
     public void closeEncounterCausesEventRaised() throws Exception {
         analysis.clearTrackPairsAnalyzed();
         context.checking(new Expectations() {{
-            ignoring(statisticsService).incAnalysisStatistics(with(CloseEncounterAnalysis.class.getSimpleName()), with(any(String.class)));
-            ignoring(statisticsService).setAnalysisStatistics(with(CloseEncounterAnalysis.class.getSimpleName()), with(any(String.class)), with(any(Long.class)));
             oneOf(eventRepository).findOngoingEventByVessel(track.getMmsi(), CloseEncounterEvent.class);
             oneOf(eventRepository).save(with(any(Event.class)));
         }});
@@ -196,14 +194,128 @@ public class CloseEncounterAnalysisTest {
     public void noCloseEncounterCausesNoEventRaised() throws Exception {
         analysis.clearTrackPairsAnalyzed();
         context.checking(new Expectations() {{
-            ignoring(statisticsService).incAnalysisStatistics(with(CloseEncounterAnalysis.class.getSimpleName()), with(any(String.class)));
-            ignoring(statisticsService).setAnalysisStatistics(with(CloseEncounterAnalysis.class.getSimpleName()), with(any(String.class)), with(any(Long.class)));
             oneOf(eventRepository).findOngoingEventByVessel(track.getMmsi(), CloseEncounterEvent.class);
             never(eventRepository).save(with(any(Event.class)));
         }});
         analysis.analyseCloseEncounter(track, distantTrack);
     }
 
+    @Test
+    public void exactIntersectionTestIsSkippedForDistantTracks() throws Exception {
+        analysis.clearTrackPairsAnalyzed();
+        context.checking(new Expectations() {{
+            allowing(eventRepository).findOngoingEventByVessel(track.getMmsi(), CloseEncounterEvent.class);
+            allowing(eventRepository).save(with(any(Event.class)));
+        }});
+
+        analysis.analyseCloseEncounter(track, distantTrack);
+        assertEquals(0L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Exact intersection tests").get());
+        assertEquals(1L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Exact intersection tests saved").get());
+
+        analysis.analyseCloseEncounter(track, closeTrack);
+        assertEquals(1L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Exact intersection tests").get());
+        assertEquals(1L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Exact intersection tests saved").get());
+    }
+
+    @Test
+    public void predictedCloseEncounterCausesEventRaised() throws Exception {
+        PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.addProperty(CONFKEY_ANALYSIS_CLOSEENCOUNTER_CPA_HORIZON, 300);
+        analysis = new CloseEncounterAnalysis(configuration, statisticsService, trackingService, eventRepository, safetyZoneService);
+
+        Track approachingTrack = new Track(219002827);
+        approachingTrack.update(vessel2StaticPacket);
+        approachingTrack.update(track.getTimeOfLastPositionReport(), Position.create(56.0, 12.02), 270.0f, 10.0f, 270.0f);
+        assertTrue(track.getPosition().distanceTo(approachingTrack.getPosition(), CoordinateSystem.CARTESIAN) > 1000);
+
+        final ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+        context.checking(new Expectations() {{
+            oneOf(eventRepository).findOngoingEventByVessel(track.getMmsi(), CloseEncounterEvent.class);
+            oneOf(eventRepository).save(with(eventCaptor.getMatcher()));
+        }});
+
+        Set<Track> tracks = new HashSet<>();
+        tracks.add(track);
+        tracks.add(approachingTrack);
+        analysis.analyseCloseEncounters(tracks, track);
+
+        assertEquals(1L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Predicted encounters").get());
+        assertEquals(0L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Predictions skipped by DCPA").get());
+        assertTrue(eventCaptor.getCapturedObject().getDescription().startsWith("Predicted close encounter between "));
+    }
+
+    @Test
+    public void noPredictedCloseEncounterBeyondCpaHorizon() throws Exception {
+        PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.addProperty(CONFKEY_ANALYSIS_CLOSEENCOUNTER_CPA_HORIZON, 30);
+        analysis = new CloseEncounterAnalysis(configuration, statisticsService, trackingService, eventRepository, safetyZoneService);
+
+        // Same head-on approach as above; the closest point of approach is about 60 secs ahead
+        Track approachingTrack = new Track(219002827);
+        approachingTrack.update(vessel2StaticPacket);
+        approachingTrack.update(track.getTimeOfLastPositionReport(), Position.create(56.0, 12.02), 270.0f, 10.0f, 270.0f);
+
+        context.checking(new Expectations() {{
+            oneOf(eventRepository).findOngoingEventByVessel(track.getMmsi(), CloseEncounterEvent.class);
+            never(eventRepository).save(with(any(Event.class)));
+        }});
+
+        Set<Track> tracks = new HashSet<>();
+        tracks.add(track);
+        tracks.add(approachingTrack);
+        analysis.analyseCloseEncounters(tracks, track);
+
+        assertEquals(0L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Predicted encounters").get());
+        assertEquals(1L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Predictions skipped by DCPA").get());
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void predictionIsSkippedForTracksPassingFarApart() throws Exception {
+        PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.addProperty(CONFKEY_ANALYSIS_CLOSEENCOUNTER_CPA_HORIZON, 300);
+        analysis = new CloseEncounterAnalysis(configuration, statisticsService, trackingService, eventRepository, safetyZoneService);
+
+        // Opposite course ~1300 m further north; closest point of approach within horizon
+        Track passingTrack = new Track(219002827);
+        passingTrack.update(vessel2StaticPacket);
+        passingTrack.update(track.getTimeOfLastPositionReport(), Position.create(56.012, 12.01), 270.0f, 10.0f, 270.0f);
+        assertTrue(track.getPosition().distanceTo(passingTrack.getPosition(), CoordinateSystem.CARTESIAN) < 1852);
+
+        context.checking(new Expectations() {{
+            oneOf(eventRepository).findOngoingEventByVessel(track.getMmsi(), CloseEncounterEvent.class);
+            never(eventRepository).save(with(any(Event.class)));
+        }});
+
+        Set<Track> tracks = new HashSet<>();
+        tracks.add(track);
+        tracks.add(passingTrack);
+        analysis.analyseCloseEncounters(tracks, track);
+
+        assertEquals(0L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Predicted encounters").get());
+        assertEquals(1L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Predictions skipped by DCPA").get());
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void noPredictedCloseEncounterWithoutCpaHorizon() throws Exception {
+        Track approachingTrack = new Track(219002827);
+        approachingTrack.update(vessel2StaticPacket);
+        approachingTrack.update(track.getTimeOfLastPositionReport(), Position.create(56.0, 12.02), 270.0f, 10.0f, 270.0f);
+
+        context.checking(new Expectations() {{
+            oneOf(eventRepository).findOngoingEventByVessel(track.getMmsi(), CloseEncounterEvent.class);
+            never(eventRepository).save(with(any(Event.class)));
+        }});
+
+        Set<Track> tracks = new HashSet<>();
+        tracks.add(track);
+        tracks.add(approachingTrack);
+        analysis.analyseCloseEncounters(tracks, track);
+
+        assertEquals(0L, statisticsService.getAnalysisCounter(analysis.getAnalysisName(), "Predicted encounters").get());
+    }
+
     @Test
     public void closeEncounterEventContainsTwoVesselBehaviours() throws Exception {
         analysis.clearTrackPairsAnalyzed();
@@ -211,8 +323,6 @@ public class CloseEncounterAnalysisTest {
         final ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
 
         context.checking(new Expectations() {{
-            ignoring(statisticsService).incAnalysisStatistics(with(CloseEncounterAnalysis.class.getSimpleName()), with(any(String.class)));
-            ignoring(statisticsService).setAnalysisStatistics(with(CloseEncounterAnalysis.class.getSimpleName()), with(any(String.class)), with(any(Long.class)));
             oneOf(eventRepository).findOngoingEventByVessel(track.getMmsi(), CloseEncounterEvent.class);
             oneOf(eventRepository).save(with(eventCaptor.getMatcher()));
         }});
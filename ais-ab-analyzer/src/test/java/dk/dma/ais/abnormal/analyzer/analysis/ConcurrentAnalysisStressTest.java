@@ -0,0 +1,218 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import com.google.common.eventbus.AsyncEventBus;
+import com.google.common.eventbus.EventBus;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import dk.dma.ais.abnormal.analyzer.AbnormalAnalyzerAppTestModule;
+import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.packet.AisPacket;
+import dk.dma.ais.tracker.eventEmittingTracker.Track;
+import dk.dma.ais.tracker.eventEmittingTracker.events.PositionChangedEvent;
+import dk.dma.ais.tracker.eventEmittingTracker.events.TrackStaleEvent;
+import dk.dma.enav.model.geometry.Position;
+import org.jmock.Expectations;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replay a busy area through a multi-threaded EventBus, and verify that the observation lists of the
+ * DriftAnalysis and SuddenSpeedChangeAnalysis end up exactly as when the same traffic is replayed
+ * through a single-threaded EventBus.
+ *
+ * In each round every track receives one new position report, and all events of the round are handled
+ * before the next round starts. The multi-threaded replay posts the event of each track several times,
+ * so events for the same track are handled concurrently by different threads - just as events for
+ * different tracks are. Handling the same event more than once must leave the observation lists as if
+ * it was handled once.
+ */
+public class ConcurrentAnalysisStressTest {
+
+    private static final int NUM_TRACKS = 600;
+    private static final int NUM_ROUNDS = 120;
+    private static final int NUM_THREADS = 8;
+    private static final int NUM_POSTS_PER_EVENT = 4;
+
+    private static final long T0 = 1411923004556L;
+    private static final long DT = 8000;
+
+    // [msgId=5, userId=219000606, name=FRIGG SYDFYEN, shipType=61, dimBow=12, dimStern=58]
+    final AisPacket msg5 = AisPacket.from(
+        "$PGHP,1,2014,4,10,13,30,29,165,219,,2190067,1,28*22\r\n" +
+        "!BSVDM,2,1,1,A,53@ng7P1uN6PuLpl000I8TLN1=T@ITDp0000000u1Pr844@P07PSiBQ1,0*7B\r\n" +
+        "!BSVDM,2,2,1,A,CcAVCTj0EP00000,2*53");
+
+    private ThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new ThreadPoolExecutor(NUM_THREADS, NUM_THREADS, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void observationListsAreEquivalentToSingleThreadedReplay() {
+        final Queue<Throwable> exceptions = new ConcurrentLinkedQueue<>();
+
+        Replay sequential = new Replay(exceptions, null, 1);
+        Replay concurrent = new Replay(exceptions, executor, NUM_POSTS_PER_EVENT);
+
+        int maxObservedSuddenSpeedDecrease = 0, maxObservedPossiblyDrifting = 0;
+        for (int round = 0; round < NUM_ROUNDS; round++) {
+            sequential.playRound(round);
+            concurrent.playRound(round);
+
+            assertArrayEquals("Round " + round, sequential.suddenSpeedChangeAnalysis.tracksWithSuddenSpeedDecrease.toArray(), concurrent.suddenSpeedChangeAnalysis.tracksWithSuddenSpeedDecrease.toArray());
+            assertArrayEquals("Round " + round, sequential.driftAnalysis.tracksPossiblyDrifting.toArray(), concurrent.driftAnalysis.tracksPossiblyDrifting.toArray());
+
+            maxObservedSuddenSpeedDecrease = Math.max(maxObservedSuddenSpeedDecrease, concurrent.suddenSpeedChangeAnalysis.tracksWithSuddenSpeedDecrease.size());
+            maxObservedPossiblyDrifting = Math.max(maxObservedPossiblyDrifting, concurrent.driftAnalysis.tracksPossiblyDrifting.size());
+        }
+
+        assertTrue(maxObservedSuddenSpeedDecrease > 0);
+        assertTrue(maxObservedPossiblyDrifting > 0);
+
+        concurrent.playStale();
+        assertTrue(concurrent.suddenSpeedChangeAnalysis.tracksWithSuddenSpeedDecrease.isEmpty());
+        assertTrue(concurrent.driftAnalysis.tracksPossiblyDrifting.isEmpty());
+
+        assertTrue(exceptions.toString(), exceptions.isEmpty());
+    }
+
+    private final class Replay {
+        final EventBus eventBus;
+        final int numPostsPerEvent;
+        final SuddenSpeedChangeAnalysis suddenSpeedChangeAnalysis;
+        final DriftAnalysis driftAnalysis;
+        final List<Track> tracks = new ArrayList<>(NUM_TRACKS);
+
+        /** The test thread plus one party for each event delivery which has been submitted but not yet completed. */
+        final Phaser pendingDeliveries = new Phaser(1);
+
+        /**
+         * @param exceptions collects the exceptions thrown by the analyses.
+         * @param executor the executor to deliver events on; or null to deliver them on the posting thread.
+         * @param numPostsPerEvent the number of times to post each event.
+         */
+        Replay(Queue<Throwable> exceptions, Executor executor, int numPostsPerEvent) {
+            this.numPostsPerEvent = numPostsPerEvent;
+            if (executor == null) {
+                this.eventBus = new EventBus((exception, context) -> exceptions.add(exception));
+            } else {
+                this.eventBus = new AsyncEventBus(delivery -> {
+                    pendingDeliveries.register();
+                    executor.execute(() -> {
+                        try {
+                            delivery.run();
+                        } finally {
+                            pendingDeliveries.arriveAndDeregister();
+                        }
+                    });
+                }, (exception, context) -> exceptions.add(exception));
+            }
+
+            JUnit4Mockery context = new JUnit4Mockery();
+            context.setThreadingPolicy(new Synchroniser());
+            Injector injector = Guice.createInjector(new AbnormalAnalyzerAppTestModule(context));
+            EventRepository eventRepository = injector.getInstance(EventRepository.class);
+            context.checking(new Expectations() {{
+                ignoring(eventRepository);
+            }});
+
+            suddenSpeedChangeAnalysis = injector.getInstance(SuddenSpeedChangeAnalysis.class);
+            driftAnalysis = injector.getInstance(DriftAnalysis.class);
+            eventBus.register(suddenSpeedChangeAnalysis);
+            eventBus.register(driftAnalysis);
+
+            for (int i = 0; i < NUM_TRACKS; i++) {
+                Track track = new Track(219000000 + i);
+                track.update(msg5);
+                tracks.add(track);
+            }
+        }
+
+        /**
+         * Update all tracks and post their events. Tracks are divided into groups which cruise at steady
+         * speed, stop suddenly, or drift sideways at low speed - with the group changing every 30 rounds.
+         */
+        void playRound(int round) {
+            final long t = T0 + round * DT;
+            for (int i = 0; i < NUM_TRACKS; i++) {
+                Track track = tracks.get(i);
+                Position position = track.getPosition() == null ? Position.create(56.0 + i * 0.01, 12.0) : track.getPosition();
+                switch ((i + round / 30) % 3) {
+                    case 0:
+                        track.update(t, move(position, 45.0, 12.0), 45.0f, 12.0f, 45.0f);
+                        break;
+                    case 1:
+                        track.update(t, position, 45.0f, 0.1f, 45.0f);
+                        break;
+                    default:
+                        track.update(t, move(position, 135.0, 2.5), 135.0f, 2.5f, 45.0f);
+                }
+                PositionChangedEvent event = new PositionChangedEvent(track, null);
+                for (int n = 0; n < numPostsPerEvent; n++) {
+                    eventBus.post(event);
+                }
+            }
+            awaitQuiescence();
+        }
+
+        void playStale() {
+            for (Track track : tracks) {
+                eventBus.post(new TrackStaleEvent(track));
+            }
+            awaitQuiescence();
+        }
+
+        /** @return the position reached after DT millis at the given bearing and speed in knots. */
+        private Position move(Position position, double bearing, double speed) {
+            final double distanceMeters = speed * 1852.0 * DT / 3600000.0;
+            final double dLat = distanceMeters * Math.cos(Math.toRadians(bearing)) / 111120.0;
+            final double dLon = distanceMeters * Math.sin(Math.toRadians(bearing)) / (111120.0 * Math.cos(Math.toRadians(position.getLatitude())));
+            return Position.create(position.getLatitude() + dLat, position.getLongitude() + dLon);
+        }
+
+        /** Wait until all events posted so far have been handled. */
+        private void awaitQuiescence() {
+            pendingDeliveries.arriveAndAwaitAdvance();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import dk.dma.ais.tracker.eventEmittingTracker.Track;
+import dk.dma.enav.model.geometry.Position;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DriftRunTest {
+
+    final Track track = new Track(219000606);
+
+    @Test
+    public void olderReportsAreIgnored() {
+        DriftRun run = new DriftRun(track);
+        assertTrue(run.isEmpty());
+
+        run.update(2000, Position.create(56, 12), true);
+        run.update(2000, Position.create(56, 12), false);
+        run.update(1000, Position.create(56, 12), false);
+
+        assertFalse(run.isEmpty());
+        assertEquals(2000, run.getTimeOfLastReport());
+        assertTrue(run.isDrifting());
+        assertEquals(2000, run.getTimeOfRunStart());
+        assertEquals(Long.MIN_VALUE, run.getTimeOfLastNonDriftingReport());
+    }
+
+    @Test
+    public void runRestartsAfterNonDriftingReport() {
+        DriftRun run = new DriftRun(track);
+
+        run.update(1000, Position.create(56.00, 12), true);
+        run.update(2000, Position.create(56.01, 12), true);
+        run.update(3000, Position.create(56.02, 12), false);
+        assertFalse(run.isDrifting());
+        assertEquals(3000, run.getTimeOfLastNonDriftingReport());
+
+        final Position runStart = Position.create(56.03, 12);
+        final Position runEnd = Position.create(56.04, 12);
+        run.update(4000, runStart, true);
+        run.update(5000, runEnd, true);
+        assertTrue(run.isDrifting());
+        assertEquals(4000, run.getTimeOfRunStart());
+        assertSame(runStart, run.getPositionOfRunStart());
+        assertSame(runEnd, run.getPositionOfLastReport());
+    }
+
+    @Test
+    public void driftRunMatchesFullScan() {
+        DriftRun run = new DriftRun(track);
+        Random random = new Random(7);
+
+        final int n = 500;
+        final long observationPeriodMillis = 60000;
+        long[] timestamps = new long[n];
+        Position[] positions = new Position[n];
+        boolean[] drifting = new boolean[n];
+
+        long t = 0;
+        for (int i = 0; i < n; i++) {
+            t += 1000 + random.nextInt(10000);
+            timestamps[i] = t;
+            positions[i] = Position.create(56 + random.nextDouble(), 12 + random.nextDouble());
+            drifting[i] = random.nextInt(8) > 0;
+            run.update(timestamps[i], positions[i], drifting[i]);
+
+            // The drift period is long enough if all reports in the observation period are drifting
+            final long t1 = t - observationPeriodMillis;
+            boolean allDriftingInPeriod = true;
+            for (int j = 0; j <= i; j++) {
+                if (timestamps[j] >= t1 && !drifting[j]) {
+                    allDriftingInPeriod = false;
+                }
+            }
+            assertEquals(allDriftingInPeriod, run.getTimeOfLastNonDriftingReport() < t1);
+
+            // The drift run starts with the oldest report in the uninterrupted sequence of drifting reports
+            assertEquals(drifting[i], run.isDrifting());
+            if (drifting[i]) {
+                int start = i;
+                while (start > 0 && drifting[start - 1]) {
+                    start--;
+                }
+                assertEquals(timestamps[start], run.getTimeOfRunStart());
+                assertSame(positions[start], run.getPositionOfRunStart());
+            }
+            assertSame(positions[i], run.getPositionOfLastReport());
+        }
+    }
+
+}
@@ -15,10 +15,17 @@
  */
 package dk.dma.ais.abnormal.analyzer.analysis;
 
+import dk.dma.ais.abnormal.analyzer.geometry.CartesianEllipse;
+import dk.dma.ais.abnormal.analyzer.geometry.LocalProjection;
+import dk.dma.enav.model.geometry.Ellipse;
 import dk.dma.enav.model.geometry.Position;
 import org.junit.Test;
 
+import java.util.Random;
+
+import static dk.dma.enav.safety.SafetyZones.createEllipse;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class FreeFlowAnalysisTest {
 
@@ -58,4 +65,36 @@ public class FreeFlowAnalysisTest {
         assertEquals(56.000000f, p.getLatitude(), 1e-6);
         assertEquals(11.999919f, p.getLongitude(), 1e-6);
     }
+
+    /**
+     * isCenterOfVesselInside is expected to agree with Ellipse.contains(centerOfVessel(...)) for all vessels whose
+     * center is more than 1 meter from the boundary of the ellipse.
+     */
+    @Test
+    public void isCenterOfVesselInsideIsSameAsEllipseContainsCenterOfVessel() {
+        final Position pc0 = Position.create(56.0, 12.0);
+        final Ellipse ellipse = createEllipse(pc0, pc0, 45.0f, 200, 30, 150, 15, 8, 8, 1);
+        final LocalProjection projection = LocalProjection.anchoredAt(ellipse.getGeodeticReference());
+        final CartesianEllipse cartesianEllipse = CartesianEllipse.of(ellipse);
+        final CartesianEllipse smallerEllipse = new CartesianEllipse(ellipse.getX(), ellipse.getY(), ellipse.getAlpha() - 1.0, ellipse.getBeta() - 1.0, ellipse.getThetaDeg());
+        final CartesianEllipse largerEllipse = new CartesianEllipse(ellipse.getX(), ellipse.getY(), ellipse.getAlpha() + 1.0, ellipse.getBeta() + 1.0, ellipse.getThetaDeg());
+
+        Random random = new Random(3);
+        int numInside = 0;
+        for (int n = 0; n < 2000; n++) {
+            final Position aisPosition = Position.create(56.0 + (random.nextDouble() - 0.5) * 0.015, 12.0 + (random.nextDouble() - 0.5) * 0.025);
+            final float hdg = random.nextFloat() * 360.0f;
+            final int dimStern = random.nextInt(200), dimBow = random.nextInt(100), dimPort = random.nextInt(20), dimStarboard = random.nextInt(20);
+
+            final boolean expected = ellipse.contains(FreeFlowAnalysis.centerOfVessel(aisPosition, hdg, dimStern, dimBow, dimPort, dimStarboard));
+            if (expected != FreeFlowAnalysis.isCenterOfVesselInside(smallerEllipse, projection, aisPosition, hdg, dimStern, dimBow, dimPort, dimStarboard)
+             || expected != FreeFlowAnalysis.isCenterOfVesselInside(largerEllipse, projection, aisPosition, hdg, dimStern, dimBow, dimPort, dimStarboard)) {
+                continue; // Within 1 meter of the boundary
+            }
+
+            assertEquals(expected, FreeFlowAnalysis.isCenterOfVesselInside(cartesianEllipse, projection, aisPosition, hdg, dimStern, dimBow, dimPort, dimStarboard));
+            numInside += expected ? 1 : 0;
+        }
+        assertTrue(numInside > 0);
+    }
 }
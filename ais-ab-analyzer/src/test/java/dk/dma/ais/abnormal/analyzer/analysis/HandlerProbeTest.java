@@ -0,0 +1,86 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import com.google.common.eventbus.Subscribe;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import dk.dma.ais.abnormal.analyzer.AppStatisticsService;
+import dk.dma.ais.abnormal.analyzer.AppStatisticsServiceImpl;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.tracker.eventEmittingTracker.Track;
+import org.junit.Test;
+
+import static com.google.inject.matcher.Matchers.subclassesOf;
+import static org.junit.Assert.assertEquals;
+
+public class HandlerProbeTest {
+
+    @Test
+    public void probeRecordsEveryCall() {
+        AppStatisticsService statisticsService = new AppStatisticsServiceImpl();
+        HandlerProbe probe = new HandlerProbe(statisticsService, "TestAnalysis", "onTest", Long.MAX_VALUE);
+
+        for (int i = 0; i < 10; i++) {
+            long probeStart = probe.enter();
+            probe.exit(probeStart, 123456789);
+        }
+
+        assertEquals(10, statisticsService.getLatencyHistogram("analysis.TestAnalysis.onTest").getCount());
+        assertEquals((Long) 10L, statisticsService.getAnalysisStatisticsSnapshot().get("TestAnalysis").get("onTest calls (sampled)"));
+    }
+
+    @Test
+    public void handlersOfAnalysesCreatedByGuiceAreTraced() {
+        AppStatisticsService statisticsService = new AppStatisticsServiceImpl();
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bindInterceptor(subclassesOf(Analysis.class), HandlerTracingInterceptor.tracedMethods(), new HandlerTracingInterceptor(() -> statisticsService, 1, Long.MAX_VALUE));
+            }
+        });
+
+        TracedAnalysis analysis = injector.getInstance(TracedAnalysis.class);
+        analysis.onTest("event");
+        analysis.onTest("event");
+        analysis.notAHandler();
+
+        assertEquals("TracedAnalysis", analysis.getAnalysisName());
+        assertEquals(2, statisticsService.getLatencyHistogram("analysis.TracedAnalysis.onTest").getCount());
+        assertEquals(0, statisticsService.getLatencyHistogram("analysis.TracedAnalysis.notAHandler").getCount());
+    }
+
+    public static class TracedAnalysis extends Analysis {
+        @Inject
+        public TracedAnalysis() {
+            super(null, null, null);
+        }
+
+        @Subscribe
+        public void onTest(String event) {
+        }
+
+        public void notAHandler() {
+        }
+
+        @Override
+        protected Event buildEvent(Track primaryTrack, Track... otherTracks) {
+            return null;
+        }
+    }
+}
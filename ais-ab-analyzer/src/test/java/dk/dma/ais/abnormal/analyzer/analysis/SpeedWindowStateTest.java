@@ -0,0 +1,134 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.analysis;
+
+import dk.dma.enav.model.geometry.Position;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpeedWindowStateTest {
+
+    final Position position = Position.create(56, 12);
+
+    @Test
+    public void timeOfLastReportAboveHighMark() {
+        SpeedWindowState state = new SpeedWindowState(7f, 1f, 102.2f);
+        assertEquals(-1, state.getTimeOfLastReportAboveHighMark());
+
+        state.update(1000, position, 12.2f);
+        state.update(2000, position, 102.3f);  // Not available
+        state.update(3000, position, 0.1f);
+
+        assertEquals(1000, state.getTimeOfLastReportAboveHighMark());
+    }
+
+    @Test
+    public void olderReportsAreIgnored() {
+        SpeedWindowState state = new SpeedWindowState(7f, 1f, 102.2f);
+
+        assertTrue(state.update(2000, position, 0.1f));
+        assertFalse(state.update(2000, position, 0.1f));
+        assertFalse(state.update(1000, position, 12.2f));
+
+        assertEquals(-1, state.getTimeOfLastReportAboveHighMark());
+    }
+
+    @Test
+    public void reportedSpeedWindowMatchesFullScan() {
+        SpeedWindowState state = new SpeedWindowState(7f, 1f, 102.2f);
+        Random random = new Random(7);
+
+        final int n = 500;
+        final long windowMillis = 60000;
+        long[] timestamps = new long[n];
+        float[] speeds = new float[n];
+
+        long t = 0;
+        for (int i = 0; i < n; i++) {
+            t += 1000 + random.nextInt(10000);
+            timestamps[i] = t;
+            speeds[i] = random.nextInt(4) == 0 ? 10f * random.nextFloat() : random.nextFloat();
+            state.update(timestamps[i], position, speeds[i]);
+
+            float maxSog = Float.NEGATIVE_INFINITY;
+            for (int j = 0; j <= i; j++) {
+                if (timestamps[j] >= t - windowMillis) {
+                    maxSog = Math.max(maxSog, speeds[j]);
+                }
+            }
+            assertEquals(maxSog <= 1f, state.isReportedSpeedAtOrBelowLowMarkSince(t - windowMillis));
+        }
+    }
+
+    @Test
+    public void calculatedSpeed() {
+        SpeedWindowState state = new SpeedWindowState(7f, 1f, 102.2f);
+
+        state.update(0, Position.create(56, 12), 0.1f);
+        state.update(10000, Position.create(56.01, 12), 0.1f);  // ~1100 m in 10 secs
+        state.update(20000, Position.create(56.01, 12), 0.1f);
+        state.update(30000, Position.create(56.01, 12), 0.1f);
+
+        assertFalse(state.isCalculatedSpeedAtOrBelowLowMarkSince(0));
+        assertTrue(state.isCalculatedSpeedAtOrBelowLowMarkSince(10000));
+    }
+
+    @Test
+    public void concurrentUpdatesAndReadsKeepTheStateConsistent() throws Exception {
+        SpeedWindowState state = new SpeedWindowState(7f, 1f, 102.2f);
+        AtomicLong clock = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Void>> analyses = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final Random random = new Random(i);
+                analyses.add(() -> {
+                    for (int j = 0; j < 20000; j++) {
+                        final long t = clock.addAndGet(1000);
+                        state.update(t, position, 10f * random.nextFloat());
+                        state.isReportedSpeedAtOrBelowLowMarkSince(t - 60000);
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> analysis : executor.invokeAll(analyses)) {
+                analysis.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final long t = clock.get() + 1000;
+        state.update(t, position, 0.5f);
+        assertTrue(state.isReportedSpeedAtOrBelowLowMarkSince(t));
+        state.update(t + 1000, position, 5f);
+        assertFalse(state.isReportedSpeedAtOrBelowLowMarkSince(t));
+    }
+}
@@ -21,6 +21,7 @@ import dk.dma.ais.abnormal.analyzer.behaviour.events.AbnormalEventLower;
 import dk.dma.ais.abnormal.analyzer.behaviour.events.AbnormalEventMaintain;
 import dk.dma.ais.abnormal.analyzer.behaviour.events.AbnormalEventRaise;
 import dk.dma.ais.abnormal.event.db.domain.CourseOverGroundEvent;
+import dk.dma.ais.abnormal.event.db.domain.SpeedOverGroundEvent;
 import dk.dma.ais.tracker.eventEmittingTracker.EventEmittingTracker;
 import dk.dma.ais.tracker.eventEmittingTracker.EventEmittingTrackerImpl;
 import dk.dma.ais.tracker.eventEmittingTracker.Track;
@@ -195,55 +196,74 @@ public class BehaviourManagerImplTest {
 
         //
         behaviourManager.normalBehaviourDetected(CourseOverGroundEvent.class, track);
-        eventCertainty = (EventCertainty) track.getNewestTrackingReport().getProperty(BehaviourManagerImpl.getEventCertaintyKey(CourseOverGroundEvent.class));
+        eventCertainty = behaviourManager.getEventCertaintyAtCurrentPosition(CourseOverGroundEvent.class, track);
         System.out.println(eventCertainty);
         assertEquals(EventCertainty.LOWERED, eventCertainty);
 
         // Raise event
         for (int i=0; i<BehaviourManagerImpl.RAISE_EVENT_SCORE_THRESHOLD - 1; i++) {
             behaviourManager.abnormalBehaviourDetected(CourseOverGroundEvent.class, track);
-            eventCertainty = (EventCertainty) track.getNewestTrackingReport().getProperty(BehaviourManagerImpl.getEventCertaintyKey(CourseOverGroundEvent.class));
+            eventCertainty = behaviourManager.getEventCertaintyAtCurrentPosition(CourseOverGroundEvent.class, track);
             System.out.println(eventCertainty);
             assertEquals(EventCertainty.UNCERTAIN, eventCertainty);
         }
 
         behaviourManager.abnormalBehaviourDetected(CourseOverGroundEvent.class, track);
-        eventCertainty = (EventCertainty) track.getNewestTrackingReport().getProperty(BehaviourManagerImpl.getEventCertaintyKey(CourseOverGroundEvent.class));
+        eventCertainty = behaviourManager.getEventCertaintyAtCurrentPosition(CourseOverGroundEvent.class, track);
         System.out.println(eventCertainty);
         assertEquals(EventCertainty.RAISED, eventCertainty);
 
         // Raise again
         behaviourManager.abnormalBehaviourDetected(CourseOverGroundEvent.class, track);
-        eventCertainty = (EventCertainty) track.getNewestTrackingReport().getProperty(BehaviourManagerImpl.getEventCertaintyKey(CourseOverGroundEvent.class));
+        eventCertainty = behaviourManager.getEventCertaintyAtCurrentPosition(CourseOverGroundEvent.class, track);
         System.out.println(eventCertainty);
         assertEquals(EventCertainty.RAISED, eventCertainty);
 
         // Make us a bit uncertain
         behaviourManager.normalBehaviourDetected(CourseOverGroundEvent.class, track);
-        eventCertainty = (EventCertainty) track.getNewestTrackingReport().getProperty(BehaviourManagerImpl.getEventCertaintyKey(CourseOverGroundEvent.class));
+        eventCertainty = behaviourManager.getEventCertaintyAtCurrentPosition(CourseOverGroundEvent.class, track);
         System.out.println(eventCertainty);
         assertEquals(EventCertainty.UNCERTAIN, eventCertainty);
 
         // Reassure us
         behaviourManager.abnormalBehaviourDetected(CourseOverGroundEvent.class, track);
-        eventCertainty = (EventCertainty) track.getNewestTrackingReport().getProperty(BehaviourManagerImpl.getEventCertaintyKey(CourseOverGroundEvent.class));
+        eventCertainty = behaviourManager.getEventCertaintyAtCurrentPosition(CourseOverGroundEvent.class, track);
         System.out.println(eventCertainty);
         assertEquals(EventCertainty.RAISED, eventCertainty);
 
         // Now we require the full no. of consective normal behaviours to lower event
         for (int i=0; i<BehaviourManagerImpl.LOWER_EVENT_SCORE_THRESHOLD-1; i++) {
             behaviourManager.normalBehaviourDetected(CourseOverGroundEvent.class, track);
-            eventCertainty = (EventCertainty) track.getNewestTrackingReport().getProperty(BehaviourManagerImpl.getEventCertaintyKey(CourseOverGroundEvent.class));
+            eventCertainty = behaviourManager.getEventCertaintyAtCurrentPosition(CourseOverGroundEvent.class, track);
             System.out.println(eventCertainty);
             assertEquals(EventCertainty.UNCERTAIN, eventCertainty);
         }
 
         behaviourManager.normalBehaviourDetected(CourseOverGroundEvent.class, track);
-        eventCertainty = (EventCertainty) track.getNewestTrackingReport().getProperty(BehaviourManagerImpl.getEventCertaintyKey(CourseOverGroundEvent.class));
+        eventCertainty = behaviourManager.getEventCertaintyAtCurrentPosition(CourseOverGroundEvent.class, track);
         System.out.println(eventCertainty);
         assertEquals(EventCertainty.LOWERED, eventCertainty);
     }
 
+    @Test
+    public void testEventCertaintyHistory() {
+        final long t1 = track.getTimeOfLastPositionReport();
+        behaviourManager.normalBehaviourDetected(CourseOverGroundEvent.class, track);
+
+        final long t2 = t1 + 10000;
+        track.update(t2, Position.create(56.01, 12.01), 45.0f, 10.1f, 45.0f);
+        behaviourManager.abnormalBehaviourDetected(CourseOverGroundEvent.class, track);
+
+        final long t3 = t2 + 10000;
+        track.update(t3, Position.create(56.02, 12.02), 45.0f, 10.1f, 45.0f);
+
+        assertEquals(EventCertainty.LOWERED, behaviourManager.getEventCertaintyAt(CourseOverGroundEvent.class, track, t1));
+        assertEquals(EventCertainty.UNCERTAIN, behaviourManager.getEventCertaintyAt(CourseOverGroundEvent.class, track, t2));
+        assertEquals(EventCertainty.UNDEFINED, behaviourManager.getEventCertaintyAt(CourseOverGroundEvent.class, track, t3));
+        assertEquals(EventCertainty.UNDEFINED, behaviourManager.getEventCertaintyAt(SpeedOverGroundEvent.class, track, t2));
+        assertEquals(EventCertainty.UNDEFINED, behaviourManager.getEventCertaintyAtCurrentPosition(CourseOverGroundEvent.class, track));
+    }
+
     public final class EventBusSubscriber {
         int numAbnormalEventRaise = 0;
         int numAbnormalEventMaintain = 0;
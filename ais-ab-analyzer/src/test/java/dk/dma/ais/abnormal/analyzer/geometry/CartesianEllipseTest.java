@@ -0,0 +1,192 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.geometry;
+
+import dk.dma.enav.model.geometry.Ellipse;
+import dk.dma.enav.model.geometry.Position;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CartesianEllipseTest {
+
+    private final Position reference = Position.create(56, 12);
+
+    @Test
+    public void contains() {
+        CartesianEllipse ellipse = new CartesianEllipse(10.0, 20.0, 100.0, 10.0, 90.0);
+
+        assertTrue(ellipse.contains(10.0, 20.0));
+        assertTrue(ellipse.contains(10.0, 119.0));
+        assertTrue(ellipse.contains(19.0, 20.0));
+        assertFalse(ellipse.contains(10.0, 121.0));
+        assertFalse(ellipse.contains(21.0, 20.0));
+        assertFalse(ellipse.contains(110.0, 20.0));
+    }
+
+    @Test
+    public void intersectsAxisAligned() {
+        CartesianEllipse e1 = new CartesianEllipse(0.0, 0.0, 100.0, 10.0, 0.0);
+
+        assertTrue(e1.intersects(new CartesianEllipse(150.0, 0.0, 51.0, 5.0, 0.0)));
+        assertFalse(e1.intersects(new CartesianEllipse(150.0, 0.0, 49.0, 5.0, 0.0)));
+        assertTrue(e1.intersects(new CartesianEllipse(0.0, 20.0, 100.0, 10.5, 0.0)));
+        assertFalse(e1.intersects(new CartesianEllipse(0.0, 20.0, 100.0, 9.5, 0.0)));
+        assertTrue(e1.intersects(new CartesianEllipse(0.0, 30.0, 21.0, 5.0, 90.0)));
+        assertFalse(e1.intersects(new CartesianEllipse(0.0, 30.0, 19.0, 5.0, 90.0)));
+
+        // Containment
+        assertTrue(e1.intersects(new CartesianEllipse(10.0, 1.0, 5.0, 2.0, 33.0)));
+        assertTrue(new CartesianEllipse(10.0, 1.0, 5.0, 2.0, 33.0).intersects(e1));
+    }
+
+    @Test
+    public void intersectsIsEquivalentToSampledBoundaries() {
+        Random random = new Random(1);
+        int numIntersecting = 0;
+        for (int n = 0; n < 5000; n++) {
+            CartesianEllipse e1 = randomEllipse(random);
+            CartesianEllipse e2 = randomEllipse(random);
+
+            boolean expected = sampledIntersects(e1, e2, 0.995);
+            if (expected != sampledIntersects(e1, e2, 1.005)) {
+                continue; // Nearly tangent - undecidable by sampling
+            }
+
+            assertEquals(e1 + " " + e2, expected, e1.intersects(e2));
+            assertEquals(e1 + " " + e2, expected, e2.intersects(e1));
+            numIntersecting += expected ? 1 : 0;
+        }
+        assertTrue(numIntersecting > 0);
+    }
+
+    /**
+     * CartesianEllipse.intersects is expected to agree with Ellipse.intersects for all pairs of ellipses,
+     * which do not become tangent when their axes are scaled by less than 0.5%.
+     */
+    @Test
+    public void intersectsIsEquivalentToEllipse() {
+        Random random = new Random(2);
+        for (int n = 0; n < 2000; n++) {
+            CartesianEllipse e1 = randomEllipse(random);
+            CartesianEllipse e2 = randomEllipse(random);
+
+            boolean expected = e1.intersects(e2);
+            if (expected != scaled(e1, 0.995).intersects(scaled(e2, 0.995)) || expected != scaled(e1, 1.005).intersects(scaled(e2, 1.005))) {
+                continue;
+            }
+
+            Ellipse ellipse1 = e1.toEllipse(reference);
+            Ellipse ellipse2 = e2.toEllipse(reference);
+            assertEquals(e1 + " " + e2, expected, ellipse1.intersects(ellipse2));
+        }
+    }
+
+    @Test
+    public void mayIntersectIsConservative() {
+        Random random = new Random(3);
+        int numRejected = 0;
+        for (int n = 0; n < 5000; n++) {
+            CartesianEllipse e1 = randomEllipse(random);
+            CartesianEllipse e2 = randomEllipse(random);
+
+            if (e1.intersects(e2)) {
+                assertTrue(e1 + " " + e2, e1.mayIntersect(e2));
+            }
+            assertEquals(e1.mayIntersect(e2), e2.mayIntersect(e1));
+            numRejected += e1.mayIntersect(e2) ? 0 : 1;
+        }
+        assertTrue(numRejected > 0);
+    }
+
+    @Test
+    public void mayIntersect() {
+        CartesianEllipse e1 = new CartesianEllipse(0.0, 0.0, 100.0, 10.0, 0.0);
+
+        assertEquals(100.0, e1.getBoundingRadius(), 1e-12);
+        assertTrue(e1.mayIntersect(new CartesianEllipse(0.0, 149.0, 50.0, 5.0, 0.0)));
+        assertFalse(e1.mayIntersect(new CartesianEllipse(0.0, 151.0, 50.0, 5.0, 0.0)));
+    }
+
+    @Test
+    public void ofAndToEllipse() {
+        CartesianEllipse e1 = new CartesianEllipse(1.0, 2.0, 3.0, 4.0, 5.0);
+        CartesianEllipse e2 = CartesianEllipse.of(e1.toEllipse(reference));
+
+        assertEquals(1.0, e2.getX(), 1e-12);
+        assertEquals(2.0, e2.getY(), 1e-12);
+        assertEquals(3.0, e2.getAlpha(), 1e-12);
+        assertEquals(4.0, e2.getBeta(), 1e-12);
+        assertEquals(5.0, e2.getThetaDeg(), 1e-12);
+    }
+
+    @Test
+    public void projectionRoundTrip() {
+        LocalProjection projection = LocalProjection.anchoredAt(reference);
+        assertEquals(0.0, projection.x(reference), 1e-9);
+        assertEquals(0.0, projection.y(reference), 1e-9);
+
+        Position position = Position.create(56.01, 12.02);
+        Position roundTripped = projection.position(projection.x(position), projection.y(position));
+        assertEquals(position.getLatitude(), roundTripped.getLatitude(), 1e-9);
+        assertEquals(position.getLongitude(), roundTripped.getLongitude(), 1e-9);
+
+        assertTrue(LocalProjection.reuseOrAnchorAt(projection, Position.create(56, 12)) == projection);
+        assertFalse(LocalProjection.reuseOrAnchorAt(projection, position) == projection);
+    }
+
+    @Test
+    public void rotate() {
+        assertEquals(0.0, LocalProjection.rotateX(1.0, 1.0, 1.0, 0.0, 90.0), 1e-12);
+        assertEquals(0.0, LocalProjection.rotateY(1.0, 1.0, 1.0, 0.0, 90.0), 1e-12);
+        assertEquals(1.0, LocalProjection.rotateX(2.0, 0.0, 1.0, 0.0, 90.0), 1e-12);
+        assertEquals(1.0, LocalProjection.rotateY(2.0, 0.0, 1.0, 0.0, 90.0), 1e-12);
+    }
+
+    private static CartesianEllipse randomEllipse(Random random) {
+        return new CartesianEllipse(random.nextGaussian() * 100.0, random.nextGaussian() * 100.0, 1.0 + random.nextDouble() * 150.0, 1.0 + random.nextDouble() * 40.0, random.nextDouble() * 360.0);
+    }
+
+    private static CartesianEllipse scaled(CartesianEllipse e, double scale) {
+        return new CartesianEllipse(e.getX(), e.getY(), e.getAlpha() * scale, e.getBeta() * scale, e.getThetaDeg());
+    }
+
+    private static boolean sampledIntersects(CartesianEllipse e1, CartesianEllipse e2, double scale) {
+        if (e1.contains(e2.getX(), e2.getY()) || e2.contains(e1.getX(), e1.getY())) {
+            return true;
+        }
+        return isSampledBoundaryInside(e1, e2, scale) || isSampledBoundaryInside(e2, e1, scale);
+    }
+
+    private static boolean isSampledBoundaryInside(CartesianEllipse boundary, CartesianEllipse ellipse, double scale) {
+        final int numSamples = 2000;
+        final double theta = Math.toRadians(boundary.getThetaDeg());
+        for (int i = 0; i < numSamples; i++) {
+            final double w = 2.0 * Math.PI * i / numSamples;
+            final double u = boundary.getAlpha() * scale * Math.cos(w);
+            final double v = boundary.getBeta() * scale * Math.sin(w);
+            if (ellipse.contains(boundary.getX() + Math.cos(theta) * u - Math.sin(theta) * v, boundary.getY() + Math.sin(theta) * u + Math.cos(theta) * v)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.analyzer.geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClosestPointOfApproachTest {
+
+    @Test
+    public void compute() {
+        double[] dx  = { 1000.0,  1000.0, 1000.0, 1000.0,  0.0, 1000.0 };
+        double[] dy  = {    0.0,   100.0,    0.0,    0.0, 50.0,    0.0 };
+        double[] dvx = {  -10.0,   -10.0,   10.0,    0.0,  0.0,   -1.0 };
+        double[] dvy = {    0.0,     0.0,    0.0,    0.0,  0.0,    0.0 };
+        double[] tcpa = new double[dx.length];
+        double[] dcpa = new double[dx.length];
+
+        ClosestPointOfApproach.compute(dx.length, dx, dy, dvx, dvy, 300.0, tcpa, dcpa);
+
+        // Head-on
+        assertEquals(100.0, tcpa[0], 1e-9);
+        assertEquals(0.0, dcpa[0], 1e-9);
+        // Passing
+        assertEquals(100.0, tcpa[1], 1e-9);
+        assertEquals(100.0, dcpa[1], 1e-9);
+        // Moving apart
+        assertEquals(0.0, tcpa[2], 1e-9);
+        assertEquals(1000.0, dcpa[2], 1e-9);
+        // Same velocity
+        assertEquals(0.0, tcpa[3], 1e-9);
+        assertEquals(1000.0, dcpa[3], 1e-9);
+        assertEquals(0.0, tcpa[4], 1e-9);
+        assertEquals(50.0, dcpa[4], 1e-9);
+        // Beyond horizon
+        assertEquals(300.0, tcpa[5], 1e-9);
+        assertEquals(700.0, dcpa[5], 1e-9);
+    }
+
+    @Test
+    public void dcpaIsMinimumDistanceWithinHorizon() {
+        Random random = new Random(1);
+        final int n = 1000;
+        final double horizon = 600.0;
+        double[] dx = new double[n], dy = new double[n], dvx = new double[n], dvy = new double[n];
+        for (int i = 0; i < n; i++) {
+            dx[i] = random.nextGaussian() * 2000.0;
+            dy[i] = random.nextGaussian() * 2000.0;
+            dvx[i] = random.nextGaussian() * 10.0;
+            dvy[i] = random.nextGaussian() * 10.0;
+        }
+        double[] tcpa = new double[n];
+        double[] dcpa = new double[n];
+
+        ClosestPointOfApproach.compute(n, dx, dy, dvx, dvy, horizon, tcpa, dcpa);
+
+        for (int i = 0; i < n; i++) {
+            assertTrue(tcpa[i] >= 0.0 && tcpa[i] <= horizon);
+            for (double t = 0.0; t <= horizon; t += 1.0) {
+                assertTrue(dcpa[i] <= Math.hypot(dx[i] + dvx[i] * t, dy[i] + dvy[i] * t) + 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void velocity() {
+        assertEquals(0.0, ClosestPointOfApproach.velocityX(0.0f, 10.0f), 1e-9);
+        assertEquals(10.0 * 1852.0 / 3600.0, ClosestPointOfApproach.velocityY(0.0f, 10.0f), 1e-9);
+        assertEquals(10.0 * 1852.0 / 3600.0, ClosestPointOfApproach.velocityX(90.0f, 10.0f), 1e-9);
+        assertEquals(0.0, ClosestPointOfApproach.velocityY(90.0f, 10.0f), 1e-9);
+        assertEquals(-10.0 * 1852.0 / 3600.0, ClosestPointOfApproach.velocityX(270.0f, 10.0f), 1e-9);
+    }
+}
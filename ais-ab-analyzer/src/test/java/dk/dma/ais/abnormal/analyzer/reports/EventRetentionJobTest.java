@@ -0,0 +1,35 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.analyzer.reports;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventRetentionJobTest {
+
+    @Test
+    public void retentionCutoff() {
+        assertEquals(LocalDateTime.of(2014, 3, 1, 0, 0).toInstant(ZoneOffset.UTC), EventRetentionJob.retentionCutoff(YearMonth.of(2014, 4), 1).toInstant());
+        assertEquals(LocalDateTime.of(2013, 12, 1, 0, 0).toInstant(ZoneOffset.UTC), EventRetentionJob.retentionCutoff(YearMonth.of(2014, 4), 4).toInstant());
+    }
+}
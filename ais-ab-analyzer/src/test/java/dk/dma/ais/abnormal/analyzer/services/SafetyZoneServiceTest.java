@@ -1,7 +1,11 @@
 package dk.dma.ais.abnormal.analyzer.services;
 
+import dk.dma.ais.abnormal.analyzer.geometry.CartesianEllipse;
+import dk.dma.ais.abnormal.analyzer.geometry.LocalProjection;
 import dk.dma.enav.model.geometry.Ellipse;
 import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.util.CoordinateConverter;
+import dk.dma.enav.util.geometry.Point;
 import org.apache.commons.configuration.Configuration;
 import org.jmock.Expectations;
 import org.jmock.integration.junit4.JUnit4Mockery;
@@ -12,6 +16,7 @@ import org.junit.Test;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_SAFETYZONES_SAFETY_ELLIPSE_BEHIND;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_SAFETYZONES_SAFETY_ELLIPSE_BREADTH;
 import static dk.dma.ais.abnormal.analyzer.config.Configuration.CONFKEY_SAFETYZONES_SAFETY_ELLIPSE_LENGTH;
+import static dk.dma.enav.util.compass.CompassUtils.compass2cartesian;
 import static java.lang.Math.abs;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -165,4 +170,49 @@ public class SafetyZoneServiceTest {
         assertEquals(0.0, safetyEllipse.getThetaDeg(), 1e-6);
     }
 
+    @Test
+    public void safetyZoneInReusedProjectionIsSameAsSafetyZone() {
+        LocalProjection projection = LocalProjection.anchoredAt(position);
+        for (float cog = 0.0f; cog < 360.0f; cog += 7.5f) {
+            Position otherPosition = Position.create(56.005, 12.01);
+
+            Ellipse expected = sut.safetyZone(position, otherPosition, cog, 10.0f, 100.0f, 15.0f, 65.0f, 5.5f);
+            CartesianEllipse actual = sut.safetyZone(projection, otherPosition, cog, 10.0f, 100.0f, 15.0f, 65.0f, 5.5f);
+            assertSameEllipse(expected, actual);
+
+            expected = sut.vesselExtent(position, otherPosition, cog, 100.0f, 15.0f, 65.0f, 5.5f);
+            actual = sut.vesselExtent(projection, otherPosition, cog, 100.0f, 15.0f, 65.0f, 5.5f);
+            assertSameEllipse(expected, actual);
+        }
+    }
+
+    @Test
+    public void vesselExtentIsSameAsComputedWithPoints() {
+        final Position otherPosition = Position.create(56.005, 12.01);
+        final float hdg = 33.0f, loa = 100.0f, beam = 15.0f, dimStern = 65.0f, dimStarboard = 5.5f;
+
+        // Reference computation using a CoordinateConverter and Points (as SafetyZoneService used to)
+        final double thetaDeg = compass2cartesian(hdg);
+        final CoordinateConverter coordinateConverter = new CoordinateConverter(position.getLongitude(), position.getLatitude());
+        final double x = coordinateConverter.lon2x(otherPosition.getLongitude(), otherPosition.getLatitude());
+        final double y = coordinateConverter.lat2y(otherPosition.getLongitude(), otherPosition.getLatitude());
+        final Point pt0 = new Point(x, y);
+        final Point pt1 = new Point(pt0.getX() - dimStern + loa*0.5, pt0.getY() + dimStarboard - beam/2.0).rotate(pt0, thetaDeg);
+
+        Ellipse ellipse = sut.vesselExtent(position, otherPosition, hdg, loa, beam, dimStern, dimStarboard);
+        assertEquals(pt1.getX(), ellipse.getX(), 1e-9);
+        assertEquals(pt1.getY(), ellipse.getY(), 1e-9);
+        assertEquals(loa/2.0, ellipse.getAlpha(), 1e-9);
+        assertEquals(beam/2.0, ellipse.getBeta(), 1e-9);
+        assertEquals(thetaDeg, ellipse.getThetaDeg(), 1e-9);
+    }
+
+    private static void assertSameEllipse(Ellipse expected, CartesianEllipse actual) {
+        assertEquals(expected.getX(), actual.getX(), 1e-9);
+        assertEquals(expected.getY(), actual.getY(), 1e-9);
+        assertEquals(expected.getAlpha(), actual.getAlpha(), 1e-9);
+        assertEquals(expected.getBeta(), actual.getBeta(), 1e-9);
+        assertEquals(expected.getThetaDeg(), actual.getThetaDeg(), 1e-9);
+    }
+
 }
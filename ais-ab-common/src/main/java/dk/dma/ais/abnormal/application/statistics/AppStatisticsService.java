@@ -18,6 +18,8 @@ package dk.dma.ais.abnormal.application.statistics;
 
 import net.jcip.annotations.ThreadSafe;
 
+import java.util.function.LongSupplier;
+
 /**
  * A statistics service class which can be called with updates for certain events, such as reception of
  * a packet or a message. Via the dumpStatistics() method the service can dump its collected statistics
@@ -80,6 +82,11 @@ public interface AppStatisticsService {
 
     long getStatMsgCount();
 
+    /**
+     * Increment no. of packets which could not be decoded into an AIS message.
+     */
+    void incInvalidPacketCount();
+
     /**
      * Increment no. of messages received out of sequence.
      */
@@ -87,6 +94,31 @@ public interface AppStatisticsService {
 
     void setTrackCount(int trackCount);
 
+    /**
+     * Get the latency histogram with the given name. The histogram is created on first request,
+     * and the same histogram is returned on subsequent requests with the same name.
+     *
+     * @param name the name of the histogram.
+     * @return the latency histogram.
+     */
+    LatencyHistogram getLatencyHistogram(String name);
+
+    /**
+     * Register a gauge whose value is obtained from the supplier each time statistics are dumped or written
+     * as metrics. A gauge registered under an existing name replaces the previous one.
+     *
+     * @param name the name of the gauge.
+     * @param value supplier of the current value of the gauge.
+     */
+    void registerGauge(String name, LongSupplier value);
+
+    /**
+     * Write the current state of application statistics as metrics.
+     *
+     * @param writer the writer to receive the metrics.
+     */
+    void writeMetrics(MetricsWriter writer);
+
     /**
      * Dump the current state of application statistics to the system log service.
      */
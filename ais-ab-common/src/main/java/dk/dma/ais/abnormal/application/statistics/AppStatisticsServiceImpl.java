@@ -21,11 +21,17 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 /**
  * Class for holding information on the file processing process
@@ -46,11 +52,15 @@ public class AppStatisticsServiceImpl implements AppStatisticsService {
     private final AtomicLong unfilteredPacketCount = new AtomicLong(0);
     private final AtomicLong filteredPacketCount = new AtomicLong(0);
     private final AtomicLong messageCount = new AtomicLong(0);
+    private final AtomicLong invalidPacketCount = new AtomicLong(0);
     private final AtomicLong messagesOutOfSequence = new AtomicLong(0);
     private final AtomicLong posMsgCount = new AtomicLong(0);
     private final AtomicLong statMsgCount = new AtomicLong(0);
     private final AtomicInteger trackCount = new AtomicInteger(0);
 
+    private final ConcurrentMap<String, LatencyHistogram> latencyHistograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
     private final ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(1);
 
     public AppStatisticsServiceImpl() {
@@ -125,6 +135,11 @@ public class AppStatisticsServiceImpl implements AppStatisticsService {
         statMsgCount.incrementAndGet();
     }
 
+    @Override
+    public final void incInvalidPacketCount() {
+        invalidPacketCount.incrementAndGet();
+    }
+
     @Override
     public final void incOutOfSequenceMessages() {
        messagesOutOfSequence.incrementAndGet();
@@ -135,6 +150,41 @@ public class AppStatisticsServiceImpl implements AppStatisticsService {
         this.trackCount.set(trackCount);
     }
 
+    @Override
+    public final LatencyHistogram getLatencyHistogram(String name) {
+        return latencyHistograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    protected final Map<String, LatencyHistogram> getLatencyHistograms() {
+        return Collections.unmodifiableMap(new TreeMap<>(latencyHistograms));
+    }
+
+    @Override
+    public final void registerGauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    protected final Map<String, Long> getGaugeValues() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, value) -> values.put(name, value.getAsLong()));
+        return Collections.unmodifiableMap(values);
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter writer) {
+        writer.gauge("ais_ab_uptime_seconds", "Time since the application was started", Duration.between(timeStart, LocalDateTime.now()).getSeconds());
+        writer.counter("ais_ab_packets_unfiltered_total", "Packets received prior to any filtering", unfilteredPacketCount.get());
+        writer.counter("ais_ab_packets_filtered_total", "Packets received after filtering", filteredPacketCount.get());
+        writer.counter("ais_ab_packets_invalid_total", "Packets which could not be decoded", invalidPacketCount.get());
+        writer.counter("ais_ab_messages_total", "AIS messages received", messageCount.get());
+        writer.counter("ais_ab_messages_out_of_sequence_total", "AIS messages received out of sequence", messagesOutOfSequence.get());
+        writer.counter("ais_ab_messages_position_total", "Position messages received", posMsgCount.get());
+        writer.counter("ais_ab_messages_static_total", "Static and voyage related messages received", statMsgCount.get());
+        writer.gauge("ais_ab_tracks", "No. of tracks currently maintained", trackCount.get());
+        writer.gauge("ais_ab_gauge", "Application gauges", "name", getGaugeValues());
+        writer.summary("ais_ab_latency_seconds", "Processing latency", "operation", getLatencyHistograms());
+    }
+
     protected double getMessageRate() {
         double secs = (double)(System.currentTimeMillis() - lastDump.get()) / 1000.0;
         long msgs = messageCount.get() - lastMessageCount.get();
@@ -159,11 +209,17 @@ public class AppStatisticsServiceImpl implements AppStatisticsService {
         LOG.info(String.format("%-30s %9d", "Unfiltered packet count", unfilteredPacketCount.get()));
         LOG.info(String.format("%-30s %9d", "Filtered packet count", filteredPacketCount.get()));
         LOG.info(String.format("%-30s %9d", "Message count", messageCount.get()));
+        LOG.info(String.format("%-30s %9d", "Invalid packet count", invalidPacketCount.get()));
         LOG.info(String.format("%-30s %9d", "Messages out of sequence", messagesOutOfSequence.get()));
         LOG.info(String.format("%-30s %9d", "Pos message count", posMsgCount.get()));
         LOG.info(String.format("%-30s %9d", "Stat message count", statMsgCount.get()));
         LOG.info(String.format("%-30s %9d", "Track count", trackCount.get()));
         LOG.info(String.format("%-30s %9.0f msg/sec", "Message rate", getMessageRate()));
+        getGaugeValues().forEach((name, value) -> LOG.info(String.format("%-30s %9d", name, value)));
+        getLatencyHistograms().forEach((name, histogram) ->
+            LOG.info(String.format("%-30s %9d calls, p50 %9d us, p99 %9d us, max %9d us", "Latency " + name, histogram.getCount(),
+                histogram.getValueAtPercentile(50.0) / 1000, histogram.getValueAtPercentile(99.0) / 1000, histogram.getMax() / 1000))
+        );
         LOG.info("==== Application statistics ====");
     }
 }
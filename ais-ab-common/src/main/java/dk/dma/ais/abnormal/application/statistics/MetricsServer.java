@@ -0,0 +1,120 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dma.ais.abnormal.application.statistics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A minimal embedded HTTP server which exposes the live metrics of an AppStatisticsService
+ * on the path /metrics in Prometheus text format.
+ *
+ * The server uses a single daemon thread, so it never competes noticeably with the application
+ * for CPU and never prevents the JVM from terminating.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+public class MetricsServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsServer.class);
+
+    public static final String PATH = "/metrics";
+
+    private final AppStatisticsService statisticsService;
+    private final int port;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MetricsServer(AppStatisticsService statisticsService, int port) {
+        this.statisticsService = statisticsService;
+        this.port = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+
+        LOG.debug("Starting metrics server.");
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        LOG.info("Metrics server started on http://0.0.0.0:" + server.getAddress().getPort() + PATH);
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+
+        LOG.debug("Stopping metrics server.");
+        server.stop(0);
+        executor.shutdown();
+        server = null;
+        executor = null;
+        LOG.info("Metrics server stopped.");
+    }
+
+    /**
+     * @return the port the server is listening on, or -1 if it is not started.
+     */
+    public synchronized int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            MetricsWriter writer = new MetricsWriter();
+            statisticsService.writeMetrics(writer);
+            byte[] body = writer.toString().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", MetricsWriter.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (RuntimeException | IOException e) {
+            LOG.error(e.getMessage(), e);
+            // The status can only be changed as long as the response headers have not been sent
+            if (exchange.getResponseCode() == -1) {
+                exchange.sendResponseHeaders(500, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package dk.dma.ais.abnormal.application.statistics;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writer of metrics in the Prometheus text exposition format (version 0.0.4).
+ *
+ * Each metric family is introduced by a call to one of the family methods (counter(), gauge(), summary())
+ * followed by one or more samples.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@NotThreadSafe
+public final class MetricsWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final StringBuilder out = new StringBuilder(4096);
+
+    /** Write a counter family with a single unlabelled sample. */
+    public MetricsWriter counter(String name, String help, long value) {
+        family(name, "counter", help);
+        return sample(name, value);
+    }
+
+    /** Write a gauge family with a single unlabelled sample. */
+    public MetricsWriter gauge(String name, String help, double value) {
+        family(name, "gauge", help);
+        return sample(name, value);
+    }
+
+    /** Write a gauge family with one sample per map entry; the map key becomes the value of the given label. */
+    public MetricsWriter gauge(String name, String help, String labelName, Map<String, ? extends Number> values) {
+        family(name, "gauge", help);
+        values.forEach((labelValue, value) -> sample(name, labelName, labelValue, value.doubleValue()));
+        return this;
+    }
+
+    /**
+     * Write a gauge family with one sample per inner map entry; the outer and inner map keys become the values
+     * of the first and second label, respectively.
+     */
+    public MetricsWriter gauge(String name, String help, String labelName1, String labelName2, Map<String, ? extends Map<String, ? extends Number>> values) {
+        family(name, "gauge", help);
+        values.forEach((labelValue1, innerValues) -> innerValues.forEach((labelValue2, value) ->
+            out.append(name).append('{')
+               .append(labelName1).append("=\"").append(escape(labelValue1)).append("\",")
+               .append(labelName2).append("=\"").append(escape(labelValue2)).append("\"} ")
+               .append(format(value.doubleValue())).append('\n')
+        ));
+        return this;
+    }
+
+    /**
+     * Write a summary family (in seconds) with one set of quantiles per histogram; the map key becomes the value
+     * of the given label. A companion gauge family named name + "_max" holds the max. values.
+     */
+    public MetricsWriter summary(String name, String help, String labelName, Map<String, LatencyHistogram> histograms) {
+        family(name, "summary", help);
+        histograms.forEach((labelValue, histogram) -> {
+            for (double quantile : QUANTILES) {
+                out.append(name).append('{')
+                   .append(labelName).append("=\"").append(escape(labelValue)).append("\",")
+                   .append("quantile=\"").append(quantile).append("\"} ")
+                   .append(format(histogram.getValueAtPercentile(quantile * 100.0) / NANOS_PER_SECOND)).append('\n');
+            }
+            sample(name + "_sum", labelName, labelValue, histogram.getSum() / NANOS_PER_SECOND);
+            sample(name + "_count", labelName, labelValue, histogram.getCount());
+        });
+
+        family(name + "_max", "gauge", help + " (max.)");
+        histograms.forEach((labelValue, histogram) -> sample(name + "_max", labelName, labelValue, histogram.getMax() / NANOS_PER_SECOND));
+
+        return this;
+    }
+
+    private void family(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private MetricsWriter sample(String name, double value) {
+        out.append(name).append(' ').append(format(value)).append('\n');
+        return this;
+    }
+
+    private MetricsWriter sample(String name, String labelName, String labelValue, double value) {
+        out.append(name).append('{').append(labelName).append("=\"").append(escape(labelValue)).append("\"} ").append(format(value)).append('\n');
+        return this;
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.9g", value);
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+}
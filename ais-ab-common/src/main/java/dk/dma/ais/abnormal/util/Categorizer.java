@@ -18,6 +18,7 @@ package dk.dma.ais.abnormal.util;
 
 import com.google.common.collect.ImmutableMap;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -29,6 +30,10 @@ import java.util.TreeMap;
  * Numbering of categories starts from 0 (as this is consistent
  * with indexing used by e.g. ThreeKeyMap and FourKeyMap.
  *
+ * The mappings are called for every cell change in both the stat builder and the
+ * analyzer, so ship type, ship length and speed over ground are mapped by indexing
+ * precomputed tables instead of evaluating chains of range comparisons.
+ *
  */
 public final class Categorizer {
 
@@ -82,6 +87,42 @@ public final class Categorizer {
     public static final int NUM_COURSE_OVER_GROUND_CATEGORIES = COG_CATEGORIES.length;
     public static final int NUM_SPEED_OVER_GROUND_CATEGORIES = SOG_CATEGORIES.length;
 
+    /** Ship type category of each ship type 0..255 */
+    private final static byte[] SHIP_TYPE_CATEGORY_TABLE = new byte[256];
+
+    /** Ship length category of each ship length 0..998 (in meters) */
+    private final static byte[] SHIP_LENGTH_CATEGORY_TABLE = new byte[999];
+
+    /** Speed over ground category of each whole no. of knots 0..49; all category boundaries are whole knots */
+    private final static byte[] SOG_CATEGORY_TABLE = new byte[50];
+
+    static {
+        Arrays.fill(SHIP_TYPE_CATEGORY_TABLE, (byte) 8);
+        Arrays.fill(SHIP_TYPE_CATEGORY_TABLE, 1, 30, (byte) 7);
+        Arrays.fill(SHIP_TYPE_CATEGORY_TABLE, 90, 100, (byte) 7);
+        SHIP_TYPE_CATEGORY_TABLE[36] = 6;    // TODO Class B
+        SHIP_TYPE_CATEGORY_TABLE[37] = 6;
+        SHIP_TYPE_CATEGORY_TABLE[30] = 5;
+        Arrays.fill(SHIP_TYPE_CATEGORY_TABLE, 31, 36, (byte) 4);
+        Arrays.fill(SHIP_TYPE_CATEGORY_TABLE, 50, 56, (byte) 4);
+        Arrays.fill(SHIP_TYPE_CATEGORY_TABLE, 40, 50, (byte) 3);
+        Arrays.fill(SHIP_TYPE_CATEGORY_TABLE, 60, 70, (byte) 3);
+        Arrays.fill(SHIP_TYPE_CATEGORY_TABLE, 70, 80, (byte) 2);
+        Arrays.fill(SHIP_TYPE_CATEGORY_TABLE, 80, 90, (byte) 1);
+
+        fillBuckets(SHIP_LENGTH_CATEGORY_TABLE, 0, 1, 50, 100, 200, 999);
+        fillBuckets(SOG_CATEGORY_TABLE, 0, 1, 5, 10, 15, 20, 30, 50);
+    }
+
+    /**
+     * Fill table so that table[i] is c for all boundaries[c-1] <= i < boundaries[c].
+     */
+    private static void fillBuckets(byte[] table, int... boundaries) {
+        for (int c = 1; c < boundaries.length; c++) {
+            Arrays.fill(table, boundaries[c - 1], boundaries[c], (byte) c);
+        }
+    }
+
     private static Map<Short, String> ALL_SHIP_TYPE_CATEGORY_MAPPINGS;
     private static Map<Short, String> ALL_SHIP_SIZE_CATEGORY_MAPPINGS;
     private static Map<Short, String> ALL_COURSE_OVER_GROUND_CATEGORY_MAPPINGS;
@@ -108,27 +149,7 @@ public final class Categorizer {
      * @return
      */
     public static short mapShipTypeToCategory(int shipType) {
-        short category = 8;
-
-        if (shipType > 79 && shipType < 90) {
-            category = 1;
-        } else if (shipType > 69 && shipType < 80) {
-            category = 2;
-        } else if ((shipType > 39 && shipType < 50) || (shipType > 59 && shipType < 70)) {
-            category = 3;
-        } else if ((shipType > 30 && shipType < 36) || (shipType > 49 && shipType < 56)) {
-            category = 4;
-        } else if (shipType == 30) {
-            category = 5;
-        } else if (shipType == 36 || shipType == 37) {    // TODO Class B
-            category = 6;
-        } else if ((shipType > 0 && shipType < 30) || (shipType > 89 && shipType < 100)) {
-            category = 7;
-        } else if (shipType == 0) {
-            category = 8;
-        }
-
-        return (short) category;
+        return shipType >= 0 && shipType < SHIP_TYPE_CATEGORY_TABLE.length ? SHIP_TYPE_CATEGORY_TABLE[shipType] : 8;
     }
 
     /**
@@ -137,23 +158,10 @@ public final class Categorizer {
      * @return
      */
     public static short mapShipLengthToCategory(int shipLength) {
-        short category;
-
-        if (shipLength >= 0 && shipLength < 1) {
-            category = 1;
-        } else if (shipLength >= 1 && shipLength < 50) {
-            category = 2;
-        } else if (shipLength >= 50 && shipLength < 100) {
-            category = 3;
-        } else if (shipLength >= 100 && shipLength < 200) {
-            category = 4;
-        } else if (shipLength >= 200 && shipLength < 999) {
-            category = 5;
-        } else {
+        if (shipLength < 0 || shipLength >= SHIP_LENGTH_CATEGORY_TABLE.length) {
             throw new IllegalArgumentException("shipLength: " + shipLength);
         }
-
-        return (short) category;
+        return SHIP_LENGTH_CATEGORY_TABLE[shipLength];
     }
 
     /**
@@ -172,27 +180,7 @@ public final class Categorizer {
      * @return
      */
     public static short mapSpeedOverGroundToCategory(float sog) {
-        short category;
-
-        if (sog >= 0 && sog < 1) {
-            category = 1;
-        } else if (sog >= 1 && sog < 5) {
-            category = 2;
-        } else if (sog >= 5 && sog < 10) {
-            category = 3;
-        } else if (sog >= 10 && sog < 15) {
-            category = 4;
-        } else if (sog >= 15 && sog < 20) {
-            category = 5;
-        } else if (sog >= 20 && sog < 30) {
-            category = 6;
-        } else if (sog >= 30 && sog < 50) {
-            category = 7;
-        } else {
-            category = 8;
-        }
-
-        return (short) category;
+        return sog >= 0 && sog < SOG_CATEGORY_TABLE.length ? SOG_CATEGORY_TABLE[(int) sog] : 8;
     }
 
     /**
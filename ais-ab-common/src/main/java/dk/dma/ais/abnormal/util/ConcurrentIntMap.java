@@ -0,0 +1,310 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.util;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Arrays;
+
+/**
+ * A thread-safe map from primitive int keys (typically MMSI numbers) to objects.
+ *
+ * The map is split into a number of segments, each guarded by its own lock. Each segment is an open
+ * addressing hash table with linear probing over a primitive int[] of keys, so that no boxing takes
+ * place on lookups or updates, and threads working on different MMSI's rarely contend for the same lock.
+ *
+ * Null values are not supported. Like ConcurrentHashMap, size() is a snapshot which may be outdated
+ * by the time it is returned if other threads are updating the map.
+ *
+ * @param <V> the type of mapped values.
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class ConcurrentIntMap<V> {
+
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    static final int MAX_CONCURRENCY_LEVEL = 256;
+
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+
+    public ConcurrentIntMap() {
+        this(DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param concurrencyLevel the estimated number of concurrently updating threads. Rounded up to the
+     *                         nearest power of two; max. MAX_CONCURRENCY_LEVEL.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentIntMap(int concurrencyLevel) {
+        if (concurrencyLevel < 1 || concurrencyLevel > MAX_CONCURRENCY_LEVEL) {
+            throw new IllegalArgumentException("concurrencyLevel must be 1-" + MAX_CONCURRENCY_LEVEL + " - not " + concurrencyLevel + ".");
+        }
+
+        int numSegments = 1;
+        while (numSegments < concurrencyLevel) {
+            numSegments <<= 1;
+        }
+
+        this.segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment<>(INITIAL_SEGMENT_CAPACITY);
+        }
+        this.segmentMask = numSegments - 1;
+    }
+
+    /**
+     * @return the value mapped to key; or null if none.
+     */
+    public V get(int key) {
+        final int h = hash(key);
+        return segmentFor(h).get(key, h);
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Map key to value.
+     *
+     * @return the value previously mapped to key; or null if none.
+     */
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        final int h = hash(key);
+        return segmentFor(h).put(key, h, value, false);
+    }
+
+    /**
+     * Map key to value unless key is already mapped.
+     *
+     * @return the value currently mapped to key; or null if value was mapped.
+     */
+    public V putIfAbsent(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        final int h = hash(key);
+        return segmentFor(h).put(key, h, value, true);
+    }
+
+    /**
+     * Remove the mapping of key.
+     *
+     * @return the value previously mapped to key; or null if none.
+     */
+    public V remove(int key) {
+        final int h = hash(key);
+        return segmentFor(h).remove(key, h);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (Segment<V> segment : segments) {
+            if (segment.size() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return the keys of the map in ascending order. Each segment is copied atomically, but the map as
+     * a whole is not locked while the keys are collected.
+     */
+    public int[] keys() {
+        int[] keys = new int[0];
+        for (Segment<V> segment : segments) {
+            keys = segment.appendKeysTo(keys);
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private Segment<V> segmentFor(int h) {
+        return segments[(h >>> 24) & segmentMask];
+    }
+
+    /** Spread the bits of the key, so that consecutive MMSI's are scattered across segments and slots. */
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentIntMap{" +
+                "segments=" + segments.length +
+                ", size=" + size() +
+                '}';
+    }
+
+    @ThreadSafe
+    private static final class Segment<V> {
+
+        @GuardedBy("this") private int[] keys;
+        @GuardedBy("this") private Object[] values;
+        @GuardedBy("this") private boolean[] used;
+        @GuardedBy("this") private int size;
+
+        Segment(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            used = new boolean[capacity];
+            size = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(int key, int h) {
+            final int i = indexOf(key, h);
+            return i < 0 ? null : (V) values[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V put(int key, int h, V value, boolean onlyIfAbsent) {
+            final int mask = keys.length - 1;
+            int i = h & mask;
+            while (used[i]) {
+                if (keys[i] == key) {
+                    V oldValue = (V) values[i];
+                    if (!onlyIfAbsent) {
+                        values[i] = value;
+                    }
+                    return oldValue;
+                }
+                i = (i + 1) & mask;
+            }
+
+            used[i] = true;
+            keys[i] = key;
+            values[i] = value;
+            if (++size > (keys.length >> 1) + (keys.length >> 2)) {
+                rehash(keys.length << 1);
+            }
+            return null;
+        }
+
+        /**
+         * Remove using backward shift deletion; entries following the removed one in the same probe
+         * sequence are moved back, so that no tombstones are needed.
+         */
+        @SuppressWarnings("unchecked")
+        synchronized V remove(int key, int h) {
+            final int i = indexOf(key, h);
+            if (i < 0) {
+                return null;
+            }
+
+            final V oldValue = (V) values[i];
+            final int mask = keys.length - 1;
+            int gap = i;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (!used[j]) {
+                    break;
+                }
+                final int home = hash(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+
+            used[gap] = false;
+            values[gap] = null;
+            size--;
+            return oldValue;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            allocate(INITIAL_SEGMENT_CAPACITY);
+        }
+
+        synchronized int[] appendKeysTo(int[] array) {
+            int[] result = Arrays.copyOf(array, array.length + size);
+            int n = array.length;
+            for (int i = 0; i < keys.length; i++) {
+                if (used[i]) {
+                    result[n++] = keys[i];
+                }
+            }
+            return result;
+        }
+
+        private int indexOf(int key, int h) {
+            final int mask = keys.length - 1;
+            for (int i = h & mask; used[i]; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void rehash(int capacity) {
+            final int[] oldKeys = keys;
+            final Object[] oldValues = values;
+            final boolean[] oldUsed = used;
+            final int oldSize = size;
+
+            allocate(capacity);
+            final int mask = capacity - 1;
+            for (int k = 0; k < oldKeys.length; k++) {
+                if (oldUsed[k]) {
+                    int i = hash(oldKeys[k]) & mask;
+                    while (used[i]) {
+                        i = (i + 1) & mask;
+                    }
+                    used[i] = true;
+                    keys[i] = oldKeys[k];
+                    values[i] = oldValues[k];
+                }
+            }
+            size = oldSize;
+        }
+    }
+}
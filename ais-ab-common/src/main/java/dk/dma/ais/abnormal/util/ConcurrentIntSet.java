@@ -0,0 +1,90 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.util;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Arrays;
+
+/**
+ * A thread-safe set of primitive ints (typically MMSI numbers), backed by a ConcurrentIntMap.
+ *
+ * add() and remove() report whether they changed the set, so that callers can perform
+ * check-then-act transitions atomically instead of calling contains() first.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class ConcurrentIntSet {
+
+    private static final Object PRESENT = new Object();
+
+    private final ConcurrentIntMap<Object> map;
+
+    public ConcurrentIntSet() {
+        this.map = new ConcurrentIntMap<>();
+    }
+
+    /**
+     * @param concurrencyLevel the estimated number of concurrently updating threads.
+     */
+    public ConcurrentIntSet(int concurrencyLevel) {
+        this.map = new ConcurrentIntMap<>(concurrencyLevel);
+    }
+
+    /**
+     * @return true if value was added; false if it was already in the set.
+     */
+    public boolean add(int value) {
+        return map.putIfAbsent(value, PRESENT) == null;
+    }
+
+    /**
+     * @return true if value was removed; false if it was not in the set.
+     */
+    public boolean remove(int value) {
+        return map.remove(value) != null;
+    }
+
+    public boolean contains(int value) {
+        return map.containsKey(value);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    /**
+     * @return the values of the set in ascending order.
+     */
+    public int[] toArray() {
+        return map.keys();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
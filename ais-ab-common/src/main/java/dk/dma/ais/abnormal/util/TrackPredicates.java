@@ -26,6 +26,9 @@ import java.util.function.Predicate;
  * It determines what is considered a 'slow vessel', and 'small vessel', a vessel
  * 'engaged in <something>' and so on using function predicates.
  *
+ * Each predicate tests the VesselClass bit of the same name, so the business rules are defined
+ * in VesselClass only.
+ *
  * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
  */
 public final class TrackPredicates {
@@ -33,59 +36,40 @@ public final class TrackPredicates {
     private TrackPredicates() {
     }
 
-    public final static Predicate<Track> isSpecialCraft = track -> {
-        Integer shipType = track.getShipType();
-        return shipType != null && shipType >= 50 && shipType <= 55;
-    };
+    public final static Predicate<Track> isSpecialCraft = track -> isOfVesselClass(track, VesselClass.SPECIAL_CRAFT);
+
+    public final static Predicate<Track> isTankerVessel = track -> isOfVesselClass(track, VesselClass.TANKER_VESSEL);
 
-    public final static Predicate<Track> isTankerVessel = track -> shipTypeCategoryEquals(track, 1);
+    public final static Predicate<Track> isCargoVessel = track -> isOfVesselClass(track, VesselClass.CARGO_VESSEL);
 
-    public final static Predicate<Track> isCargoVessel = track -> shipTypeCategoryEquals(track, 2);
+    public final static Predicate<Track> isPassengerVessel = track -> isOfVesselClass(track, VesselClass.PASSENGER_VESSEL);
 
-    public final static Predicate<Track> isPassengerVessel = track -> shipTypeCategoryEquals(track, 3);
+    public final static Predicate<Track> isSupportVessel = track -> isOfVesselClass(track, VesselClass.SUPPORT_VESSEL);
 
-    public final static Predicate<Track> isSupportVessel = track -> shipTypeCategoryEquals(track, 4);
+    public final static Predicate<Track> isFishingVessel = track -> isOfVesselClass(track, VesselClass.FISHING_VESSEL);
 
-    public final static Predicate<Track> isFishingVessel = track -> shipTypeCategoryEquals(track, 5);
+    public final static Predicate<Track> isClassB = track -> isOfVesselClass(track, VesselClass.CLASS_B);
 
-    public final static Predicate<Track> isClassB = track -> shipTypeCategoryEquals(track, 6);
+    public final static Predicate<Track> isUndefinedVessel = track -> isOfVesselClass(track, VesselClass.UNDEFINED_VESSEL);
 
-    public final static Predicate<Track> isUndefinedVessel = track -> shipTypeCategoryEquals(track, 8);
+    public final static Predicate<Track> isUnknownTypeOrSize = track -> isOfVesselClass(track, VesselClass.UNKNOWN_TYPE_OR_SIZE);
 
-    public final static Predicate<Track> isUnknownTypeOrSize = track -> track.getShipType() == null || track.getVesselLength() == null;
+    public final static Predicate<Track> isSlowVessel = track -> isOfVesselClass(track, VesselClass.SLOW_VESSEL);
 
-    public final static Predicate<Track> isSlowVessel = track -> track.getSpeedOverGround() < 3.0;
+    public final static Predicate<Track> isSpeedInvalid = track -> isOfVesselClass(track, VesselClass.SPEED_INVALID);
 
-    public final static Predicate<Track> isSpeedInvalid = track -> track.getSpeedOverGround() != null && track.getSpeedOverGround() > 102.0f;
-    
-    public final static Predicate<Track> isLongVessel = track -> {
-        Integer length = track.getVesselLength();
-        return length == null ? false : length.intValue() >= 30;
-    };
+    public final static Predicate<Track> isLongVessel = track -> isOfVesselClass(track, VesselClass.LONG_VESSEL);
 
-    public final static Predicate<Track> isVeryLongVessel = track -> {
-        Integer length = track.getVesselLength();
-        return length == null ? false : length.intValue() >= 75;
-    };
+    public final static Predicate<Track> isVeryLongVessel = track -> isOfVesselClass(track, VesselClass.VERY_LONG_VESSEL);
 
-    public final static Predicate<Track> isSmallVessel = track -> {
-        Integer length = track.getVesselLength();
-        return length == null ? false : length < 30;
-    };
+    public final static Predicate<Track> isSmallVessel = track -> isOfVesselClass(track, VesselClass.SMALL_VESSEL);
 
-    public final static Predicate<Track> isEngagedInTowing = track -> {
-        Integer shipType = track.getShipType();
-        return shipType == null ? false : shipType == 31 || shipType == 32;
-    };
+    public final static Predicate<Track> isEngagedInTowing = track -> isOfVesselClass(track, VesselClass.ENGAGED_IN_TOWING);
 
-    public final static Predicate<Track> isEngagedInFishing = track -> {
-        Integer shipType = track.getShipType();
-        return shipType == null ? false : shipType == 30;
-    };
+    public final static Predicate<Track> isEngagedInFishing = track -> isOfVesselClass(track, VesselClass.ENGAGED_IN_FISHING);
 
-    private static boolean shipTypeCategoryEquals(Track track, int category) {
-        Integer shipType = track.getShipType();
-        return shipType != null && Categorizer.mapShipTypeToCategory(shipType) == category;
+    private static boolean isOfVesselClass(Track track, int vesselClass) {
+        return (VesselClass.of(track) & vesselClass) != 0;
     }
 
 }
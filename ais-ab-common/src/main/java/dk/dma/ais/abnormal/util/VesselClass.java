@@ -0,0 +1,152 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.util;
+
+import dk.dma.ais.tracker.eventEmittingTracker.Track;
+import net.jcip.annotations.Immutable;
+
+/**
+ * Vessel classes as bits of an int mask, so that an analysis can test a track against all the vessel
+ * classes it excludes with one AND-and-compare:
+ *
+ * <pre>
+ *     private static final int EXCLUDED_VESSEL_CLASSES = CLASS_B | FISHING_VESSEL | SMALL_VESSEL;
+ *     ...
+ *     if ((VesselClass.of(track) & EXCLUDED_VESSEL_CLASSES) != 0) {
+ *         return;
+ *     }
+ * </pre>
+ *
+ * The TrackPredicate of the same name tests each bit. The bits derived from static data (ship type and
+ * length) are cached on the track and only derived again when its static data change. The bits derived
+ * from the speed over ground are derived on each call.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+public final class VesselClass {
+
+    public static final int TANKER_VESSEL        = 1;
+    public static final int CARGO_VESSEL         = 1 << 1;
+    public static final int PASSENGER_VESSEL     = 1 << 2;
+    public static final int SUPPORT_VESSEL       = 1 << 3;
+    public static final int FISHING_VESSEL       = 1 << 4;
+    public static final int CLASS_B              = 1 << 5;
+    public static final int UNDEFINED_VESSEL     = 1 << 6;
+    public static final int SPECIAL_CRAFT        = 1 << 7;
+    public static final int ENGAGED_IN_TOWING    = 1 << 8;
+    public static final int ENGAGED_IN_FISHING   = 1 << 9;
+    public static final int UNKNOWN_TYPE_OR_SIZE = 1 << 10;
+    public static final int SMALL_VESSEL         = 1 << 11;
+    public static final int LONG_VESSEL          = 1 << 12;
+    public static final int VERY_LONG_VESSEL     = 1 << 13;
+
+    /** Speed over ground below 3 knots - or unknown */
+    public static final int SLOW_VESSEL          = 1 << 14;
+    public static final int SPEED_INVALID        = 1 << 15;
+
+    private static final String VESSEL_CLASS_KEY = "vessel-class";
+
+    private VesselClass() {
+    }
+
+    /**
+     * @return the mask of all vessel classes which track belongs to.
+     */
+    public static int of(Track track) {
+        return staticVesselClassesOf(track) | speedVesselClassesOf(track.getSpeedOverGround());
+    }
+
+    private static int staticVesselClassesOf(Track track) {
+        final Integer shipType = track.getShipType();
+        final Integer shipLength = track.getVesselLength();
+
+        Object cached = track.getProperty(VESSEL_CLASS_KEY);
+        if (cached instanceof StaticVesselClasses && ((StaticVesselClasses) cached).isMadeFrom(shipType, shipLength)) {
+            return ((StaticVesselClasses) cached).mask;
+        }
+
+        StaticVesselClasses staticVesselClasses = new StaticVesselClasses(shipType, shipLength);
+        track.setProperty(VESSEL_CLASS_KEY, staticVesselClasses);
+        return staticVesselClasses.mask;
+    }
+
+    static int staticVesselClassesOf(Integer shipType, Integer shipLength) {
+        int mask = 0;
+
+        if (shipType == null || shipLength == null) {
+            mask |= UNKNOWN_TYPE_OR_SIZE;
+        }
+
+        if (shipType != null) {
+            switch (Categorizer.mapShipTypeToCategory(shipType)) {
+                case 1: mask |= TANKER_VESSEL; break;
+                case 2: mask |= CARGO_VESSEL; break;
+                case 3: mask |= PASSENGER_VESSEL; break;
+                case 4: mask |= SUPPORT_VESSEL; break;
+                case 5: mask |= FISHING_VESSEL; break;
+                case 6: mask |= CLASS_B; break;
+                case 8: mask |= UNDEFINED_VESSEL; break;
+                default:
+            }
+            if (shipType >= 50 && shipType <= 55) {
+                mask |= SPECIAL_CRAFT;
+            }
+            if (shipType == 31 || shipType == 32) {
+                mask |= ENGAGED_IN_TOWING;
+            }
+            if (shipType == 30) {
+                mask |= ENGAGED_IN_FISHING;
+            }
+        }
+
+        if (shipLength != null) {
+            mask |= shipLength < 30 ? SMALL_VESSEL : LONG_VESSEL;
+            if (shipLength >= 75) {
+                mask |= VERY_LONG_VESSEL;
+            }
+        }
+
+        return mask;
+    }
+
+    static int speedVesselClassesOf(Float sog) {
+        if (sog == null) {
+            return SLOW_VESSEL;
+        }
+        return (sog < 3.0f ? SLOW_VESSEL : 0) | (sog > 102.0f ? SPEED_INVALID : 0);
+    }
+
+    @Immutable
+    private static final class StaticVesselClasses {
+        /** Stands in for an unknown ship type or length; both are never negative when known */
+        private static final int UNKNOWN = -1;
+
+        private final int shipType;
+        private final int shipLength;
+        private final int mask;
+
+        private StaticVesselClasses(Integer shipType, Integer shipLength) {
+            this.shipType = shipType == null ? UNKNOWN : shipType;
+            this.shipLength = shipLength == null ? UNKNOWN : shipLength;
+            this.mask = staticVesselClassesOf(shipType, shipLength);
+        }
+
+        private boolean isMadeFrom(Integer shipType, Integer shipLength) {
+            return this.shipType == (shipType == null ? UNKNOWN : shipType) && this.shipLength == (shipLength == null ? UNKNOWN : shipLength);
+        }
+    }
+}
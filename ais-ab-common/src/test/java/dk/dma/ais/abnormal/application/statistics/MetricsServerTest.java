@@ -0,0 +1,100 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.application.statistics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsServerTest {
+
+    private MetricsServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void servesMetricsOfTheStatisticsService() throws IOException {
+        AppStatisticsServiceImpl statisticsService = new AppStatisticsServiceImpl();
+        statisticsService.incMessageCount();
+        statisticsService.incMessageCount();
+        statisticsService.registerGauge("queue", () -> 7);
+
+        server = new MetricsServer(statisticsService, 0);
+        server.start();
+
+        HttpURLConnection connection = connect("GET");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(MetricsWriter.CONTENT_TYPE, connection.getContentType());
+
+        String text = read(connection.getInputStream());
+        assertTrue(text, text.contains("# TYPE ais_ab_messages_total counter\nais_ab_messages_total 2\n"));
+        assertTrue(text, text.contains("ais_ab_gauge{name=\"queue\"} 7\n"));
+    }
+
+    @Test
+    public void rejectsOtherMethodsThanGet() throws IOException {
+        server = new MetricsServer(new AppStatisticsServiceImpl(), 0);
+        server.start();
+
+        assertEquals(405, connect("POST").getResponseCode());
+    }
+
+    @Test
+    public void answersFailingMetricsWith500() throws IOException {
+        server = new MetricsServer(new AppStatisticsServiceImpl() {
+            @Override
+            public void writeMetrics(MetricsWriter writer) {
+                throw new IllegalStateException("Expected by test.");
+            }
+        }, 0);
+        server.start();
+
+        assertEquals(500, connect("GET").getResponseCode());
+    }
+
+    private HttpURLConnection connect(String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + MetricsServer.PATH).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
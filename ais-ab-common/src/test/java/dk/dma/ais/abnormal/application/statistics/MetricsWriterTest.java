@@ -0,0 +1,111 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.application.statistics;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsWriterTest {
+
+    @Test
+    public void writesCountersAndGaugesInTextExpositionFormat() {
+        Map<String, Long> gauges = new LinkedHashMap<>();
+        gauges.put("queue", 3L);
+        gauges.put("shed", 0L);
+
+        String text = new MetricsWriter()
+            .counter("ais_ab_messages_total", "AIS messages received", 42)
+            .gauge("ais_ab_load", "Load", 0.5)
+            .gauge("ais_ab_gauge", "Application gauges", "name", gauges)
+            .toString();
+
+        assertEquals(
+            "# HELP ais_ab_messages_total AIS messages received\n" +
+            "# TYPE ais_ab_messages_total counter\n" +
+            "ais_ab_messages_total 42\n" +
+            "# HELP ais_ab_load Load\n" +
+            "# TYPE ais_ab_load gauge\n" +
+            "ais_ab_load 0.500000000\n" +
+            "# HELP ais_ab_gauge Application gauges\n" +
+            "# TYPE ais_ab_gauge gauge\n" +
+            "ais_ab_gauge{name=\"queue\"} 3\n" +
+            "ais_ab_gauge{name=\"shed\"} 0\n",
+            text
+        );
+    }
+
+    @Test
+    public void writesGaugesWithTwoLabels() {
+        Map<String, Map<String, Integer>> values = new TreeMap<>();
+        values.put("a", singletonMap("x", 1));
+        values.put("b", singletonMap("y", 2));
+
+        String text = new MetricsWriter().gauge("g", "help", "l1", "l2", values).toString();
+
+        assertEquals(
+            "# HELP g help\n" +
+            "# TYPE g gauge\n" +
+            "g{l1=\"a\",l2=\"x\"} 1\n" +
+            "g{l1=\"b\",l2=\"y\"} 2\n",
+            text
+        );
+    }
+
+    @Test
+    public void escapesHelpAndLabelValues() {
+        String text = new MetricsWriter()
+            .gauge("g", "back\\slash\nnewline", "name", singletonMap("quote\"back\\slash\nnewline", 1))
+            .toString();
+
+        assertEquals(
+            "# HELP g back\\\\slash\\nnewline\n" +
+            "# TYPE g gauge\n" +
+            "g{name=\"quote\\\"back\\\\slash\\nnewline\"} 1\n",
+            text
+        );
+    }
+
+    @Test
+    public void writesSummariesInSeconds() {
+        LatencyHistogram histogram = new LatencyHistogram("analysis");
+        histogram.record(1000000000L);
+        histogram.record(2000000000L);
+
+        String text = new MetricsWriter().summary("ais_ab_latency_seconds", "Processing latency", "operation", singletonMap("analysis", histogram)).toString();
+
+        assertTrue(text, text.startsWith(
+            "# HELP ais_ab_latency_seconds Processing latency\n" +
+            "# TYPE ais_ab_latency_seconds summary\n" +
+            "ais_ab_latency_seconds{operation=\"analysis\",quantile=\"0.5\"} "
+        ));
+        assertTrue(text, text.contains("ais_ab_latency_seconds{operation=\"analysis\",quantile=\"0.999\"} "));
+        assertTrue(text, text.contains(
+            "ais_ab_latency_seconds_sum{operation=\"analysis\"} 3\n" +
+            "ais_ab_latency_seconds_count{operation=\"analysis\"} 2\n" +
+            "# HELP ais_ab_latency_seconds_max Processing latency (max.)\n" +
+            "# TYPE ais_ab_latency_seconds_max gauge\n" +
+            "ais_ab_latency_seconds_max{operation=\"analysis\"} 2\n"
+        ));
+    }
+}
@@ -0,0 +1,116 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the table driven mappings of Categorizer with the range comparisons in LegacyCategorizer on a
+ * random mix of realistic input values.
+ *
+ * Not run by the unit tests; run with
+ *
+ *   mvn test-compile exec:java -Dexec.mainClass=dk.dma.ais.abnormal.util.CategorizerBenchmark -Dexec.classpathScope=test
+ *
+ * or by running main() from the IDE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CategorizerBenchmark {
+
+    private static final int N = 4096;
+
+    private final int[] shipTypes = new int[N];
+    private final int[] shipLengths = new int[N];
+    private final float[] sogs = new float[N];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < N; i++) {
+            shipTypes[i] = random.nextInt(100);
+            shipLengths[i] = random.nextInt(400);
+            sogs[i] = random.nextFloat() * 40.0f;
+        }
+    }
+
+    @Benchmark
+    public void shipTypeTable(Blackhole blackhole) {
+        for (int i = 0; i < N; i++) {
+            blackhole.consume(Categorizer.mapShipTypeToCategory(shipTypes[i]));
+        }
+    }
+
+    @Benchmark
+    public void shipTypeRangeComparisons(Blackhole blackhole) {
+        for (int i = 0; i < N; i++) {
+            blackhole.consume(LegacyCategorizer.mapShipTypeToCategory(shipTypes[i]));
+        }
+    }
+
+    @Benchmark
+    public void shipLengthTable(Blackhole blackhole) {
+        for (int i = 0; i < N; i++) {
+            blackhole.consume(Categorizer.mapShipLengthToCategory(shipLengths[i]));
+        }
+    }
+
+    @Benchmark
+    public void shipLengthRangeComparisons(Blackhole blackhole) {
+        for (int i = 0; i < N; i++) {
+            blackhole.consume(LegacyCategorizer.mapShipLengthToCategory(shipLengths[i]));
+        }
+    }
+
+    @Benchmark
+    public void speedOverGroundTable(Blackhole blackhole) {
+        for (int i = 0; i < N; i++) {
+            blackhole.consume(Categorizer.mapSpeedOverGroundToCategory(sogs[i]));
+        }
+    }
+
+    @Benchmark
+    public void speedOverGroundRangeComparisons(Blackhole blackhole) {
+        for (int i = 0; i < N; i++) {
+            blackhole.consume(LegacyCategorizer.mapSpeedOverGroundToCategory(sogs[i]));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CategorizerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -18,7 +18,10 @@ package dk.dma.ais.abnormal.util;
 
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class CategorizerTest {
 
@@ -31,6 +34,57 @@ public class CategorizerTest {
         assertEquals(1, Categorizer.mapCourseOverGroundToCategory((float) 360.000));
     }
 
+    @Test
+    public void mapShipTypeToCategoryIsEquivalentToRangeComparisons() {
+        for (int shipType = -1000; shipType <= 1000; shipType++) {
+            assertEquals("shipType " + shipType, LegacyCategorizer.mapShipTypeToCategory(shipType), Categorizer.mapShipTypeToCategory(shipType));
+        }
+        assertEquals(8, Categorizer.mapShipTypeToCategory(Integer.MIN_VALUE));
+        assertEquals(8, Categorizer.mapShipTypeToCategory(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void mapShipLengthToCategoryIsEquivalentToRangeComparisons() {
+        for (int shipLength = -1000; shipLength <= 2000; shipLength++) {
+            Short expected = null;
+            try {
+                expected = LegacyCategorizer.mapShipLengthToCategory(shipLength);
+            } catch (IllegalArgumentException e) {
+            }
+
+            try {
+                short actual = Categorizer.mapShipLengthToCategory(shipLength);
+                assertEquals("shipLength " + shipLength, expected.shortValue(), actual);
+            } catch (IllegalArgumentException e) {
+                if (expected != null) {
+                    fail("shipLength " + shipLength);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mapSpeedOverGroundToCategoryIsEquivalentToRangeComparisons() {
+        for (int i = -1000; i <= 12000; i++) {
+            float sog = i / 100.0f;
+            assertEquals("sog " + sog, LegacyCategorizer.mapSpeedOverGroundToCategory(sog), Categorizer.mapSpeedOverGroundToCategory(sog));
+        }
+
+        float[] specialValues = {
+            -0.0f, Math.nextDown(1.0f), Math.nextDown(5.0f), Math.nextDown(50.0f), 50.0f, 102.3f, Float.MIN_VALUE,
+            Float.MAX_VALUE, -Float.MAX_VALUE, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NaN
+        };
+        for (float sog : specialValues) {
+            assertEquals("sog " + sog, LegacyCategorizer.mapSpeedOverGroundToCategory(sog), Categorizer.mapSpeedOverGroundToCategory(sog));
+        }
+
+        Random random = new Random(1);
+        for (int n = 0; n < 100000; n++) {
+            float sog = random.nextFloat() * 120.0f - 10.0f;
+            assertEquals("sog " + sog, LegacyCategorizer.mapSpeedOverGroundToCategory(sog), Categorizer.mapSpeedOverGroundToCategory(sog));
+        }
+    }
+
     @Test
     public void testMapShipTypeCategoryToString() {
         assertEquals("tanker", Categorizer.mapShipTypeCategoryToString((short) 1));
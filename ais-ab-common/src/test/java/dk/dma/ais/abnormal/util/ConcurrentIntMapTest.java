@@ -0,0 +1,162 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentIntMapTest {
+
+    @Test
+    public void putGetRemove() {
+        ConcurrentIntMap<String> map = new ConcurrentIntMap<>();
+        assertTrue(map.isEmpty());
+
+        assertNull(map.put(219000606, "a"));
+        assertNull(map.put(0, "b"));
+        assertNull(map.put(-1, "c"));
+        assertEquals("a", map.put(219000606, "d"));
+        assertEquals("d", map.putIfAbsent(219000606, "e"));
+        assertNull(map.putIfAbsent(538004030, "f"));
+
+        assertEquals(4, map.size());
+        assertEquals("d", map.get(219000606));
+        assertEquals("b", map.get(0));
+        assertEquals("c", map.get(-1));
+        assertEquals("f", map.get(538004030));
+        assertNull(map.get(1));
+        assertArrayEquals(new int[] {-1, 0, 219000606, 538004030}, map.keys());
+
+        assertEquals("b", map.remove(0));
+        assertNull(map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(3, map.size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(219000606));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullValuesAreRejected() {
+        new ConcurrentIntMap<String>().put(1, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void concurrencyLevelOutOfRange() {
+        new ConcurrentIntMap<String>(ConcurrentIntMap.MAX_CONCURRENCY_LEVEL + 1);
+    }
+
+    @Test
+    public void randomOperationsAreEquivalentToHashMap() {
+        // A single segment and a narrow key range give long probe sequences and many backward shifts on removal
+        ConcurrentIntMap<Integer> map = new ConcurrentIntMap<>(1);
+        Map<Integer, Integer> reference = new HashMap<>();
+
+        Random random = new Random(42);
+        for (int n = 0; n < 200000; n++) {
+            int key = 219000000 + random.nextInt(2000);
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(reference.put(key, n), map.put(key, n));
+                    break;
+                case 1:
+                    assertEquals(reference.putIfAbsent(key, n), map.putIfAbsent(key, n));
+                    break;
+                case 2:
+                    assertEquals(reference.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(reference.get(key), map.get(key));
+            }
+            assertEquals(reference.size(), map.size());
+        }
+
+        assertArrayEquals(reference.keySet().stream().mapToInt(Integer::intValue).sorted().toArray(), map.keys());
+    }
+
+    @Test
+    public void concurrentUpdatesOfDisjointKeys() throws Exception {
+        final int numThreads = 8;
+        final int keysPerThread = 20000;
+
+        ConcurrentIntMap<Integer> map = new ConcurrentIntMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger errors = new AtomicInteger();
+
+        Future<?>[] futures = new Future<?>[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int thread = t;
+            futures[t] = executor.submit(() -> {
+                try {
+                    start.await();
+                    for (int round = 0; round < 3; round++) {
+                        for (int k = 0; k < keysPerThread; k++) {
+                            int key = k * numThreads + thread;
+                            if (map.put(key, thread) != null) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                        for (int k = 0; k < keysPerThread; k++) {
+                            int key = k * numThreads + thread;
+                            if (k % 2 == 0 && !Integer.valueOf(thread).equals(map.remove(key))) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                        for (int k = 0; k < keysPerThread; k++) {
+                            int key = k * numThreads + thread;
+                            if ((map.get(key) != null) != (k % 2 == 1)) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                        for (int k = 1; k < keysPerThread; k += 2) {
+                            map.remove(k * numThreads + thread);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(0, errors.get());
+        assertTrue(map.isEmpty());
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentIntSetTest {
+
+    @Test
+    public void addContainsRemove() {
+        ConcurrentIntSet set = new ConcurrentIntSet();
+
+        assertTrue(set.add(219000606));
+        assertFalse(set.add(219000606));
+        assertTrue(set.add(538004030));
+        assertTrue(set.contains(219000606));
+        assertFalse(set.contains(212123000));
+        assertEquals(2, set.size());
+        assertArrayEquals(new int[] {219000606, 538004030}, set.toArray());
+        assertEquals("[219000606, 538004030]", set.toString());
+
+        assertTrue(set.remove(219000606));
+        assertFalse(set.remove(219000606));
+        assertFalse(set.contains(219000606));
+        assertEquals(1, set.size());
+
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void onlyOneThreadWinsEachAddAndRemove() throws Exception {
+        final int numThreads = 8;
+        final int numValues = 50000;
+
+        ConcurrentIntSet set = new ConcurrentIntSet();
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        Future<?>[] futures = new Future<?>[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            futures[t] = executor.submit(() -> {
+                for (int v = 0; v < numValues; v++) {
+                    if (set.add(v)) {
+                        added.incrementAndGet();
+                    }
+                }
+                for (int v = 0; v < numValues; v++) {
+                    if (set.remove(v)) {
+                        removed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(removed.get(), added.get());
+        assertTrue(added.get() >= numValues);
+        assertTrue(set.isEmpty());
+    }
+}
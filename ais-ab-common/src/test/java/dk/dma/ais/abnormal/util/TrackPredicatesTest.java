@@ -4,8 +4,11 @@ import dk.dma.ais.packet.AisPacket;
 import dk.dma.ais.tracker.eventEmittingTracker.Track;
 import org.junit.Test;
 
+import static dk.dma.ais.abnormal.util.TrackPredicates.isCargoVessel;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isPassengerVessel;
 import static dk.dma.ais.abnormal.util.TrackPredicates.isUnknownTypeOrSize;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class TrackPredicatesTest {
@@ -25,4 +28,15 @@ public class TrackPredicatesTest {
         assertFalse(isUnknownTypeOrSize.test(track1));
     }
 
+    @Test
+    public void predicatesFollowStaticData() {
+        Track track1 = new Track(219000606);
+        assertFalse(isPassengerVessel.test(track1));
+
+        track1.update(msg5);
+        assertTrue(isPassengerVessel.test(track1));
+        assertFalse(isCargoVessel.test(track1));
+        assertNull(track1.getProperty("ship-type-category"));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.util;
+
+import dk.dma.ais.packet.AisPacket;
+import dk.dma.ais.tracker.eventEmittingTracker.Track;
+import dk.dma.enav.model.geometry.Position;
+import org.junit.Test;
+
+import java.util.function.Predicate;
+
+import static dk.dma.ais.abnormal.util.TrackPredicates.isCargoVessel;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isClassB;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isEngagedInFishing;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isEngagedInTowing;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isFishingVessel;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isLongVessel;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isPassengerVessel;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isSlowVessel;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isSmallVessel;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isSpecialCraft;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isSpeedInvalid;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isSupportVessel;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isTankerVessel;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isUndefinedVessel;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isUnknownTypeOrSize;
+import static dk.dma.ais.abnormal.util.TrackPredicates.isVeryLongVessel;
+import static dk.dma.ais.abnormal.util.VesselClass.CARGO_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.CLASS_B;
+import static dk.dma.ais.abnormal.util.VesselClass.ENGAGED_IN_FISHING;
+import static dk.dma.ais.abnormal.util.VesselClass.ENGAGED_IN_TOWING;
+import static dk.dma.ais.abnormal.util.VesselClass.FISHING_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.LONG_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.PASSENGER_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SLOW_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SMALL_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.SPECIAL_CRAFT;
+import static dk.dma.ais.abnormal.util.VesselClass.SPEED_INVALID;
+import static dk.dma.ais.abnormal.util.VesselClass.SUPPORT_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.TANKER_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.UNDEFINED_VESSEL;
+import static dk.dma.ais.abnormal.util.VesselClass.UNKNOWN_TYPE_OR_SIZE;
+import static dk.dma.ais.abnormal.util.VesselClass.VERY_LONG_VESSEL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class VesselClassTest {
+
+    // [msgId=5, userId=219000606, name=FRIGG SYDFYEN, shipType=61, dimBow=12, dimStern=58]
+    AisPacket msg5 = AisPacket.from(
+        "$PGHP,1,2014,4,10,13,30,29,165,219,,2190067,1,28*22\r\n" +
+        "!BSVDM,2,1,1,A,53@ng7P1uN6PuLpl000I8TLN1=T@ITDp0000000u1Pr844@P07PSiBQ1,0*7B\r\n" +
+        "!BSVDM,2,2,1,A,CcAVCTj0EP00000,2*53");
+
+    @Test
+    public void staticVesselClassesAreEquivalentToShipTypeAndLength() {
+        Integer[] shipLengths = {null, 0, 1, 29, 30, 74, 75, 400};
+        for (int t = -1; t <= 256; t++) {
+            Integer shipType = t < 0 ? null : t;
+            for (Integer shipLength : shipLengths) {
+                final int mask = VesselClass.staticVesselClassesOf(shipType, shipLength);
+                final short category = shipType == null ? 0 : Categorizer.mapShipTypeToCategory(shipType);
+                final String msg = "shipType " + shipType + ", shipLength " + shipLength;
+
+                assertEquals(msg, category == 1, (mask & TANKER_VESSEL) != 0);
+                assertEquals(msg, category == 2, (mask & CARGO_VESSEL) != 0);
+                assertEquals(msg, category == 3, (mask & PASSENGER_VESSEL) != 0);
+                assertEquals(msg, category == 4, (mask & SUPPORT_VESSEL) != 0);
+                assertEquals(msg, category == 5, (mask & FISHING_VESSEL) != 0);
+                assertEquals(msg, category == 6, (mask & CLASS_B) != 0);
+                assertEquals(msg, category == 8, (mask & UNDEFINED_VESSEL) != 0);
+                assertEquals(msg, shipType != null && shipType >= 50 && shipType <= 55, (mask & SPECIAL_CRAFT) != 0);
+                assertEquals(msg, shipType != null && (shipType == 31 || shipType == 32), (mask & ENGAGED_IN_TOWING) != 0);
+                assertEquals(msg, shipType != null && shipType == 30, (mask & ENGAGED_IN_FISHING) != 0);
+                assertEquals(msg, shipType == null || shipLength == null, (mask & UNKNOWN_TYPE_OR_SIZE) != 0);
+                assertEquals(msg, shipLength != null && shipLength < 30, (mask & SMALL_VESSEL) != 0);
+                assertEquals(msg, shipLength != null && shipLength >= 30, (mask & LONG_VESSEL) != 0);
+                assertEquals(msg, shipLength != null && shipLength >= 75, (mask & VERY_LONG_VESSEL) != 0);
+            }
+        }
+    }
+
+    @Test
+    public void speedVesselClasses() {
+        assertEquals(SLOW_VESSEL, VesselClass.speedVesselClassesOf(null));
+        assertEquals(SLOW_VESSEL, VesselClass.speedVesselClassesOf(0.0f));
+        assertEquals(SLOW_VESSEL, VesselClass.speedVesselClassesOf(2.9f));
+        assertEquals(0, VesselClass.speedVesselClassesOf(3.0f));
+        assertEquals(0, VesselClass.speedVesselClassesOf(102.0f));
+        assertEquals(SPEED_INVALID, VesselClass.speedVesselClassesOf(102.3f));
+    }
+
+    @Test
+    public void vesselClassesAreEquivalentToTrackPredicates() {
+        Track track = new Track(219000606);
+        track.update(1411923004556L, Position.create(56, 12), 45.0f, 12.0f, 45.0f);
+        assertEquivalentToTrackPredicates(track);
+
+        track.update(msg5);
+        assertEquivalentToTrackPredicates(track);
+
+        track.update(1411923014556L, Position.create(56.01, 12.01), 45.0f, 1.0f, 45.0f);
+        assertEquivalentToTrackPredicates(track);
+
+        track.update(1411923024556L, Position.create(56.02, 12.02), 45.0f, 102.3f, 45.0f);
+        assertEquivalentToTrackPredicates(track);
+    }
+
+    @Test
+    public void staticVesselClassesAreCachedOnTrack() {
+        Track track = new Track(219000606);
+        track.update(msg5);
+        final int mask = VesselClass.of(track);
+        Object cached = track.getProperty("vessel-class");
+
+        assertEquals(mask, VesselClass.of(track));
+        assertSame(cached, track.getProperty("vessel-class"));
+    }
+
+    private static void assertEquivalentToTrackPredicates(Track track) {
+        final int mask = VesselClass.of(track);
+        assertBit(track, mask, TANKER_VESSEL, isTankerVessel);
+        assertBit(track, mask, CARGO_VESSEL, isCargoVessel);
+        assertBit(track, mask, PASSENGER_VESSEL, isPassengerVessel);
+        assertBit(track, mask, SUPPORT_VESSEL, isSupportVessel);
+        assertBit(track, mask, FISHING_VESSEL, isFishingVessel);
+        assertBit(track, mask, CLASS_B, isClassB);
+        assertBit(track, mask, UNDEFINED_VESSEL, isUndefinedVessel);
+        assertBit(track, mask, SPECIAL_CRAFT, isSpecialCraft);
+        assertBit(track, mask, ENGAGED_IN_TOWING, isEngagedInTowing);
+        assertBit(track, mask, ENGAGED_IN_FISHING, isEngagedInFishing);
+        assertBit(track, mask, UNKNOWN_TYPE_OR_SIZE, isUnknownTypeOrSize);
+        assertBit(track, mask, SMALL_VESSEL, isSmallVessel);
+        assertBit(track, mask, LONG_VESSEL, isLongVessel);
+        assertBit(track, mask, VERY_LONG_VESSEL, isVeryLongVessel);
+        assertBit(track, mask, SLOW_VESSEL, isSlowVessel);
+        assertBit(track, mask, SPEED_INVALID, isSpeedInvalid);
+    }
+
+    private static void assertBit(Track track, int mask, int vesselClass, Predicate<Track> predicate) {
+        assertEquals("vesselClass " + vesselClass, predicate.test(track), (mask & vesselClass) != 0);
+    }
+}
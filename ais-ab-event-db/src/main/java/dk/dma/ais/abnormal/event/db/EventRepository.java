@@ -17,7 +17,10 @@
 package dk.dma.ais.abnormal.event.db;
 
 import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
 
+import java.nio.file.Path;
 import java.util.Date;
 import java.util.List;
 
@@ -38,6 +41,19 @@ public interface EventRepository {
      */
     void save(Event event);
 
+    /**
+     * Append new tracking points to the behaviour of the given vessel in an ongoing event.
+     *
+     * Only the new tracking points are written to persistent storage; the event and the tracking
+     * points it already holds are left untouched. The in-memory event is not required to hold the
+     * full tracking history of the behaviour.
+     *
+     * @param event the ongoing event, as returned by findOngoingEventByVessel().
+     * @param mmsi the vessel whose behaviour the tracking points belong to.
+     * @param trackingPoints the new tracking points.
+     */
+    void appendTrackingPoints(Event event, int mmsi, List<TrackingPoint> trackingPoints);
+
     /**
      * Get an event from the database.
      *
@@ -84,6 +100,55 @@ public interface EventRepository {
      */
     List<Event> findRecentEvents(int numberOfEvents);
 
+    /**
+     * Get summaries of the events returned by findEventsByFromAndTo() - without loading the events'
+     * behaviours and tracking points.
+     *
+     * @param from
+     * @param to
+     * @return the summaries ordered by start time.
+     */
+    List<EventSummary> findEventSummariesByFromAndTo(Date from, Date to);
+
+    /**
+     * Get summaries of the events returned by findEventsByFromAndToAndTypeAndVesselAndArea() - without
+     * loading the events' behaviours and tracking points.
+     *
+     * @param from
+     * @param to
+     * @param type
+     * @param vessel
+     * @param north
+     * @param east
+     * @param south
+     * @param west
+     * @return the summaries ordered by start time.
+     */
+    List<EventSummary> findEventSummariesByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west);
+
+    /**
+     * Get summaries of the events returned by findRecentEvents() - without loading the events'
+     * behaviours and tracking points.
+     *
+     * @param numberOfEvents
+     * @return the summaries, most recent first.
+     */
+    List<EventSummary> findRecentEventSummaries(int numberOfEvents);
+
     <T extends Event> T findOngoingEventByVessel(int mmsi, Class<T> eventClass);
 
+    /**
+     * Move past events which started before the given time out of the repository and into archive files.
+     *
+     * The events are partitioned by the month in which they started. Each month is written to a gzip
+     * compressed event log file (see EventLogWriter) in archiveDirectory, named "events-yyyy-MM.log.gz". If a
+     * month already has an archive file, then "events-yyyy-MM-n.log.gz" is used with the lowest free n. Events
+     * are only removed from the repository after all archive files have been completely written and read back.
+     *
+     * @param before events which started before this time are archived.
+     * @param archiveDirectory the directory to write archive files to.
+     * @return the number of archived events.
+     */
+    int archiveEventsStartedBefore(Date before, Path archiveDirectory);
+
 }
@@ -0,0 +1,98 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db;
+
+import dk.dma.ais.abnormal.event.db.domain.Event;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-memory index of the ongoing events per vessel and event type - for event repositories which
+ * write events to a stream, and cannot look them up again.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public class OngoingEvents {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @GuardedBy("lock")
+    private final Map<Integer, Map<Class<? extends Event>, Event>> ongoingEvents = new HashMap<>();
+
+    /**
+     * Insert an ongoing event in the index, or remove it from the index if it is no longer ongoing.
+     */
+    public void update(Event event) {
+        if (event.getState() == Event.State.ONGOING)
+            insert(event);
+        else
+            remove(event);
+    }
+
+    public <T extends Event> T findByVessel(int mmsi, Class<T> eventClass) {
+        Event event = null;
+
+        lock.lock();
+        try {
+            Map<Class<? extends Event>, Event> eventMap = ongoingEvents.get(mmsi);
+            if (eventMap != null)
+                event = eventMap.get(eventClass);
+        } finally {
+            lock.unlock();
+        }
+
+        return event == null ? null : (T) event;
+    }
+
+    private void insert(Event event) {
+        lock.lock();
+        try {
+            event.involvedMmsis().forEach(mmsi -> {
+                Map<Class<? extends Event>, Event> eventMap = ongoingEvents.get(mmsi);
+
+                if (eventMap == null) {
+                    eventMap = new HashMap<>();
+                    ongoingEvents.put(mmsi, eventMap);
+                }
+
+                eventMap.put(event.getClass(), event);
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(Event event) {
+        lock.lock();
+        try {
+            event.involvedMmsis().forEach(mmsi -> {
+                Map<Class<? extends Event>, Event> eventMap = ongoingEvents.get(mmsi);
+                if (eventMap != null) {
+                    eventMap.remove(event.getClass());
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+}
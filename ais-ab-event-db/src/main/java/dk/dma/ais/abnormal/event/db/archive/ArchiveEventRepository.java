@@ -0,0 +1,264 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.archive;
+
+import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.archive.ArchivePredicate.TimeMatch;
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static dk.dma.ais.abnormal.event.db.archive.ColumnarEventArchive.COMPLETION_MARKER;
+import static dk.dma.ais.abnormal.event.db.archive.ColumnarEventArchive.PARTITION_FILE_SUFFIX;
+import static dk.dma.ais.abnormal.event.db.archive.ColumnarEventArchive.toLocalDateTime;
+import static java.util.Comparator.comparing;
+
+/**
+ * ArchiveEventRepository is a read-only implementation of the EventRepository interface over a
+ * ColumnarEventArchive.
+ *
+ * Queries are pushed down to the archive: day partitions after the end of the queried period are not
+ * opened, partition files are skipped by event type and by the time, MMSI and position statistics in
+ * their headers, and rows are filtered on their time, vessel and position columns before any event is
+ * materialized.
+ *
+ * The archive holds past events only. Days are not read before their export has completed.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public class ArchiveEventRepository implements EventRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveEventRepository.class);
+    {
+        LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
+    }
+
+    private final Path archiveDirectory;
+
+    public ArchiveEventRepository(Path archiveDirectory) {
+        this.archiveDirectory = archiveDirectory;
+    }
+
+    @Override
+    public List<String> getEventTypes() {
+        TreeSet<String> eventTypes = new TreeSet<>();
+        for (Path partitionDirectory : partitionDirectories()) {
+            for (Path partitionFile : partitionFiles(partitionDirectory)) {
+                String fileName = partitionFile.getFileName().toString();
+                eventTypes.add(fileName.substring(0, fileName.length() - PARTITION_FILE_SUFFIX.length()));
+            }
+        }
+        return new ArrayList<>(eventTypes);
+    }
+
+    @Override
+    public void save(Event event) {
+        throw new UnsupportedOperationException("Event archive is read-only.");
+    }
+
+    @Override
+    public void appendTrackingPoints(Event event, int mmsi, List<TrackingPoint> trackingPoints) {
+        throw new UnsupportedOperationException("Event archive is read-only.");
+    }
+
+    /**
+     * The archive has no index of event ids; so the id column of each partition is scanned - the most
+     * recent days first - until the event is found.
+     *
+     * @return the event with the given id; or null if the archive does not hold it.
+     */
+    @Override
+    public Event getEvent(long eventId) {
+        List<Path> partitionDirectories = partitionDirectories();
+        Collections.reverse(partitionDirectories);
+
+        final ArchivePredicate predicate = ArchivePredicate.byEventId(eventId);
+        for (Path partitionDirectory : partitionDirectories) {
+            List<Event> events = find(partitionDirectory, predicate);
+            if (!events.isEmpty()) {
+                return events.get(0);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Event> findEventsByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        return find(new ArchivePredicate(from, to, TimeMatch.OVERLAPS, type, null, vessel, north, east, south, west));
+    }
+
+    /**
+     * Like findEventsByFromAndToAndTypeAndVesselAndArea, but matching vessels on MMSI number only - which
+     * also allows partitions not involving the MMSI number to be skipped unread.
+     */
+    public List<Event> findEventsByFromAndToAndTypeAndMmsiAndArea(Date from, Date to, String type, Integer mmsi, Double north, Double east, Double south, Double west) {
+        return find(new ArchivePredicate(from, to, TimeMatch.OVERLAPS, type, mmsi, null, north, east, south, west));
+    }
+
+    @Override
+    public List<Event> findEventsByFromAndTo(Date from, Date to) {
+        return find(new ArchivePredicate(from, to, TimeMatch.STARTS_OR_ENDS_WITHIN, null, null, null, null, null, null, null));
+    }
+
+    @Override
+    public List<Event> findRecentEvents(int numberOfEvents) {
+        List<Path> partitionDirectories = partitionDirectories();
+        Collections.reverse(partitionDirectories);
+
+        List<Event> events = new ArrayList<>();
+        for (Path partitionDirectory : partitionDirectories) {
+            if (events.size() >= numberOfEvents) {
+                break;
+            }
+            events.addAll(find(partitionDirectory, ArchivePredicate.ALL));
+        }
+
+        events.sort(comparing(Event::getStartTime, Comparator.reverseOrder()));
+        return events.size() > numberOfEvents ? new ArrayList<>(events.subList(0, numberOfEvents)) : events;
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndTo(Date from, Date to) {
+        return findEventsByFromAndTo(from, to).stream().map(ArchiveEventRepository::toEventSummary).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        return findEventsByFromAndToAndTypeAndVesselAndArea(from, to, type, vessel, north, east, south, west).stream().map(ArchiveEventRepository::toEventSummary).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<EventSummary> findRecentEventSummaries(int numberOfEvents) {
+        return findRecentEvents(numberOfEvents).stream().map(ArchiveEventRepository::toEventSummary).collect(Collectors.toList());
+    }
+
+    /**
+     * The archive holds no ongoing events.
+     *
+     * @return null
+     */
+    @Override
+    public <T extends Event> T findOngoingEventByVessel(int mmsi, Class<T> eventClass) {
+        return null;
+    }
+
+    @Override
+    public int archiveEventsStartedBefore(Date before, Path archiveDirectory) {
+        throw new UnsupportedOperationException("Event archive is read-only.");
+    }
+
+    private List<Event> find(ArchivePredicate predicate) {
+        // Events start on the day of their partition and end later; so no later partition can match
+        final LocalDate lastDay = predicate.to == Long.MAX_VALUE ? LocalDate.MAX : toLocalDateTime(predicate.to).toLocalDate();
+
+        List<Event> events = new ArrayList<>();
+        for (Path partitionDirectory : partitionDirectories()) {
+            if (! LocalDate.parse(partitionDirectory.getFileName().toString()).isAfter(lastDay)) {
+                events.addAll(find(partitionDirectory, predicate));
+            }
+        }
+
+        events.sort(comparing(Event::getStartTime));
+        LOG.debug("Found " + events.size() + " matching events in " + archiveDirectory + ".");
+        return events;
+    }
+
+    private List<Event> find(Path partitionDirectory, ArchivePredicate predicate) {
+        List<Event> events = new ArrayList<>();
+        for (Path partitionFile : partitionFiles(partitionDirectory)) {
+            try {
+                ArchivePartition partition = ArchivePartition.open(partitionFile);
+                if (partition.mayMatch(predicate)) {
+                    events.addAll(partition.find(predicate));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return the day partition directories in chronological order.
+     */
+    private List<Path> partitionDirectories() {
+        List<Path> partitionDirectories = new ArrayList<>();
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(archiveDirectory, Files::isDirectory)) {
+            for (Path directory : directories) {
+                try {
+                    LocalDate.parse(directory.getFileName().toString());
+                    if (Files.exists(directory.resolve(COMPLETION_MARKER))) {
+                        partitionDirectories.add(directory);
+                    } else {
+                        LOG.debug("Ignoring incomplete partition directory in event archive: " + directory);
+                    }
+                } catch (DateTimeParseException e) {
+                    LOG.warn("Ignoring non-partition directory in event archive: " + directory);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        partitionDirectories.sort(comparing(directory -> directory.getFileName().toString()));
+        return partitionDirectories;
+    }
+
+    private static List<Path> partitionFiles(Path partitionDirectory) {
+        List<Path> partitionFiles = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(partitionDirectory, "*" + PARTITION_FILE_SUFFIX)) {
+            files.forEach(partitionFiles::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return partitionFiles;
+    }
+
+    private static EventSummary toEventSummary(Event event) {
+        Behaviour behaviour = event.primaryBehaviour();
+        return new EventSummary(
+            event.getId(),
+            event.getEventType(),
+            event.getState(),
+            event.getStartTime(),
+            event.getEndTime(),
+            event.getTitle(),
+            behaviour == null ? null : behaviour.getVessel(),
+            behaviour == null || behaviour.getTrackingPoints().isEmpty() ? null : behaviour.mostRecentTrackingPoint()
+        );
+    }
+}
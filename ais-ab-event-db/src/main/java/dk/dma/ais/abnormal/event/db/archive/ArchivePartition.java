@@ -0,0 +1,385 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.archive;
+
+import dk.dma.ais.abnormal.event.db.archive.ColumnarEventArchive.Column;
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.Vessel;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+import static dk.dma.ais.abnormal.event.db.archive.ColumnarEventArchive.NULL_INT;
+import static dk.dma.ais.abnormal.event.db.archive.ColumnarEventArchive.NULL_TIME;
+import static dk.dma.ais.abnormal.event.db.archive.ColumnarEventArchive.PARTITION_FILE_SUFFIX;
+import static dk.dma.ais.abnormal.event.db.archive.ColumnarEventArchive.toLocalDateTime;
+import static dk.dma.ais.abnormal.event.db.domain.builders.TrackingPointBuilder.TrackingPoint;
+
+/**
+ * One partition file of the columnar event archive. Opening a partition reads its header only; the
+ * column blocks are read when the partition is queried, and each column is only inflated when a
+ * query needs it.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@NotThreadSafe
+final class ArchivePartition {
+
+    private final Path file;
+    private final String eventType;
+
+    private final int numberOfEvents, numberOfBehaviours, numberOfTrackingPoints;
+    private final long minStartTime, maxStartTime, minEndTime, maxEndTime;
+    private final double minLatitude, maxLatitude, minLongitude, maxLongitude;
+    private final int[] mmsis;
+
+    private ArchivePartition(Path file, DataInputStream in) throws IOException {
+        this.file = file;
+        String fileName = file.getFileName().toString();
+        this.eventType = fileName.substring(0, fileName.length() - PARTITION_FILE_SUFFIX.length());
+
+        if (in.readInt() != ColumnarEventArchive.MAGIC) {
+            throw new IOException("Not an event archive partition: " + file);
+        }
+        final int version = in.readInt();
+        if (version != ColumnarEventArchive.VERSION) {
+            throw new IOException("Unsupported event archive version " + version + ": " + file);
+        }
+
+        numberOfEvents = in.readInt();
+        numberOfBehaviours = in.readInt();
+        numberOfTrackingPoints = in.readInt();
+        minStartTime = in.readLong();
+        maxStartTime = in.readLong();
+        minEndTime = in.readLong();
+        maxEndTime = in.readLong();
+        minLatitude = in.readDouble();
+        maxLatitude = in.readDouble();
+        minLongitude = in.readDouble();
+        maxLongitude = in.readDouble();
+        mmsis = new int[in.readInt()];
+        for (int i = 0; i < mmsis.length; i++) {
+            mmsis[i] = in.readInt();
+        }
+    }
+
+    static ArchivePartition open(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return new ArchivePartition(file, in);
+        }
+    }
+
+    String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return false if no event in this partition can match predicate.
+     */
+    boolean mayMatch(ArchivePredicate predicate) {
+        return numberOfEvents > 0
+            && predicate.matchesType(eventType)
+            && predicate.mayMatchTime(minStartTime, maxStartTime, minEndTime, maxEndTime)
+            && predicate.mayMatchMmsis(mmsis)
+            && predicate.mayMatchArea(minLatitude, maxLatitude, minLongitude, maxLongitude);
+    }
+
+    /**
+     * Find the events in this partition which match predicate. The predicate is evaluated on the id, start
+     * and end time, vessel and tracking point position columns first; the remaining columns are only
+     * decoded for the events which match.
+     */
+    List<Event> find(ArchivePredicate predicate) throws IOException {
+        if (!mayMatch(predicate)) {
+            return new ArrayList<>();
+        }
+
+        final Columns columns = readColumns();
+        final boolean[] selected = new boolean[numberOfEvents];
+        Arrays.fill(selected, true);
+
+        List<Event> events = new ArrayList<>();
+        final long[] ids = columns.longs(Column.EVENT_ID, numberOfEvents);
+        if (predicate.hasEventId()) {
+            for (int i = 0; i < numberOfEvents; i++) {
+                selected[i] = ids[i] == predicate.eventId;
+            }
+            if (!anySelected(selected)) {
+                return events;
+            }
+        }
+
+        final long[] startTimes = columns.longs(Column.EVENT_START_TIME, numberOfEvents);
+        final long[] endTimes = columns.longs(Column.EVENT_END_TIME, numberOfEvents);
+        if (predicate.hasTime()) {
+            for (int i = 0; i < numberOfEvents; i++) {
+                if (selected[i]) {
+                    selected[i] = predicate.matchesTime(startTimes[i], endTimes[i]);
+                }
+            }
+            if (!anySelected(selected)) {
+                return events;
+            }
+        }
+
+        final int[] eventBehaviours = columns.ints(Column.EVENT_BEHAVIOURS, numberOfEvents + 1);
+        final int[] behaviourMmsis = columns.ints(Column.BEHAVIOUR_MMSI, numberOfBehaviours);
+        int[] behaviourImos = null;
+        String[] behaviourNames = null, behaviourCallsigns = null;
+        if (predicate.hasVessel()) {
+            behaviourImos = columns.ints(Column.BEHAVIOUR_IMO, numberOfBehaviours);
+            behaviourNames = columns.strings(Column.BEHAVIOUR_NAME, numberOfBehaviours);
+            behaviourCallsigns = columns.strings(Column.BEHAVIOUR_CALLSIGN, numberOfBehaviours);
+            for (int i = 0; i < numberOfEvents; i++) {
+                if (selected[i]) {
+                    boolean matches = false;
+                    for (int b = eventBehaviours[i]; b < eventBehaviours[i + 1] && !matches; b++) {
+                        matches = predicate.matchesVessel(behaviourMmsis[b], behaviourImos[b], behaviourNames[b], behaviourCallsigns[b]);
+                    }
+                    selected[i] = matches;
+                }
+            }
+            if (!anySelected(selected)) {
+                return events;
+            }
+        }
+
+        final int[] behaviourTrackingPoints = columns.ints(Column.BEHAVIOUR_TRACKINGPOINTS, numberOfBehaviours + 1);
+        final double[] latitudes = columns.doubles(Column.TRACKINGPOINT_LATITUDE, numberOfTrackingPoints);
+        final double[] longitudes = columns.doubles(Column.TRACKINGPOINT_LONGITUDE, numberOfTrackingPoints);
+        if (predicate.hasArea) {
+            for (int i = 0; i < numberOfEvents; i++) {
+                if (selected[i]) {
+                    boolean matches = false;
+                    for (int t = behaviourTrackingPoints[eventBehaviours[i]]; t < behaviourTrackingPoints[eventBehaviours[i + 1]] && !matches; t++) {
+                        matches = predicate.matchesPosition(latitudes[t], longitudes[t]);
+                    }
+                    selected[i] = matches;
+                }
+            }
+            if (!anySelected(selected)) {
+                return events;
+            }
+        }
+
+        if (behaviourImos == null) {
+            behaviourImos = columns.ints(Column.BEHAVIOUR_IMO, numberOfBehaviours);
+            behaviourNames = columns.strings(Column.BEHAVIOUR_NAME, numberOfBehaviours);
+            behaviourCallsigns = columns.strings(Column.BEHAVIOUR_CALLSIGN, numberOfBehaviours);
+        }
+
+        final String[] titles = columns.strings(Column.EVENT_TITLE, numberOfEvents);
+        final String[] descriptions = columns.strings(Column.EVENT_DESCRIPTION, numberOfEvents);
+        final boolean[] behaviourPrimaries = columns.booleans(Column.BEHAVIOUR_PRIMARY, numberOfBehaviours);
+        final int[] behaviourTypes = columns.ints(Column.BEHAVIOUR_TYPE, numberOfBehaviours);
+        final int[] behaviourToBows = columns.ints(Column.BEHAVIOUR_TO_BOW, numberOfBehaviours);
+        final int[] behaviourToSterns = columns.ints(Column.BEHAVIOUR_TO_STERN, numberOfBehaviours);
+        final int[] behaviourToPorts = columns.ints(Column.BEHAVIOUR_TO_PORT, numberOfBehaviours);
+        final int[] behaviourToStarboards = columns.ints(Column.BEHAVIOUR_TO_STARBOARD, numberOfBehaviours);
+        final long[] timestamps = columns.longs(Column.TRACKINGPOINT_TIMESTAMP, numberOfTrackingPoints);
+        final float[] sogs = columns.floats(Column.TRACKINGPOINT_SOG, numberOfTrackingPoints);
+        final float[] cogs = columns.floats(Column.TRACKINGPOINT_COG, numberOfTrackingPoints);
+        final float[] hdgs = columns.floats(Column.TRACKINGPOINT_HDG, numberOfTrackingPoints);
+        final boolean[] interpolateds = columns.booleans(Column.TRACKINGPOINT_INTERPOLATED, numberOfTrackingPoints);
+        final byte[] certainties = columns.bytes(Column.TRACKINGPOINT_CERTAINTY, numberOfTrackingPoints);
+
+        for (int i = 0; i < numberOfEvents; i++) {
+            if (selected[i]) {
+                Event event = newEvent();
+                event.setId(ids[i]);
+                event.setState(Event.State.PAST);
+                event.setStartTime(toLocalDateTime(startTimes[i]));
+                event.setEndTime(endTimes[i] == NULL_TIME ? null : toLocalDateTime(endTimes[i]));
+                event.setTitle(titles[i]);
+                event.setDescription(descriptions[i]);
+
+                for (int b = eventBehaviours[i]; b < eventBehaviours[i + 1]; b++) {
+                    Vessel vessel = new Vessel();
+                    vessel.setMmsi(behaviourMmsis[b]);
+                    vessel.setImo(toInteger(behaviourImos[b]));
+                    vessel.setName(behaviourNames[b]);
+                    vessel.setCallsign(behaviourCallsigns[b]);
+                    vessel.setType(toInteger(behaviourTypes[b]));
+                    vessel.setToBow(toInteger(behaviourToBows[b]));
+                    vessel.setToStern(toInteger(behaviourToSterns[b]));
+                    vessel.setToPort(toInteger(behaviourToPorts[b]));
+                    vessel.setToStarboard(toInteger(behaviourToStarboards[b]));
+
+                    Behaviour behaviour = new Behaviour();
+                    behaviour.setPrimary(behaviourPrimaries[b]);
+                    behaviour.setVessel(vessel);
+                    for (int t = behaviourTrackingPoints[b]; t < behaviourTrackingPoints[b + 1]; t++) {
+                        behaviour.addTrackingPoint(
+                            TrackingPoint()
+                                .timestamp(toLocalDateTime(timestamps[t]))
+                                .latitude(latitudes[t])
+                                .longitude(longitudes[t])
+                                .speedOverGround(toFloat(sogs[t]))
+                                .courseOverGround(toFloat(cogs[t]))
+                                .trueHeading(toFloat(hdgs[t]))
+                                .positionInterpolated(interpolateds[t])
+                                .eventCertainty(TrackingPoint.EventCertainty.create(certainties[t]))
+                                .getTrackingPoint()
+                        );
+                    }
+                    event.addBehaviour(behaviour);
+                }
+
+                events.add(event);
+            }
+        }
+
+        return events;
+    }
+
+    private Event newEvent() throws IOException {
+        final String className = Event.class.getPackage().getName() + "." + eventType;
+        try {
+            return Class.forName(className).asSubclass(Event.class).newInstance();
+        } catch (ClassNotFoundException | ClassCastException | InstantiationException | IllegalAccessException e) {
+            throw new IOException("Cannot create event of type " + className + ": " + file, e);
+        }
+    }
+
+    private Columns readColumns() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            new ArchivePartition(file, in); // Skip header
+            final int numberOfColumns = in.readInt();
+            if (numberOfColumns != Column.values().length) {
+                throw new IOException("Expected " + Column.values().length + " columns, found " + numberOfColumns + ": " + file);
+            }
+            byte[][] blocks = new byte[numberOfColumns][];
+            for (int c = 0; c < numberOfColumns; c++) {
+                blocks[c] = new byte[in.readInt()];
+                in.readFully(blocks[c]);
+            }
+            return new Columns(blocks);
+        }
+    }
+
+    private static boolean anySelected(boolean[] selected) {
+        for (boolean s : selected) {
+            if (s) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Integer toInteger(int value) {
+        return value == NULL_INT ? null : value;
+    }
+
+    private static Float toFloat(float value) {
+        return Float.isNaN(value) ? null : value;
+    }
+
+    /** The deflated column blocks of a partition; each is inflated on request */
+    private static final class Columns {
+        private final byte[][] blocks;
+
+        private Columns(byte[][] blocks) {
+            this.blocks = blocks;
+        }
+
+        private DataInputStream open(Column column) {
+            InputStream in = new InflaterInputStream(new ByteArrayInputStream(blocks[column.ordinal()]));
+            return new DataInputStream(new BufferedInputStream(in));
+        }
+
+        long[] longs(Column column, int n) throws IOException {
+            long[] values = new long[n];
+            try (DataInputStream in = open(column)) {
+                for (int i = 0; i < n; i++) {
+                    values[i] = in.readLong();
+                }
+            }
+            return values;
+        }
+
+        int[] ints(Column column, int n) throws IOException {
+            int[] values = new int[n];
+            try (DataInputStream in = open(column)) {
+                for (int i = 0; i < n; i++) {
+                    values[i] = in.readInt();
+                }
+            }
+            return values;
+        }
+
+        double[] doubles(Column column, int n) throws IOException {
+            double[] values = new double[n];
+            try (DataInputStream in = open(column)) {
+                for (int i = 0; i < n; i++) {
+                    values[i] = in.readDouble();
+                }
+            }
+            return values;
+        }
+
+        float[] floats(Column column, int n) throws IOException {
+            float[] values = new float[n];
+            try (DataInputStream in = open(column)) {
+                for (int i = 0; i < n; i++) {
+                    values[i] = in.readFloat();
+                }
+            }
+            return values;
+        }
+
+        boolean[] booleans(Column column, int n) throws IOException {
+            boolean[] values = new boolean[n];
+            try (DataInputStream in = open(column)) {
+                for (int i = 0; i < n; i++) {
+                    values[i] = in.readBoolean();
+                }
+            }
+            return values;
+        }
+
+        byte[] bytes(Column column, int n) throws IOException {
+            byte[] values = new byte[n];
+            try (DataInputStream in = open(column)) {
+                in.readFully(values);
+            }
+            return values;
+        }
+
+        String[] strings(Column column, int n) throws IOException {
+            String[] values = new String[n];
+            try (DataInputStream in = open(column)) {
+                for (int i = 0; i < n; i++) {
+                    values[i] = in.readBoolean() ? in.readUTF() : null;
+                }
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.archive;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * The conditions of a query against the columnar event archive. The conditions are evaluated against
+ * the statistics of each partition first, and then against the individual rows of the partitions which
+ * may match - before any event is materialized.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@Immutable
+final class ArchivePredicate {
+
+    /** How the time condition is matched against the start and end times of an event */
+    enum TimeMatch {
+        /** (startTime >= from OR endTime >= from) AND (startTime <= to OR endTime <= to) */
+        OVERLAPS,
+        /** startTime in [from; to] OR endTime in [from; to] */
+        STARTS_OR_ENDS_WITHIN
+    }
+
+    static final ArchivePredicate ALL = new ArchivePredicate(null, null, TimeMatch.OVERLAPS, null, null, null, null, null, null, null);
+
+    final Long eventId;
+    final long from;
+    final long to;
+    final TimeMatch timeMatch;
+    final String type;
+    final Integer mmsi;
+    final String vessel;
+    final Long vesselAsNumber;
+    final boolean hasArea;
+    final double north, east, south, west;
+
+    ArchivePredicate(Date from, Date to, TimeMatch timeMatch, String type, Integer mmsi, String vessel, Double north, Double east, Double south, Double west) {
+        this(null, from, to, timeMatch, type, mmsi, vessel, north, east, south, west);
+    }
+
+    private ArchivePredicate(Long eventId, Date from, Date to, TimeMatch timeMatch, String type, Integer mmsi, String vessel, Double north, Double east, Double south, Double west) {
+        this.eventId = eventId;
+        this.from = from == null ? Long.MIN_VALUE : from.getTime();
+        this.to = to == null ? Long.MAX_VALUE : to.getTime();
+        this.timeMatch = timeMatch;
+        this.type = isBlank(type) ? null : type;
+        this.mmsi = mmsi;
+        this.vessel = isBlank(vessel) ? null : stripWildcards(vessel);
+        this.vesselAsNumber = this.vessel == null ? null : parseLong(this.vessel);
+        this.hasArea = north != null && east != null && south != null && west != null;
+        this.north = hasArea ? north : Double.NaN;
+        this.east = hasArea ? east : Double.NaN;
+        this.south = hasArea ? south : Double.NaN;
+        this.west = hasArea ? west : Double.NaN;
+    }
+
+    /**
+     * @return a predicate matching the event with the given id only.
+     */
+    static ArchivePredicate byEventId(long eventId) {
+        return new ArchivePredicate(eventId, null, null, TimeMatch.OVERLAPS, null, null, null, null, null, null, null);
+    }
+
+    boolean hasEventId() {
+        return eventId != null;
+    }
+
+    boolean hasTime() {
+        return from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+    }
+
+    boolean hasVessel() {
+        return mmsi != null || vessel != null;
+    }
+
+    boolean matchesType(String eventType) {
+        return type == null || type.equals(eventType);
+    }
+
+    /**
+     * @param endTime the end time or ColumnarEventArchive.NULL_TIME.
+     */
+    boolean matchesTime(long startTime, long endTime) {
+        final boolean hasEndTime = endTime != ColumnarEventArchive.NULL_TIME;
+        if (timeMatch == TimeMatch.OVERLAPS) {
+            return (startTime >= from || (hasEndTime && endTime >= from)) && (startTime <= to || (hasEndTime && endTime <= to));
+        } else {
+            return (startTime >= from && startTime <= to) || (hasEndTime && endTime >= from && endTime <= to);
+        }
+    }
+
+    /**
+     * @return false if no event with start and end times in the given ranges can match.
+     */
+    boolean mayMatchTime(long minStartTime, long maxStartTime, long minEndTime, long maxEndTime) {
+        return !(maxStartTime < from && maxEndTime < from) && !(minStartTime > to && minEndTime > to);
+    }
+
+    /**
+     * @param imo the IMO number or ColumnarEventArchive.NULL_INT.
+     */
+    boolean matchesVessel(int mmsi, int imo, String name, String callsign) {
+        if (this.mmsi != null && this.mmsi != mmsi) {
+            return false;
+        }
+        if (vessel != null) {
+            return (name != null && name.contains(vessel))
+                || (callsign != null && callsign.contains(vessel))
+                || (vesselAsNumber != null && (vesselAsNumber == mmsi || (imo != ColumnarEventArchive.NULL_INT && vesselAsNumber == imo)));
+        }
+        return true;
+    }
+
+    /**
+     * @param sortedMmsis the sorted MMSI numbers involved in a partition.
+     * @return false if no event involving only these MMSI numbers can match.
+     */
+    boolean mayMatchMmsis(int[] sortedMmsis) {
+        return mmsi == null || Arrays.binarySearch(sortedMmsis, mmsi) >= 0;
+    }
+
+    boolean matchesPosition(double latitude, double longitude) {
+        return latitude < north && latitude > south && longitude < east && longitude > west;
+    }
+
+    /**
+     * @return false if no position inside the given bounds can match.
+     */
+    boolean mayMatchArea(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        return !hasArea || (minLatitude < north && maxLatitude > south && minLongitude < east && maxLongitude > west);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    private static String stripWildcards(String vessel) {
+        int begin = 0, end = vessel.length();
+        while (begin < end && vessel.charAt(begin) == '%') {
+            begin++;
+        }
+        while (end > begin && vessel.charAt(end - 1) == '%') {
+            end--;
+        }
+        return vessel.substring(begin, end);
+    }
+
+    private static Long parseLong(String s) {
+        try {
+            return Long.valueOf(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.archive;
+
+import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.Vessel;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.CopyOption;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.util.Comparator.comparing;
+
+/**
+ * An immutable, compressed, columnar archive of past events for historical queries, which should not
+ * compete with the analyzer for the live event database.
+ *
+ * The archive is a directory with one sub-directory per day ("yyyy-MM-dd"), holding one partition file
+ * per event type ("CloseEncounterEvent.events") with the events which started on that day (UTC), and a
+ * completion marker ("_COMPLETE"). The marker is written after the partition files of the day, and
+ * readers ignore days without it. A partition file is never modified in place; when events are added to
+ * it, it is replaced as a whole.
+ *
+ * A partition file starts with a header of statistics - the number of rows, the ranges of start and end
+ * times, latitudes and longitudes, and the sorted set of involved MMSI numbers - so that readers can skip
+ * partitions which cannot match a query. The header is followed by one separately deflated block per
+ * column (see Column), so that readers can evaluate predicates on a few columns before decoding the rest.
+ * Behaviours and tracking points are nested in their events as offset columns.
+ *
+ * Only the properties common to all events are archived; event type specific properties (e.g. the
+ * safety zones of close encounters) are not.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class ColumnarEventArchive {
+
+    static final int MAGIC = 0x41424556;
+    static final int VERSION = 1;
+
+    static final String PARTITION_FILE_SUFFIX = ".events";
+
+    static final String COMPLETION_MARKER = "_COMPLETE";
+
+    /** Represents null in nullable int columns */
+    static final int NULL_INT = Integer.MIN_VALUE;
+
+    /** Represents null in nullable time columns */
+    static final long NULL_TIME = Long.MIN_VALUE;
+
+    /** The columns of a partition file in the order they are stored */
+    enum Column {
+        EVENT_ID, EVENT_START_TIME, EVENT_END_TIME, EVENT_TITLE, EVENT_DESCRIPTION, EVENT_BEHAVIOURS,
+        BEHAVIOUR_PRIMARY, BEHAVIOUR_MMSI, BEHAVIOUR_IMO, BEHAVIOUR_NAME, BEHAVIOUR_CALLSIGN, BEHAVIOUR_TYPE,
+        BEHAVIOUR_TO_BOW, BEHAVIOUR_TO_STERN, BEHAVIOUR_TO_PORT, BEHAVIOUR_TO_STARBOARD, BEHAVIOUR_TRACKINGPOINTS,
+        TRACKINGPOINT_TIMESTAMP, TRACKINGPOINT_LATITUDE, TRACKINGPOINT_LONGITUDE, TRACKINGPOINT_SOG,
+        TRACKINGPOINT_COG, TRACKINGPOINT_HDG, TRACKINGPOINT_INTERPOLATED, TRACKINGPOINT_CERTAINTY
+    }
+
+    private ColumnarEventArchive() {
+    }
+
+    public static Path partitionDirectory(Path archiveDirectory, LocalDate day) {
+        return archiveDirectory.resolve(day.toString());
+    }
+
+    public static Path partitionFile(Path archiveDirectory, LocalDate day, String eventType) {
+        return partitionDirectory(archiveDirectory, day).resolve(eventType + PARTITION_FILE_SUFFIX);
+    }
+
+    /**
+     * Export the past events, which started on the given day, from an event repository to the archive.
+     *
+     * A day can be exported again: past events which are not in its partitions yet - because they were
+     * still ongoing or had not been saved when the day was last exported - are added to them. The
+     * completion marker of the day is written when all its partitions have been written.
+     *
+     * @return the number of exported events, which were not in the archive before.
+     */
+    public static int exportDay(EventRepository eventRepository, Path archiveDirectory, LocalDate day) throws IOException {
+        final long from = toMillis(day.atStartOfDay());
+        final long to = toMillis(day.plusDays(1).atStartOfDay()) - 1;
+
+        Map<String, List<Event>> eventsByType = eventRepository.findEventsByFromAndTo(new Date(from), new Date(to))
+            .stream()
+            .filter(event -> event.getState() == Event.State.PAST)
+            .filter(event -> event.getStartTime().toLocalDate().equals(day))
+            .collect(Collectors.groupingBy(Event::getEventType));
+
+        int numberOfEvents = 0;
+        for (Map.Entry<String, List<Event>> eventsOfType : eventsByType.entrySet()) {
+            final Path partitionFile = partitionFile(archiveDirectory, day, eventsOfType.getKey());
+            final List<Event> archivedEvents = Files.exists(partitionFile) ? ArchivePartition.open(partitionFile).find(ArchivePredicate.ALL) : new ArrayList<>();
+            final Set<Object> archivedKeys = archivedEvents.stream().map(ColumnarEventArchive::archiveKey).collect(Collectors.toSet());
+
+            List<Event> newEvents = eventsOfType.getValue().stream().filter(event -> !archivedKeys.contains(archiveKey(event))).collect(Collectors.toList());
+            if (!newEvents.isEmpty()) {
+                List<Event> events = new ArrayList<>(archivedEvents);
+                events.addAll(newEvents);
+                events.sort(comparing(Event::getStartTime));
+                writePartition(partitionFile, events, ATOMIC_MOVE, REPLACE_EXISTING);
+                numberOfEvents += newEvents.size();
+            }
+        }
+
+        markComplete(archiveDirectory, day);
+        return numberOfEvents;
+    }
+
+    /**
+     * Write the completion marker of a day, after which readers will read its partitions.
+     */
+    public static void markComplete(Path archiveDirectory, LocalDate day) throws IOException {
+        final Path completionMarker = partitionDirectory(archiveDirectory, day).resolve(COMPLETION_MARKER);
+        if (Files.notExists(completionMarker)) {
+            Files.createDirectories(completionMarker.getParent());
+            Files.createFile(completionMarker);
+        }
+    }
+
+    /**
+     * Write a partition file. The file is written to a temporary file first and then moved in place, so
+     * readers never see a partly written partition.
+     *
+     * @throws FileAlreadyExistsException if the partition has already been written.
+     */
+    public static void write(Path archiveDirectory, LocalDate day, String eventType, Collection<Event> events) throws IOException {
+        final Path partitionFile = partitionFile(archiveDirectory, day, eventType);
+        if (Files.exists(partitionFile)) {
+            throw new FileAlreadyExistsException(partitionFile.toString());
+        }
+        writePartition(partitionFile, events, ATOMIC_MOVE);
+    }
+
+    private static void writePartition(Path partitionFile, Collection<Event> events, CopyOption... moveOptions) throws IOException {
+        Files.createDirectories(partitionFile.getParent());
+        final Path temporaryFile = partitionFile.resolveSibling(partitionFile.getFileName() + ".tmp");
+        Files.deleteIfExists(temporaryFile); // Left behind by an interrupted export
+        try (OutputStream out = Files.newOutputStream(temporaryFile, CREATE_NEW)) {
+            write(out, events);
+        }
+        Files.move(temporaryFile, partitionFile, moveOptions);
+    }
+
+    /**
+     * @return what identifies an event in a partition: its id, or its start time and primary vessel if it
+     * has no id.
+     */
+    private static Object archiveKey(Event event) {
+        if (event.getId() != 0) {
+            return event.getId();
+        }
+        Behaviour behaviour = event.primaryBehaviour();
+        return Arrays.asList(event.getStartTime(), behaviour == null ? null : behaviour.getVessel().getMmsi());
+    }
+
+    static void write(OutputStream out, Collection<Event> events) throws IOException {
+        Map<Column, ByteArrayOutputStream> columnBytes = new EnumMap<>(Column.class);
+        Map<Column, DataOutputStream> columns = new EnumMap<>(Column.class);
+        for (Column column : Column.values()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            columnBytes.put(column, bytes);
+            columns.put(column, new DataOutputStream(bytes));
+        }
+
+        int numberOfBehaviours = 0, numberOfTrackingPoints = 0;
+        long minStartTime = Long.MAX_VALUE, maxStartTime = Long.MIN_VALUE, minEndTime = Long.MAX_VALUE, maxEndTime = Long.MIN_VALUE;
+        double minLatitude = Double.POSITIVE_INFINITY, maxLatitude = Double.NEGATIVE_INFINITY, minLongitude = Double.POSITIVE_INFINITY, maxLongitude = Double.NEGATIVE_INFINITY;
+        TreeSet<Integer> mmsis = new TreeSet<>();
+
+        columns.get(Column.EVENT_BEHAVIOURS).writeInt(0);
+        columns.get(Column.BEHAVIOUR_TRACKINGPOINTS).writeInt(0);
+
+        for (Event event : events) {
+            final long startTime = toMillis(event.getStartTime());
+            final long endTime = event.getEndTime() == null ? NULL_TIME : toMillis(event.getEndTime());
+            minStartTime = Math.min(minStartTime, startTime);
+            maxStartTime = Math.max(maxStartTime, startTime);
+            minEndTime = Math.min(minEndTime, endTime == NULL_TIME ? startTime : endTime);
+            maxEndTime = Math.max(maxEndTime, endTime == NULL_TIME ? startTime : endTime);
+
+            columns.get(Column.EVENT_ID).writeLong(event.getId());
+            columns.get(Column.EVENT_START_TIME).writeLong(startTime);
+            columns.get(Column.EVENT_END_TIME).writeLong(endTime);
+            writeString(columns.get(Column.EVENT_TITLE), event.getTitle());
+            writeString(columns.get(Column.EVENT_DESCRIPTION), event.getDescription());
+
+            for (Behaviour behaviour : event.getBehaviours()) {
+                Vessel vessel = behaviour.getVessel();
+                mmsis.add(vessel.getMmsi());
+
+                columns.get(Column.BEHAVIOUR_PRIMARY).writeBoolean(behaviour.isPrimary());
+                columns.get(Column.BEHAVIOUR_MMSI).writeInt(vessel.getMmsi());
+                writeInteger(columns.get(Column.BEHAVIOUR_IMO), vessel.getImo());
+                writeString(columns.get(Column.BEHAVIOUR_NAME), vessel.getName());
+                writeString(columns.get(Column.BEHAVIOUR_CALLSIGN), vessel.getCallsign());
+                writeInteger(columns.get(Column.BEHAVIOUR_TYPE), vessel.getType());
+                writeInteger(columns.get(Column.BEHAVIOUR_TO_BOW), vessel.getToBow());
+                writeInteger(columns.get(Column.BEHAVIOUR_TO_STERN), vessel.getToStern());
+                writeInteger(columns.get(Column.BEHAVIOUR_TO_PORT), vessel.getToPort());
+                writeInteger(columns.get(Column.BEHAVIOUR_TO_STARBOARD), vessel.getToStarboard());
+
+                for (TrackingPoint trackingPoint : behaviour.getTrackingPoints()) {
+                    minLatitude = Math.min(minLatitude, trackingPoint.getLatitude());
+                    maxLatitude = Math.max(maxLatitude, trackingPoint.getLatitude());
+                    minLongitude = Math.min(minLongitude, trackingPoint.getLongitude());
+                    maxLongitude = Math.max(maxLongitude, trackingPoint.getLongitude());
+
+                    columns.get(Column.TRACKINGPOINT_TIMESTAMP).writeLong(toMillis(trackingPoint.getTimestamp()));
+                    columns.get(Column.TRACKINGPOINT_LATITUDE).writeDouble(trackingPoint.getLatitude());
+                    columns.get(Column.TRACKINGPOINT_LONGITUDE).writeDouble(trackingPoint.getLongitude());
+                    writeFloat(columns.get(Column.TRACKINGPOINT_SOG), trackingPoint.getSpeedOverGround());
+                    writeFloat(columns.get(Column.TRACKINGPOINT_COG), trackingPoint.getCourseOverGround());
+                    writeFloat(columns.get(Column.TRACKINGPOINT_HDG), trackingPoint.getTrueHeading());
+                    columns.get(Column.TRACKINGPOINT_INTERPOLATED).writeBoolean(trackingPoint.getPositionInterpolated());
+                    columns.get(Column.TRACKINGPOINT_CERTAINTY).writeByte(trackingPoint.getEventCertainty().getCertainty());
+                    numberOfTrackingPoints++;
+                }
+
+                columns.get(Column.BEHAVIOUR_TRACKINGPOINTS).writeInt(numberOfTrackingPoints);
+                numberOfBehaviours++;
+            }
+
+            columns.get(Column.EVENT_BEHAVIOURS).writeInt(numberOfBehaviours);
+        }
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(events.size());
+        header.writeInt(numberOfBehaviours);
+        header.writeInt(numberOfTrackingPoints);
+        header.writeLong(minStartTime);
+        header.writeLong(maxStartTime);
+        header.writeLong(minEndTime);
+        header.writeLong(maxEndTime);
+        header.writeDouble(minLatitude);
+        header.writeDouble(maxLatitude);
+        header.writeDouble(minLongitude);
+        header.writeDouble(maxLongitude);
+        header.writeInt(mmsis.size());
+        for (int mmsi : mmsis) {
+            header.writeInt(mmsi);
+        }
+
+        header.writeInt(Column.values().length);
+        for (Column column : Column.values()) {
+            columns.get(column).flush();
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(deflated)) {
+                columnBytes.get(column).writeTo(deflater);
+            }
+            header.writeInt(deflated.size());
+            deflated.writeTo(header);
+        }
+        header.flush();
+    }
+
+    private static void writeString(DataOutputStream column, String value) throws IOException {
+        column.writeBoolean(value != null);
+        if (value != null) {
+            column.writeUTF(value);
+        }
+    }
+
+    private static void writeInteger(DataOutputStream column, Integer value) throws IOException {
+        column.writeInt(value == null ? NULL_INT : value);
+    }
+
+    private static void writeFloat(DataOutputStream column, Float value) throws IOException {
+        column.writeFloat(value == null ? Float.NaN : value);
+    }
+
+    static long toMillis(LocalDateTime localDateTime) {
+        return localDateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L), (int) Math.floorMod(millis, 1000L) * 1000000, ZoneOffset.UTC);
+    }
+}
@@ -18,27 +18,26 @@ package dk.dma.ais.abnormal.event.db.csv;
 
 import com.google.inject.Inject;
 import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.OngoingEvents;
 import dk.dma.ais.abnormal.event.db.domain.Behaviour;
 import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
 import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.file.Path;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.concurrent.locks.ReentrantLock;
 
 import static java.time.temporal.ChronoUnit.MINUTES;
 
@@ -55,14 +54,13 @@ public class CsvEventRepository implements EventRepository {
         LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
     }
 
-    private final ReentrantLock lock = new ReentrantLock();
+    private static final DateTimeFormatter FILTER_SUGGESTION_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH:mm");
 
     private final CSVPrinter printer;
 
     private final boolean readonly;
 
-    @GuardedBy("lock")
-    private final Map<Integer, Map<Class<? extends Event>, Event>> ongoingEvents = new HashMap<>();
+    private final OngoingEvents ongoingEvents = new OngoingEvents();
 
     @Inject
     public CsvEventRepository(OutputStream out, boolean readonly) throws IOException {
@@ -88,10 +86,7 @@ public class CsvEventRepository implements EventRepository {
     @Override
     public void save(Event event) {
         if (readonly == false) {
-            if (event.getState() == Event.State.ONGOING)
-                insertOngoingEvent(event);
-            else
-                removeOngoingEvent(event);
+            ongoingEvents.update(event);
 
             if (event.getState() == Event.State.PAST) {
                 try {
@@ -140,17 +135,23 @@ public class CsvEventRepository implements EventRepository {
         }
     }
 
-    private String filterSuggestion(Event event) {
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH:mm");
+    @Override
+    public void appendTrackingPoints(Event event, int mmsi, List<TrackingPoint> trackingPoints) {
+        if (readonly == false) {
+            Behaviour behaviour = event.getBehaviour(mmsi);
+            trackingPoints.forEach(behaviour::addTrackingPoint);
+        }
+    }
 
+    private String filterSuggestion(Event event) {
         TrackingPoint tp = event.primaryBehaviour().mostRecentTrackingPoint();
 
         StringBuilder sb = new StringBuilder();
         sb.append("-start \"")
-                .append(fmt.format(event.getStartTime().minus(10, MINUTES)))
+                .append(FILTER_SUGGESTION_TIME_FORMATTER.format(event.getStartTime().minus(10, MINUTES)))
                 .append("\" ")
                 .append("-end \"")
-                .append(fmt.format(event.getEndTime() == null ? event.getStartTime().plus(20, MINUTES) : event.getEndTime().plus(10, MINUTES)))
+                .append(FILTER_SUGGESTION_TIME_FORMATTER.format(event.getEndTime() == null ? event.getStartTime().plus(20, MINUTES) : event.getEndTime().plus(10, MINUTES)))
                 .append("\" ")
                 .append("-exp \"")
                 .append("m.pos within circle(")
@@ -185,53 +186,28 @@ public class CsvEventRepository implements EventRepository {
     }
 
     @Override
-    public <T extends Event> T findOngoingEventByVessel(int mmsi, Class<T> eventClass) {
-        Event event = null;
-
-        lock.lock();
-        try {
-            Map<Class<? extends Event>, Event> eventMap = ongoingEvents.get(mmsi);
-            if (eventMap != null)
-                event = eventMap.get(eventClass);
-        } finally {
-            lock.unlock();
-        }
-
-        return event == null ? null : (T) event;
+    public List<EventSummary> findEventSummariesByFromAndTo(Date from, Date to) {
+        throw new UnsupportedOperationException();
     }
 
-    private void insertOngoingEvent(Event event) {
-        lock.lock();
-        try {
-            if (event.getState() == Event.State.ONGOING) {
-                event.involvedMmsis().forEach(mmsi -> {
-                    Map<Class<? extends Event>, Event> eventMap = ongoingEvents.get(mmsi);
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        throw new UnsupportedOperationException();
+    }
 
-                    if (eventMap == null) {
-                        eventMap = new HashMap<>();
-                        ongoingEvents.put(mmsi, eventMap);
-                    }
+    @Override
+    public List<EventSummary> findRecentEventSummaries(int numberOfEvents) {
+        throw new UnsupportedOperationException();
+    }
 
-                    eventMap.put(event.getClass(), event);
-                });
-            }
-        } finally {
-            lock.unlock();
-        }
+    @Override
+    public <T extends Event> T findOngoingEventByVessel(int mmsi, Class<T> eventClass) {
+        return ongoingEvents.findByVessel(mmsi, eventClass);
     }
 
-    private void removeOngoingEvent(Event event) {
-        lock.lock();
-        try {
-            event.involvedMmsis().forEach(mmsi -> {
-                Map<Class<? extends Event>, Event> eventMap = ongoingEvents.get(mmsi);
-                if (eventMap != null) {
-                    eventMap.remove(event.getClass());
-                }
-            });
-        } finally {
-            lock.unlock();
-        }
+    @Override
+    public int archiveEventsStartedBefore(Date before, Path archiveDirectory) {
+        throw new UnsupportedOperationException();
     }
 
 }
@@ -17,8 +17,7 @@
 package dk.dma.ais.abnormal.event.db.domain;
 
 import com.google.common.collect.ImmutableSortedSet;
-import org.hibernate.annotations.Fetch;
-import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
@@ -30,22 +29,19 @@ import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.OrderBy;
 import javax.validation.constraints.NotNull;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedSet;
 
-import static java.util.Collections.sort;
-
 @Entity
 public class Behaviour {
 
     public Behaviour() {
-        trackingPoints = new LinkedList<>();
+        trackingPoints = new LinkedHashSet<>();
     }
 
     public SortedSet<TrackingPoint> getTrackingPoints() {
-        sort(trackingPoints);
         return ImmutableSortedSet.copyOf(trackingPoints);
     }
 
@@ -77,9 +73,21 @@ public class Behaviour {
         this.isPrimary = isPrimary;
     }
 
+    /**
+     * @return the tracking point with the latest timestamp; the last added one if several share it.
+     * @throws NoSuchElementException if the behaviour has no tracking points.
+     */
     public TrackingPoint mostRecentTrackingPoint() {
-        sort(trackingPoints);
-        return trackingPoints.get(trackingPoints.size()-1);
+        TrackingPoint mostRecentTrackingPoint = null;
+        for (TrackingPoint trackingPoint : trackingPoints) {
+            if (mostRecentTrackingPoint == null || trackingPoint.compareTo(mostRecentTrackingPoint) >= 0) {
+                mostRecentTrackingPoint = trackingPoint;
+            }
+        }
+        if (mostRecentTrackingPoint == null) {
+            throw new NoSuchElementException("Behaviour has no tracking points.");
+        }
+        return mostRecentTrackingPoint;
     }
 
     @Id
@@ -94,11 +102,18 @@ public class Behaviour {
     private Vessel vessel;
 
     // TODO create index on behaviour_trackingpoint (behaviour_id);
+    /**
+     * Loaded on first access for up to 100 behaviours of the session per extra select - instead of joining them
+     * into the query's rows. Not loaded for the ongoing event of a vessel, which only gets new points appended.
+     *
+     * A set, so that Hibernate inserts only the join rows of added points; the join rows of a list (a bag)
+     * are all deleted and inserted again when a point is added.
+     */
     @NotNull
-    @OneToMany(cascade = CascadeType.ALL)
-    @Fetch(FetchMode.JOIN)
+    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @BatchSize(size = 100)
     @OrderBy("timestamp")
-    private List<TrackingPoint> trackingPoints;
+    private Set<TrackingPoint> trackingPoints;
 
     @NotNull
     private boolean isPrimary;
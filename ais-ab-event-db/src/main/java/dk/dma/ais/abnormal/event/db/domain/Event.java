@@ -17,14 +17,14 @@
 package dk.dma.ais.abnormal.event.db.domain;
 
 import com.google.common.collect.ImmutableSet;
-import org.hibernate.annotations.Fetch;
-import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.validator.constraints.NotBlank;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -75,9 +75,13 @@ public abstract class Event {
     private boolean suppressed = false;
 
     // TODO create index on event_behaviour(event_id);
-    /** The behaviour observed in connection with this event */
-    @OneToMany(cascade = CascadeType.ALL)
-    @Fetch(FetchMode.JOIN)
+    /**
+     * The behaviour observed in connection with this event; loaded for up to 100 events of a query per extra
+     * select. Unlike a subselect fetch, this loads only the behaviours of the events actually returned by a
+     * query with a max. no. of results.
+     */
+    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @BatchSize(size = 100)
     private Set<Behaviour> behaviours;
 
     /** A title of the event in English language. */
@@ -95,6 +99,13 @@ public abstract class Event {
         return id;
     }
 
+    /**
+     * Assign an id to an event, which is not managed by JPA (e.g. an event read from an event file).
+     */
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getEventType() {
         return this.getClass().getSimpleName();
     }
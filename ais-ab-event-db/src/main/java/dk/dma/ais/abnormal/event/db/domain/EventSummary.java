@@ -0,0 +1,101 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.domain;
+
+import javax.annotation.concurrent.Immutable;
+import java.time.LocalDateTime;
+
+/**
+ * An EventSummary is a read-only projection of an Event for list views and reports. It holds the
+ * event header, the vessel of the primary behaviour and the most recent tracking point of that
+ * behaviour - but none of the event's other behaviours or its tracking history.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@Immutable
+public final class EventSummary {
+
+    private final long id;
+    private final String eventType;
+    private final Event.State state;
+    private final LocalDateTime startTime;
+    private final LocalDateTime endTime;
+    private final String title;
+    private final Vessel vessel;
+    private final TrackingPoint lastTrackingPoint;
+
+    public EventSummary(long id, String eventType, Event.State state, LocalDateTime startTime, LocalDateTime endTime, String title, Vessel vessel, TrackingPoint lastTrackingPoint) {
+        this.id = id;
+        this.eventType = eventType;
+        this.state = state;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.title = title;
+        this.vessel = vessel;
+        this.lastTrackingPoint = lastTrackingPoint;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /** The simple class name of the event, as returned by Event.getEventType() */
+    public String getEventType() {
+        return eventType;
+    }
+
+    public Event.State getState() {
+        return state;
+    }
+
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public LocalDateTime getEndTime() {
+        return endTime;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /** The vessel of the event's primary behaviour */
+    public Vessel getVessel() {
+        return vessel;
+    }
+
+    /** The most recent tracking point of the event's primary behaviour; null if it has no tracking points */
+    public TrackingPoint getLastTrackingPoint() {
+        return lastTrackingPoint;
+    }
+
+    @Override
+    public String toString() {
+        return "EventSummary{" +
+                "id=" + id +
+                ", eventType='" + eventType + '\'' +
+                ", state=" + state +
+                ", startTime=" + startTime +
+                ", endTime=" + endTime +
+                ", title='" + title + '\'' +
+                ", vessel=" + vessel +
+                ", lastTrackingPoint=" + lastTrackingPoint +
+                '}';
+    }
+}
@@ -0,0 +1,218 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.feed;
+
+import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decorates an EventRepository to append a change to an EventChangeLog each time an event is saved or gets
+ * new tracking points:
+ *
+ *   save() of a past event        - LOWERED
+ *   save() of a new event         - RAISED
+ *   save() of another event       - MAINTAINED
+ *   appendTrackingPoints()        - MAINTAINED
+ *
+ * An event is new, if it has no id and has not been saved through this repository before - repositories
+ * which do not assign ids (like the csv and event log repositories) keep the id 0.
+ *
+ * MAINTAINED changes are coalesced: one is only appended when the event's most recent tracking point is at
+ * least maintainedIntervalMillis after the one of the previous change of the event. The LOWERED change carries
+ * the final position of the event.
+ *
+ * Changes are appended after the decorated repository has stored the event. If the change cannot be appended,
+ * the error is logged and the event is kept; the change feed then misses the change.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class ChangeLoggingEventRepository implements EventRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeLoggingEventRepository.class);
+
+    public static final long DEFAULT_MAINTAINED_INTERVAL_MILLIS = 60000;
+
+    /** More ongoing events than this clear the tracked changes; a few events may then be raised again */
+    private static final int MAX_TRACKED_EVENTS = 100000;
+
+    private final EventRepository eventRepository;
+    private final EventChangeLog changeLog;
+    private final long maintainedIntervalMillis;
+
+    /** The tracking point time of the last change appended per ongoing event - by id, or by identity if it has no id */
+    private final ConcurrentMap<Object, LocalDateTime> lastChanges = new ConcurrentHashMap<>();
+
+    public ChangeLoggingEventRepository(EventRepository eventRepository, EventChangeLog changeLog) {
+        this(eventRepository, changeLog, DEFAULT_MAINTAINED_INTERVAL_MILLIS);
+    }
+
+    public ChangeLoggingEventRepository(EventRepository eventRepository, EventChangeLog changeLog, long maintainedIntervalMillis) {
+        this.eventRepository = eventRepository;
+        this.changeLog = changeLog;
+        this.maintainedIntervalMillis = maintainedIntervalMillis;
+    }
+
+    @Override
+    public List<String> getEventTypes() {
+        return eventRepository.getEventTypes();
+    }
+
+    @Override
+    public void save(Event event) {
+        final Object keyBeforeSave = key(event);
+        final EventChange.Type type;
+        if (event.getState() == Event.State.PAST) {
+            type = EventChange.Type.LOWERED;
+        } else if (event.getId() == 0 && !lastChanges.containsKey(keyBeforeSave)) {
+            type = EventChange.Type.RAISED;
+        } else {
+            type = EventChange.Type.MAINTAINED;
+        }
+
+        eventRepository.save(event);
+
+        // Saving may have assigned an id to the event
+        final Object key = key(event);
+        if (!key.equals(keyBeforeSave)) {
+            LocalDateTime lastChange = lastChanges.remove(keyBeforeSave);
+            if (lastChange != null) {
+                lastChanges.put(key, lastChange);
+            }
+        }
+
+        final Behaviour primaryBehaviour = event.primaryBehaviour();
+        final TrackingPoint trackingPoint = primaryBehaviour == null || primaryBehaviour.getTrackingPoints().isEmpty() ? null : primaryBehaviour.mostRecentTrackingPoint();
+        if (type == EventChange.Type.LOWERED) {
+            lastChanges.remove(key);
+        } else if (!isDue(type, key, trackingPoint)) {
+            return;
+        }
+
+        try {
+            changeLog.append(type, event);
+        } catch (IOException e) {
+            logAppendError(type, event, e);
+        }
+    }
+
+    @Override
+    public void appendTrackingPoints(Event event, int mmsi, List<TrackingPoint> trackingPoints) {
+        eventRepository.appendTrackingPoints(event, mmsi, trackingPoints);
+        if (!trackingPoints.isEmpty()) {
+            final TrackingPoint trackingPoint = trackingPoints.get(trackingPoints.size() - 1);
+            if (isDue(EventChange.Type.MAINTAINED, key(event), trackingPoint)) {
+                append(EventChange.Type.MAINTAINED, event, mmsi, trackingPoint);
+            }
+        }
+    }
+
+    /**
+     * Decide whether a RAISED or MAINTAINED change of an event is to be appended; and if so, remember its time.
+     */
+    private boolean isDue(EventChange.Type type, Object key, TrackingPoint trackingPoint) {
+        final LocalDateTime time = trackingPoint == null || trackingPoint.getTimestamp() == null ? LocalDateTime.MIN : trackingPoint.getTimestamp();
+        final LocalDateTime lastChange = lastChanges.get(key);
+        if (type == EventChange.Type.MAINTAINED && lastChange != null && time.isBefore(lastChange.plus(maintainedIntervalMillis, ChronoUnit.MILLIS))) {
+            return false;
+        }
+
+        if (lastChanges.size() >= MAX_TRACKED_EVENTS) {
+            LOG.warn("Tracking the changes of more than " + MAX_TRACKED_EVENTS + " ongoing events; clearing.");
+            lastChanges.clear();
+        }
+        lastChanges.put(key, time);
+        return true;
+    }
+
+    private static Object key(Event event) {
+        return event.getId() == 0 ? event : event.getId();
+    }
+
+    private void append(EventChange.Type type, Event event, int mmsi, TrackingPoint trackingPoint) {
+        try {
+            changeLog.append(type, event, mmsi, trackingPoint);
+        } catch (IOException e) {
+            logAppendError(type, event, e);
+        }
+    }
+
+    private void logAppendError(EventChange.Type type, Event event, IOException e) {
+        LOG.error("Cannot append " + type + " change of " + event.getEventType() + " " + event.getId() + " to " + changeLog.getFile() + ": " + e.getMessage(), e);
+    }
+
+    @Override
+    public Event getEvent(long eventId) {
+        return eventRepository.getEvent(eventId);
+    }
+
+    @Override
+    public List<Event> findEventsByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        return eventRepository.findEventsByFromAndToAndTypeAndVesselAndArea(from, to, type, vessel, north, east, south, west);
+    }
+
+    @Override
+    public List<Event> findEventsByFromAndTo(Date from, Date to) {
+        return eventRepository.findEventsByFromAndTo(from, to);
+    }
+
+    @Override
+    public List<Event> findRecentEvents(int numberOfEvents) {
+        return eventRepository.findRecentEvents(numberOfEvents);
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndTo(Date from, Date to) {
+        return eventRepository.findEventSummariesByFromAndTo(from, to);
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        return eventRepository.findEventSummariesByFromAndToAndTypeAndVesselAndArea(from, to, type, vessel, north, east, south, west);
+    }
+
+    @Override
+    public List<EventSummary> findRecentEventSummaries(int numberOfEvents) {
+        return eventRepository.findRecentEventSummaries(numberOfEvents);
+    }
+
+    @Override
+    public <T extends Event> T findOngoingEventByVessel(int mmsi, Class<T> eventClass) {
+        return eventRepository.findOngoingEventByVessel(mmsi, eventClass);
+    }
+
+    @Override
+    public int archiveEventsStartedBefore(Date before, Path archiveDirectory) {
+        return eventRepository.archiveEventsStartedBefore(before, archiveDirectory);
+    }
+}
@@ -0,0 +1,173 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.feed;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * One entry of the event change feed: an event was raised, maintained (got a new tracking point), lowered,
+ * suppressed or unsuppressed.
+ *
+ * Changes are numbered by a sequence, which increases by one for each change written to an EventChangeLog.
+ * The position is that of the primary vessel's most recent tracking point, if known.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@Immutable
+public final class EventChange {
+
+    public enum Type { RAISED, MAINTAINED, LOWERED, SUPPRESSED, UNSUPPRESSED }
+
+    private static final char SEPARATOR = '\t';
+    private static final int NUMBER_OF_FIELDS = 8;
+
+    private final long sequence;
+    private final Type type;
+    private final long timestamp;
+    private final long eventId;
+    private final String eventType;
+    private final int mmsi;
+    private final Double latitude;
+    private final Double longitude;
+
+    /**
+     * @param sequence the sequence no. of the change.
+     * @param type what happened to the event.
+     * @param timestamp when the change was published (in milliseconds since the epoch).
+     * @param eventId the id of the event (0 if the event repository does not assign ids).
+     * @param eventType the simple class name of the event.
+     * @param mmsi the MMSI no. of the event's primary vessel.
+     * @param latitude latitude of the primary vessel's most recent tracking point or null.
+     * @param longitude longitude of the primary vessel's most recent tracking point or null.
+     */
+    public EventChange(long sequence, Type type, long timestamp, long eventId, String eventType, int mmsi, Double latitude, Double longitude) {
+        this.sequence = sequence;
+        this.type = type;
+        this.timestamp = timestamp;
+        this.eventId = eventId;
+        this.eventType = eventType;
+        this.mmsi = mmsi;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getEventId() {
+        return eventId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public int getMmsi() {
+        return mmsi;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * @return this change as one line (without line terminator) of tab separated fields.
+     */
+    String toLine() {
+        return new StringBuilder()
+            .append(sequence).append(SEPARATOR)
+            .append(type).append(SEPARATOR)
+            .append(timestamp).append(SEPARATOR)
+            .append(eventId).append(SEPARATOR)
+            .append(eventType).append(SEPARATOR)
+            .append(mmsi).append(SEPARATOR)
+            .append(latitude == null ? "" : latitude).append(SEPARATOR)
+            .append(longitude == null ? "" : longitude)
+            .toString();
+    }
+
+    /**
+     * Parse a line written by toLine().
+     *
+     * @throws IllegalArgumentException if the line is malformed.
+     */
+    static EventChange parse(String line) {
+        String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+        if (fields.length != NUMBER_OF_FIELDS) {
+            throw new IllegalArgumentException("Expected " + NUMBER_OF_FIELDS + " fields: " + line);
+        }
+        return new EventChange(
+            Long.parseLong(fields[0]),
+            Type.valueOf(fields[1]),
+            Long.parseLong(fields[2]),
+            Long.parseLong(fields[3]),
+            fields[4],
+            Integer.parseInt(fields[5]),
+            fields[6].isEmpty() ? null : Double.valueOf(fields[6]),
+            fields[7].isEmpty() ? null : Double.valueOf(fields[7])
+        );
+    }
+
+    /**
+     * @return this change as a JSON object.
+     */
+    public String toJson() {
+        return new StringBuilder()
+            .append("{\"sequence\":").append(sequence)
+            .append(",\"type\":\"").append(type).append('"')
+            .append(",\"timestamp\":").append(timestamp)
+            .append(",\"eventId\":").append(eventId)
+            .append(",\"eventType\":\"").append(eventType.replace("\\", "\\\\").replace("\"", "\\\"")).append('"')
+            .append(",\"mmsi\":").append(mmsi)
+            .append(",\"latitude\":").append(toJsonNumber(latitude))
+            .append(",\"longitude\":").append(toJsonNumber(longitude))
+            .append('}')
+            .toString();
+    }
+
+    private static String toJsonNumber(Double d) {
+        return d == null || d.isNaN() || d.isInfinite() ? "null" : d.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "EventChange{" +
+                "sequence=" + sequence +
+                ", type=" + type +
+                ", timestamp=" + timestamp +
+                ", eventId=" + eventId +
+                ", eventType='" + eventType + '\'' +
+                ", mmsi=" + mmsi +
+                ", latitude=" + latitude +
+                ", longitude=" + longitude +
+                '}';
+    }
+}
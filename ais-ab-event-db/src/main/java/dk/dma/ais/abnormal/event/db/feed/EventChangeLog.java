@@ -0,0 +1,419 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.feed;
+
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An append-only file of EventChanges - one line of tab separated fields per change.
+ *
+ * Several processes (e.g. the analyzer, which raises, maintains and lowers events, and the web application,
+ * which suppresses them) may append to the same file. Each append holds an exclusive lock on the file while it
+ * reads the last sequence no. and writes the next change, so the sequence is strictly increasing by one across
+ * all writers. An incomplete line left at the end of the file by a crashed writer is truncated by the next append.
+ *
+ * When a change would make the file larger than its max. size, the file is rotated: it is linked to
+ * "[file].1" (replacing an older rotated file), and a new file, holding the change, is moved in its place. The
+ * sequence continues in the new file. Writers in other processes notice the new file the next time they hold
+ * the lock, and append to it instead. Rotation relies on hard links and file keys, i.e. a POSIX file system.
+ *
+ * Readers do not lock the file; read() only delivers complete lines, and a Follower follows the file across
+ * rotations.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class EventChangeLog implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventChangeLog.class);
+
+    /** Max. length of a line in bytes - including the line terminator */
+    static final int MAX_LINE_LENGTH = 1024;
+
+    /** Default max. size of the file in bytes before it is rotated */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private final Path file;
+    private final long maxSize;
+
+    @GuardedBy("this")
+    private FileChannel channel;
+
+    /** The file key of the file open in channel; differs from the file key of file when it has been rotated */
+    @GuardedBy("this")
+    private Object channelFileKey;
+
+    /** The file size after our latest append; if the file still has this size, no other process has appended */
+    @GuardedBy("this")
+    private long knownSize = -1;
+
+    @GuardedBy("this")
+    private long knownSequence;
+
+    public EventChangeLog(Path file) throws IOException {
+        this(file, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param file the change log file.
+     * @param maxSize the max. size of the file in bytes before it is rotated.
+     */
+    public EventChangeLog(Path file, long maxSize) throws IOException {
+        this.file = file;
+        this.maxSize = maxSize;
+        synchronized (this) {
+            open();
+        }
+        LOG.info("Appending event changes to " + file.toAbsolutePath());
+    }
+
+    @GuardedBy("this")
+    private void open() throws IOException {
+        while (true) {
+            final Object fileKey = fileKey(file);
+            channel = FileChannel.open(file, CREATE, READ, WRITE);
+            channelFileKey = fileKey(file);
+            // Unless the file was rotated while it was opened, the channel is the file with channelFileKey
+            if (fileKey == null || fileKey.equals(channelFileKey)) {
+                break;
+            }
+            channel.close();
+        }
+        knownSize = -1;
+    }
+
+    @GuardedBy("this")
+    private void reopen() throws IOException {
+        channel.close();
+        open();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Append a change to the log with the MMSI no. and most recent tracking point of the event's primary vessel.
+     *
+     * @param type what happened to the event.
+     * @param event the event.
+     * @return the appended change with its sequence no.
+     */
+    public EventChange append(EventChange.Type type, Event event) throws IOException {
+        Behaviour primaryBehaviour = event.primaryBehaviour();
+        if (primaryBehaviour == null) {
+            return append(type, event, 0, null);
+        }
+        TrackingPoint trackingPoint = primaryBehaviour.getTrackingPoints().isEmpty() ? null : primaryBehaviour.mostRecentTrackingPoint();
+        return append(type, event, primaryBehaviour.getVessel().getMmsi(), trackingPoint);
+    }
+
+    /**
+     * Append a change to the log.
+     *
+     * @param type what happened to the event.
+     * @param event the event.
+     * @param mmsi the MMSI no. of the event's primary vessel.
+     * @param trackingPoint the primary vessel's most recent tracking point or null.
+     * @return the appended change with its sequence no.
+     */
+    public synchronized EventChange append(EventChange.Type type, Event event, int mmsi, TrackingPoint trackingPoint) throws IOException {
+        while (true) {
+            EventChange change = null;
+            boolean reopen = true;
+            try (FileLock lock = channel.lock()) {
+                if (Objects.equals(channelFileKey, fileKey(file))) {
+                    change = appendLocked(type, event, mmsi, trackingPoint);
+                    reopen = knownSize < 0;
+                }
+            }
+            // The file has been rotated - by another process while waiting for the lock, or by appendLocked
+            if (reopen) {
+                reopen();
+            }
+            if (change != null) {
+                return change;
+            }
+        }
+    }
+
+    /**
+     * Append a change while holding the lock on the file. If the change would make the file larger than maxSize,
+     * the file is rotated, and knownSize is set to -1; the new file must then be opened.
+     */
+    @GuardedBy("this")
+    private EventChange appendLocked(EventChange.Type type, Event event, int mmsi, TrackingPoint trackingPoint) throws IOException {
+        long size = channel.size();
+        if (size != knownSize) {
+            size = recover(size);
+        }
+
+        EventChange change = new EventChange(
+            knownSequence + 1,
+            type,
+            System.currentTimeMillis(),
+            event.getId(),
+            event.getEventType(),
+            mmsi,
+            trackingPoint == null ? null : trackingPoint.getLatitude(),
+            trackingPoint == null ? null : trackingPoint.getLongitude()
+        );
+
+        byte[] line = (change.toLine() + '\n').getBytes(UTF_8);
+        if (line.length > MAX_LINE_LENGTH) {
+            throw new IllegalArgumentException("Change too long (" + line.length + " bytes): " + change);
+        }
+
+        if (size > 0 && size + line.length > maxSize) {
+            rotate(line);
+            knownSize = -1;
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            knownSize = position;
+        }
+
+        knownSequence = change.getSequence();
+        return change;
+    }
+
+    /**
+     * Replace the file with a new file holding line, and keep the old file as the rotated file. The file is never
+     * missing, so other writers cannot create an empty file in its place and restart the sequence.
+     */
+    @GuardedBy("this")
+    private void rotate(byte[] line) throws IOException {
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporaryFile, line);
+
+        final Path rotatedFile = rotatedFile(file);
+        Files.deleteIfExists(rotatedFile);
+        Files.createLink(rotatedFile, file);
+        Files.move(temporaryFile, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        LOG.info("Rotated " + file + " to " + rotatedFile);
+    }
+
+    /**
+     * @return the file, which holds the changes before the most recent rotation of file.
+     */
+    public static Path rotatedFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".1");
+    }
+
+    /**
+     * @return the key which identifies the file on its file system, or null if the file does not exist or the file
+     * system does not have file keys.
+     */
+    static Object fileKey(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Find the sequence no. of the last complete line and truncate an incomplete line after it.
+     *
+     * @return the size of the file after truncation.
+     */
+    @GuardedBy("this")
+    private long recover(long size) throws IOException {
+        // The last complete line and an incomplete line after it fit into this many bytes
+        final int length = (int) Math.min(size, 2L * MAX_LINE_LENGTH);
+        final long tailPosition = size - length;
+
+        ByteBuffer tail = ByteBuffer.allocate(length);
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, tailPosition + tail.position()) < 0) {
+                throw new EOFException(file.toString());
+            }
+        }
+        final byte[] bytes = tail.array();
+
+        int end = length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        if (end == 0 && tailPosition > 0) {
+            throw new IOException("No line terminator in the last " + length + " bytes of " + file);
+        }
+        if (end < length) {
+            LOG.warn("Truncating incomplete change of " + (length - end) + " bytes at the end of " + file);
+            channel.truncate(tailPosition + end);
+        }
+
+        if (end == 0) {
+            knownSequence = 0;
+        } else {
+            int start = end - 1;
+            while (start > 0 && bytes[start - 1] != '\n') {
+                start--;
+            }
+            knownSequence = EventChange.parse(new String(bytes, start, end - 1 - start, UTF_8)).getSequence();
+        }
+        knownSize = tailPosition + end;
+        return knownSize;
+    }
+
+    /**
+     * Read the changes in file from a position - e.g. to follow the changes appended by another process.
+     * An incomplete line at the end of the file is not read; it is read by a later call when completed.
+     * Malformed lines are logged and skipped.
+     *
+     * @param file the file of an EventChangeLog.
+     * @param fromPosition the position to read from: 0 or a value returned by a previous call.
+     * @param consumer receives the changes in file order.
+     * @return the position after the last complete line; fromPosition if the file does not exist.
+     */
+    public static long read(Path file, long fromPosition, Consumer<EventChange> consumer) throws IOException {
+        if (!Files.exists(file)) {
+            return fromPosition;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            return read(channel, file, fromPosition, consumer);
+        }
+    }
+
+    private static long read(FileChannel channel, Path file, long fromPosition, Consumer<EventChange> consumer) throws IOException {
+        long position = fromPosition;
+        if (channel.size() < position) {
+            LOG.warn(file + " is shorter than position " + position + "; reading from the beginning.");
+            position = 0;
+        }
+
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(position)));
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b != '\n') {
+                line.write(b);
+                continue;
+            }
+
+            position += line.size() + 1;
+            String text = new String(line.toByteArray(), UTF_8);
+            line.reset();
+            try {
+                consumer.accept(EventChange.parse(text));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Skipping malformed change in " + file + ": " + e.getMessage());
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Follows the file of an EventChangeLog - e.g. the changes appended by another process - across rotations:
+     * when the file has been rotated since the previous read, the rest of the rotated file is read before the new
+     * file. Changes are delivered once, in sequence.
+     */
+    @NotThreadSafe
+    public static final class Follower {
+
+        private final Path file;
+        private Object fileKey;
+        private long position;
+        private long lastSequence;
+
+        public Follower(Path file) {
+            this.file = file;
+        }
+
+        /**
+         * Read the changes appended since the previous call. An incomplete line at the end of the file is not
+         * read; it is read by a later call when completed. Malformed lines are logged and skipped.
+         *
+         * @param consumer receives the changes in sequence.
+         */
+        public void read(Consumer<EventChange> consumer) throws IOException {
+            final Object currentFileKey = fileKey(file);
+            if (currentFileKey == null) {
+                return;
+            }
+
+            final Consumer<EventChange> inSequence = change -> {
+                if (change.getSequence() > lastSequence) {
+                    lastSequence = change.getSequence();
+                    consumer.accept(change);
+                }
+            };
+
+            if (fileKey != null && !fileKey.equals(currentFileKey)) {
+                final Path rotatedFile = rotatedFile(file);
+                if (fileKey.equals(fileKey(rotatedFile))) {
+                    EventChangeLog.read(rotatedFile, position, inSequence);
+                } else {
+                    LOG.warn(file + " has been replaced; reading it from the beginning.");
+                    lastSequence = 0;
+                }
+                position = 0;
+            }
+
+            try (FileChannel channel = FileChannel.open(file, READ)) {
+                // If the file was rotated while it was opened, the channel may be a file other than currentFileKey
+                if (currentFileKey.equals(fileKey(file))) {
+                    fileKey = currentFileKey;
+                    position = EventChangeLog.read(channel, file, position, inSequence);
+                }
+            } catch (NoSuchFileException e) {
+                LOG.debug(file + " disappeared: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
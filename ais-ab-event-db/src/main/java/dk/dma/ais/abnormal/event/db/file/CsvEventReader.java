@@ -0,0 +1,209 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.file;
+
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.Vessel;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads the events of a CSV file written by CsvEventRepository - and the events appended to the file
+ * since it was last read, without parsing the file again.
+ *
+ * The CSV format holds the primary and one secondary vessel of each event with the last tracking point of
+ * each; so the events read hold (at most) two behaviours with one tracking point each, timestamped at the
+ * end of the event. The dimensions of the vessels are not restored.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@NotThreadSafe
+final class CsvEventReader {
+
+    private final Path file;
+
+    /** The column names of the header line; or null until the header line has been read */
+    private String[] header;
+
+    /** The position in the file after the last complete record (or header line) read */
+    private long position;
+
+    CsvEventReader(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Pass each event appended to the file since the last call to consumer. Only the bytes after the last
+     * complete record are read; a record which is still being written is read by a later call.
+     *
+     * @return the position in the file after the last complete record.
+     */
+    long read(Consumer<Event> consumer) throws IOException {
+        final byte[] bytes = readFrom(position);
+
+        // Bytes after the last line break belong to a record which is still being written
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] != '\n') {
+            length--;
+        }
+        if (length == 0) {
+            return position;
+        }
+
+        final String text = new String(bytes, 0, length, UTF_8);
+        final CSVFormat format = header == null ? CSVFormat.RFC4180.withHeader() : CSVFormat.RFC4180.withHeader(header);
+
+        try (CSVParser parser = format.parse(new StringReader(text))) {
+            // The column names have no line breaks; so the header line ends at the first line break
+            int end = 0;
+            if (header == null) {
+                header = parser.getHeaderMap().keySet().toArray(new String[0]);
+                end = text.indexOf('\n') + 1;
+            }
+
+            // An event is passed on when the start of the next record shows that it was completely written
+            Event event = null;
+            boolean complete = true;
+            try {
+                for (CSVRecord record : parser) {
+                    if (event != null) {
+                        consumer.accept(event);
+                        event = null;
+                    }
+                    end = (int) record.getCharacterPosition();
+                    if (! record.isConsistent()) {
+                        complete = false; // Incomplete last record of a file being written
+                        break;
+                    }
+                    event = toEvent(record);
+                }
+            } catch (IllegalStateException e) {
+                complete = false; // A quoted value which is still being written
+            }
+            if (complete) {
+                if (event != null) {
+                    consumer.accept(event);
+                }
+                end = text.length();
+            }
+
+            position += text.substring(0, end).getBytes(UTF_8).length;
+        }
+        return position;
+    }
+
+    private byte[] readFrom(long fromPosition) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            final long size = channel.size() - fromPosition;
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Cannot read " + size + " bytes of CSV file at once: " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(size, 0));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, fromPosition + buffer.position()) < 0) {
+                    break; // Truncated while being read
+                }
+            }
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+
+    private static Event toEvent(CSVRecord record) throws IOException {
+        Event event = newEvent(record.get("eventType"));
+        event.setState(Event.State.PAST);
+        event.setStartTime(LocalDateTime.parse(record.get("startTime")));
+        event.setEndTime(isNull(record.get("endTime")) ? null : LocalDateTime.parse(record.get("endTime")));
+        event.setTitle(nullIfEmpty(record.get("title")));
+        event.setDescription(nullIfEmpty(record.get("description")));
+
+        final LocalDateTime timestamp = event.getEndTime() == null ? event.getStartTime() : event.getEndTime();
+        event.addBehaviour(toBehaviour(record, "p", true, timestamp));
+        if (! isNull(record.get("sMmsi"))) {
+            event.addBehaviour(toBehaviour(record, "s", false, timestamp));
+        }
+        return event;
+    }
+
+    private static Behaviour toBehaviour(CSVRecord record, String prefix, boolean primary, LocalDateTime timestamp) {
+        Vessel vessel = new Vessel();
+        vessel.setMmsi(Integer.parseInt(record.get(prefix + "Mmsi")));
+        vessel.setName(nullIfEmpty(record.get(prefix + "Name")));
+        vessel.setCallsign(nullIfEmpty(record.get(prefix + "Callsign")));
+        vessel.setType(toInteger(record.get(prefix + "Type")));
+
+        TrackingPoint trackingPoint = new TrackingPoint();
+        trackingPoint.setTimestamp(timestamp);
+        trackingPoint.setLatitude(toDouble(record.get(prefix + "Lat")));
+        trackingPoint.setLongitude(toDouble(record.get(prefix + "Lon")));
+        trackingPoint.setSpeedOverGround(toFloat(record.get(prefix + "Sog")));
+        trackingPoint.setCourseOverGround(toFloat(record.get(prefix + "Cog")));
+        trackingPoint.setTrueHeading(toFloat(record.get(prefix + "Hdg")));
+
+        Behaviour behaviour = new Behaviour();
+        behaviour.setPrimary(primary);
+        behaviour.setVessel(vessel);
+        behaviour.addTrackingPoint(trackingPoint);
+        return behaviour;
+    }
+
+    private static Event newEvent(String eventType) throws IOException {
+        final String className = Event.class.getPackage().getName() + "." + eventType;
+        try {
+            return Class.forName(className).asSubclass(Event.class).newInstance();
+        } catch (ClassNotFoundException | ClassCastException | InstantiationException | IllegalAccessException e) {
+            throw new IOException("Cannot create event of type " + className, e);
+        }
+    }
+
+    /** CsvEventRepository writes null values as empty strings, or as "null" when formatted */
+    private static boolean isNull(String value) {
+        return value == null || value.isEmpty() || "null".equals(value);
+    }
+
+    private static String nullIfEmpty(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static Integer toInteger(String value) {
+        return isNull(value) ? null : Integer.valueOf(value);
+    }
+
+    private static Double toDouble(String value) {
+        return isNull(value) ? null : Double.valueOf(value);
+    }
+
+    private static Float toFloat(String value) {
+        return isNull(value) ? null : Float.valueOf(value);
+    }
+}
@@ -0,0 +1,425 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.file;
+
+import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.log.EventLogReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Comparator.comparing;
+
+/**
+ * EventFileRepository is a read-only implementation of the EventRepository interface over an event file -
+ * a binary event log written by BinaryEventRepository, or a CSV file written by CsvEventRepository - so
+ * that the output of e.g. a replay run can be served without a database.
+ *
+ * An EventIndex of the file is built when the repository is opened, and extended with the events which
+ * have been appended to the file, before each query which finds the file grown. Only the records after
+ * the last indexed one are read. Queries use the index to find the candidate events, and check the
+ * candidates against the exact query conditions.
+ *
+ * Events of a binary event log are read from the file on demand. Events of a CSV file are held in memory
+ * (see CsvEventReader for what the CSV format does not hold). The events are given ids from 1 and up in
+ * the order they appear in the file - not the ids they were stored with, which are missing from event
+ * logs of schema version 1 and need not be unique across runs written to the same file. So an id is only
+ * valid for the file it was returned from.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public class EventFileRepository implements EventRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventFileRepository.class);
+
+    {
+        LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
+    }
+
+    private final Path file;
+
+    private final boolean isEventLog;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @GuardedBy("lock")
+    private final EventIndex index = new EventIndex();
+
+    /** Positions of the events in the event log; or null for CSV files */
+    @GuardedBy("lock")
+    private long[] positions;
+
+    /** The events of the CSV file; or null for event logs */
+    @GuardedBy("lock")
+    private final List<Event> csvEvents;
+
+    /** The reader of the CSV file; or null for event logs */
+    @GuardedBy("lock")
+    private final CsvEventReader csvReader;
+
+    /** The position in the file after the last indexed record */
+    @GuardedBy("lock")
+    private long indexedSize;
+
+    /** The size of the file when the index was last refreshed */
+    @GuardedBy("lock")
+    private long refreshedSize;
+
+    private final FileChannel channel;
+
+    /**
+     * @throws IOException if the file cannot be read, or is a compressed event log (events are read from
+     * event logs on demand; so a compressed archive must be decompressed with gunzip first).
+     */
+    public EventFileRepository(Path file) throws IOException {
+        if (EventLogReader.isCompressed(file)) {
+            throw new IOException("Cannot serve compressed event log " + file + "; decompress it with gunzip first.");
+        }
+        this.file = file;
+        this.isEventLog = EventLogReader.isEventLog(file);
+        this.channel = isEventLog ? FileChannel.open(file, READ) : null;
+        this.positions = isEventLog ? new long[1024] : null;
+        this.csvEvents = isEventLog ? null : new ArrayList<>();
+        this.csvReader = isEventLog ? null : new CsvEventReader(file);
+
+        lock.writeLock().lock();
+        try {
+            refresh();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("Indexed " + index.size() + " events in " + file.toAbsolutePath());
+    }
+
+    /**
+     * Extend the index with the events appended to the file since it was last indexed.
+     */
+    @GuardedBy("lock")
+    private void refresh() throws IOException {
+        final long size = Files.size(file);
+        if (size == refreshedSize) {
+            return;
+        }
+
+        final int numberOfIndexedEvents = index.size();
+        try {
+            read();
+        } finally {
+            // Sorted here under the write lock, so that queries under the read lock never modify the index
+            index.sortByStartTime();
+        }
+        refreshedSize = size;
+
+        if (index.size() > numberOfIndexedEvents) {
+            LOG.debug("Indexed " + (index.size() - numberOfIndexedEvents) + " new events in " + file);
+        }
+    }
+
+    @GuardedBy("lock")
+    private void read() throws IOException {
+        if (isEventLog) {
+            indexedSize = EventLogReader.read(file, indexedSize == 0 ? EventLogReader.FIRST_RECORD_POSITION : indexedSize, (position, event) -> {
+                final int eventNumber = index.add(event);
+                if (eventNumber == positions.length) {
+                    positions = Arrays.copyOf(positions, positions.length * 2);
+                }
+                positions[eventNumber] = position;
+            });
+        } else {
+            indexedSize = csvReader.read(event -> {
+                index.add(event);
+                csvEvents.add(event);
+            });
+        }
+    }
+
+    /**
+     * Refresh the index, if the file has changed size since it was last refreshed. The size is compared
+     * under the read lock, so that concurrent queries of an unchanged file do not wait for each other.
+     */
+    private void refreshQuietly() {
+        try {
+            final long size = Files.size(file);
+
+            lock.readLock().lock();
+            try {
+                if (size == refreshedSize) {
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // A read lock cannot be upgraded; so refresh() compares the size again under the write lock
+            lock.writeLock().lock();
+            try {
+                refresh();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @GuardedBy("lock")
+    private Event load(int eventNumber) {
+        Event event;
+        if (isEventLog) {
+            try {
+                event = EventLogReader.readRecord(channel, positions[eventNumber]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            event = csvEvents.get(eventNumber);
+        }
+        event.setId(eventNumber + 1);
+        return event;
+    }
+
+    @Override
+    public List<String> getEventTypes() {
+        refreshQuietly();
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(index.getEventTypes());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param eventId the number of the event in the file, counting from 1 (see the class comment).
+     */
+    @Override
+    public Event getEvent(long eventId) {
+        refreshQuietly();
+        lock.readLock().lock();
+        try {
+            return eventId >= 1 && eventId <= index.size() ? load((int) (eventId - 1)) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Event> findEventsByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        final long fromMillis = from == null ? Long.MIN_VALUE : from.getTime();
+        final long toMillis = to == null ? Long.MAX_VALUE : to.getTime();
+        final String vesselText = isBlank(vessel) ? null : stripWildcards(vessel);
+        final Integer vesselNumber = parseInteger(vesselText);
+        final boolean hasArea = north != null && east != null && south != null && west != null;
+
+        refreshQuietly();
+        lock.readLock().lock();
+        try {
+            BitSet candidates = index.candidatesByTime(fromMillis, toMillis);
+            if (vesselText != null) {
+                candidates.and(index.candidatesByVessel(vesselText, vesselNumber));
+            }
+            if (hasArea) {
+                BitSet byArea = index.candidatesByArea(north, east, south, west);
+                if (byArea != null) {
+                    candidates.and(byArea);
+                }
+            }
+
+            List<Event> events = new ArrayList<>();
+            for (int eventNumber = candidates.nextSetBit(0); eventNumber >= 0; eventNumber = candidates.nextSetBit(eventNumber + 1)) {
+                if (isBlank(type) || type.equals(index.getEventType(eventNumber))) {
+                    Event event = load(eventNumber);
+                    if (overlaps(event, fromMillis, toMillis)
+                        && (! hasArea || isInside(event, north, east, south, west))) {
+                        events.add(event);
+                    }
+                }
+            }
+
+            events.sort(comparing(Event::getStartTime));
+            return events;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Event> findEventsByFromAndTo(Date from, Date to) {
+        final long fromMillis = from.getTime();
+        final long toMillis = to.getTime();
+
+        refreshQuietly();
+        lock.readLock().lock();
+        try {
+            BitSet candidates = index.candidatesByTime(fromMillis, toMillis);
+            List<Event> events = new ArrayList<>();
+            for (int eventNumber = candidates.nextSetBit(0); eventNumber >= 0; eventNumber = candidates.nextSetBit(eventNumber + 1)) {
+                Event event = load(eventNumber);
+                if (startsOrEndsWithin(event, fromMillis, toMillis)) {
+                    events.add(event);
+                }
+            }
+
+            events.sort(comparing(Event::getStartTime));
+            return events;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Event> findRecentEvents(int numberOfEvents) {
+        refreshQuietly();
+        lock.readLock().lock();
+        try {
+            int[] eventsByStartTime = index.eventsByStartTime();
+            List<Event> events = new ArrayList<>(numberOfEvents);
+            for (int i = eventsByStartTime.length - 1; i >= 0 && events.size() < numberOfEvents; i--) {
+                events.add(load(eventsByStartTime[i]));
+            }
+            return events;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndTo(Date from, Date to) {
+        return findEventsByFromAndTo(from, to).stream().map(EventFileRepository::toEventSummary).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        return findEventsByFromAndToAndTypeAndVesselAndArea(from, to, type, vessel, north, east, south, west).stream().map(EventFileRepository::toEventSummary).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<EventSummary> findRecentEventSummaries(int numberOfEvents) {
+        return findRecentEvents(numberOfEvents).stream().map(EventFileRepository::toEventSummary).collect(Collectors.toList());
+    }
+
+    /**
+     * Event files hold past events only.
+     *
+     * @return null
+     */
+    @Override
+    public <T extends Event> T findOngoingEventByVessel(int mmsi, Class<T> eventClass) {
+        return null;
+    }
+
+    @Override
+    public void save(Event event) {
+        throw new UnsupportedOperationException("Event file repository is read-only.");
+    }
+
+    @Override
+    public void appendTrackingPoints(Event event, int mmsi, List<TrackingPoint> trackingPoints) {
+        throw new UnsupportedOperationException("Event file repository is read-only.");
+    }
+
+    @Override
+    public int archiveEventsStartedBefore(Date before, Path archiveDirectory) {
+        throw new UnsupportedOperationException("Event file repository is read-only.");
+    }
+
+    /** (startTime >= from OR endTime >= from) AND (startTime <= to OR endTime <= to) - as JpaEventRepository */
+    private static boolean overlaps(Event event, long from, long to) {
+        final long startTime = EventIndex.toMillis(event.getStartTime());
+        final Long endTime = event.getEndTime() == null ? null : EventIndex.toMillis(event.getEndTime());
+        return (startTime >= from || (endTime != null && endTime >= from)) && (startTime <= to || (endTime != null && endTime <= to));
+    }
+
+    /** startTime in [from; to] OR endTime in [from; to] - as JpaEventRepository */
+    private static boolean startsOrEndsWithin(Event event, long from, long to) {
+        final long startTime = EventIndex.toMillis(event.getStartTime());
+        final Long endTime = event.getEndTime() == null ? null : EventIndex.toMillis(event.getEndTime());
+        return (startTime >= from && startTime <= to) || (endTime != null && endTime >= from && endTime <= to);
+    }
+
+    /** At least one tracking point strictly inside the area - as JpaEventRepository */
+    private static boolean isInside(Event event, double north, double east, double south, double west) {
+        for (Behaviour behaviour : event.getBehaviours()) {
+            for (TrackingPoint trackingPoint : behaviour.getTrackingPoints()) {
+                Double latitude = trackingPoint.getLatitude();
+                Double longitude = trackingPoint.getLongitude();
+                if (latitude != null && longitude != null && latitude < north && latitude > south && longitude < east && longitude > west) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static EventSummary toEventSummary(Event event) {
+        Behaviour behaviour = event.primaryBehaviour();
+        return new EventSummary(
+            event.getId(),
+            event.getEventType(),
+            event.getState(),
+            event.getStartTime(),
+            event.getEndTime(),
+            event.getTitle(),
+            behaviour == null ? null : behaviour.getVessel(),
+            behaviour == null || behaviour.getTrackingPoints().isEmpty() ? null : behaviour.mostRecentTrackingPoint()
+        );
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    private static String stripWildcards(String vessel) {
+        int begin = 0, end = vessel.length();
+        while (begin < end && vessel.charAt(begin) == '%') {
+            begin++;
+        }
+        while (end > begin && vessel.charAt(end - 1) == '%') {
+            end--;
+        }
+        return vessel.substring(begin, end);
+    }
+
+    private static Integer parseInteger(String s) {
+        try {
+            return s == null ? null : Integer.valueOf(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.file;
+
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * An in-memory index of the events in an event file. Events are identified by their number in the file
+ * (0, 1, 2, ...), and the index holds
+ *
+ * - the start and end time and the type of each event; with the event numbers sorted by start time,
+ * - a posting list of event numbers per MMSI and IMO number of the involved vessels; and the names and
+ *   callsigns of the involved vessels of each event, and
+ * - a posting list of event numbers per cell of a coarse grid (GRID_CELL_DEGREES) in which the events
+ *   have tracking points.
+ *
+ * The index only narrows the set of candidate events; the candidates must be checked against the exact
+ * query conditions.
+ *
+ * The index is not modified by queries, so it may be queried concurrently, as long as it is not
+ * modified at the same time. Events added are not sorted by start time before sortByStartTime is called.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@NotThreadSafe
+final class EventIndex {
+
+    static final double GRID_CELL_DEGREES = 1.0;
+
+    /** Area queries covering more grid cells than this are answered without the grid */
+    static final int MAX_GRID_CELLS_PER_QUERY = 4096;
+
+    private int size;
+    private long[] startTimes = new long[1024];
+    private long[] endTimes = new long[1024];
+    private String[] eventTypes = new String[1024];
+    private String[] vesselTexts = new String[1024];
+    private long maxDuration;
+
+    private final Set<String> distinctEventTypes = new TreeSet<>();
+    private final Map<Integer, IntList> eventsByVesselNumber = new HashMap<>();
+    private final Map<Long, IntList> eventsByCell = new HashMap<>();
+
+    /** Event numbers sorted by start time; the events added since sortByStartTime was called are not included */
+    private int[] eventsByStartTime = new int[0];
+    private long[] sortedStartTimes = new long[0];
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Add the next event of the file to the index.
+     *
+     * @return the number of the event.
+     */
+    int add(Event event) {
+        final int eventNumber = size;
+        if (size == startTimes.length) {
+            startTimes = Arrays.copyOf(startTimes, size * 2);
+            endTimes = Arrays.copyOf(endTimes, size * 2);
+            eventTypes = Arrays.copyOf(eventTypes, size * 2);
+            vesselTexts = Arrays.copyOf(vesselTexts, size * 2);
+        }
+
+        final long startTime = toMillis(event.getStartTime());
+        final long endTime = event.getEndTime() == null ? startTime : toMillis(event.getEndTime());
+        startTimes[eventNumber] = startTime;
+        endTimes[eventNumber] = endTime;
+        eventTypes[eventNumber] = event.getEventType().intern();
+        maxDuration = Math.max(maxDuration, endTime - startTime);
+        distinctEventTypes.add(eventTypes[eventNumber]);
+
+        Set<Integer> vesselNumbers = new HashSet<>();
+        Set<Long> cells = new HashSet<>();
+        StringBuilder vesselText = new StringBuilder();
+        for (Behaviour behaviour : event.getBehaviours()) {
+            if (behaviour.getVessel().getName() != null) {
+                vesselText.append(behaviour.getVessel().getName()).append('\n');
+            }
+            if (behaviour.getVessel().getCallsign() != null) {
+                vesselText.append(behaviour.getVessel().getCallsign()).append('\n');
+            }
+            vesselNumbers.add(behaviour.getVessel().getMmsi());
+            if (behaviour.getVessel().getImo() != null) {
+                vesselNumbers.add(behaviour.getVessel().getImo());
+            }
+            for (TrackingPoint trackingPoint : behaviour.getTrackingPoints()) {
+                if (trackingPoint.getLatitude() != null && trackingPoint.getLongitude() != null) {
+                    cells.add(cell(row(trackingPoint.getLatitude()), column(trackingPoint.getLongitude())));
+                }
+            }
+        }
+        vesselTexts[eventNumber] = vesselText.toString();
+        vesselNumbers.forEach(vesselNumber -> eventsByVesselNumber.computeIfAbsent(vesselNumber, k -> new IntList()).add(eventNumber));
+        cells.forEach(cell -> eventsByCell.computeIfAbsent(cell, k -> new IntList()).add(eventNumber));
+
+        size++;
+        return eventNumber;
+    }
+
+    Set<String> getEventTypes() {
+        return distinctEventTypes;
+    }
+
+    String getEventType(int eventNumber) {
+        return eventTypes[eventNumber];
+    }
+
+    /**
+     * Sort the events added since the last call by start time, and merge them into the events sorted
+     * before; the events of a file are mostly added in order of start time already.
+     */
+    void sortByStartTime() {
+        final int numberOfSortedEvents = eventsByStartTime.length;
+        if (numberOfSortedEvents == size) {
+            return;
+        }
+
+        final int[] addedEvents = IntStream.range(numberOfSortedEvents, size).boxed()
+            .sorted((i, j) -> Long.compare(startTimes[i], startTimes[j]))
+            .mapToInt(Integer::intValue)
+            .toArray();
+
+        final int[] mergedEvents = new int[size];
+        final long[] mergedStartTimes = new long[size];
+        for (int i = 0, s = 0, a = 0; i < size; i++) {
+            if (a == addedEvents.length || (s < numberOfSortedEvents && sortedStartTimes[s] <= startTimes[addedEvents[a]])) {
+                mergedEvents[i] = eventsByStartTime[s++];
+            } else {
+                mergedEvents[i] = addedEvents[a++];
+            }
+            mergedStartTimes[i] = startTimes[mergedEvents[i]];
+        }
+
+        eventsByStartTime = mergedEvents;
+        sortedStartTimes = mergedStartTimes;
+    }
+
+    /**
+     * @return the event numbers sorted by start time.
+     */
+    int[] eventsByStartTime() {
+        return eventsByStartTime;
+    }
+
+    /**
+     * @return the events which may be active at some time in [from; to], or end in [from; to].
+     */
+    BitSet candidatesByTime(long from, long to) {
+        final int[] eventsByStartTime = this.eventsByStartTime;
+        final long[] sortedStartTimes = this.sortedStartTimes;
+        final long earliestStart = from == Long.MIN_VALUE ? Long.MIN_VALUE : from - maxDuration;
+        BitSet candidates = new BitSet(size);
+        for (int i = lowerBound(sortedStartTimes, earliestStart); i < sortedStartTimes.length && sortedStartTimes[i] <= to; i++) {
+            if (endTimes[eventsByStartTime[i]] >= from) {
+                candidates.set(eventsByStartTime[i]);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return the events involving a vessel with the given MMSI or IMO number.
+     */
+    BitSet candidatesByVesselNumber(int vesselNumber) {
+        BitSet candidates = new BitSet(size);
+        IntList events = eventsByVesselNumber.get(vesselNumber);
+        if (events != null) {
+            events.forEach(candidates::set);
+        }
+        return candidates;
+    }
+
+    /**
+     * @param text a text, which is contained in the name or callsign of a vessel of the events.
+     * @param number a number, which is the MMSI or IMO no. of a vessel of the events; or null.
+     * @return the events involving a vessel matching text or number.
+     */
+    BitSet candidatesByVessel(String text, Integer number) {
+        BitSet candidates = number == null ? new BitSet(size) : candidatesByVesselNumber(number);
+        for (int eventNumber = 0; eventNumber < size; eventNumber++) {
+            if (vesselTexts[eventNumber].contains(text)) {
+                candidates.set(eventNumber);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return the events which have tracking points in grid cells overlapping the area; or null if the
+     * area covers too many grid cells for the grid to be useful.
+     */
+    BitSet candidatesByArea(double north, double east, double south, double west) {
+        final int minRow = row(south), maxRow = row(north), minColumn = column(west), maxColumn = column(east);
+        if ((long) (maxRow - minRow + 1) * (maxColumn - minColumn + 1) > MAX_GRID_CELLS_PER_QUERY) {
+            return null;
+        }
+
+        BitSet candidates = new BitSet(size);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                IntList events = eventsByCell.get(cell(row, column));
+                if (events != null) {
+                    events.forEach(candidates::set);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private static int lowerBound(long[] sorted, long key) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (sorted[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int row(double latitude) {
+        return (int) Math.floor(latitude / GRID_CELL_DEGREES);
+    }
+
+    private static int column(double longitude) {
+        return (int) Math.floor(longitude / GRID_CELL_DEGREES);
+    }
+
+    private static long cell(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /** A growable list of ints - the posting lists of the index */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void forEach(IntConsumer consumer) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept(values[i]);
+            }
+        }
+    }
+}
@@ -18,16 +18,37 @@ package dk.dma.ais.abnormal.event.db.jpa;
 
 import com.google.inject.Inject;
 import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
 import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.Vessel;
+import dk.dma.ais.abnormal.event.db.log.EventLogReader;
+import dk.dma.ais.abnormal.event.db.log.EventLogWriter;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static java.lang.System.currentTimeMillis;
 
@@ -43,13 +64,42 @@ public class JpaEventRepository implements EventRepository {
         LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
     }
 
+    /**
+     * Selects one row per event with the event header, the primary vessel and the primary behaviour's most
+     * recent tracking point (null if it has none) - instead of the full event graph. Must be followed by
+     * " AND <condition>".
+     */
+    private static final String SELECT_EVENT_SUMMARIES_HQL =
+        "SELECT e.id, e.class, e.state, e.startTime, e.endTime, e.title, v, tp " +
+        "FROM Event e JOIN e.behaviours b JOIN b.vessel v LEFT JOIN b.trackingPoints tp " +
+        "WHERE b.isPrimary=true AND e.suppressed=false " +
+        "AND (tp IS NULL OR tp.timestamp = (SELECT MAX(tp2.timestamp) FROM Behaviour b2 JOIN b2.trackingPoints tp2 WHERE b2=b))";
+
+    /** No. of events loaded into one session at a time when archiving */
+    private static final int ARCHIVE_CHUNK_SIZE = 500;
+
+    private static final DateTimeFormatter ARCHIVE_MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    /** No. of appended tracking points flushed at a time, if no JDBC batch size is given */
+    private static final int DEFAULT_FLUSH_SIZE = 50;
+
     private final SessionFactory sessionFactory;
     private final boolean readonly;
+    private final int flushSize;
 
     @Inject
     public JpaEventRepository(SessionFactory sessionFactory, boolean readonly) {
+        this(sessionFactory, readonly, 0);
+    }
+
+    /**
+     * @param batchSize the JDBC batch size (hibernate.jdbc.batch_size) of the session factory, or 0 if not batching.
+     *                  Appended tracking points are flushed and cleared from the session in chunks of this size.
+     */
+    public JpaEventRepository(SessionFactory sessionFactory, boolean readonly, int batchSize) {
         this.readonly = readonly;
         this.sessionFactory = sessionFactory;
+        this.flushSize = batchSize > 0 ? batchSize : DEFAULT_FLUSH_SIZE;
     }
 
     private Session getSession() {
@@ -79,6 +129,10 @@ public class JpaEventRepository implements EventRepository {
         return events;
     }
 
+    /**
+     * Save or update the event. The tracking points of an event from findOngoingEventByVessel() are
+     * loaded after the update, so the saved event can be read like any other found event.
+     */
     @Override
     public void save(Event event) {
         Session session = getSession();
@@ -86,18 +140,99 @@ public class JpaEventRepository implements EventRepository {
             session.beginTransaction();
             session.saveOrUpdate(event);
             session.getTransaction().commit();
+            loadTrackingPoints(event);
+        } catch (RuntimeException e) {
+            rollback(session);
+            throw e;
         } finally {
             session.close();
             LOG.debug("Database session closed: " + session);
         }
     }
 
+    /**
+     * Save the new tracking points and add them to the behaviour as loaded by this session, instead of
+     * re-saving the whole event with its full tracking history. The points are flushed and cleared from
+     * the session in chunks of the JDBC batch size. Behaviours, which have not yet been saved, are saved
+     * with their event.
+     */
+    @Override
+    public void appendTrackingPoints(Event event, int mmsi, List<TrackingPoint> trackingPoints) {
+        if (readonly == false) {
+            final Behaviour behaviour = event.getBehaviour(mmsi);
+            Session session = getSession();
+            try {
+                session.beginTransaction();
+                if (behaviour.getId() == 0) {
+                    trackingPoints.forEach(behaviour::addTrackingPoint);
+                    session.saveOrUpdate(event);
+                } else {
+                    Behaviour managedBehaviour = getBehaviour(session, behaviour.getId());
+                    for (int i = 0; i < trackingPoints.size(); i++) {
+                        if (i > 0 && i % flushSize == 0) {
+                            session.flush();
+                            session.clear();
+                            managedBehaviour = getBehaviour(session, behaviour.getId());
+                        }
+                        TrackingPoint trackingPoint = trackingPoints.get(i);
+                        session.save(trackingPoint);
+                        managedBehaviour.addTrackingPoint(trackingPoint);
+                    }
+                }
+                session.getTransaction().commit();
+            } catch (RuntimeException e) {
+                rollback(session);
+                throw e;
+            } finally {
+                session.close();
+                LOG.debug("Database session closed: " + session);
+            }
+        }
+    }
+
+    private static Behaviour getBehaviour(Session session, long behaviourId) {
+        Behaviour behaviour = (Behaviour) session.get(Behaviour.class, behaviourId);
+        if (behaviour == null) {
+            throw new IllegalStateException("Behaviour " + behaviourId + " not found; cannot append tracking points.");
+        }
+        return behaviour;
+    }
+
+    private static void rollback(Session session) {
+        Transaction transaction = session.getTransaction();
+        if (transaction != null && transaction.isActive()) {
+            try {
+                transaction.rollback();
+            } catch (RuntimeException e) {
+                LOG.error("Cannot roll back transaction: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Load the lazy tracking points of the events' behaviours while their session is open. The points of up
+     * to 100 behaviours in the session are selected in one go (@BatchSize) - never those of events which the
+     * query did not return.
+     */
+    private static void loadTrackingPoints(Iterable<?> events) {
+        for (Object event : events) {
+            loadTrackingPoints((Event) event);
+        }
+    }
+
+    private static void loadTrackingPoints(Event event) {
+        if (event != null) {
+            event.getBehaviours().forEach(Behaviour::getTrackingPoints);
+        }
+    }
+
     @Override
     public Event getEvent(long eventId) {
         Event event;
         Session session = getSession();
         try {
             event = (Event) session.get(Event.class, eventId);
+            loadTrackingPoints(event);
         } finally {
             session.close();
             LOG.debug("Database session closed: " + session);
@@ -109,108 +244,144 @@ public class JpaEventRepository implements EventRepository {
     public List<Event> findEventsByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
         Session session = getSession();
 
-        boolean usesFrom = false, usesTo = false, usesType = false, usesVessel = false, usesArea = false;
-
         List events = null;
+        try {
+            Query query = session.createQuery(matchingEventsHql("SELECT DISTINCT e", "e", "b", "tp", from, to, type, vessel, north, east, south, west));
+            setMatchingEventsParameters(query, from, to, type, vessel, north, east, south, west);
+
+            LOG.debug("Query: " + query.toString());
+            final long t0 = currentTimeMillis();
+            events = query.list();
+            loadTrackingPoints(events);
+            final long t1 = currentTimeMillis();
+            LOG.debug("Found " + events.size() + " matching events in " + (t1-t0) + " msecs.");
+        } finally {
+            session.close();
+            LOG.debug("Database session closed: " + session);
+        }
+
+        return events;
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        Session session = getSession();
+
+        List<EventSummary> eventSummaries;
         try {
             StringBuilder hql = new StringBuilder();
+            hql.append(SELECT_EVENT_SUMMARIES_HQL);
+            hql.append(" AND e.id IN (");
+            hql.append(matchingEventsHql("SELECT m.id", "m", "mb", "mtp", from, to, type, vessel, north, east, south, west));
+            hql.append(") ORDER BY e.startTime");
 
-            hql.append("SELECT DISTINCT e FROM Event e ");
+            Query query = session.createQuery(hql.toString());
+            setMatchingEventsParameters(query, from, to, type, vessel, north, east, south, west);
 
-            if (! StringUtils.isBlank(vessel)) {
-                hql.append("LEFT JOIN e.behaviours AS b ");
-            }
+            eventSummaries = toEventSummaries(query.list());
+        } finally {
+            session.close();
+            LOG.debug("Database session closed: " + session);
+        }
 
-            if (north != null && east != null && south != null && west != null) {
-                hql.append("LEFT JOIN e.behaviours AS b LEFT JOIN b.trackingPoints AS tp WHERE e.suppressed=false AND latitude<:north AND latitude>:south AND longitude<:east AND longitude>:west AND ");
-                usesArea = true;
-            } else {
-                hql.append("WHERE e.suppressed=false AND ");
-            }
+        LOG.debug("Found " + eventSummaries.size() + " matching event summaries.");
 
-            // from
-            if (from != null) {
-                hql.append("(e.startTime >= :from OR e.endTime >= :from) AND ");
-                usesFrom = true;
-            }
+        return eventSummaries;
+    }
 
-            // to
-            if (to != null) {
-                hql.append("(e.startTime <= :to OR e.endTime <= :to) AND ");
-                usesTo = true;
-            }
+    /**
+     * Build the HQL query of the events matching the criteria of findEventsByFromAndToAndTypeAndVesselAndArea().
+     * The aliases of the event, its behaviours and their tracking points are given, so the query can also be
+     * used as a subquery.
+     */
+    private static String matchingEventsHql(String select, String e, String b, String tp, Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        final boolean usesVessel = ! StringUtils.isBlank(vessel);
+        final boolean usesArea = north != null && east != null && south != null && west != null;
 
-            // type
-            if (! StringUtils.isBlank(type)) {
-                hql.append("TYPE(e) IN (:classes) AND ");
-                usesType = true;
-            }
+        StringBuilder hql = new StringBuilder();
+        hql.append(select).append(" FROM Event ").append(e).append(" ");
 
-            // vessel
-            if (! StringUtils.isBlank(vessel)) {
-                hql.append("(");
-                hql.append("b.vessel.callsign LIKE :vessel OR ");
-                hql.append("b.vessel.name LIKE :vessel OR ");
-                try {
-                    Long vesselAsLong = Long.valueOf(vessel);
-                    hql.append("b.vessel.mmsi = :vessel OR ");
-                    hql.append("b.vessel.imo = :vessel OR ");
-                } catch (NumberFormatException e) {
-                }
-                hql.replace(hql.length()-3, hql.length(), ")"); // "OR " -> ")"
-                if (! vessel.startsWith("%")) {
-                    vessel = "%" + vessel;
-                }
-                if (! vessel.endsWith("%")) {
-                    vessel = vessel + "%";
-                }
-                usesVessel = true;
-            }
+        if (usesVessel || usesArea) {
+            hql.append("LEFT JOIN ").append(e).append(".behaviours AS ").append(b).append(" ");
+        }
+        if (usesArea) {
+            hql.append("LEFT JOIN ").append(b).append(".trackingPoints AS ").append(tp).append(" ");
+        }
 
-            //
-            String hqlAsString = hql.toString().trim();
-            if (hqlAsString.endsWith("AND")) {
-                hqlAsString = hqlAsString.substring(0, hqlAsString.lastIndexOf("AND"));
-            }
+        List<String> conditions = new ArrayList<>();
+        conditions.add(e + ".suppressed=false");
 
-            //
-            Query query = session.createQuery(hqlAsString);
-            if (usesArea) {
-                query.setParameter("north", north);
-                query.setParameter("east", east);
-                query.setParameter("south", south);
-                query.setParameter("west", west);
-            }
-            if (usesFrom) {
-                query.setParameter("from", from);
+        // area
+        if (usesArea) {
+            conditions.add(tp + ".latitude<:north AND " + tp + ".latitude>:south AND " + tp + ".longitude<:east AND " + tp + ".longitude>:west");
+        }
+
+        // from
+        if (from != null) {
+            conditions.add("(" + e + ".startTime >= :from OR " + e + ".endTime >= :from)");
+        }
+
+        // to
+        if (to != null) {
+            conditions.add("(" + e + ".startTime <= :to OR " + e + ".endTime <= :to)");
+        }
+
+        // type
+        if (! StringUtils.isBlank(type)) {
+            conditions.add("TYPE(" + e + ") IN (:classes)");
+        }
+
+        // vessel
+        if (usesVessel) {
+            StringBuilder vesselCondition = new StringBuilder();
+            vesselCondition.append("(");
+            vesselCondition.append(b).append(".vessel.callsign LIKE :vessel OR ");
+            vesselCondition.append(b).append(".vessel.name LIKE :vessel");
+            try {
+                Long.valueOf(vessel);
+                vesselCondition.append(" OR ").append(b).append(".vessel.mmsi = :vessel");
+                vesselCondition.append(" OR ").append(b).append(".vessel.imo = :vessel");
+            } catch (NumberFormatException ex) {
             }
-            if (usesTo) {
-                query.setParameter("to", to);
+            vesselCondition.append(")");
+            conditions.add(vesselCondition.toString());
+        }
+
+        hql.append("WHERE ").append(String.join(" AND ", conditions));
+        return hql.toString();
+    }
+
+    private static void setMatchingEventsParameters(Query query, Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        if (north != null && east != null && south != null && west != null) {
+            query.setParameter("north", north);
+            query.setParameter("east", east);
+            query.setParameter("south", south);
+            query.setParameter("west", west);
+        }
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        if (! StringUtils.isBlank(type)) {
+            String className = "dk.dma.ais.abnormal.event.db.domain." + type;
+            try {
+                Class clazz = Class.forName(className);
+                query.setParameter("classes", clazz);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Class " + className + " not found.");
             }
-            if (usesType) {
-                String className = "dk.dma.ais.abnormal.event.db.domain." + type;
-                try {
-                    Class clazz = Class.forName(className);
-                    query.setParameter("classes", clazz);
-                } catch (ClassNotFoundException e) {
-                    throw new IllegalArgumentException("Class " + className + " not found.");
-                }
+        }
+        if (! StringUtils.isBlank(vessel)) {
+            if (! vessel.startsWith("%")) {
+                vessel = "%" + vessel;
             }
-            if (usesVessel) {
-                query.setParameter("vessel", vessel);
+            if (! vessel.endsWith("%")) {
+                vessel = vessel + "%";
             }
-
-            LOG.debug("Query: " + query.toString());
-            final long t0 = currentTimeMillis();
-            events = query.list();
-            final long t1 = currentTimeMillis();
-            LOG.debug("Found " + events.size() + " matching events in " + (t1-t0) + " msecs.");
-        } finally {
-            session.close();
-            LOG.debug("Database session closed: " + session);
+            query.setParameter("vessel", vessel);
         }
-
-        return events;
     }
 
     @Override
@@ -232,6 +403,7 @@ public class JpaEventRepository implements EventRepository {
             query.setParameter("to", to);
 
             events = query.list();
+            loadTrackingPoints(events);
         } finally {
             session.close();
             LOG.debug("Database session closed: " + session);
@@ -251,6 +423,7 @@ public class JpaEventRepository implements EventRepository {
             Query query = session.createQuery("SELECT e FROM Event e WHERE e.suppressed=false ORDER BY e.startTime DESC");
             query.setMaxResults(numberOfEvents);
             events = query.list();
+            loadTrackingPoints(events);
         } finally {
             session.close();
             LOG.debug("Database session closed: " + session);
@@ -259,6 +432,80 @@ public class JpaEventRepository implements EventRepository {
         return events;
     }
 
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndTo(Date from, Date to) {
+        Session session = getSession();
+
+        List<EventSummary> eventSummaries;
+        try {
+            StringBuilder hql = new StringBuilder();
+            hql.append(SELECT_EVENT_SUMMARIES_HQL);
+            hql.append(" AND ((e.startTime >= :from AND e.startTime <= :to) OR ");
+            hql.append("(e.endTime >= :from AND e.endTime <= :to)) ");
+            hql.append("ORDER BY e.startTime");
+
+            Query query = session.createQuery(hql.toString());
+            query.setParameter("from", from);
+            query.setParameter("to", to);
+
+            eventSummaries = toEventSummaries(query.list());
+        } finally {
+            session.close();
+            LOG.debug("Database session closed: " + session);
+        }
+
+        LOG.debug("Found " + eventSummaries.size() + " matching event summaries.");
+
+        return eventSummaries;
+    }
+
+    @Override
+    public List<EventSummary> findRecentEventSummaries(int numberOfEvents) {
+        Session session = getSession();
+
+        List<EventSummary> eventSummaries;
+        try {
+            Query query = session.createQuery(SELECT_EVENT_SUMMARIES_HQL + " ORDER BY e.startTime DESC");
+            query.setMaxResults(numberOfEvents);
+            eventSummaries = toEventSummaries(query.list());
+        } finally {
+            session.close();
+            LOG.debug("Database session closed: " + session);
+        }
+
+        return eventSummaries;
+    }
+
+    /**
+     * Map rows selected by SELECT_EVENT_SUMMARIES_HQL to EventSummaries. Only the first row of each
+     * event is used, in case several tracking points share the most recent timestamp.
+     */
+    private static List<EventSummary> toEventSummaries(List rows) {
+        List<EventSummary> eventSummaries = new ArrayList<>(rows.size());
+        Set<Long> eventIds = new HashSet<>();
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            long eventId = (Long) columns[0];
+            if (eventIds.add(eventId)) {
+                eventSummaries.add(new EventSummary(
+                    eventId,
+                    String.valueOf(columns[1]),
+                    (Event.State) columns[2],
+                    (LocalDateTime) columns[3],
+                    (LocalDateTime) columns[4],
+                    (String) columns[5],
+                    (Vessel) columns[6],
+                    (TrackingPoint) columns[7]
+                ));
+            }
+        }
+        return eventSummaries;
+    }
+
+    /**
+     * Find the ongoing event without its tracking points; they are only needed, when the event is saved
+     * again. New points are added by appendTrackingPoints().
+     */
     @Override
     public <T extends Event> T findOngoingEventByVessel(int mmsi, Class<T> eventClass) {
         Session session = getSession();
@@ -286,4 +533,141 @@ public class JpaEventRepository implements EventRepository {
 
         return event;
     }
+
+    @Override
+    public int archiveEventsStartedBefore(Date before, Path archiveDirectory) {
+        if (readonly) {
+            throw new IllegalStateException("Cannot archive events from a read-only repository.");
+        }
+
+        Map<Path, List<Long>> archivedEventIds = writeArchives(before, archiveDirectory);
+
+        int numberOfArchivedEvents = 0;
+        for (Map.Entry<Path, List<Long>> archive : archivedEventIds.entrySet()) {
+            verifyArchive(archive.getKey(), archive.getValue());
+            numberOfArchivedEvents += archive.getValue().size();
+        }
+        for (List<Long> eventIds : archivedEventIds.values()) {
+            deleteEvents(eventIds);
+        }
+
+        LOG.info("Archived " + numberOfArchivedEvents + " events started before " + before + " to " + archiveDirectory + ".");
+
+        return numberOfArchivedEvents;
+    }
+
+    /**
+     * Write all past events started before the given time to monthly archive files in the event log format
+     * (see EventLogWriter) - which holds all of an event; one chunk of events at a time. The archive files are
+     * complete and forced to the storage device when this method returns.
+     *
+     * @return the ids of the archived events by archive file.
+     */
+    private Map<Path, List<Long>> writeArchives(Date before, Path archiveDirectory) {
+        Map<Path, List<Long>> archivedEventIds = new LinkedHashMap<>();
+        Map<YearMonth, Path> archiveFiles = new HashMap<>();
+        Map<YearMonth, EventLogWriter> archives = new HashMap<>();
+
+        Session session = getSession();
+        try {
+            List events;
+            long lastEventId = 0;
+            do {
+                Query query = session.createQuery("SELECT e FROM Event e WHERE e.state = :state AND e.startTime < :before AND e.id > :lastEventId ORDER BY e.id");
+                query.setString("state", "PAST");
+                query.setParameter("before", before);
+                query.setLong("lastEventId", lastEventId);
+                query.setMaxResults(ARCHIVE_CHUNK_SIZE);
+                events = query.list();
+
+                for (Object e : events) {
+                    Event event = (Event) e;
+                    YearMonth month = YearMonth.from(event.getStartTime());
+                    EventLogWriter archive = archives.get(month);
+                    if (archive == null) {
+                        Path archiveFile = archiveFile(archiveDirectory, month);
+                        archive = new EventLogWriter(archiveFile);
+                        archiveFiles.put(month, archiveFile);
+                        archives.put(month, archive);
+                        archivedEventIds.put(archiveFile, new ArrayList<>());
+                    }
+                    archive.write(event);
+                    archivedEventIds.get(archiveFiles.get(month)).add(event.getId());
+                    lastEventId = event.getId();
+                }
+
+                session.clear();
+            } while (events.size() == ARCHIVE_CHUNK_SIZE);
+
+            for (EventLogWriter archive : archives.values()) {
+                archive.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            session.close();
+            LOG.debug("Database session closed: " + session);
+            closeQuietly(archives.values());
+        }
+
+        return archivedEventIds;
+    }
+
+    /**
+     * Read an archive file back and check that it holds exactly the events with the given ids.
+     *
+     * @throws UncheckedIOException if the archive file cannot be read or does not hold the events.
+     */
+    static void verifyArchive(Path archiveFile, List<Long> eventIds) {
+        List<Long> archivedEventIds = new ArrayList<>(eventIds.size());
+        try {
+            EventLogReader.read(archiveFile, event -> archivedEventIds.add(event.getId()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot verify archive " + archiveFile + "; no events deleted.", e);
+        }
+        if (! archivedEventIds.equals(eventIds)) {
+            throw new UncheckedIOException(new IOException("Archive " + archiveFile + " holds " + archivedEventIds.size() + " events; expected " + eventIds.size() + ". No events deleted."));
+        }
+    }
+
+    private void deleteEvents(List<Long> eventIds) {
+        for (int i = 0; i < eventIds.size(); i += ARCHIVE_CHUNK_SIZE) {
+            Session session = getSession();
+            try {
+                session.beginTransaction();
+                Query query = session.createQuery("SELECT e FROM Event e WHERE e.id IN (:ids)");
+                query.setParameterList("ids", eventIds.subList(i, Math.min(i + ARCHIVE_CHUNK_SIZE, eventIds.size())));
+                query.list().forEach(session::delete);
+                session.getTransaction().commit();
+            } catch (RuntimeException e) {
+                rollback(session);
+                throw e;
+            } finally {
+                session.close();
+                LOG.debug("Database session closed: " + session);
+            }
+        }
+    }
+
+    /**
+     * @return the first non-existing archive file for the given month.
+     */
+    static Path archiveFile(Path archiveDirectory, YearMonth month) {
+        final String prefix = "events-" + ARCHIVE_MONTH_FORMAT.format(month);
+        Path archiveFile = archiveDirectory.resolve(prefix + ".log.gz");
+        for (int n = 1; Files.exists(archiveFile); n++) {
+            archiveFile = archiveDirectory.resolve(prefix + "-" + n + ".log.gz");
+        }
+        return archiveFile;
+    }
+
+    private static void closeQuietly(Iterable<? extends Closeable> closeables) {
+        for (Closeable closeable : closeables) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+    }
 }
@@ -51,6 +51,16 @@ public final class JpaSessionFactoryFactory {
      * Create a new SessionFactory which can be used to connect to an H2 file based database.
      */
     public static SessionFactory newH2SessionFactory(File dbFilename) {
+        return newH2SessionFactory(dbFilename, JpaSettings.forH2());
+    }
+
+    /**
+     * Create a new SessionFactory which can be used to connect to an H2 file based database.
+     *
+     * @param dbFilename the H2 database file.
+     * @param settings connection pool, JDBC and cache settings.
+     */
+    public static SessionFactory newH2SessionFactory(File dbFilename, JpaSettings settings) {
         LOG.debug("Loading Hibernate configuration.");
 
         Configuration configuration = new Configuration()
@@ -59,42 +69,9 @@ public final class JpaSessionFactoryFactory {
             .setProperty("hibernate.connection.username", "sa")
             .setProperty("hibernate.connection.password", "")
             .setProperty("hibernate.default_schema", "PUBLIC")
-            .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
-            //.setProperty("hibernate.show_sql", "true")
-            .setProperty("hibernate.hbm2ddl.auto", "update")
-            .setProperty("hibernate.order_updates", "true")
-            .setProperty("hibernate.cache.provider_class", "org.hibernate.cache.EhCacheProvider")
-            .setProperty("hibernate.cache.use_second_level_cache", "true")
-            .setProperty("hibernate.cache.use_query_cache", "true")
-            .setProperty("hibernate.cache.region.factory_class", "org.hibernate.cache.ehcache.EhCacheRegionFactory")
-            .setProperty("hibernate.connection.provider_class", "org.hibernate.c3p0.internal.C3P0ConnectionProvider")
-            .setProperty("hibernate.c3p0.min_size", "1")
-            .setProperty("hibernate.c3p0.max_size", "32")
-            .setProperty("hibernate.c3p0.initialPoolSize", "1")
-            .setProperty("hibernate.c3p0.timeout", "5000")
-            .setProperty("hibernate.c3p0.acquire_increment", "1")
-            .setProperty("hibernate.c3p0.max_statements", "50")
-            .setProperty("hibernate.c3p0.idle_test_period", "300")
-            .setProperty("hibernate.c3p0.numHelperThreads", "4")
-            .addAnnotatedClass(CourseOverGroundEvent.class)
-            .addAnnotatedClass(SpeedOverGroundEvent.class)
-            .addAnnotatedClass(ShipSizeOrTypeEvent.class)
-            .addAnnotatedClass(SuddenSpeedChangeEvent.class)
-            .addAnnotatedClass(DriftEvent.class)
-            .addAnnotatedClass(CloseEncounterEvent.class)
-            .addAnnotatedClass(Zone.class)
-            .addAnnotatedClass(Vessel.class)
-            .addAnnotatedClass(Behaviour.class)
-            .addAnnotatedClass(TrackingPoint.class);
+            .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
 
-        StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().applySettings(configuration.getProperties()).build();
-
-        LOG.info("Starting Hibernate.");
-        SessionFactory sessionFactory = configuration.buildSessionFactory(serviceRegistry);
-        testConnection(sessionFactory);
-        LOG.info("Hibernate started.");
-
-        return sessionFactory;
+        return newSessionFactory(configuration, settings);
     }
 
     /**
@@ -109,6 +86,16 @@ public final class JpaSessionFactoryFactory {
      * @return
      */
     public static SessionFactory newPostgresSessionFactory(String dbHost, int dbPort, String dbName, String dbUsername, String dbPassword) {
+        return newPostgresSessionFactory(dbHost, dbPort, dbName, dbUsername, dbPassword, JpaSettings.forPgsql());
+    }
+
+    /**
+     * Create a new SessionFactory which can be used to connect to a Postgresql database
+     * via TCP/IP.
+     *
+     * @param settings connection pool, JDBC and cache settings.
+     */
+    public static SessionFactory newPostgresSessionFactory(String dbHost, int dbPort, String dbName, String dbUsername, String dbPassword, JpaSettings settings) {
         LOG.debug("Loading Hibernate configuration.");
 
         Configuration configuration = new Configuration()
@@ -117,26 +104,16 @@ public final class JpaSessionFactoryFactory {
             .setProperty("hibernate.connection.username", dbUsername)
             .setProperty("hibernate.connection.password", dbPassword)
             .setProperty("hibernate.default_schema", "PUBLIC")
-            .setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect")
+            .setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+
+        return newSessionFactory(configuration, settings);
+    }
+
+    private static SessionFactory newSessionFactory(Configuration configuration, JpaSettings settings) {
+        configuration
             //.setProperty("hibernate.show_sql", "true")
             .setProperty("hibernate.hbm2ddl.auto", "update")
             .setProperty("hibernate.order_updates", "true")
-            .setProperty("hibernate.connection_pool_size", "1")
-            .setProperty("hibernate.cache.provider_class", "org.hibernate.cache.EhCacheProvider")
-            .setProperty("hibernate.cache.use_second_level_cache", "true")
-            .setProperty("hibernate.cache.use_query_cache", "true")
-            .setProperty("hibernate.cache.region.factory_class", "org.hibernate.cache.ehcache.EhCacheRegionFactory")
-            .setProperty("hibernate.connection.provider_class", "org.hibernate.c3p0.internal.C3P0ConnectionProvider")
-            .setProperty("hibernate.c3p0.min_size", "2")
-            .setProperty("hibernate.c3p0.max_size", "32")
-            .setProperty("hibernate.c3p0.initialPoolSize", "4")
-            .setProperty("hibernate.c3p0.timeout", "5000")
-            .setProperty("hibernate.c3p0.acquire_increment", "2")
-            .setProperty("hibernate.c3p0.max_statements", "50")
-            .setProperty("hibernate.c3p0.idle_test_period", "300")
-            .setProperty("hibernate.c3p0.numHelperThreads", "16")
-            .setProperty("hibernate.c3p0.unreturnedConnectionTimeout", "55")
-            //.setProperty("hibernate.c3p0.debugUnreturnedConnectionStackTraces", "true")
             .addAnnotatedClass(CourseOverGroundEvent.class)
             .addAnnotatedClass(SpeedOverGroundEvent.class)
             .addAnnotatedClass(ShipSizeOrTypeEvent.class)
@@ -148,6 +125,9 @@ public final class JpaSessionFactoryFactory {
             .addAnnotatedClass(Behaviour.class)
             .addAnnotatedClass(TrackingPoint.class);
 
+        settings.applyTo(configuration);
+        LOG.info("Using " + settings);
+
         StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().applySettings(configuration.getProperties()).build();
 
         LOG.info("Starting Hibernate.");
@@ -0,0 +1,188 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.jpa;
+
+import org.hibernate.cfg.Configuration;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Connection pool, JDBC and cache settings for the SessionFactory objects built by JpaSessionFactoryFactory.
+ *
+ * The defaults returned by forH2() and forPgsql() are the settings which used to be hardcoded in
+ * JpaSessionFactoryFactory, except that JDBC batching is off unless a batch size is set.
+ *
+ * Connections are pooled by c3p0 with helper threads, idle connection testing and a prepared statement
+ * cache. (Hibernate's own DriverManager based pool is not meant for production use.)
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@NotThreadSafe
+public final class JpaSettings {
+
+    private static final int C3P0_TIMEOUT_SECS = 5000;
+    private static final int C3P0_IDLE_TEST_PERIOD_SECS = 300;
+
+    private int minPoolSize;
+    private int maxPoolSize;
+    private int initialPoolSize;
+    private int acquireIncrement;
+    private int statementCacheSize;
+    private int helperThreads;
+    private int unreturnedConnectionTimeoutSecs;
+    private int batchSize;
+    private int fetchSize;
+    private boolean cacheEnabled = true;
+
+    private JpaSettings(int minPoolSize, int maxPoolSize, int initialPoolSize, int acquireIncrement, int statementCacheSize, int helperThreads, int unreturnedConnectionTimeoutSecs) {
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.initialPoolSize = initialPoolSize;
+        this.acquireIncrement = acquireIncrement;
+        this.statementCacheSize = statementCacheSize;
+        this.helperThreads = helperThreads;
+        this.unreturnedConnectionTimeoutSecs = unreturnedConnectionTimeoutSecs;
+    }
+
+    /** @return the default settings for an H2 file based database. */
+    public static JpaSettings forH2() {
+        return new JpaSettings(1, 32, 1, 1, 50, 4, 0);
+    }
+
+    /** @return the default settings for a Postgresql database. */
+    public static JpaSettings forPgsql() {
+        return new JpaSettings(2, 32, 4, 2, 50, 16, 55);
+    }
+
+    public JpaSettings minPoolSize(int minPoolSize) {
+        this.minPoolSize = minPoolSize;
+        this.initialPoolSize = Math.max(initialPoolSize, minPoolSize);
+        return this;
+    }
+
+    public JpaSettings maxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+        return this;
+    }
+
+    /** Max. no. of prepared statements cached by c3p0 (0 = no cache). */
+    public JpaSettings statementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    /** No. of c3p0 helper threads. */
+    public JpaSettings helperThreads(int helperThreads) {
+        this.helperThreads = helperThreads;
+        return this;
+    }
+
+    /** No. of statements sent to the database in one JDBC batch (0 = no batching). */
+    public JpaSettings batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /** No. of rows fetched from the database per round trip (0 = driver default). */
+    public JpaSettings fetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /** Enable or disable Hibernate's second level cache and query cache. */
+    public JpaSettings cacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+        return this;
+    }
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public int getHelperThreads() {
+        return helperThreads;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    void applyTo(Configuration configuration) {
+        configuration.setProperty("hibernate.cache.use_second_level_cache", String.valueOf(cacheEnabled));
+        configuration.setProperty("hibernate.cache.use_query_cache", String.valueOf(cacheEnabled));
+        if (cacheEnabled) {
+            configuration
+                .setProperty("hibernate.cache.provider_class", "org.hibernate.cache.EhCacheProvider")
+                .setProperty("hibernate.cache.region.factory_class", "org.hibernate.cache.ehcache.EhCacheRegionFactory");
+        }
+
+        if (batchSize > 0) {
+            configuration
+                .setProperty("hibernate.jdbc.batch_size", String.valueOf(batchSize))
+                .setProperty("hibernate.jdbc.batch_versioned_data", "true")
+                .setProperty("hibernate.order_inserts", "true");
+        }
+        if (fetchSize > 0) {
+            configuration.setProperty("hibernate.jdbc.fetch_size", String.valueOf(fetchSize));
+        }
+
+        configuration
+            .setProperty("hibernate.connection.provider_class", "org.hibernate.c3p0.internal.C3P0ConnectionProvider")
+            .setProperty("hibernate.c3p0.min_size", String.valueOf(minPoolSize))
+            .setProperty("hibernate.c3p0.max_size", String.valueOf(maxPoolSize))
+            .setProperty("hibernate.c3p0.initialPoolSize", String.valueOf(Math.min(initialPoolSize, maxPoolSize)))
+            .setProperty("hibernate.c3p0.timeout", String.valueOf(C3P0_TIMEOUT_SECS))
+            .setProperty("hibernate.c3p0.acquire_increment", String.valueOf(acquireIncrement))
+            .setProperty("hibernate.c3p0.max_statements", String.valueOf(statementCacheSize))
+            .setProperty("hibernate.c3p0.idle_test_period", String.valueOf(C3P0_IDLE_TEST_PERIOD_SECS))
+            .setProperty("hibernate.c3p0.numHelperThreads", String.valueOf(helperThreads));
+        if (unreturnedConnectionTimeoutSecs > 0) {
+            configuration.setProperty("hibernate.c3p0.unreturnedConnectionTimeout", String.valueOf(unreturnedConnectionTimeoutSecs));
+            //configuration.setProperty("hibernate.c3p0.debugUnreturnedConnectionStackTraces", "true");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JpaSettings{" +
+                "minPoolSize=" + minPoolSize +
+                ", maxPoolSize=" + maxPoolSize +
+                ", statementCacheSize=" + statementCacheSize +
+                ", helperThreads=" + helperThreads +
+                ", batchSize=" + batchSize +
+                ", fetchSize=" + fetchSize +
+                ", cacheEnabled=" + cacheEnabled +
+                '}';
+    }
+}
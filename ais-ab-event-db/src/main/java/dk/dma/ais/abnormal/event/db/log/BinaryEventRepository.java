@@ -0,0 +1,310 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.log;
+
+import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.OngoingEvents;
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * BinaryEventRepository is an implementation of the EventRepository interface which appends past
+ * events to a binary event log (see EventLogFormat) - as a faster alternative to CsvEventRepository
+ * for replay runs over large amounts of data.
+ *
+ * Events are encoded by the saving thread without holding any lock, and the encoded records are
+ * collected in a write buffer. The buffer is written to the log file (group commit) when it is full,
+ * and at least every flushIntervalMillis; so a crash loses at most the events saved within the last
+ * flush interval. A record which was only partly written is skipped by EventLogReader.
+ *
+ * Use EventLogConverter to convert an event log to CSV or JSON.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public class BinaryEventRepository implements EventRepository, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryEventRepository.class);
+
+    {
+        LOG.info(this.getClass().getSimpleName() + " created (" + this + ").");
+    }
+
+    static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Encode records in the schema version of the log file, so that events can be appended to older logs */
+    private final ThreadLocal<EventLogFormat.Encoder> encoders;
+
+    private final OngoingEvents ongoingEvents = new OngoingEvents();
+
+    private final boolean readonly;
+
+    @GuardedBy("lock")
+    private final FileChannel channel;
+
+    @GuardedBy("lock")
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    @GuardedBy("lock")
+    private boolean closed;
+
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Open an event log for appending; a new log is created if the file does not exist. A read-only
+     * repository never modifies the file: no header is written, and a partly written record at the end of
+     * the log is left for EventLogReader to skip.
+     *
+     * @param file the event log file.
+     * @param readonly if true, no events are written.
+     * @param flushIntervalMillis max. time saved events are held in memory before being written to the file.
+     * @throws IOException if the file exists and is not an event log.
+     */
+    public BinaryEventRepository(Path file, boolean readonly, long flushIntervalMillis) throws IOException {
+        this.readonly = readonly;
+
+        if (readonly) {
+            if (Files.exists(file)) {
+                try (FileChannel readChannel = FileChannel.open(file, READ)) {
+                    if (readChannel.size() > 0) {
+                        readSchemaVersion(readChannel);
+                    }
+                }
+            }
+            this.channel = null;
+            this.encoders = null;
+            this.flusher = null;
+            return;
+        }
+
+        this.channel = FileChannel.open(file, CREATE, READ, WRITE);
+
+        final int schemaVersion;
+        try {
+            if (channel.size() == 0) {
+                EventLogFormat.writeHeader(writeBuffer);
+                schemaVersion = EventLogFormat.SCHEMA_VERSION;
+            } else {
+                schemaVersion = readSchemaVersion(channel);
+                channel.position(EventLogReader.endOfLastCompleteRecord(file));
+                channel.truncate(channel.position());
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.encoders = ThreadLocal.withInitial(() -> new EventLogFormat.Encoder(schemaVersion));
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "EventLogFlusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::closeQuietly, "EventLogCloser"));
+    }
+
+    private static int readSchemaVersion(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(EventLogFormat.HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        return EventLogFormat.readHeader(header);
+    }
+
+    @Override
+    public List<String> getEventTypes() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void save(Event event) {
+        if (readonly == false) {
+            ongoingEvents.update(event);
+
+            if (event.getState() == Event.State.PAST) {
+                ByteBuffer record = encoders.get().encode(event);
+
+                lock.lock();
+                try {
+                    if (closed) {
+                        throw new IllegalStateException("Event log is closed.");
+                    }
+                    if (record.remaining() > writeBuffer.remaining()) {
+                        writeBufferToChannel();
+                    }
+                    if (record.remaining() > writeBuffer.remaining()) {
+                        while (record.hasRemaining()) {
+                            channel.write(record);
+                        }
+                    } else {
+                        writeBuffer.put(record);
+                    }
+                } catch (IOException e) {
+                    LOG.error(e.getMessage(), e);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void appendTrackingPoints(Event event, int mmsi, List<TrackingPoint> trackingPoints) {
+        if (readonly == false) {
+            Behaviour behaviour = event.getBehaviour(mmsi);
+            trackingPoints.forEach(behaviour::addTrackingPoint);
+        }
+    }
+
+    /**
+     * Write all saved events to the log file and force them to the storage device.
+     */
+    public void flush() throws IOException {
+        if (readonly) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (! closed) {
+                writeBufferToChannel();
+                channel.force(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush and close the log file. Events saved after close are rejected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (readonly) {
+            return;
+        }
+        flusher.shutdown();
+
+        lock.lock();
+        try {
+            if (! closed) {
+                writeBufferToChannel();
+                channel.force(false);
+                channel.close();
+                closed = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private void writeBufferToChannel() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Event getEvent(long eventId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Event> findEventsByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Event> findEventsByFromAndTo(Date from, Date to) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Event> findRecentEvents(int numberOfEvents) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndTo(Date from, Date to) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<EventSummary> findEventSummariesByFromAndToAndTypeAndVesselAndArea(Date from, Date to, String type, String vessel, Double north, Double east, Double south, Double west) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<EventSummary> findRecentEventSummaries(int numberOfEvents) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T extends Event> T findOngoingEventByVessel(int mmsi, Class<T> eventClass) {
+        return ongoingEvents.findByVessel(mmsi, eventClass);
+    }
+
+    @Override
+    public int archiveEventsStartedBefore(Date before, Path archiveDirectory) {
+        throw new UnsupportedOperationException();
+    }
+}
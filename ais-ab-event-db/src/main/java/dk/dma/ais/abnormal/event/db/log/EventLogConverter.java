@@ -0,0 +1,187 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.log;
+
+import dk.dma.ais.abnormal.event.db.csv.CsvEventRepository;
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.Vessel;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+
+/**
+ * Converts an event log written by BinaryEventRepository to CSV (in the format of CsvEventRepository)
+ * or to JSON (one JSON object per event and line) for offline use.
+ *
+ * Usage: EventLogConverter csv|json &lt;event log file&gt; [&lt;output file&gt;]
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class EventLogConverter {
+
+    private EventLogConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3 || !("csv".equalsIgnoreCase(args[0]) || "json".equalsIgnoreCase(args[0]))) {
+            System.err.println("Usage: " + EventLogConverter.class.getSimpleName() + " csv|json <event log file> [<output file>]");
+            System.exit(1);
+        }
+
+        final Path log = Paths.get(args[1]);
+        final OutputStream out = args.length == 3 ? Files.newOutputStream(Paths.get(args[2]), CREATE_NEW) : System.out;
+        try (OutputStream bufferedOut = new BufferedOutputStream(out)) {
+            long numberOfEvents = "csv".equalsIgnoreCase(args[0]) ? toCsv(log, bufferedOut) : toJson(log, bufferedOut);
+            System.err.println("Converted " + numberOfEvents + " events.");
+        }
+    }
+
+    /**
+     * Write the events of an event log as CSV to out.
+     *
+     * @return the number of converted events.
+     */
+    public static long toCsv(Path log, OutputStream out) throws IOException {
+        CsvEventRepository csvEventRepository = new CsvEventRepository(out, false);
+        return EventLogReader.read(log, csvEventRepository::save);
+    }
+
+    /**
+     * Write the events of an event log as JSON to out - one JSON object per event and line.
+     *
+     * @return the number of converted events.
+     */
+    public static long toJson(Path log, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        long numberOfEvents;
+        try {
+            numberOfEvents = EventLogReader.read(log, event -> {
+                try {
+                    writeJson(event, writer);
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        return numberOfEvents;
+    }
+
+    static void writeJson(Event event, Writer writer) throws IOException {
+        writer.write("{\"eventType\":");
+        writeString(event.getEventType(), writer);
+        writer.write(",\"state\":");
+        writeString(event.getState().name(), writer);
+        writer.write(",\"suppressed\":" + event.isSuppressed());
+        writer.write(",\"startTime\":");
+        writeString(event.getStartTime() == null ? null : event.getStartTime().toString(), writer);
+        writer.write(",\"endTime\":");
+        writeString(event.getEndTime() == null ? null : event.getEndTime().toString(), writer);
+        writer.write(",\"title\":");
+        writeString(event.getTitle(), writer);
+        writer.write(",\"description\":");
+        writeString(event.getDescription(), writer);
+        writer.write(",\"behaviours\":[");
+        boolean firstBehaviour = true;
+        for (Behaviour behaviour : event.getBehaviours()) {
+            if (! firstBehaviour) {
+                writer.write(',');
+            }
+            firstBehaviour = false;
+
+            Vessel vessel = behaviour.getVessel();
+            writer.write("{\"primary\":" + behaviour.isPrimary());
+            writer.write(",\"vessel\":{\"mmsi\":" + vessel.getMmsi());
+            writer.write(",\"imo\":" + vessel.getImo());
+            writer.write(",\"name\":");
+            writeString(vessel.getName(), writer);
+            writer.write(",\"callsign\":");
+            writeString(vessel.getCallsign(), writer);
+            writer.write(",\"type\":" + vessel.getType());
+            writer.write(",\"toBow\":" + vessel.getToBow());
+            writer.write(",\"toStern\":" + vessel.getToStern());
+            writer.write(",\"toPort\":" + vessel.getToPort());
+            writer.write(",\"toStarboard\":" + vessel.getToStarboard());
+            writer.write("},\"trackingPoints\":[");
+            boolean firstTrackingPoint = true;
+            for (TrackingPoint trackingPoint : behaviour.getTrackingPoints()) {
+                if (! firstTrackingPoint) {
+                    writer.write(',');
+                }
+                firstTrackingPoint = false;
+
+                writer.write("{\"timestamp\":");
+                writeString(trackingPoint.getTimestamp() == null ? null : trackingPoint.getTimestamp().toString(), writer);
+                writer.write(",\"latitude\":" + trackingPoint.getLatitude());
+                writer.write(",\"longitude\":" + trackingPoint.getLongitude());
+                writer.write(",\"speedOverGround\":" + trackingPoint.getSpeedOverGround());
+                writer.write(",\"courseOverGround\":" + trackingPoint.getCourseOverGround());
+                writer.write(",\"trueHeading\":" + trackingPoint.getTrueHeading());
+                writer.write(",\"positionInterpolated\":" + trackingPoint.getPositionInterpolated());
+                writer.write(",\"eventCertainty\":");
+                writeString(trackingPoint.getEventCertainty() == null ? null : trackingPoint.getEventCertainty().name(), writer);
+                writer.write('}');
+            }
+            writer.write("]}");
+        }
+        writer.write("]}");
+    }
+
+    private static void writeString(String s, Writer writer) throws IOException {
+        if (s == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"': writer.write("\\\""); break;
+                case '\\': writer.write("\\\\"); break;
+                case '\n': writer.write("\\n"); break;
+                case '\r': writer.write("\\r"); break;
+                case '\t': writer.write("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
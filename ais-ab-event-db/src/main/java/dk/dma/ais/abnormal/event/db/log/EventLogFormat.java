@@ -0,0 +1,399 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.log;
+
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.CloseEncounterEvent;
+import dk.dma.ais.abnormal.event.db.domain.CourseOverGroundEvent;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.ShipSizeOrTypeEvent;
+import dk.dma.ais.abnormal.event.db.domain.SpeedOverGroundEvent;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.Vessel;
+import dk.dma.ais.abnormal.event.db.domain.Zone;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * The binary format of the append-only event log.
+ *
+ * A log file starts with a header of a magic number and the schema version, followed by one record per
+ * event. A record is the length of its payload (int) followed by the payload: the event type, the event
+ * header and the event's behaviours with their vessels and tracking points - in fixed order, big-endian,
+ * with strings as UTF-8 prefixed by their length. Nulls are written as NULL_INT, NULL_TIME, NaN, -1
+ * (strings, booleans and enums) respectively.
+ *
+ * The length prefix allows a reader to detect a record which was only partly written before a crash,
+ * and to stop reading there.
+ *
+ * Schema version 2 adds the event id after the event type, and the event type specific properties (e.g.
+ * the zones of a close encounter) after the behaviours - so that an event log holds all of an event.
+ * Logs of schema version 1 can still be read.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class EventLogFormat {
+
+    static final int MAGIC = 0x4142454c;
+    static final int SCHEMA_VERSION = 2;
+    static final int HEADER_SIZE = 8;
+
+    /** Records larger than this are considered corrupt */
+    static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    static final int NULL_INT = Integer.MIN_VALUE;
+    static final long NULL_TIME = Long.MIN_VALUE;
+
+    private EventLogFormat() {
+    }
+
+    static void writeHeader(ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(SCHEMA_VERSION);
+    }
+
+    /**
+     * @return the schema version of the event log.
+     * @throws IOException if the header is not the header of an event log of a supported schema version.
+     */
+    static int readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not an event log.");
+        }
+        final int schemaVersion = buffer.getInt();
+        if (schemaVersion < 1 || schemaVersion > SCHEMA_VERSION) {
+            throw new IOException("Unsupported event log schema version: " + schemaVersion);
+        }
+        return schemaVersion;
+    }
+
+    /**
+     * Decode the payload of a record.
+     *
+     * @param schemaVersion the schema version of the event log, as returned by readHeader().
+     * @throws IOException if the payload is corrupt or of an unknown event type.
+     */
+    static Event decode(ByteBuffer payload, int schemaVersion) throws IOException {
+        try {
+            Event event = newEvent(getString(payload));
+            if (schemaVersion >= 2) {
+                event.setId(payload.getLong());
+            }
+            event.setState(Event.State.values()[payload.get()]);
+            event.setSuppressed(payload.get() != 0);
+            event.setStartTime(getTime(payload));
+            event.setEndTime(getTime(payload));
+            event.setTitle(getString(payload));
+            event.setDescription(getString(payload));
+
+            final int numberOfBehaviours = payload.getInt();
+            for (int b = 0; b < numberOfBehaviours; b++) {
+                Behaviour behaviour = new Behaviour();
+                behaviour.setPrimary(payload.get() != 0);
+
+                Vessel vessel = new Vessel();
+                vessel.setMmsi(payload.getInt());
+                vessel.setImo(getInteger(payload));
+                vessel.setName(getString(payload));
+                vessel.setCallsign(getString(payload));
+                vessel.setType(getInteger(payload));
+                vessel.setToBow(getInteger(payload));
+                vessel.setToStern(getInteger(payload));
+                vessel.setToPort(getInteger(payload));
+                vessel.setToStarboard(getInteger(payload));
+                behaviour.setVessel(vessel);
+
+                final int numberOfTrackingPoints = payload.getInt();
+                for (int t = 0; t < numberOfTrackingPoints; t++) {
+                    TrackingPoint trackingPoint = new TrackingPoint();
+                    trackingPoint.setTimestamp(getTime(payload));
+                    trackingPoint.setLatitude(getDouble(payload));
+                    trackingPoint.setLongitude(getDouble(payload));
+                    trackingPoint.setSpeedOverGround(getFloat(payload));
+                    trackingPoint.setCourseOverGround(getFloat(payload));
+                    trackingPoint.setTrueHeading(getFloat(payload));
+                    trackingPoint.setPositionInterpolated(getBoolean(payload));
+                    final byte certainty = payload.get();
+                    trackingPoint.setEventCertainty(certainty < 0 ? null : TrackingPoint.EventCertainty.create(certainty));
+                    behaviour.addTrackingPoint(trackingPoint);
+                }
+
+                event.addBehaviour(behaviour);
+            }
+
+            if (schemaVersion >= 2) {
+                getTypeSpecificProperties(event, payload);
+            }
+
+            if (payload.hasRemaining()) {
+                throw new IOException("Unexpected " + payload.remaining() + " bytes after event record.");
+            }
+            return event;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt event record.", e);
+        }
+    }
+
+    private static void getTypeSpecificProperties(Event event, ByteBuffer payload) {
+        if (event instanceof CourseOverGroundEvent) {
+            CourseOverGroundEvent courseOverGroundEvent = (CourseOverGroundEvent) event;
+            courseOverGroundEvent.setShipType(payload.getInt());
+            courseOverGroundEvent.setShipLength(payload.getInt());
+            courseOverGroundEvent.setCourseOverGround(payload.getInt());
+        } else if (event instanceof SpeedOverGroundEvent) {
+            SpeedOverGroundEvent speedOverGroundEvent = (SpeedOverGroundEvent) event;
+            speedOverGroundEvent.setShipType(payload.getInt());
+            speedOverGroundEvent.setShipLength(payload.getInt());
+            speedOverGroundEvent.setSpeedOverGround(payload.getInt());
+        } else if (event instanceof ShipSizeOrTypeEvent) {
+            ShipSizeOrTypeEvent shipSizeOrTypeEvent = (ShipSizeOrTypeEvent) event;
+            shipSizeOrTypeEvent.setShipType(payload.getInt());
+            shipSizeOrTypeEvent.setShipLength(payload.getInt());
+        } else if (event instanceof CloseEncounterEvent) {
+            CloseEncounterEvent closeEncounterEvent = (CloseEncounterEvent) event;
+            closeEncounterEvent.setSafetyZoneOfPrimaryVessel(getZone(payload));
+            closeEncounterEvent.setExtentOfSecondaryVessel(getZone(payload));
+        }
+    }
+
+    private static Zone getZone(ByteBuffer buffer) {
+        if (buffer.get() == 0) {
+            return null;
+        }
+        Zone zone = new Zone();
+        final long targetTimestamp = buffer.getLong();
+        zone.setTargetTimestamp(targetTimestamp == NULL_TIME ? null : new Date(targetTimestamp));
+        zone.setCenterLatitude(getDouble(buffer));
+        zone.setCenterLongitude(getDouble(buffer));
+        zone.setMajorAxisHeading(getDouble(buffer));
+        zone.setMajorSemiAxisLength(getDouble(buffer));
+        zone.setMinorSemiAxisLength(getDouble(buffer));
+        return zone;
+    }
+
+    private static Event newEvent(String eventType) throws IOException {
+        final String className = Event.class.getPackage().getName() + "." + eventType;
+        try {
+            return Class.forName(className).asSubclass(Event.class).newInstance();
+        } catch (ClassNotFoundException | ClassCastException | InstantiationException | IllegalAccessException e) {
+            throw new IOException("Cannot create event of type " + className, e);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    private static Integer getInteger(ByteBuffer buffer) {
+        final int value = buffer.getInt();
+        return value == NULL_INT ? null : value;
+    }
+
+    private static LocalDateTime getTime(ByteBuffer buffer) {
+        final long value = buffer.getLong();
+        return value == NULL_TIME ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(value), ZoneOffset.UTC);
+    }
+
+    private static Double getDouble(ByteBuffer buffer) {
+        final double value = buffer.getDouble();
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static Float getFloat(ByteBuffer buffer) {
+        final float value = buffer.getFloat();
+        return Float.isNaN(value) ? null : value;
+    }
+
+    private static Boolean getBoolean(ByteBuffer buffer) {
+        final byte value = buffer.get();
+        return value < 0 ? null : value != 0;
+    }
+
+    /**
+     * Encodes events to records in a reusable, growing buffer.
+     */
+    @NotThreadSafe
+    static final class Encoder {
+
+        private final int schemaVersion;
+
+        private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        Encoder() {
+            this(SCHEMA_VERSION);
+        }
+
+        /**
+         * @param schemaVersion the schema version of the event log, which the records are appended to.
+         */
+        Encoder(int schemaVersion) {
+            this.schemaVersion = schemaVersion;
+        }
+
+        /**
+         * @return a buffer holding the length prefixed record of event, ready to be read. The buffer is
+         * reused by the next call.
+         */
+        ByteBuffer encode(Event event) {
+            buffer.clear();
+            buffer.position(4);
+
+            putString(event.getEventType());
+            ensure(8 + 2);
+            if (schemaVersion >= 2) {
+                buffer.putLong(event.getId());
+            }
+            buffer.put((byte) event.getState().ordinal());
+            buffer.put((byte) (event.isSuppressed() ? 1 : 0));
+            putTime(event.getStartTime());
+            putTime(event.getEndTime());
+            putString(event.getTitle());
+            putString(event.getDescription());
+
+            Set<Behaviour> behaviours = event.getBehaviours();
+            ensure(4);
+            buffer.putInt(behaviours.size());
+            for (Behaviour behaviour : behaviours) {
+                Vessel vessel = behaviour.getVessel();
+                ensure(5);
+                buffer.put((byte) (behaviour.isPrimary() ? 1 : 0));
+                buffer.putInt(vessel.getMmsi());
+                putInteger(vessel.getImo());
+                putString(vessel.getName());
+                putString(vessel.getCallsign());
+                putInteger(vessel.getType());
+                putInteger(vessel.getToBow());
+                putInteger(vessel.getToStern());
+                putInteger(vessel.getToPort());
+                putInteger(vessel.getToStarboard());
+
+                Set<TrackingPoint> trackingPoints = behaviour.getTrackingPoints();
+                ensure(4 + trackingPoints.size() * (8 + 8 + 8 + 4 + 4 + 4 + 1 + 1));
+                buffer.putInt(trackingPoints.size());
+                for (TrackingPoint trackingPoint : trackingPoints) {
+                    buffer.putLong(toMillis(trackingPoint.getTimestamp()));
+                    buffer.putDouble(trackingPoint.getLatitude() == null ? Double.NaN : trackingPoint.getLatitude());
+                    buffer.putDouble(trackingPoint.getLongitude() == null ? Double.NaN : trackingPoint.getLongitude());
+                    buffer.putFloat(trackingPoint.getSpeedOverGround() == null ? Float.NaN : trackingPoint.getSpeedOverGround());
+                    buffer.putFloat(trackingPoint.getCourseOverGround() == null ? Float.NaN : trackingPoint.getCourseOverGround());
+                    buffer.putFloat(trackingPoint.getTrueHeading() == null ? Float.NaN : trackingPoint.getTrueHeading());
+                    buffer.put(trackingPoint.getPositionInterpolated() == null ? -1 : (byte) (trackingPoint.getPositionInterpolated() ? 1 : 0));
+                    buffer.put(trackingPoint.getEventCertainty() == null ? -1 : (byte) trackingPoint.getEventCertainty().getCertainty());
+                }
+            }
+
+            if (schemaVersion >= 2) {
+                putTypeSpecificProperties(event);
+            }
+
+            buffer.putInt(0, buffer.position() - 4);
+            buffer.flip();
+            return buffer;
+        }
+
+        private void putTypeSpecificProperties(Event event) {
+            if (event instanceof CourseOverGroundEvent) {
+                CourseOverGroundEvent courseOverGroundEvent = (CourseOverGroundEvent) event;
+                ensure(3 * 4);
+                buffer.putInt(courseOverGroundEvent.getShipType());
+                buffer.putInt(courseOverGroundEvent.getShipLength());
+                buffer.putInt(courseOverGroundEvent.getCourseOverGround());
+            } else if (event instanceof SpeedOverGroundEvent) {
+                SpeedOverGroundEvent speedOverGroundEvent = (SpeedOverGroundEvent) event;
+                ensure(3 * 4);
+                buffer.putInt(speedOverGroundEvent.getShipType());
+                buffer.putInt(speedOverGroundEvent.getShipLength());
+                buffer.putInt(speedOverGroundEvent.getSpeedOverGround());
+            } else if (event instanceof ShipSizeOrTypeEvent) {
+                ShipSizeOrTypeEvent shipSizeOrTypeEvent = (ShipSizeOrTypeEvent) event;
+                ensure(2 * 4);
+                buffer.putInt(shipSizeOrTypeEvent.getShipType());
+                buffer.putInt(shipSizeOrTypeEvent.getShipLength());
+            } else if (event instanceof CloseEncounterEvent) {
+                CloseEncounterEvent closeEncounterEvent = (CloseEncounterEvent) event;
+                putZone(closeEncounterEvent.getSafetyZoneOfPrimaryVessel());
+                putZone(closeEncounterEvent.getExtentOfSecondaryVessel());
+            }
+        }
+
+        private void putZone(Zone zone) {
+            ensure(1 + 8 + 5 * 8);
+            buffer.put((byte) (zone == null ? 0 : 1));
+            if (zone != null) {
+                buffer.putLong(zone.getTargetTimestamp() == null ? NULL_TIME : zone.getTargetTimestamp().getTime());
+                buffer.putDouble(zone.getCenterLatitude() == null ? Double.NaN : zone.getCenterLatitude());
+                buffer.putDouble(zone.getCenterLongitude() == null ? Double.NaN : zone.getCenterLongitude());
+                buffer.putDouble(zone.getMajorAxisHeading() == null ? Double.NaN : zone.getMajorAxisHeading());
+                buffer.putDouble(zone.getMajorSemiAxisLength() == null ? Double.NaN : zone.getMajorSemiAxisLength());
+                buffer.putDouble(zone.getMinorSemiAxisLength() == null ? Double.NaN : zone.getMinorSemiAxisLength());
+            }
+        }
+
+        private void putString(String s) {
+            if (s == null) {
+                ensure(4);
+                buffer.putInt(-1);
+            } else {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                ensure(4 + bytes.length);
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+
+        private void putInteger(Integer value) {
+            ensure(4);
+            buffer.putInt(value == null ? NULL_INT : value);
+        }
+
+        private void putTime(LocalDateTime time) {
+            ensure(8);
+            buffer.putLong(toMillis(time));
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+
+        private static long toMillis(LocalDateTime time) {
+            return time == null ? NULL_TIME : time.toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.log;
+
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the events of an event log written by BinaryEventRepository.
+ *
+ * A record at the end of the log, which was only partly written (e.g. because the writer crashed), is
+ * logged and skipped.
+ *
+ * Event logs compressed with gzip (e.g. archives written by EventLogWriter) are read sequentially only;
+ * readRecord needs an uncompressed log.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@ThreadSafe
+public final class EventLogReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventLogReader.class);
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** The position of the first record in an event log */
+    public static final long FIRST_RECORD_POSITION = EventLogFormat.HEADER_SIZE;
+
+    private EventLogReader() {
+    }
+
+    /**
+     * @return true if file is named as an event log compressed with gzip (ending with ".gz").
+     */
+    public static boolean isCompressed(Path file) {
+        return file.getFileName().toString().endsWith(".gz");
+    }
+
+    /**
+     * @return true if file (when decompressed) starts with the magic number of an event log (of any schema version).
+     */
+    public static boolean isEventLog(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(open(file))) {
+            return in.readInt() == EventLogFormat.MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Handles the events of an event log together with their positions in the log file.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(long position, Event event);
+    }
+
+    /**
+     * Pass each event in the event log to consumer, in the order they were written.
+     *
+     * @return the number of events read.
+     * @throws IOException if the file is not an event log, or contains a corrupt record.
+     */
+    public static long read(Path file, Consumer<Event> consumer) throws IOException {
+        final long[] numberOfEvents = {0};
+        read(file, FIRST_RECORD_POSITION, (position, event) -> {
+            consumer.accept(event);
+            numberOfEvents[0]++;
+        });
+        return numberOfEvents[0];
+    }
+
+    /**
+     * Pass each event in the event log from the record at fromPosition and on to handler, in the order
+     * they were written. Use the returned position to continue reading, when more events have been
+     * appended to the log.
+     *
+     * @param fromPosition the position of a record in the log file; or the position returned by a previous call.
+     * @return the position in the log file after the last complete record.
+     * @throws IOException if the file is not an event log, or contains a corrupt record.
+     */
+    public static long read(Path file, long fromPosition, RecordHandler handler) throws IOException {
+        return scan(file, fromPosition, handler);
+    }
+
+    /**
+     * Read the event of the record at position.
+     *
+     * @param channel a channel open for reading the log file.
+     * @param position the position of the record, as passed to a RecordHandler.
+     * @throws IOException if the log file is compressed, or the record is corrupt.
+     */
+    public static Event readRecord(FileChannel channel, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(EventLogFormat.HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        final int schemaVersion = EventLogFormat.readHeader(header);
+
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(channel, length, position);
+        length.flip();
+        final int payloadLength = length.getInt();
+        if (payloadLength < 0 || payloadLength > EventLogFormat.MAX_RECORD_SIZE) {
+            throw new IOException("Corrupt event record length " + payloadLength + " at position " + position);
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+        readFully(channel, payload, position + 4);
+        payload.flip();
+        return EventLogFormat.decode(payload, schemaVersion);
+    }
+
+    /**
+     * @return the position in the log file after the last complete record.
+     */
+    static long endOfLastCompleteRecord(Path file) throws IOException {
+        return scan(file, EventLogFormat.HEADER_SIZE, null);
+    }
+
+    /**
+     * @param handler the handler of the decoded events; or null to skip decoding.
+     * @return the position in the log file after the last complete record.
+     */
+    private static long scan(Path file, long fromPosition, RecordHandler handler) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(open(file), BUFFER_SIZE))) {
+            byte[] header = new byte[EventLogFormat.HEADER_SIZE];
+            in.readFully(header);
+            final int schemaVersion = EventLogFormat.readHeader(ByteBuffer.wrap(header));
+
+            long position = EventLogFormat.HEADER_SIZE;
+            while (position < fromPosition) {
+                final long skipped = in.skip(fromPosition - position);
+                if (skipped <= 0) {
+                    throw new IOException("Position " + fromPosition + " is beyond the end of " + file);
+                }
+                position += skipped;
+            }
+
+            byte[] payload = new byte[4096];
+            while (true) {
+                final int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > EventLogFormat.MAX_RECORD_SIZE) {
+                    throw new IOException("Corrupt event record length " + length + " at position " + position + " in " + file);
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                try {
+                    in.readFully(payload, 0, length);
+                } catch (EOFException e) {
+                    LOG.warn("Skipping incomplete event record at position " + position + " in " + file);
+                    break;
+                }
+
+                if (handler != null) {
+                    try {
+                        handler.handle(position, EventLogFormat.decode(ByteBuffer.wrap(payload, 0, length).slice(), schemaVersion));
+                    } catch (IOException e) {
+                        throw new IOException(e.getMessage() + " At position " + position + " in " + file, e);
+                    }
+                }
+
+                position += 4 + length;
+            }
+
+            return position;
+        }
+    }
+
+    /**
+     * @return a stream of the uncompressed bytes of the log file.
+     */
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (isCompressed(file)) {
+            try {
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        return in;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of event log at position " + (position + buffer.position()));
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.log;
+
+import dk.dma.ais.abnormal.event.db.domain.Event;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes events to a new event log in one go (e.g. an archive), in the format read by EventLogReader.
+ * Use BinaryEventRepository to append events to an event log over time.
+ *
+ * The event log is compressed with gzip, if the file name ends with ".gz" (see EventLogReader.isCompressed).
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@NotThreadSafe
+public final class EventLogWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final GZIPOutputStream gzip;
+    private final OutputStream out;
+    private final EventLogFormat.Encoder encoder = new EventLogFormat.Encoder();
+
+    /**
+     * @throws java.nio.file.FileAlreadyExistsException if the file already exists.
+     */
+    public EventLogWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file, CREATE_NEW, WRITE);
+        try {
+            this.gzip = EventLogReader.isCompressed(file) ? new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE) : null;
+            this.out = new BufferedOutputStream(gzip != null ? gzip : Channels.newOutputStream(channel), BUFFER_SIZE);
+
+            ByteBuffer header = ByteBuffer.allocate(EventLogFormat.HEADER_SIZE);
+            EventLogFormat.writeHeader(header);
+            out.write(header.array());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public void write(Event event) throws IOException {
+        ByteBuffer record = encoder.encode(event);
+        out.write(record.array(), record.arrayOffset() + record.position(), record.remaining());
+    }
+
+    /**
+     * Write the buffered events, force the event log to the storage device and close it. Closing a closed
+     * writer has no effect.
+     */
+    @Override
+    public void close() throws IOException {
+        if (! channel.isOpen()) {
+            return;
+        }
+        try {
+            out.flush();
+            if (gzip != null) {
+                gzip.finish();
+            }
+            channel.force(false);
+        } finally {
+            out.close();
+        }
+    }
+}
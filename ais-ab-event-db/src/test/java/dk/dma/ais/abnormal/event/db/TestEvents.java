@@ -0,0 +1,108 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.event.db;
+
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.builders.DriftEventBuilder;
+import dk.dma.ais.abnormal.event.db.domain.builders.SuddenSpeedChangeEventBuilder;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Events and helpers shared by the tests of the event repositories.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+public final class TestEvents {
+
+    private TestEvents() {
+    }
+
+    /**
+     * @return a past drift event of vessel "vessel [last digit of mmsi]" with one tracking point at startTime.
+     */
+    public static Event driftEvent(int mmsi, LocalDateTime startTime, LocalDateTime endTime, double latitude, double longitude) {
+        return DriftEventBuilder.DriftEvent()
+            .title("Drift")
+            .state(Event.State.PAST)
+            .startTime(startTime)
+            .endTime(endTime)
+            .behaviour()
+                .isPrimary(true)
+                .vessel()
+                    .mmsi(mmsi)
+                    .callsign("callsign")
+                    .name("vessel " + (mmsi % 10))
+                .trackingPoint()
+                    .timestamp(startTime)
+                    .positionInterpolated(false)
+                    .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+                    .speedOverGround(1.0f)
+                    .courseOverGround(90f)
+                    .trueHeading(0f)
+                    .latitude(latitude)
+                    .longitude(longitude)
+            .getEvent();
+    }
+
+    /**
+     * @return a past sudden speed change event of a 30 m vessel with all vessel properties but its type, and one
+     * tracking point without heading at startTime.
+     */
+    public static Event suddenSpeedChangeEvent(int mmsi, LocalDateTime startTime, LocalDateTime endTime, double latitude, double longitude) {
+        return SuddenSpeedChangeEventBuilder.SuddenSpeedChangeEvent()
+            .title("title")
+            .description("description")
+            .state(Event.State.PAST)
+            .startTime(startTime)
+            .endTime(endTime)
+            .behaviour()
+                .isPrimary(true)
+                .vessel()
+                    .mmsi(mmsi)
+                    .imo(123456)
+                    .callsign("callsign")
+                    .toBow(10)
+                    .toStern(20)
+                    .toPort(3)
+                    .toStarboard(4)
+                    .name("name")
+                .trackingPoint()
+                    .timestamp(startTime)
+                    .positionInterpolated(false)
+                    .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+                    .speedOverGround(12.0f)
+                    .courseOverGround(45f)
+                    .latitude(latitude)
+                    .longitude(longitude)
+            .getEvent();
+    }
+
+    public static List<Integer> mmsis(List<Event> events) {
+        return events.stream().map(event -> event.primaryBehaviour().getVessel().getMmsi()).collect(toList());
+    }
+
+    public static Date date(LocalDateTime localDateTime) {
+        return Date.from(localDateTime.toInstant(ZoneOffset.UTC));
+    }
+}
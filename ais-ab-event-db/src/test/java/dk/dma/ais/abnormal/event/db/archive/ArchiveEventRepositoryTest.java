@@ -0,0 +1,237 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.archive;
+
+import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.builders.TrackingPointBuilder;
+import org.jmock.Expectations;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static dk.dma.ais.abnormal.event.db.TestEvents.date;
+import static dk.dma.ais.abnormal.event.db.TestEvents.driftEvent;
+import static dk.dma.ais.abnormal.event.db.TestEvents.mmsis;
+import static dk.dma.ais.abnormal.event.db.TestEvents.suddenSpeedChangeEvent;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArchiveEventRepositoryTest {
+
+    private static final LocalDate DAY1 = LocalDate.of(2014, 4, 1);
+    private static final LocalDate DAY2 = LocalDate.of(2014, 4, 2);
+
+    private Path archiveDirectory;
+    private ArchiveEventRepository sut;
+
+    @Before
+    public void setUp() throws IOException {
+        archiveDirectory = Files.createTempDirectory("archive");
+
+        ColumnarEventArchive.write(archiveDirectory, DAY1, "DriftEvent", Arrays.asList(
+            driftEvent(219000001, DAY1.atTime(10, 0), DAY1.atTime(11, 0), 56.0, 12.0),
+            driftEvent(219000002, DAY1.atTime(20, 0), DAY2.atTime(1, 0), 57.0, 11.0)
+        ));
+        Event speedChangeEvent = suddenSpeedChangeEvent(219000001, DAY2.atTime(12, 0), DAY2.atTime(12, 5), 55.0, 11.0);
+        speedChangeEvent.primaryBehaviour().addTrackingPoint(
+            TrackingPointBuilder.TrackingPoint()
+                .timestamp(DAY2.atTime(12, 5))
+                .positionInterpolated(true)
+                .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+                .speedOverGround(2.0f)
+                .courseOverGround(45f)
+                .trueHeading(46f)
+                .latitude(55.5)
+                .longitude(11.5)
+            .getTrackingPoint()
+        );
+        ColumnarEventArchive.write(archiveDirectory, DAY2, "SuddenSpeedChangeEvent", singletonList(speedChangeEvent));
+        ColumnarEventArchive.markComplete(archiveDirectory, DAY1);
+        ColumnarEventArchive.markComplete(archiveDirectory, DAY2);
+
+        sut = new ArchiveEventRepository(archiveDirectory);
+    }
+
+    @Test
+    public void roundTrip() {
+        List<Event> events = sut.findEventsByFromAndTo(date(DAY2.atStartOfDay()), date(DAY2.atTime(23, 59)));
+
+        assertEquals(2, events.size());
+        Event event = events.get(1);
+        assertEquals("SuddenSpeedChangeEvent", event.getEventType());
+        assertEquals(Event.State.PAST, event.getState());
+        assertEquals("title", event.getTitle());
+        assertEquals("description", event.getDescription());
+        assertEquals(DAY2.atTime(12, 0), event.getStartTime());
+        assertEquals(DAY2.atTime(12, 5), event.getEndTime());
+
+        Behaviour behaviour = event.primaryBehaviour();
+        assertEquals(219000001, behaviour.getVessel().getMmsi());
+        assertEquals(Integer.valueOf(123456), behaviour.getVessel().getImo());
+        assertEquals("callsign", behaviour.getVessel().getCallsign());
+        assertEquals("name", behaviour.getVessel().getName());
+        assertEquals(Integer.valueOf(30), behaviour.getVessel().getLength());
+        assertNull(behaviour.getVessel().getType());
+
+        assertEquals(2, behaviour.getTrackingPoints().size());
+        TrackingPoint trackingPoint = behaviour.mostRecentTrackingPoint();
+        assertEquals(DAY2.atTime(12, 5), trackingPoint.getTimestamp());
+        assertEquals(55.5, trackingPoint.getLatitude(), 1e-9);
+        assertEquals(11.5, trackingPoint.getLongitude(), 1e-9);
+        assertEquals(2.0f, trackingPoint.getSpeedOverGround(), 1e-6);
+        assertEquals(TrackingPoint.EventCertainty.RAISED, trackingPoint.getEventCertainty());
+        assertEquals(Boolean.TRUE, trackingPoint.getPositionInterpolated());
+    }
+
+    @Test
+    public void getEventTypes() {
+        assertEquals(Arrays.asList("DriftEvent", "SuddenSpeedChangeEvent"), sut.getEventTypes());
+    }
+
+    @Test
+    public void findByTimeSkipsLaterDays() {
+        List<Event> events = sut.findEventsByFromAndToAndTypeAndVesselAndArea(date(DAY1.atTime(9, 0)), date(DAY1.atTime(10, 30)), null, null, null, null, null, null);
+
+        assertEquals(singletonList(219000001), mmsis(events));
+    }
+
+    @Test
+    public void findByType() {
+        List<Event> events = sut.findEventsByFromAndToAndTypeAndVesselAndArea(null, null, "SuddenSpeedChangeEvent", null, null, null, null, null);
+
+        assertEquals(1, events.size());
+        assertEquals("SuddenSpeedChangeEvent", events.get(0).getEventType());
+    }
+
+    @Test
+    public void findByVessel() {
+        assertEquals(singletonList(219000002), mmsis(sut.findEventsByFromAndToAndTypeAndVesselAndArea(null, null, null, "219000002", null, null, null, null)));
+        assertEquals(singletonList(219000002), mmsis(sut.findEventsByFromAndToAndTypeAndVesselAndArea(null, null, null, "%vessel 2%", null, null, null, null)));
+        assertEquals(Arrays.asList(219000001, 219000001), mmsis(sut.findEventsByFromAndToAndTypeAndMmsiAndArea(null, null, null, 219000001, null, null, null, null)));
+        assertEquals(0, sut.findEventsByFromAndToAndTypeAndMmsiAndArea(null, null, null, 219000003, null, null, null, null).size());
+    }
+
+    @Test
+    public void findByArea() {
+        List<Event> events = sut.findEventsByFromAndToAndTypeAndVesselAndArea(null, null, "DriftEvent", null, 57.5, 11.5, 56.5, 10.5);
+
+        assertEquals(singletonList(219000002), mmsis(events));
+    }
+
+    @Test
+    public void findRecentEvents() {
+        List<Event> events = sut.findRecentEvents(2);
+
+        assertEquals(2, events.size());
+        assertEquals(DAY2.atTime(12, 0), events.get(0).getStartTime());
+        assertEquals(DAY1.atTime(20, 0), events.get(1).getStartTime());
+    }
+
+    @Test
+    public void exportDayAddsEventsWhichHavePassedSinceTheDayWasExported() throws IOException {
+        final LocalDate day3 = DAY2.plusDays(1);
+        final Event pastEvent = driftEvent(219000001, day3.atTime(10, 0), day3.atTime(11, 0), 56.0, 12.0);
+        pastEvent.setId(1);
+        final Event ongoingEvent = driftEvent(219000002, day3.atTime(12, 0), null, 56.0, 12.0);
+        ongoingEvent.setId(2);
+        ongoingEvent.setState(Event.State.ONGOING);
+
+        JUnit4Mockery context = new JUnit4Mockery();
+        final EventRepository eventRepository = context.mock(EventRepository.class);
+        context.checking(new Expectations() {{
+            oneOf(eventRepository).findEventsByFromAndTo(with(any(Date.class)), with(any(Date.class)));
+            will(returnValue(Arrays.asList(pastEvent, ongoingEvent)));
+        }});
+
+        assertEquals(1, ColumnarEventArchive.exportDay(eventRepository, archiveDirectory, day3));
+        assertEquals(singletonList(1L), ids(sut.findEventsByFromAndTo(date(day3.atStartOfDay()), date(day3.atTime(23, 59)))));
+
+        final Event passedEvent = driftEvent(219000002, day3.atTime(12, 0), day3.atTime(13, 0), 56.0, 12.0);
+        passedEvent.setId(2);
+        context.checking(new Expectations() {{
+            exactly(2).of(eventRepository).findEventsByFromAndTo(with(any(Date.class)), with(any(Date.class)));
+            will(returnValue(Arrays.asList(pastEvent, passedEvent)));
+        }});
+
+        assertEquals(1, ColumnarEventArchive.exportDay(eventRepository, archiveDirectory, day3));
+        assertEquals(0, ColumnarEventArchive.exportDay(eventRepository, archiveDirectory, day3));
+        assertEquals(Arrays.asList(1L, 2L), ids(sut.findEventsByFromAndTo(date(day3.atStartOfDay()), date(day3.atTime(23, 59)))));
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void incompleteDaysAreNotRead() throws IOException {
+        final LocalDate day3 = DAY2.plusDays(1);
+        ColumnarEventArchive.write(archiveDirectory, day3, "DriftEvent", singletonList(
+            driftEvent(219000003, day3.atTime(10, 0), day3.atTime(11, 0), 56.0, 12.0)
+        ));
+        Files.createFile(ColumnarEventArchive.partitionFile(archiveDirectory, day3, "SuddenSpeedChangeEvent").resolveSibling("SuddenSpeedChangeEvent.events.tmp"));
+
+        assertEquals(0, sut.findEventsByFromAndToAndTypeAndMmsiAndArea(null, null, null, 219000003, null, null, null, null).size());
+
+        JUnit4Mockery context = new JUnit4Mockery();
+        final EventRepository eventRepository = context.mock(EventRepository.class);
+        context.checking(new Expectations() {{
+            oneOf(eventRepository).findEventsByFromAndTo(with(any(Date.class)), with(any(Date.class)));
+            will(returnValue(singletonList(suddenSpeedChangeEvent(219000003, day3.atTime(12, 0), day3.atTime(12, 5), 55.0, 11.0))));
+        }});
+
+        assertEquals(1, ColumnarEventArchive.exportDay(eventRepository, archiveDirectory, day3));
+        assertEquals(2, sut.findEventsByFromAndToAndTypeAndMmsiAndArea(null, null, null, 219000003, null, null, null, null).size());
+    }
+
+    @Test
+    public void getEventScansThePartitionsForTheEventId() throws IOException {
+        final LocalDate day3 = DAY2.plusDays(1);
+        final Event event1 = driftEvent(219000003, day3.atTime(10, 0), day3.atTime(11, 0), 56.0, 12.0);
+        event1.setId(7);
+        final Event event2 = driftEvent(219000004, day3.atTime(12, 0), day3.atTime(13, 0), 56.0, 12.0);
+        event2.setId(8);
+        ColumnarEventArchive.write(archiveDirectory, day3, "DriftEvent", Arrays.asList(event1, event2));
+        ColumnarEventArchive.markComplete(archiveDirectory, day3);
+
+        Event event = sut.getEvent(8);
+        assertEquals(8L, event.getId());
+        assertEquals("DriftEvent", event.getEventType());
+        assertEquals(219000004, event.primaryBehaviour().getVessel().getMmsi());
+        assertNull(sut.getEvent(9));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void isReadOnly() {
+        sut.save(suddenSpeedChangeEvent(219000001, DAY2.atTime(12, 0), DAY2.atTime(12, 5), 55.0, 11.0));
+    }
+
+    private static List<Long> ids(List<Event> events) {
+        return events.stream().map(Event::getId).collect(toList());
+    }
+}
@@ -0,0 +1,211 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.feed;
+
+import dk.dma.ais.abnormal.event.db.csv.CsvEventRepository;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.builders.DriftEventBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static dk.dma.ais.abnormal.event.db.domain.builders.TrackingPointBuilder.TrackingPoint;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventChangeLogTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2017, 1, 22, 10, 0);
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempDirectory("eventchanges").resolve("changes.log");
+    }
+
+    @Test
+    public void changesAreReadInSequence() throws IOException {
+        Event event = driftEvent(Event.State.ONGOING);
+        try (EventChangeLog changeLog = new EventChangeLog(file)) {
+            assertEquals(1, changeLog.append(EventChange.Type.RAISED, event, 219000001, event.primaryBehaviour().mostRecentTrackingPoint()).getSequence());
+            assertEquals(2, changeLog.append(EventChange.Type.MAINTAINED, event, 219000001, null).getSequence());
+        }
+
+        List<EventChange> changes = new ArrayList<>();
+        long position = EventChangeLog.read(file, 0, changes::add);
+
+        assertEquals(Files.size(file), position);
+        assertEquals(Arrays.asList(1L, 2L), changes.stream().map(EventChange::getSequence).collect(toList()));
+        assertEquals(EventChange.Type.RAISED, changes.get(0).getType());
+        assertEquals("DriftEvent", changes.get(0).getEventType());
+        assertEquals(219000001, changes.get(0).getMmsi());
+        assertEquals(56.5, changes.get(0).getLatitude(), 1e-9);
+        assertNull(changes.get(1).getLatitude());
+
+        changes.clear();
+        assertEquals(position, EventChangeLog.read(file, position, changes::add));
+        assertEquals(0, changes.size());
+    }
+
+    @Test
+    public void sequenceContinuesAfterReopenAndIncompleteLineIsTruncated() throws IOException {
+        Event event = driftEvent(Event.State.ONGOING);
+        try (EventChangeLog changeLog = new EventChangeLog(file)) {
+            changeLog.append(EventChange.Type.RAISED, event, 219000001, null);
+        }
+        Files.write(file, "2\tMAINT".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+        List<EventChange> changes = new ArrayList<>();
+        long position = EventChangeLog.read(file, 0, changes::add);
+        assertEquals(1, changes.size());
+
+        try (EventChangeLog changeLog = new EventChangeLog(file)) {
+            assertEquals(2, changeLog.append(EventChange.Type.LOWERED, event, 219000001, null).getSequence());
+        }
+
+        changes.clear();
+        EventChangeLog.read(file, position, changes::add);
+        assertEquals(singletonList(EventChange.Type.LOWERED), changes.stream().map(EventChange::getType).collect(toList()));
+    }
+
+    @Test
+    public void decoratorAppendsRaiseMaintainAndLower() throws IOException {
+        try (EventChangeLog changeLog = new EventChangeLog(file)) {
+            ChangeLoggingEventRepository sut = new ChangeLoggingEventRepository(new CsvEventRepository(new ByteArrayOutputStream(), false), changeLog);
+
+            Event event = driftEvent(Event.State.ONGOING);
+            sut.save(event);
+            sut.appendTrackingPoints(event, 219000001, singletonList(trackingPoint(T0.plusMinutes(1), 56.6)));
+            event.setState(Event.State.PAST);
+            event.setEndTime(T0.plusMinutes(2));
+            sut.save(event);
+        }
+
+        List<EventChange> changes = new ArrayList<>();
+        EventChangeLog.read(file, 0, changes::add);
+
+        assertEquals(Arrays.asList(EventChange.Type.RAISED, EventChange.Type.MAINTAINED, EventChange.Type.LOWERED), changes.stream().map(EventChange::getType).collect(toList()));
+        assertEquals(56.6, changes.get(1).getLatitude(), 1e-9);
+    }
+
+    @Test
+    public void decoratorCoalescesMaintainedChangesAndRaisesOnce() throws IOException {
+        try (EventChangeLog changeLog = new EventChangeLog(file)) {
+            ChangeLoggingEventRepository sut = new ChangeLoggingEventRepository(new CsvEventRepository(new ByteArrayOutputStream(), false), changeLog, 60000);
+
+            Event event = driftEvent(Event.State.ONGOING);
+            sut.save(event);
+            sut.appendTrackingPoints(event, 219000001, singletonList(trackingPoint(T0.plusSeconds(10), 56.6)));
+            sut.appendTrackingPoints(event, 219000001, singletonList(trackingPoint(T0.plusSeconds(30), 56.7)));
+            sut.appendTrackingPoints(event, 219000001, singletonList(trackingPoint(T0.plusSeconds(70), 56.8)));
+            sut.save(event);
+            event.setState(Event.State.PAST);
+            event.setEndTime(T0.plusSeconds(80));
+            sut.save(event);
+        }
+
+        List<EventChange> changes = new ArrayList<>();
+        EventChangeLog.read(file, 0, changes::add);
+
+        assertEquals(Arrays.asList(EventChange.Type.RAISED, EventChange.Type.MAINTAINED, EventChange.Type.LOWERED), changes.stream().map(EventChange::getType).collect(toList()));
+        assertEquals(56.8, changes.get(1).getLatitude(), 1e-9);
+    }
+
+    @Test
+    public void logIsRotatedAndFollowedAcrossRotations() throws IOException {
+        Event event = driftEvent(Event.State.ONGOING);
+        EventChangeLog.Follower follower = new EventChangeLog.Follower(file);
+        List<EventChange> changes = new ArrayList<>();
+        try (EventChangeLog changeLog = new EventChangeLog(file, 200)) {
+            for (int i = 0; i < 10; i++) {
+                changeLog.append(EventChange.Type.MAINTAINED, event, 219000001, null);
+                if (i % 2 == 0) {
+                    follower.read(changes::add);
+                }
+            }
+        }
+        follower.read(changes::add);
+
+        assertTrue(Files.exists(EventChangeLog.rotatedFile(file)));
+        assertTrue(Files.size(file) <= 200);
+        assertEquals(LongStream.rangeClosed(1, 10).boxed().collect(toList()), changes.stream().map(EventChange::getSequence).collect(toList()));
+
+        try (EventChangeLog changeLog = new EventChangeLog(file, 200)) {
+            assertEquals(11, changeLog.append(EventChange.Type.LOWERED, event, 219000001, null).getSequence());
+        }
+    }
+
+    @Test
+    public void toJson() {
+        EventChange change = new EventChange(7, EventChange.Type.SUPPRESSED, 1000, 42, "DriftEvent", 219000001, null, 12.5);
+        assertEquals("{\"sequence\":7,\"type\":\"SUPPRESSED\",\"timestamp\":1000,\"eventId\":42,\"eventType\":\"DriftEvent\",\"mmsi\":219000001,\"latitude\":null,\"longitude\":12.5}", change.toJson());
+        assertEquals(change.toString(), EventChange.parse(change.toLine()).toString());
+    }
+
+    private static Event driftEvent(Event.State state) {
+        return DriftEventBuilder.DriftEvent()
+            .title("Drift")
+            .state(state)
+            .startTime(T0)
+            .behaviour()
+                .isPrimary(true)
+                .vessel()
+                    .mmsi(219000001)
+                    .callsign("callsign")
+                    .name("vessel 1")
+                .trackingPoint()
+                    .timestamp(T0)
+                    .positionInterpolated(false)
+                    .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+                    .speedOverGround(1.0f)
+                    .courseOverGround(90f)
+                    .trueHeading(0f)
+                    .latitude(56.5)
+                    .longitude(12.5)
+            .getEvent();
+    }
+
+    private static TrackingPoint trackingPoint(LocalDateTime timestamp, double latitude) {
+        return TrackingPoint()
+            .timestamp(timestamp)
+            .positionInterpolated(false)
+            .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+            .speedOverGround(1.0f)
+            .courseOverGround(90f)
+            .trueHeading(0f)
+            .latitude(latitude)
+            .longitude(12.5)
+            .getTrackingPoint();
+    }
+}
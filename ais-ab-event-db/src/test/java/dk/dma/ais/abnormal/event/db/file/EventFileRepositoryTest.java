@@ -0,0 +1,164 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.event.db.file;
+
+import dk.dma.ais.abnormal.event.db.csv.CsvEventRepository;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.log.BinaryEventRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static dk.dma.ais.abnormal.event.db.TestEvents.date;
+import static dk.dma.ais.abnormal.event.db.TestEvents.driftEvent;
+import static dk.dma.ais.abnormal.event.db.TestEvents.mmsis;
+import static dk.dma.ais.abnormal.event.db.TestEvents.suddenSpeedChangeEvent;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EventFileRepositoryTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2017, 1, 22, 10, 0);
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("eventfile");
+    }
+
+    @Test
+    public void queryEventLog() throws IOException {
+        Path logFile = directory.resolve("events.log");
+        BinaryEventRepository writer = new BinaryEventRepository(logFile, false, 60000);
+        writer.save(driftEvent(219000001, T0, T0.plusHours(1), 56.5, 12.5));
+        writer.save(driftEvent(219000002, T0.plusHours(5), T0.plusHours(6), 55.5, 10.5));
+        writer.save(suddenSpeedChangeEvent(219000003, T0.plusHours(2), T0.plusHours(2).plusMinutes(1), 57.5, 11.5));
+        writer.close();
+
+        EventFileRepository sut = new EventFileRepository(logFile);
+
+        assertEquals(Arrays.asList("DriftEvent", "SuddenSpeedChangeEvent"), sut.getEventTypes());
+        assertEquals(Arrays.asList(219000001, 219000003, 219000002), mmsis(sut.findEventsByFromAndToAndTypeAndVesselAndArea(null, null, null, null, null, null, null, null)));
+        assertEquals(Arrays.asList(219000001, 219000003), mmsis(sut.findEventsByFromAndTo(date(T0.plusMinutes(30)), date(T0.plusHours(3)))));
+        assertEquals(singletonList(219000003), mmsis(sut.findEventsByFromAndToAndTypeAndVesselAndArea(date(T0.plusMinutes(90)), date(T0.plusHours(3)), null, null, null, null, null, null)));
+        assertEquals(singletonList(219000002), mmsis(sut.findEventsByFromAndToAndTypeAndVesselAndArea(null, null, "DriftEvent", null, 56.0, 11.0, 55.0, 10.0)));
+        assertEquals(singletonList(219000003), mmsis(sut.findEventsByFromAndToAndTypeAndVesselAndArea(null, null, null, "219000003", null, null, null, null)));
+        assertEquals(singletonList(219000002), mmsis(sut.findEventsByFromAndToAndTypeAndVesselAndArea(null, null, null, "%vessel 2%", null, null, null, null)));
+        assertEquals(Arrays.asList(219000002, 219000003), mmsis(sut.findRecentEvents(2)));
+
+        assertEquals(219000003, sut.getEvent(3).primaryBehaviour().getVessel().getMmsi());
+        assertEquals(3, sut.getEvent(3).getId());
+        assertNull(sut.getEvent(4));
+        assertNull(sut.findOngoingEventByVessel(219000001, Event.class));
+    }
+
+    @Test
+    public void eventsAppendedToEventLogAreIndexed() throws IOException {
+        Path logFile = directory.resolve("events.log");
+        BinaryEventRepository writer = new BinaryEventRepository(logFile, false, 60000);
+        writer.save(driftEvent(219000001, T0, T0.plusHours(1), 56.5, 12.5));
+        writer.flush();
+
+        EventFileRepository sut = new EventFileRepository(logFile);
+        assertEquals(singletonList(219000001), mmsis(sut.findRecentEvents(10)));
+
+        writer.save(driftEvent(219000002, T0.plusHours(5), T0.plusHours(6), 55.5, 10.5));
+        writer.close();
+
+        assertEquals(Arrays.asList(219000002, 219000001), mmsis(sut.findRecentEvents(10)));
+        assertEquals(singletonList(219000002), mmsis(sut.findEventsByFromAndToAndTypeAndVesselAndArea(null, null, null, "219000002", null, null, null, null)));
+    }
+
+    @Test
+    public void eventsAppendedOutOfOrderAreMergedByStartTime() throws IOException {
+        Path logFile = directory.resolve("events.log");
+        BinaryEventRepository writer = new BinaryEventRepository(logFile, false, 60000);
+        writer.save(driftEvent(219000001, T0.plusHours(1), T0.plusHours(2), 56.5, 12.5));
+        writer.save(driftEvent(219000002, T0.plusHours(3), T0.plusHours(4), 56.5, 12.5));
+        writer.flush();
+
+        EventFileRepository sut = new EventFileRepository(logFile);
+        assertEquals(Arrays.asList(219000001, 219000002), mmsis(sut.findEventsByFromAndTo(date(T0), date(T0.plusHours(5)))));
+
+        writer.save(driftEvent(219000003, T0.plusHours(2), T0.plusHours(3), 56.5, 12.5));
+        writer.save(driftEvent(219000004, T0, T0.plusMinutes(30), 56.5, 12.5));
+        writer.close();
+
+        assertEquals(Arrays.asList(219000004, 219000001, 219000003, 219000002), mmsis(sut.findEventsByFromAndTo(date(T0), date(T0.plusHours(5)))));
+        assertEquals(Arrays.asList(219000002, 219000003), mmsis(sut.findRecentEvents(2)));
+    }
+
+    @Test
+    public void queryCsvFile() throws IOException {
+        Path csvFile = directory.resolve("events.csv");
+        try (OutputStream out = Files.newOutputStream(csvFile)) {
+            CsvEventRepository writer = new CsvEventRepository(out, false);
+            writer.save(driftEvent(219000001, T0, T0.plusHours(1), 56.5, 12.5));
+            writer.save(suddenSpeedChangeEvent(219000003, T0.plusHours(2), T0.plusHours(2).plusMinutes(1), 57.5, 11.5));
+        }
+
+        EventFileRepository sut = new EventFileRepository(csvFile);
+
+        assertEquals(Arrays.asList("DriftEvent", "SuddenSpeedChangeEvent"), sut.getEventTypes());
+        assertEquals(singletonList(219000003), mmsis(sut.findEventsByFromAndToAndTypeAndVesselAndArea(null, null, null, null, 58.0, 12.0, 57.0, 11.0)));
+
+        Event event = sut.getEvent(1);
+        assertEquals("DriftEvent", event.getEventType());
+        assertEquals(Event.State.PAST, event.getState());
+        assertEquals(T0, event.getStartTime());
+        assertEquals(T0.plusHours(1), event.getEndTime());
+        assertEquals("vessel 1", event.primaryBehaviour().getVessel().getName());
+        assertEquals(56.5, event.primaryBehaviour().mostRecentTrackingPoint().getLatitude(), 1e-4);
+        assertEquals(1.0f, event.primaryBehaviour().mostRecentTrackingPoint().getSpeedOverGround(), 1e-6);
+    }
+
+    @Test
+    public void eventsAppendedToCsvFileAreIndexed() throws IOException {
+        Path csvFile = directory.resolve("events.csv");
+        try (OutputStream out = Files.newOutputStream(csvFile)) {
+            CsvEventRepository writer = new CsvEventRepository(out, false);
+            writer.save(driftEvent(219000001, T0, T0.plusHours(1), 56.5, 12.5));
+
+            EventFileRepository sut = new EventFileRepository(csvFile);
+            assertEquals(singletonList(219000001), mmsis(sut.findRecentEvents(10)));
+
+            writer.save(driftEvent(219000002, T0.plusHours(5), T0.plusHours(6), 55.5, 10.5));
+            assertEquals(Arrays.asList(219000002, 219000001), mmsis(sut.findRecentEvents(10)));
+
+            // A record which is still being written is indexed when it is complete
+            final byte[] csv = Files.readAllBytes(csvFile);
+            writer.save(driftEvent(219000003, T0.plusHours(7), T0.plusHours(8), 55.5, 10.5));
+            final byte[] record = Arrays.copyOfRange(Files.readAllBytes(csvFile), csv.length, (int) Files.size(csvFile));
+            Files.write(csvFile, csv);
+            Files.write(csvFile, Arrays.copyOf(record, 20), APPEND);
+            assertEquals(Arrays.asList(219000002, 219000001), mmsis(sut.findRecentEvents(10)));
+
+            Files.write(csvFile, Arrays.copyOfRange(record, 20, record.length), APPEND);
+            assertEquals(Arrays.asList(219000003, 219000002, 219000001), mmsis(sut.findRecentEvents(10)));
+            assertEquals(219000003, sut.getEvent(3).primaryBehaviour().getVessel().getMmsi());
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.jpa;
+
+import dk.dma.ais.abnormal.application.statistics.LatencyHistogram;
+import dk.dma.ais.abnormal.event.db.domain.DriftEvent;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.builders.DriftEventBuilder;
+import org.hibernate.SessionFactory;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dk.dma.ais.abnormal.event.db.domain.builders.TrackingPointBuilder.TrackingPoint;
+import static java.util.Collections.singletonList;
+
+/**
+ * Load test of JpaEventRepository against an embedded H2 database in a new temporary directory.
+ *
+ * Writer threads follow the analyzer's pattern: look up the ongoing event of a vessel; then either save a new
+ * event, append a tracking point to the ongoing event, or end it. Each writer owns its own vessels, like the
+ * analyzer handles each vessel in one thread. Concurrently, reader threads follow the web application's
+ * pattern: event types, recent event summaries, and searches by time, type and area.
+ *
+ * Latency percentiles of each operation are printed at the end. Operations in the first fifth of the run
+ * are not measured (warm-up). The random sequence is seeded, so runs with the same arguments are comparable.
+ *
+ * Not run by the unit tests; run with
+ *
+ *   mvn test-compile exec:java -Dexec.mainClass=dk.dma.ais.abnormal.event.db.jpa.JpaEventRepositoryLoadHarness -Dexec.classpathScope=test -Dexec.args="poolmax=8 batch=50"
+ *
+ * or by running main() from the IDE. Arguments (all optional) are key=value pairs:
+ *
+ *   seconds=60 writers=4 readers=4 vessels=250 poolmax=32 statements=50 batch=0 fetch=0 cache=true
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+public class JpaEventRepositoryLoadHarness {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2017, 1, 1, 0, 0);
+
+    /** Probability that a writer ends the ongoing event, instead of appending a tracking point to it */
+    private static final double END_EVENT_PROBABILITY = 0.05;
+
+    private static final int RECENT_EVENTS = 100;
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final AtomicLong simulatedSeconds = new AtomicLong();
+
+    private final JpaEventRepository eventRepository;
+    private final int vesselsPerWriter;
+
+    private volatile long measureFromNanos;
+    private volatile long stopAtNanos;
+
+    JpaEventRepositoryLoadHarness(JpaEventRepository eventRepository, int vesselsPerWriter) {
+        this.eventRepository = eventRepository;
+        this.vesselsPerWriter = vesselsPerWriter;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = new LinkedHashMap<>();
+        for (String arg : args) {
+            String[] keyAndValue = arg.split("=", 2);
+            if (keyAndValue.length != 2) {
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            }
+            arguments.put(keyAndValue[0].trim().toLowerCase(), keyAndValue[1].trim());
+        }
+
+        final int seconds = Integer.parseInt(arguments.getOrDefault("seconds", "60"));
+        final int writers = Integer.parseInt(arguments.getOrDefault("writers", "4"));
+        final int readers = Integer.parseInt(arguments.getOrDefault("readers", "4"));
+        final int vessels = Integer.parseInt(arguments.getOrDefault("vessels", "250"));
+
+        JpaSettings settings = JpaSettings.forH2()
+            .maxPoolSize(Integer.parseInt(arguments.getOrDefault("poolmax", "32")))
+            .statementCacheSize(Integer.parseInt(arguments.getOrDefault("statements", "50")))
+            .batchSize(Integer.parseInt(arguments.getOrDefault("batch", "0")))
+            .fetchSize(Integer.parseInt(arguments.getOrDefault("fetch", "0")))
+            .cacheEnabled(Boolean.parseBoolean(arguments.getOrDefault("cache", "true")));
+
+        Path directory = Files.createTempDirectory("jpaload");
+        SessionFactory sessionFactory = JpaSessionFactoryFactory.newH2SessionFactory(new File(directory.toFile(), "events"), settings);
+        try {
+            JpaEventRepositoryLoadHarness harness = new JpaEventRepositoryLoadHarness(new JpaEventRepository(sessionFactory, false, settings.getBatchSize()), vessels);
+            harness.run(writers, readers, seconds);
+
+            System.out.println(settings + ", writers=" + writers + ", readers=" + readers + ", seconds=" + seconds + ", vessels=" + vessels);
+            harness.printReport(System.out, seconds * 4 / 5);
+        } finally {
+            sessionFactory.close();
+        }
+    }
+
+    void run(int writers, int readers, int seconds) throws Exception {
+        final long startNanos = System.nanoTime();
+        measureFromNanos = startNanos + TimeUnit.SECONDS.toNanos(seconds) / 5;
+        stopAtNanos = startNanos + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            final int writer = i;
+            futures.add(executor.submit(() -> write(writer)));
+        }
+        for (int i = 0; i < readers; i++) {
+            final int reader = i;
+            futures.add(executor.submit(() -> read(reader)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+    }
+
+    private void write(int writer) {
+        final Random random = new Random(writer);
+        final int firstMmsi = 219000000 + writer * vesselsPerWriter;
+        while (System.nanoTime() < stopAtNanos) {
+            final int mmsi = firstMmsi + random.nextInt(vesselsPerWriter);
+            final LocalDateTime timestamp = T0.plusSeconds(simulatedSeconds.incrementAndGet());
+
+            long startNanos = System.nanoTime();
+            DriftEvent event = eventRepository.findOngoingEventByVessel(mmsi, DriftEvent.class);
+            record("findOngoingEventByVessel", startNanos);
+
+            startNanos = System.nanoTime();
+            if (event == null) {
+                eventRepository.save(newEvent(mmsi, timestamp, random));
+                record("save (new)", startNanos);
+            } else if (random.nextDouble() < END_EVENT_PROBABILITY) {
+                event.setState(Event.State.PAST);
+                event.setEndTime(timestamp);
+                eventRepository.save(event);
+                record("save (end)", startNanos);
+            } else {
+                eventRepository.appendTrackingPoints(event, mmsi, singletonList(newTrackingPoint(timestamp, random)));
+                record("appendTrackingPoints", startNanos);
+            }
+        }
+    }
+
+    private void read(int reader) {
+        final Random random = new Random(1000 + reader);
+        while (System.nanoTime() < stopAtNanos) {
+            final long startNanos = System.nanoTime();
+            final int query = random.nextInt(10);
+            if (query == 0) {
+                eventRepository.getEventTypes();
+                record("getEventTypes", startNanos);
+            } else if (query < 4) {
+                eventRepository.findRecentEventSummaries(RECENT_EVENTS);
+                record("findRecentEventSummaries", startNanos);
+            } else {
+                final LocalDateTime to = T0.plusSeconds(simulatedSeconds.get());
+                final LocalDateTime from = to.minusHours(1);
+                final double south = 54.0 + random.nextDouble() * 3.0;
+                final double west = 9.0 + random.nextDouble() * 4.0;
+                eventRepository.findEventsByFromAndToAndTypeAndVesselAndArea(date(from), date(to), query < 7 ? "DriftEvent" : null, null, south + 1.0, west + 1.0, south, west);
+                record("findEventsByFromAndToAndTypeAndVesselAndArea", startNanos);
+            }
+        }
+    }
+
+    private void record(String operation, long startNanos) {
+        final long nanos = System.nanoTime() - startNanos;
+        if (startNanos >= measureFromNanos) {
+            histograms.computeIfAbsent(operation, LatencyHistogram::new).record(nanos);
+        }
+    }
+
+    void printReport(PrintStream out, int measuredSeconds) {
+        out.println(String.format("%-46s %9s %9s %9s %9s %9s %9s %9s", "operation", "count", "ops/s", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "max ms"));
+        histograms.values().stream().sorted((h1, h2) -> h1.getName().compareTo(h2.getName())).forEach(histogram ->
+            out.println(String.format("%-46s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f",
+                histogram.getName(),
+                histogram.getCount(),
+                histogram.getCount() / (double) Math.max(1, measuredSeconds),
+                millis(histogram.getValueAtPercentile(50.0)),
+                millis(histogram.getValueAtPercentile(95.0)),
+                millis(histogram.getValueAtPercentile(99.0)),
+                millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMax())
+            ))
+        );
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Date date(LocalDateTime localDateTime) {
+        return Date.from(localDateTime.toInstant(ZoneOffset.UTC));
+    }
+
+    private static Event newEvent(int mmsi, LocalDateTime timestamp, Random random) {
+        return DriftEventBuilder.DriftEvent()
+            .title("Drift")
+            .description("Load test")
+            .state(Event.State.ONGOING)
+            .startTime(timestamp)
+            .behaviour()
+                .isPrimary(true)
+                .vessel()
+                    .mmsi(mmsi)
+                    .imo(9000000 + mmsi % 1000000)
+                    .callsign("OX" + mmsi % 10000)
+                    .name("VESSEL " + mmsi)
+                .trackingPoint()
+                    .timestamp(timestamp)
+                    .positionInterpolated(false)
+                    .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+                    .speedOverGround(random.nextFloat() * 2.0f)
+                    .courseOverGround(random.nextFloat() * 360.0f)
+                    .trueHeading(random.nextFloat() * 360.0f)
+                    .latitude(54.0 + random.nextDouble() * 4.0)
+                    .longitude(9.0 + random.nextDouble() * 5.0)
+            .getEvent();
+    }
+
+    private static TrackingPoint newTrackingPoint(LocalDateTime timestamp, Random random) {
+        return TrackingPoint()
+            .timestamp(timestamp)
+            .positionInterpolated(false)
+            .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+            .speedOverGround(random.nextFloat() * 2.0f)
+            .courseOverGround(random.nextFloat() * 360.0f)
+            .trueHeading(random.nextFloat() * 360.0f)
+            .latitude(54.0 + random.nextDouble() * 4.0)
+            .longitude(9.0 + random.nextDouble() * 5.0)
+            .getTrackingPoint();
+    }
+}
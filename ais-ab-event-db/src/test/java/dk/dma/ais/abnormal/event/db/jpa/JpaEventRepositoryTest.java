@@ -16,22 +16,49 @@
 
 package dk.dma.ais.abnormal.event.db.jpa;
 
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.DriftEvent;
 import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
 import dk.dma.ais.abnormal.event.db.domain.ShipSizeOrTypeEvent;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.Vessel;
+import dk.dma.ais.abnormal.event.db.domain.builders.DriftEventBuilder;
+import dk.dma.ais.abnormal.event.db.log.EventLogReader;
+import dk.dma.ais.abnormal.event.db.log.EventLogWriter;
 import dk.dma.ais.test.helpers.ArgumentCaptor;
+import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.jmock.Expectations;
 import org.jmock.integration.junit4.JUnit4Mockery;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-
+import java.util.List;
+
+import static dk.dma.ais.abnormal.event.db.domain.builders.TrackingPointBuilder.TrackingPoint;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class JpaEventRepositoryTest {
 
@@ -39,6 +66,7 @@ public class JpaEventRepositoryTest {
     private SessionFactory sessionFactory;
     private Session session;
     private Query query;
+    private Transaction transaction;
     private JpaEventRepository eventRepository;
 
     @Before
@@ -48,6 +76,7 @@ public class JpaEventRepositoryTest {
         sessionFactory = context.mock(SessionFactory.class);
         session = context.mock(Session.class);
         query = context.mock(Query.class);
+        transaction = context.mock(Transaction.class);
 
         eventRepository = new JpaEventRepository(sessionFactory, false);
     }
@@ -201,6 +230,68 @@ public class JpaEventRepositoryTest {
         context.assertIsSatisfied();
     }
 
+    @Test
+    public void testFindRecentEventSummaries() {
+        final ArgumentCaptor<String> queryString = ArgumentCaptor.forClass(String.class);
+        final Vessel vessel = vessel(219886000);
+        final TrackingPoint trackingPoint = newTrackingPoint();
+        final LocalDateTime startTime = LocalDateTime.of(2017, 1, 22, 9, 0, 0);
+
+        context.checking(new Expectations() {{
+            oneOf(sessionFactory).openSession(); will(returnValue(session));
+            oneOf(session).createQuery(with(queryString.getMatcher())); will(returnValue(query));
+            oneOf(query).setMaxResults(3);
+            oneOf(query).list(); will(returnValue(asList(
+                new Object[] { 1L, "ShipSizeOrTypeEvent", Event.State.ONGOING, startTime, null, "title", vessel, trackingPoint },
+                new Object[] { 1L, "ShipSizeOrTypeEvent", Event.State.ONGOING, startTime, null, "title", vessel, newTrackingPoint() }
+            )));
+            oneOf(session).close();
+        }});
+
+        List<EventSummary> eventSummaries = eventRepository.findRecentEventSummaries(3);
+
+        assertTrue(queryString.getCapturedObject().toString().matches("SELECT e.id, e.class, .* FROM Event e JOIN e.behaviours b .*WHERE b.isPrimary=true AND e.suppressed=false .*ORDER BY e.startTime DESC"));
+        assertEquals(1, eventSummaries.size());
+        assertEquals(1L, eventSummaries.get(0).getId());
+        assertEquals("ShipSizeOrTypeEvent", eventSummaries.get(0).getEventType());
+        assertEquals(startTime, eventSummaries.get(0).getStartTime());
+        assertTrue(vessel == eventSummaries.get(0).getVessel());
+        assertTrue(trackingPoint == eventSummaries.get(0).getLastTrackingPoint());
+
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void testFindEventSummariesByFromAndToAndTypeAndVesselAndArea() {
+        final ArgumentCaptor<String> queryString = ArgumentCaptor.forClass(String.class);
+
+        context.checking(new Expectations() {{
+            oneOf(sessionFactory).openSession(); will(returnValue(session));
+            oneOf(session).createQuery(with(queryString.getMatcher())); will(returnValue(query));
+            allowing(query).setParameter(with(aNonNull(String.class)), with(aNonNull(Object.class)));
+            oneOf(query).list(); will(returnValue(asList()));
+            oneOf(session).close();
+        }});
+
+        Calendar calendar = Calendar.getInstance();
+
+        calendar.set(2014, 03, 27, 0, 0, 0);
+        Date from = calendar.getTime();
+
+        calendar.set(2014, 03, 27, 14, 12, 10);
+        Date to = calendar.getTime();
+
+        eventRepository.findEventSummariesByFromAndToAndTypeAndVesselAndArea(from, to, "SpeedOverGroundEvent", "vessel", 56.1, 12.1, 56.0, 12.0);
+
+        final String hql = queryString.getCapturedObject().toString();
+        assertTrue(hql.matches("SELECT e.id, e.class, .* FROM Event e JOIN e.behaviours b .*WHERE b.isPrimary=true AND e.suppressed=false .* AND e.id IN [(]SELECT m.id FROM Event m .*[)] ORDER BY e.startTime"));
+        assertTrue(hql.matches(".*LEFT JOIN m.behaviours AS mb LEFT JOIN mb.trackingPoints AS mtp WHERE m.suppressed=false AND mtp.latitude<:north.*"));
+        assertTrue(hql.matches(".*[(]m.startTime >= :from OR m.endTime >= :from[)] AND [(]m.startTime <= :to OR m.endTime <= :to[)] AND TYPE[(]m[)] IN [(]:classes[)].*"));
+        assertTrue(hql.matches(".*[(]mb.vessel.callsign LIKE :vessel OR mb.vessel.name LIKE :vessel[)].*"));
+
+        context.assertIsSatisfied();
+    }
+
     @Test
     public void testGetEventTypes() {
         final ArgumentCaptor<String> queryString = ArgumentCaptor.forClass(String.class);
@@ -218,4 +309,360 @@ public class JpaEventRepositoryTest {
 
         context.assertIsSatisfied();
     }
+
+    @Test
+    public void appendTrackingPointsInsertsOnlyNewTrackingPoints() {
+        final ShipSizeOrTypeEvent event = new ShipSizeOrTypeEvent();
+        event.addBehaviour(persistedBehaviour(219886000));
+        final Behaviour managedBehaviour = new Behaviour();
+        final TrackingPoint trackingPoint = newTrackingPoint();
+
+        context.checking(new Expectations() {{
+            oneOf(sessionFactory).openSession(); will(returnValue(session));
+            oneOf(session).beginTransaction(); will(returnValue(transaction));
+            oneOf(session).get(Behaviour.class, 7L); will(returnValue(managedBehaviour));
+            oneOf(session).save(trackingPoint);
+            never(session).saveOrUpdate(with(any(Object.class)));
+            never(session).clear();
+            oneOf(session).getTransaction(); will(returnValue(transaction));
+            oneOf(transaction).commit();
+            oneOf(session).close();
+        }});
+
+        eventRepository.appendTrackingPoints(event, 219886000, singletonList(trackingPoint));
+
+        assertEquals(0, event.getBehaviour(219886000).getTrackingPoints().size());
+        assertEquals(1, managedBehaviour.getTrackingPoints().size());
+
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void appendTrackingPointsFlushesAndClearsInChunksOfTheBatchSize() {
+        final ShipSizeOrTypeEvent event = new ShipSizeOrTypeEvent();
+        event.addBehaviour(persistedBehaviour(219886000));
+        final Behaviour managedBehaviour1 = new Behaviour();
+        final Behaviour managedBehaviour2 = new Behaviour();
+        final LocalDateTime t0 = LocalDateTime.of(2017, 1, 22, 10, 0, 0);
+        final List<TrackingPoint> trackingPoints = asList(newTrackingPoint(t0), newTrackingPoint(t0.plusMinutes(1)), newTrackingPoint(t0.plusMinutes(2)));
+
+        context.checking(new Expectations() {{
+            oneOf(sessionFactory).openSession(); will(returnValue(session));
+            oneOf(session).beginTransaction(); will(returnValue(transaction));
+            exactly(2).of(session).get(Behaviour.class, 7L); will(onConsecutiveCalls(returnValue(managedBehaviour1), returnValue(managedBehaviour2)));
+            exactly(3).of(session).save(with(any(TrackingPoint.class)));
+            oneOf(session).flush();
+            oneOf(session).clear();
+            oneOf(session).getTransaction(); will(returnValue(transaction));
+            oneOf(transaction).commit();
+            oneOf(session).close();
+        }});
+
+        eventRepository = new JpaEventRepository(sessionFactory, false, 2);
+        eventRepository.appendTrackingPoints(event, 219886000, trackingPoints);
+
+        assertEquals(2, managedBehaviour1.getTrackingPoints().size());
+        assertEquals(1, managedBehaviour2.getTrackingPoints().size());
+
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void appendTrackingPointsToUnsavedBehaviourSavesEvent() {
+        final ShipSizeOrTypeEvent event = new ShipSizeOrTypeEvent();
+        Behaviour behaviour = new Behaviour();
+        behaviour.setVessel(vessel(219886000));
+        event.addBehaviour(behaviour);
+        final TrackingPoint trackingPoint = newTrackingPoint();
+
+        context.checking(new Expectations() {{
+            oneOf(sessionFactory).openSession(); will(returnValue(session));
+            oneOf(session).beginTransaction(); will(returnValue(transaction));
+            oneOf(session).saveOrUpdate(event);
+            never(session).get(with(any(Class.class)), with(any(Long.class)));
+            oneOf(session).getTransaction(); will(returnValue(transaction));
+            oneOf(transaction).commit();
+            oneOf(session).close();
+        }});
+
+        eventRepository.appendTrackingPoints(event, 219886000, singletonList(trackingPoint));
+
+        assertEquals(1, event.getBehaviour(219886000).getTrackingPoints().size());
+
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void appendTrackingPointsRollsBackOnFailure() {
+        final ShipSizeOrTypeEvent event = new ShipSizeOrTypeEvent();
+        event.addBehaviour(persistedBehaviour(219886000));
+        final TrackingPoint trackingPoint = newTrackingPoint();
+
+        context.checking(new Expectations() {{
+            oneOf(sessionFactory).openSession(); will(returnValue(session));
+            oneOf(session).beginTransaction(); will(returnValue(transaction));
+            oneOf(session).get(Behaviour.class, 7L); will(returnValue(new Behaviour()));
+            oneOf(session).save(trackingPoint); will(throwException(new HibernateException("Save failed")));
+            allowing(session).getTransaction(); will(returnValue(transaction));
+            allowing(transaction).isActive(); will(returnValue(true));
+            never(transaction).commit();
+            oneOf(transaction).rollback();
+            oneOf(session).close();
+        }});
+
+        try {
+            eventRepository.appendTrackingPoints(event, 219886000, singletonList(trackingPoint));
+            fail("HibernateException expected");
+        } catch (HibernateException e) {
+            assertEquals("Save failed", e.getMessage());
+        }
+
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void readOnlyRepositoryDoesNotAppendTrackingPoints() {
+        final ShipSizeOrTypeEvent event = new ShipSizeOrTypeEvent();
+        event.addBehaviour(persistedBehaviour(219886000));
+
+        context.checking(new Expectations() {{
+            never(sessionFactory).openSession();
+        }});
+
+        eventRepository = new JpaEventRepository(sessionFactory, true);
+        eventRepository.appendTrackingPoints(event, 219886000, singletonList(newTrackingPoint()));
+
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void appendedTrackingPointsAreLinkedToTheirBehaviourInH2() throws IOException {
+        final int mmsi = 219886000;
+        final LocalDateTime t0 = LocalDateTime.of(2017, 1, 22, 10, 0, 0);
+
+        SessionFactory h2SessionFactory = JpaSessionFactoryFactory.newH2SessionFactory(new File(Files.createTempDirectory("events").toFile(), "events"));
+        try {
+            JpaEventRepository h2EventRepository = new JpaEventRepository(h2SessionFactory, false, 2);
+            h2EventRepository.save(driftEvent(mmsi, t0));
+
+            DriftEvent ongoingEvent = h2EventRepository.findOngoingEventByVessel(mmsi, DriftEvent.class);
+            h2EventRepository.appendTrackingPoints(ongoingEvent, mmsi, asList(newTrackingPoint(t0.plusSeconds(20)), newTrackingPoint(t0.plusSeconds(40)), newTrackingPoint(t0.plusMinutes(2))));
+
+            ongoingEvent = h2EventRepository.findOngoingEventByVessel(mmsi, DriftEvent.class);
+            h2EventRepository.appendTrackingPoints(ongoingEvent, mmsi, singletonList(newTrackingPoint(t0.plusMinutes(3))));
+
+            // Lowering the event must keep the tracking points, which were not loaded with the ongoing event
+            ongoingEvent = h2EventRepository.findOngoingEventByVessel(mmsi, DriftEvent.class);
+            ongoingEvent.setState(Event.State.PAST);
+            ongoingEvent.setEndTime(t0.plusMinutes(3));
+            h2EventRepository.save(ongoingEvent);
+            assertEquals(5, ongoingEvent.getBehaviour(mmsi).getTrackingPoints().size());
+
+            Event event = h2EventRepository.getEvent(ongoingEvent.getId());
+            assertEquals(Event.State.PAST, event.getState());
+            assertEquals(5, event.getBehaviour(mmsi).getTrackingPoints().size());
+            assertEquals(t0, event.getBehaviour(mmsi).getTrackingPoints().first().getTimestamp());
+            assertEquals(t0.plusMinutes(3), event.getBehaviour(mmsi).mostRecentTrackingPoint().getTimestamp());
+        } finally {
+            h2SessionFactory.close();
+        }
+    }
+
+    @Test
+    public void recentEventsLoadTheCollectionsOfOnlyTheReturnedEventsInH2() throws IOException {
+        final LocalDateTime t0 = LocalDateTime.of(2017, 1, 22, 10, 0, 0);
+
+        SessionFactory h2SessionFactory = JpaSessionFactoryFactory.newH2SessionFactory(new File(Files.createTempDirectory("events").toFile(), "events"));
+        try {
+            JpaEventRepository h2EventRepository = new JpaEventRepository(h2SessionFactory, false);
+            h2EventRepository.save(driftEvent(219000001, t0));
+            h2EventRepository.save(driftEvent(219000002, t0.plusHours(1)));
+            h2EventRepository.save(driftEvent(219000003, t0.plusHours(2)));
+
+            h2SessionFactory.getStatistics().setStatisticsEnabled(true);
+            h2SessionFactory.getStatistics().clear();
+            List<Event> events = h2EventRepository.findRecentEvents(1);
+
+            assertEquals(1, events.size());
+            assertEquals(219000003, events.get(0).primaryBehaviour().getVessel().getMmsi());
+            assertEquals(1, events.get(0).primaryBehaviour().getTrackingPoints().size());
+            // The behaviours of the event, and the tracking points of its one behaviour
+            assertEquals(2, h2SessionFactory.getStatistics().getCollectionLoadCount());
+        } finally {
+            h2SessionFactory.close();
+        }
+    }
+
+    @Test
+    public void summariesIncludeEventsWithoutTrackingPointsInH2() throws IOException {
+        final LocalDateTime t0 = LocalDateTime.of(2017, 1, 22, 10, 0, 0);
+
+        SessionFactory h2SessionFactory = JpaSessionFactoryFactory.newH2SessionFactory(new File(Files.createTempDirectory("events").toFile(), "events"));
+        try {
+            JpaEventRepository h2EventRepository = new JpaEventRepository(h2SessionFactory, false);
+            h2EventRepository.save(driftEvent(219000001, t0));
+
+            DriftEvent eventWithoutTrackingPoints = new DriftEvent();
+            eventWithoutTrackingPoints.setTitle("Drift");
+            eventWithoutTrackingPoints.setStartTime(t0.plusHours(1));
+            Behaviour behaviour = new Behaviour();
+            behaviour.setVessel(vessel(219000002));
+            behaviour.setPrimary(true);
+            eventWithoutTrackingPoints.addBehaviour(behaviour);
+            h2EventRepository.save(eventWithoutTrackingPoints);
+
+            List<EventSummary> eventSummaries = h2EventRepository.findRecentEventSummaries(10);
+
+            assertEquals(2, eventSummaries.size());
+            assertEquals(219000002, eventSummaries.get(0).getVessel().getMmsi());
+            assertNull(eventSummaries.get(0).getLastTrackingPoint());
+            assertEquals(219000001, eventSummaries.get(1).getVessel().getMmsi());
+            assertEquals(t0, eventSummaries.get(1).getLastTrackingPoint().getTimestamp());
+
+            Date from = Date.from(t0.minusDays(1).toInstant(ZoneOffset.UTC));
+            Date to = Date.from(t0.plusDays(1).toInstant(ZoneOffset.UTC));
+            assertEquals(2, h2EventRepository.findEventSummariesByFromAndTo(from, to).size());
+            assertEquals(h2EventRepository.findEventsByFromAndTo(from, to).size(), h2EventRepository.findEventSummariesByFromAndTo(from, to).size());
+        } finally {
+            h2SessionFactory.close();
+        }
+    }
+
+    @Test
+    public void archiveFileIsNeverOverwritten() throws IOException {
+        Path archiveDirectory = Files.createTempDirectory("archive");
+
+        Path archiveFile1 = JpaEventRepository.archiveFile(archiveDirectory, YearMonth.of(2014, 4));
+        assertEquals(archiveDirectory.resolve("events-2014-04.log.gz"), archiveFile1);
+        Files.createFile(archiveFile1);
+
+        Path archiveFile2 = JpaEventRepository.archiveFile(archiveDirectory, YearMonth.of(2014, 4));
+        assertEquals(archiveDirectory.resolve("events-2014-04-1.log.gz"), archiveFile2);
+        Files.createFile(archiveFile2);
+
+        assertEquals(archiveDirectory.resolve("events-2014-04-2.log.gz"), JpaEventRepository.archiveFile(archiveDirectory, YearMonth.of(2014, 4)));
+        assertEquals(archiveDirectory.resolve("events-2014-05.log.gz"), JpaEventRepository.archiveFile(archiveDirectory, YearMonth.of(2014, 5)));
+    }
+
+    @Test
+    public void archivedEventsAreReadBackBeforeTheyAreDeleted() throws IOException {
+        final LocalDateTime t0 = LocalDateTime.of(2017, 1, 22, 10, 0, 0);
+        final Path archiveDirectory = Files.createTempDirectory("archive");
+
+        SessionFactory h2SessionFactory = JpaSessionFactoryFactory.newH2SessionFactory(new File(Files.createTempDirectory("events").toFile(), "events"));
+        try {
+            JpaEventRepository h2EventRepository = new JpaEventRepository(h2SessionFactory, false);
+
+            Event januaryEvent = driftEvent(219000001, t0);
+            januaryEvent.setState(Event.State.PAST);
+            januaryEvent.setEndTime(t0.plusHours(1));
+            h2EventRepository.save(januaryEvent);
+
+            Event februaryEvent = driftEvent(219000002, t0.plusMonths(1));
+            februaryEvent.setState(Event.State.PAST);
+            februaryEvent.setEndTime(t0.plusMonths(1).plusHours(1));
+            h2EventRepository.save(februaryEvent);
+
+            Event ongoingEvent = driftEvent(219000003, t0);
+            h2EventRepository.save(ongoingEvent);
+
+            Date before = Date.from(t0.plusMonths(2).toInstant(ZoneOffset.UTC));
+            assertEquals(2, h2EventRepository.archiveEventsStartedBefore(before, archiveDirectory));
+
+            List<Event> archivedEvents = new ArrayList<>();
+            EventLogReader.read(archiveDirectory.resolve("events-2017-01.log.gz"), archivedEvents::add);
+            assertEquals(1, archivedEvents.size());
+            assertEquals(januaryEvent.getId(), archivedEvents.get(0).getId());
+            assertEquals(219000001, archivedEvents.get(0).primaryBehaviour().getVessel().getMmsi());
+            assertEquals(1, archivedEvents.get(0).primaryBehaviour().getTrackingPoints().size());
+            assertEquals(1, EventLogReader.read(archiveDirectory.resolve("events-2017-02.log.gz"), event -> {}));
+
+            assertNull(h2EventRepository.getEvent(januaryEvent.getId()));
+            assertNull(h2EventRepository.getEvent(februaryEvent.getId()));
+            assertNotNull(h2EventRepository.getEvent(ongoingEvent.getId()));
+        } finally {
+            h2SessionFactory.close();
+        }
+    }
+
+    @Test
+    public void archiveNotHoldingAllEventsIsRejected() throws IOException {
+        Path archiveFile = Files.createTempDirectory("archive").resolve("events-2017-01.log");
+        Event event = driftEvent(219000001, LocalDateTime.of(2017, 1, 22, 10, 0, 0));
+        event.setId(1L);
+        try (EventLogWriter archive = new EventLogWriter(archiveFile)) {
+            archive.write(event);
+        }
+
+        JpaEventRepository.verifyArchive(archiveFile, asList(1L));
+        try {
+            JpaEventRepository.verifyArchive(archiveFile, asList(1L, 2L));
+            fail("UncheckedIOException expected");
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("No events deleted."));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readOnlyRepositoryCannotArchive() throws IOException {
+        eventRepository = new JpaEventRepository(sessionFactory, true);
+        eventRepository.archiveEventsStartedBefore(new Date(), Files.createTempDirectory("archive"));
+    }
+
+    private static Behaviour persistedBehaviour(int mmsi) {
+        Behaviour behaviour = new Behaviour() {
+            @Override
+            public long getId() {
+                return 7L;
+            }
+        };
+        behaviour.setVessel(vessel(mmsi));
+        return behaviour;
+    }
+
+    private static Vessel vessel(int mmsi) {
+        Vessel vessel = new Vessel();
+        vessel.setMmsi(mmsi);
+        return vessel;
+    }
+
+    private static Event driftEvent(int mmsi, LocalDateTime startTime) {
+        return DriftEventBuilder.DriftEvent()
+            .title("Drift")
+            .description("Drifting vessel")
+            .state(Event.State.ONGOING)
+            .startTime(startTime)
+            .behaviour()
+                .isPrimary(true)
+                .vessel()
+                    .mmsi(mmsi)
+                    .name("VESSEL")
+                .trackingPoint()
+                    .timestamp(startTime)
+                    .positionInterpolated(false)
+                    .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+                    .speedOverGround(1.0f)
+                    .courseOverGround(90f)
+                    .trueHeading(0f)
+                    .latitude(56.0)
+                    .longitude(12.0)
+            .getEvent();
+    }
+
+    private static TrackingPoint newTrackingPoint() {
+        return newTrackingPoint(LocalDateTime.of(2017, 1, 22, 10, 0, 0));
+    }
+
+    private static TrackingPoint newTrackingPoint(LocalDateTime timestamp) {
+        return TrackingPoint()
+                .timestamp(timestamp)
+                .positionInterpolated(false)
+                .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+                .speedOverGround(12.0f)
+                .courseOverGround(45f)
+                .trueHeading(46f)
+                .latitude(56.0)
+                .longitude(12.0)
+                .getTrackingPoint();
+    }
 }
@@ -0,0 +1,58 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.jpa;
+
+import org.hibernate.cfg.Configuration;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JpaSettingsTest {
+
+    @Test
+    public void defaultsForPgsqlUseC3p0WithoutBatching() {
+        Configuration configuration = new Configuration();
+        JpaSettings.forPgsql().applyTo(configuration);
+
+        assertEquals("org.hibernate.c3p0.internal.C3P0ConnectionProvider", configuration.getProperty("hibernate.connection.provider_class"));
+        assertEquals("2", configuration.getProperty("hibernate.c3p0.min_size"));
+        assertEquals("32", configuration.getProperty("hibernate.c3p0.max_size"));
+        assertEquals("50", configuration.getProperty("hibernate.c3p0.max_statements"));
+        assertEquals("16", configuration.getProperty("hibernate.c3p0.numHelperThreads"));
+        assertEquals("true", configuration.getProperty("hibernate.cache.use_query_cache"));
+        assertNull(configuration.getProperty("hibernate.connection.pool_size"));
+        assertNull(configuration.getProperty("hibernate.jdbc.batch_size"));
+        assertNull(configuration.getProperty("hibernate.jdbc.fetch_size"));
+    }
+
+    @Test
+    public void h2WithBatchingAndWithoutCache() {
+        Configuration configuration = new Configuration();
+        JpaSettings.forH2().maxPoolSize(8).batchSize(50).fetchSize(200).cacheEnabled(false).applyTo(configuration);
+
+        assertEquals("org.hibernate.c3p0.internal.C3P0ConnectionProvider", configuration.getProperty("hibernate.connection.provider_class"));
+        assertEquals("8", configuration.getProperty("hibernate.c3p0.max_size"));
+        assertNull(configuration.getProperty("hibernate.connection.pool_size"));
+        assertEquals("50", configuration.getProperty("hibernate.jdbc.batch_size"));
+        assertEquals("true", configuration.getProperty("hibernate.order_inserts"));
+        assertEquals("200", configuration.getProperty("hibernate.jdbc.fetch_size"));
+        assertEquals("false", configuration.getProperty("hibernate.cache.use_second_level_cache"));
+        assertNull(configuration.getProperty("hibernate.cache.region.factory_class"));
+    }
+}
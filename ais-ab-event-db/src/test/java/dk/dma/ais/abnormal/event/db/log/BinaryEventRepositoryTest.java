@@ -0,0 +1,211 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.log;
+
+import dk.dma.ais.abnormal.event.db.csv.CsvEventRepository;
+import dk.dma.ais.abnormal.event.db.domain.Behaviour;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dk.dma.ais.abnormal.event.db.TestEvents.suddenSpeedChangeEvent;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryEventRepositoryTest {
+
+    private Path logFile;
+
+    @Before
+    public void setUp() throws IOException {
+        logFile = Files.createTempDirectory("eventlog").resolve("events.log");
+    }
+
+    @Test
+    public void onlyPastEventsAreWrittenAndReadBack() throws IOException {
+        Event ongoingEvent = event(219000001, Event.State.ONGOING, null);
+        Event pastEvent = event(219000002, Event.State.PAST, LocalDateTime.of(2017, 1, 22, 12, 32, 1));
+
+        BinaryEventRepository sut = new BinaryEventRepository(logFile, false, 60000);
+        sut.save(ongoingEvent);
+        sut.save(pastEvent);
+        assertSame(ongoingEvent, sut.findOngoingEventByVessel(219000001, ongoingEvent.getClass()));
+        assertNull(sut.findOngoingEventByVessel(219000002, pastEvent.getClass()));
+        sut.close();
+
+        List<Event> events = read();
+        assertEquals(1, events.size());
+
+        Event event = events.get(0);
+        assertEquals("SuddenSpeedChangeEvent", event.getEventType());
+        assertEquals(Event.State.PAST, event.getState());
+        assertEquals("title", event.getTitle());
+        assertEquals("description", event.getDescription());
+        assertEquals(LocalDateTime.of(2017, 1, 22, 10, 0, 0), event.getStartTime());
+        assertEquals(LocalDateTime.of(2017, 1, 22, 12, 32, 1), event.getEndTime());
+
+        Behaviour behaviour = event.primaryBehaviour();
+        assertEquals(219000002, behaviour.getVessel().getMmsi());
+        assertEquals(Integer.valueOf(123456), behaviour.getVessel().getImo());
+        assertEquals("name", behaviour.getVessel().getName());
+        assertEquals("callsign", behaviour.getVessel().getCallsign());
+        assertEquals(Integer.valueOf(30), behaviour.getVessel().getLength());
+
+        TrackingPoint trackingPoint = behaviour.mostRecentTrackingPoint();
+        assertEquals(LocalDateTime.of(2017, 1, 22, 10, 0, 0), trackingPoint.getTimestamp());
+        assertEquals(56.0, trackingPoint.getLatitude(), 1e-9);
+        assertEquals(12.0, trackingPoint.getLongitude(), 1e-9);
+        assertEquals(12.0f, trackingPoint.getSpeedOverGround(), 1e-6);
+        assertNull(trackingPoint.getTrueHeading());
+        assertEquals(Boolean.FALSE, trackingPoint.getPositionInterpolated());
+        assertEquals(TrackingPoint.EventCertainty.RAISED, trackingPoint.getEventCertainty());
+    }
+
+    @Test
+    public void incompleteRecordIsSkippedAndOverwritten() throws IOException {
+        BinaryEventRepository sut = new BinaryEventRepository(logFile, false, 60000);
+        sut.save(event(219000001, Event.State.PAST, null));
+        sut.close();
+
+        // Simulate a crash while writing a record
+        ByteBuffer incompleteRecord = ByteBuffer.allocate(10);
+        incompleteRecord.putInt(100);
+        Files.write(logFile, incompleteRecord.array(), APPEND);
+        assertEquals(1, read().size());
+
+        sut = new BinaryEventRepository(logFile, false, 60000);
+        sut.save(event(219000002, Event.State.PAST, null));
+        sut.close();
+
+        List<Event> events = read();
+        assertEquals(2, events.size());
+        assertEquals(219000002, events.get(1).primaryBehaviour().getVessel().getMmsi());
+    }
+
+    @Test
+    public void readonlyRepositoryNeverModifiesTheLog() throws IOException {
+        BinaryEventRepository sut = new BinaryEventRepository(logFile, true, 60000);
+        sut.save(event(219000001, Event.State.PAST, null));
+        sut.close();
+        assertFalse(Files.exists(logFile));
+
+        sut = new BinaryEventRepository(logFile, false, 60000);
+        sut.save(event(219000001, Event.State.PAST, null));
+        sut.close();
+
+        // Simulate a crash while writing a record
+        ByteBuffer incompleteRecord = ByteBuffer.allocate(10);
+        incompleteRecord.putInt(100);
+        Files.write(logFile, incompleteRecord.array(), APPEND);
+        final byte[] log = Files.readAllBytes(logFile);
+
+        sut = new BinaryEventRepository(logFile, true, 60000);
+        sut.save(event(219000002, Event.State.PAST, null));
+        sut.close();
+
+        assertArrayEquals(log, Files.readAllBytes(logFile));
+        assertEquals(1, read().size());
+    }
+
+    @Test
+    public void convertToCsv() throws IOException {
+        Event event = event(219000001, Event.State.PAST, LocalDateTime.of(2017, 1, 22, 12, 32, 1));
+
+        BinaryEventRepository sut = new BinaryEventRepository(logFile, false, 60000);
+        sut.save(event);
+        sut.close();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new CsvEventRepository(expected, false).save(event);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        assertEquals(1, EventLogConverter.toCsv(logFile, actual));
+
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void convertToJson() throws IOException {
+        BinaryEventRepository sut = new BinaryEventRepository(logFile, false, 60000);
+        sut.save(event(219000001, Event.State.PAST, null));
+        sut.close();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(1, EventLogConverter.toJson(logFile, out));
+
+        String json = out.toString("UTF-8");
+        assertTrue(json, json.startsWith("{\"eventType\":\"SuddenSpeedChangeEvent\",\"state\":\"PAST\",\"suppressed\":false,\"startTime\":\"2017-01-22T10:00\",\"endTime\":null,\"title\":\"title\""));
+        assertTrue(json, json.contains("\"vessel\":{\"mmsi\":219000001,\"imo\":123456,\"name\":\"name\""));
+        assertTrue(json, json.contains("\"trueHeading\":null,\"positionInterpolated\":false,\"eventCertainty\":\"RAISED\"}"));
+        assertTrue(json, json.endsWith("]}]}\n"));
+    }
+
+    @Test
+    public void appendsToEventLogsOfSchemaVersion1() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(EventLogFormat.HEADER_SIZE);
+        header.putInt(EventLogFormat.MAGIC);
+        header.putInt(1);
+        Files.write(logFile, header.array());
+
+        Event pastEvent = event(219000001, Event.State.PAST, null);
+        pastEvent.setId(17L);
+
+        BinaryEventRepository sut = new BinaryEventRepository(logFile, false, 60000);
+        sut.save(pastEvent);
+        sut.close();
+
+        List<Event> events = read();
+        assertEquals(1, events.size());
+        assertEquals(0L, events.get(0).getId());
+        assertEquals(219000001, events.get(0).primaryBehaviour().getVessel().getMmsi());
+        assertEquals(1, ByteBuffer.wrap(Files.readAllBytes(logFile)).getInt(4));
+    }
+
+    @Test(expected = IOException.class)
+    public void refusesToAppendToOtherFiles() throws IOException {
+        Files.write(logFile, "eventId,eventType".getBytes());
+        new BinaryEventRepository(logFile, false, 60000);
+    }
+
+    private List<Event> read() throws IOException {
+        List<Event> events = new ArrayList<>();
+        EventLogReader.read(logFile, events::add);
+        return events;
+    }
+
+    private static Event event(int mmsi, Event.State state, LocalDateTime endTime) {
+        Event event = suddenSpeedChangeEvent(mmsi, LocalDateTime.of(2017, 1, 22, 10, 0, 0), endTime, 56.0, 12.0);
+        event.setState(state);
+        return event;
+    }
+}
@@ -0,0 +1,160 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.db.log;
+
+import dk.dma.ais.abnormal.event.db.domain.CloseEncounterEvent;
+import dk.dma.ais.abnormal.event.db.domain.CourseOverGroundEvent;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import dk.dma.ais.abnormal.event.db.domain.Zone;
+import dk.dma.ais.abnormal.event.db.domain.builders.CloseEncounterEventBuilder;
+import dk.dma.ais.abnormal.event.db.domain.builders.CourseOverGroundEventBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventLogWriterTest {
+
+    private Path logFile;
+
+    @Before
+    public void setUp() throws IOException {
+        logFile = Files.createTempDirectory("eventlog").resolve("events.log");
+    }
+
+    @Test
+    public void eventLogHoldsEventIdsAndTypeSpecificProperties() throws IOException {
+        CourseOverGroundEvent courseOverGroundEvent = (CourseOverGroundEvent) CourseOverGroundEventBuilder.CourseOverGroundEvent()
+            .shipType(3)
+            .shipLength(4)
+            .courseOverGround(5)
+            .title("cog")
+            .state(Event.State.PAST)
+            .startTime(LocalDateTime.of(2017, 1, 22, 10, 0, 0))
+            .behaviour()
+                .isPrimary(true)
+                .vessel()
+                    .mmsi(219000001)
+                    .name("vessel 1")
+                .trackingPoint()
+                    .timestamp(LocalDateTime.of(2017, 1, 22, 10, 0, 0))
+                    .positionInterpolated(false)
+                    .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+                    .latitude(56.0)
+                    .longitude(12.0)
+            .getEvent();
+        courseOverGroundEvent.setId(17L);
+
+        CloseEncounterEvent closeEncounterEvent = CloseEncounterEventBuilder.CloseEncounterEvent()
+            .safetyZoneOfPrimaryVessel()
+                .targetTimestamp(new Date(1485079200000L))
+                .centerLatitude(56.1)
+                .centerLongitude(12.1)
+                .majorAxisHeading(45.0)
+                .majorSemiAxisLength(500.0)
+                .minorSemiAxisLength(100.0)
+            .getEvent();
+        closeEncounterEvent.setTitle("close encounter");
+        closeEncounterEvent.setState(Event.State.PAST);
+        closeEncounterEvent.setStartTime(LocalDateTime.of(2017, 1, 22, 11, 0, 0));
+        closeEncounterEvent.setId(18L);
+
+        try (EventLogWriter writer = new EventLogWriter(logFile)) {
+            writer.write(courseOverGroundEvent);
+            writer.write(closeEncounterEvent);
+        }
+
+        List<Event> events = new ArrayList<>();
+        assertEquals(2, EventLogReader.read(logFile, events::add));
+
+        CourseOverGroundEvent readCourseOverGroundEvent = (CourseOverGroundEvent) events.get(0);
+        assertEquals(17L, readCourseOverGroundEvent.getId());
+        assertEquals(3, readCourseOverGroundEvent.getShipType());
+        assertEquals(4, readCourseOverGroundEvent.getShipLength());
+        assertEquals(5, readCourseOverGroundEvent.getCourseOverGround());
+        assertEquals(1, readCourseOverGroundEvent.primaryBehaviour().getTrackingPoints().size());
+
+        CloseEncounterEvent readCloseEncounterEvent = (CloseEncounterEvent) events.get(1);
+        assertEquals(18L, readCloseEncounterEvent.getId());
+        Zone zone = readCloseEncounterEvent.getSafetyZoneOfPrimaryVessel();
+        assertEquals(new Date(1485079200000L), zone.getTargetTimestamp());
+        assertEquals(56.1, zone.getCenterLatitude(), 1e-9);
+        assertEquals(12.1, zone.getCenterLongitude(), 1e-9);
+        assertEquals(45.0, zone.getMajorAxisHeading(), 1e-9);
+        assertEquals(500.0, zone.getMajorSemiAxisLength(), 1e-9);
+        assertEquals(100.0, zone.getMinorSemiAxisLength(), 1e-9);
+        assertNull(readCloseEncounterEvent.getExtentOfSecondaryVessel());
+    }
+
+    @Test
+    public void eventLogNamedGzIsCompressed() throws IOException {
+        Path compressedLogFile = logFile.resolveSibling("events.log.gz");
+        try (EventLogWriter writer = new EventLogWriter(compressedLogFile)) {
+            for (int i = 1; i <= 100; i++) {
+                Event event = CourseOverGroundEventBuilder.CourseOverGroundEvent()
+                    .title("cog")
+                    .state(Event.State.PAST)
+                    .startTime(LocalDateTime.of(2017, 1, 22, 10, 0, 0).plusMinutes(i))
+                    .behaviour()
+                        .isPrimary(true)
+                        .vessel()
+                            .mmsi(219000001)
+                            .name("vessel 1")
+                        .trackingPoint()
+                            .timestamp(LocalDateTime.of(2017, 1, 22, 10, 0, 0).plusMinutes(i))
+                            .positionInterpolated(false)
+                            .eventCertainty(TrackingPoint.EventCertainty.RAISED)
+                            .latitude(56.0)
+                            .longitude(12.0)
+                    .getEvent();
+                event.setId(i);
+                writer.write(event);
+            }
+        }
+
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(Files.newInputStream(compressedLogFile)))) {
+            assertEquals(EventLogFormat.MAGIC, in.readInt());
+        }
+        assertTrue(EventLogReader.isEventLog(compressedLogFile));
+
+        List<Event> events = new ArrayList<>();
+        assertEquals(100, EventLogReader.read(compressedLogFile, events::add));
+        assertEquals(1L, events.get(0).getId());
+        assertEquals(100L, events.get(99).getId());
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void neverOverwritesAnEventLog() throws IOException {
+        Files.createFile(logFile);
+        new EventLogWriter(logFile);
+    }
+}
@@ -21,6 +21,7 @@ import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import dk.dma.ais.abnormal.application.ApplicationSupport;
+import dk.dma.ais.abnormal.application.statistics.MetricsServer;
 import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
 import dk.dma.ais.abnormal.stat.db.data.DatasetMetaData;
 import dk.dma.ais.concurrency.stripedexecutor.StripedExecutorService;
@@ -70,6 +71,8 @@ public final class AbnormalStatBuilderApp extends AbstractDaemon {
     @Inject
     private StripedExecutorService executorService;
 
+    private MetricsServer metricsServer;
+
     static UserArguments userArguments;
 
     @Override
@@ -84,6 +87,10 @@ public final class AbnormalStatBuilderApp extends AbstractDaemon {
         DatasetMetaData metadata = new DatasetMetaData(grid.getResolution(), userArguments.getDownSampling());
         statisticsRepository.putMetaData(metadata);
         statisticsService.start();
+        if (userArguments.getMetricsPort() != null && userArguments.getMetricsPort() > 0) {
+            metricsServer = new MetricsServer(statisticsService, userArguments.getMetricsPort());
+            metricsServer.start();
+        }
         progressIndicator.start();
 
         reader.registerPacketHandler(packetHandler);
@@ -102,6 +109,9 @@ public final class AbnormalStatBuilderApp extends AbstractDaemon {
         statisticsService.dumpStatistics();
 
         statisticsRepository.close();
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
         statisticsService.stop();
     }
     
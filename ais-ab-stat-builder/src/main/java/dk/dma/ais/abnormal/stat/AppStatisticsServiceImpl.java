@@ -17,14 +17,16 @@ package dk.dma.ais.abnormal.stat;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import dk.dma.ais.abnormal.application.statistics.MetricsWriter;
 import dk.dma.ais.concurrency.stripedexecutor.StripedExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Class for holding information on the file processing process
@@ -37,38 +39,48 @@ public final class AppStatisticsServiceImpl extends dk.dma.ais.abnormal.applicat
     @Inject
     private StripedExecutorService executorService;
 
-    private Map<String, HashMap<String, Long>> allStatisticStatistics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> allStatisticStatistics = new ConcurrentHashMap<>();
 
     public AppStatisticsServiceImpl() {
     }
 
     @Override
     public void incStatisticStatistics(String statisticName, String statisticsName) {
-        HashMap<String, Long> statisticStatistics = (HashMap<String, Long>) this.allStatisticStatistics.get(statisticName);
-        if (statisticStatistics == null) {
-            statisticStatistics = new HashMap<>();
-            this.allStatisticStatistics.put(statisticName, statisticStatistics);
-        }
-        Long statistic = statisticStatistics.get(statisticsName);
-        if (statistic == null) {
-            statistic = 0L;
-            statisticStatistics.put(statisticsName, statistic);
-        }
-        statistic++;
-        statisticStatistics.put(statisticsName, statistic);
+        allStatisticStatistics
+            .computeIfAbsent(statisticName, name -> new ConcurrentHashMap<>())
+            .computeIfAbsent(statisticsName, name -> new LongAdder())
+            .increment();
     }
 
     @Override
     public Long getStatisticStatistics(String statisticName, String statisticsName) {
-        HashMap<String, Long> statisticStatistics = (HashMap<String, Long>) this.allStatisticStatistics.get(statisticName);
+        Map<String, LongAdder> statisticStatistics = this.allStatisticStatistics.get(statisticName);
         if (statisticStatistics == null) {
             return null;
         }
-        Long statistic = statisticStatistics.get(statisticsName);
+        LongAdder statistic = statisticStatistics.get(statisticsName);
         if (statistic == null) {
             return null;
         }
-        return statistic;
+        return statistic.sum();
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter writer) {
+        super.writeMetrics(writer);
+
+        if (executorService != null) {
+            writer.gauge("ais_ab_executor_threads", "No. of worker threads", executorService.numberOfExecutors());
+            writer.gauge("ais_ab_executor_queue_size", "No. of tasks queued for each worker thread", "thread", executorService.serialExecutorQueueSizes());
+        }
+
+        Map<String, Map<String, Long>> snapshot = new TreeMap<>();
+        allStatisticStatistics.forEach((statisticName, statisticStatistics) -> {
+            Map<String, Long> statisticSnapshot = new TreeMap<>();
+            statisticStatistics.forEach((statisticsName, value) -> statisticSnapshot.put(statisticsName, value.sum()));
+            snapshot.put(statisticName, statisticSnapshot);
+        });
+        writer.gauge("ais_ab_statistic_statistic", "Statistics of the individual statistics being built", "statistic", "name", snapshot);
     }
 
     @Override
@@ -85,18 +97,12 @@ public final class AppStatisticsServiceImpl extends dk.dma.ais.abnormal.applicat
         }
 
         LOG.info("==== Stat builder statistic statistics (statistics) ====");
-        Set<String> statisticNames = this.allStatisticStatistics.keySet();
-        for (String statisticName : statisticNames) {
+        allStatisticStatistics.forEach((statisticName, statisticStatistics) -> {
             LOG.info(String.format("%-30s %s", "TrackingEventListener name", statisticName));
-
-            HashMap<String, Long> statisticStatistics = this.allStatisticStatistics.get(statisticName);
-            Set<String> statisticsNames = statisticStatistics.keySet();
-            for (String statisticsName : statisticsNames) {
-                Long statistics = statisticStatistics.get(statisticsName);
-                LOG.info(String.format("     %-25s %9d", statisticsName, statistics));
-            }
-
-        }
+            statisticStatistics.forEach((statisticsName, statistics) ->
+                LOG.info(String.format("     %-25s %9d", statisticsName, statistics.sum()))
+            );
+        });
         LOG.info("==== Stat builder statistic statistics ====");
     }
 }
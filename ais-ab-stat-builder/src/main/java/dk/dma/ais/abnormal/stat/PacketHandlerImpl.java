@@ -19,6 +19,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.assistedinject.Assisted;
+import dk.dma.ais.abnormal.application.statistics.LatencyHistogram;
 import dk.dma.ais.abnormal.stat.statistics.CourseOverGroundStatistic;
 import dk.dma.ais.abnormal.stat.statistics.ShipTypeAndSizeStatistic;
 import dk.dma.ais.abnormal.stat.statistics.SpeedOverGroundStatistic;
@@ -50,6 +51,7 @@ public class PacketHandlerImpl implements PacketHandler {
     private ReplayDownSampleFilter downSampleFilter;
     private StripedExecutorService workerThreads;
     private final boolean multiThreaded;
+    private final LatencyHistogram packetLatency;
 
     private volatile boolean cancel;
 
@@ -67,6 +69,7 @@ public class PacketHandlerImpl implements PacketHandler {
         this.downSampleFilter = downSampleFilter;
         this.workerThreads = executorService;
         this.multiThreaded = multiThreaded;
+        this.packetLatency = statisticsService.getLatencyHistogram("packet");
 
         initStatistics();
     }
@@ -95,6 +98,7 @@ public class PacketHandlerImpl implements PacketHandler {
         // Get AisMessage from packet or drop
         AisMessage message = packet.tryGetAisMessage();
         if (message == null) {
+            statisticsService.incInvalidPacketCount();
             return;
         }
         statisticsService.incMessageCount();
@@ -129,7 +133,9 @@ public class PacketHandlerImpl implements PacketHandler {
     }
 
     private void doWork(AisPacket p) {
+        final long startNanos = System.nanoTime();
         trackingService.update(p);
+        packetLatency.recordSince(startNanos);
         if (trackingService instanceof EventEmittingTrackerImpl) {
             statisticsService.setTrackCount(((EventEmittingTrackerImpl) trackingService).getNumberOfTracks());
         }
@@ -45,6 +45,9 @@ public class UserArguments {
     @Parameter(names = "-downsampling", description = "Downsampling period (in secs).")
     private Integer downSampling = 60;
 
+    @Parameter(names = "-metricsPort", description = "Port on which to expose live metrics over HTTP (0 = disabled).")
+    private Integer metricsPort = 0;
+
     public void setHelp(boolean help) {
         this.help = help;
     }
@@ -80,4 +83,8 @@ public class UserArguments {
     public Integer getDownSampling() {
         return downSampling;
     }
+
+    public Integer getMetricsPort() {
+        return metricsPort;
+    }
 }
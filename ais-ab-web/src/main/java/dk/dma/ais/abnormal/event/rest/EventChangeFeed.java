@@ -0,0 +1,211 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.rest;
+
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.feed.EventChange;
+import dk.dma.ais.abnormal.event.db.feed.EventChangeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The web application's view of the event change log: follows the EventChangeLog file written by the analyzer
+ * (and by this application, when events are suppressed) across rotations, and keeps the most recent changes in
+ * memory, so that clients can resume from the last sequence no. they have seen.
+ *
+ * Clients which ask for changes after a sequence no. which is no longer retained (or which this feed has
+ * never seen) must re-query the events and resume from getLastSequence().
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+public final class EventChangeFeed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventChangeFeed.class);
+
+    static final int MAX_RETAINED_CHANGES = 10000;
+    private static final long POLL_INTERVAL_MILLIS = 250;
+
+    private final Path file;
+    private final EventChangeLog changeLog;
+    private final EventChangeLog.Follower follower;
+    private final Runnable onChanges;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    /** Guarded by lock */
+    private final ArrayDeque<EventChange> changes = new ArrayDeque<>();
+    /** Guarded by lock */
+    private long lastSequence;
+
+    private EventChangeFeed() {
+        this.file = null;
+        this.changeLog = null;
+        this.follower = null;
+        this.onChanges = null;
+    }
+
+    /**
+     * Follow the change log in file.
+     *
+     * @param file the change log file.
+     * @param onChanges called after changes have been read, which raise, lower, suppress or unsuppress events - e.g.
+     *                  to invalidate cached query results. MAINTAINED changes do not call it.
+     */
+    public EventChangeFeed(Path file, Runnable onChanges) throws IOException {
+        this.file = file;
+        this.changeLog = new EventChangeLog(file);
+        this.follower = new EventChangeLog.Follower(file);
+        this.onChanges = onChanges;
+
+        poll();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::poll, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        LOG.info("Following event changes in " + file.toAbsolutePath());
+    }
+
+    /**
+     * @return a feed without changes; for when no change log is configured.
+     */
+    public static EventChangeFeed disabled() {
+        return new EventChangeFeed();
+    }
+
+    public boolean isEnabled() {
+        return changeLog != null;
+    }
+
+    /**
+     * Append a change of event to the change log. Errors are logged.
+     */
+    public void publish(EventChange.Type type, Event event) {
+        if (changeLog == null) {
+            return;
+        }
+        try {
+            changeLog.append(type, event);
+        } catch (IOException e) {
+            LOG.error("Cannot append " + type + " change of event " + event.getId() + " to " + file + ": " + e.getMessage(), e);
+        }
+        poll();
+    }
+
+    /**
+     * @return the sequence no. of the most recent change; 0 if there are no changes.
+     */
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the changes after a sequence no. - waiting until there are some, or timeoutMillis has passed.
+     *
+     * @param sequence the sequence no. of the last change the client has seen.
+     * @param maxChanges max. no. of changes to return.
+     * @param timeoutMillis max. time to wait for changes.
+     * @return the changes in sequence (empty if none arrived in time), or null if changes after sequence are
+     *         not retained and the client must re-query.
+     */
+    public List<EventChange> awaitChangesAfter(long sequence, int maxChanges, long timeoutMillis) throws InterruptedException {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (sequence == lastSequence && remainingNanos > 0) {
+                remainingNanos = changed.awaitNanos(remainingNanos);
+            }
+            if (sequence == lastSequence) {
+                return Collections.emptyList();
+            }
+            if (sequence > lastSequence || changes.isEmpty() || sequence < changes.peekFirst().getSequence() - 1) {
+                return null;
+            }
+
+            List<EventChange> result = new ArrayList<>(Math.min(maxChanges, (int) (lastSequence - sequence)));
+            for (EventChange change : changes) {
+                if (change.getSequence() > sequence) {
+                    result.add(change);
+                    if (result.size() >= maxChanges) {
+                        break;
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read the changes appended to the change log since the last poll.
+     */
+    void poll() {
+        final boolean[] hasStateChanges = {false};
+        lock.lock();
+        try {
+            final int numberOfChanges = changes.size();
+            final long sequenceBefore = lastSequence;
+            follower.read(change -> {
+                if (change.getSequence() <= lastSequence) {
+                    LOG.warn("Sequence no. " + change.getSequence() + " after " + lastSequence + "; the change log has been replaced.");
+                    changes.clear();
+                }
+                hasStateChanges[0] |= change.getType() != EventChange.Type.MAINTAINED;
+                changes.addLast(change);
+                lastSequence = change.getSequence();
+                if (changes.size() > MAX_RETAINED_CHANGES) {
+                    changes.removeFirst();
+                }
+            });
+            final boolean hasNewChanges = lastSequence != sequenceBefore || changes.size() != numberOfChanges;
+            if (hasNewChanges) {
+                changed.signalAll();
+            }
+        } catch (IOException e) {
+            LOG.error("Cannot read event changes from " + file + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+
+        if (hasStateChanges[0] && onChanges != null) {
+            onChanges.run();
+        }
+    }
+}
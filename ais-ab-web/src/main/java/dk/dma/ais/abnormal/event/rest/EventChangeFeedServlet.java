@@ -0,0 +1,203 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.rest;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import dk.dma.ais.abnormal.event.db.feed.EventChange;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serves the event change feed at /rest/event/changes - as Server-Sent Events to clients which accept
+ * text/event-stream, and as long-poll JSON to others.
+ *
+ * Server-Sent Events: each change is sent as a message with the change's sequence no. as id and the change as
+ * JSON data. A client resumes from its last sequence no. with the Last-Event-ID header (sent automatically by
+ * EventSource when reconnecting) or the 'since' parameter; without either it receives only new changes. If the
+ * changes after its sequence no. are no longer retained, a 'reset' event tells it to re-query the events and
+ * carries the sequence no. to continue from. Connections are closed after a few minutes; EventSource
+ * reconnects by itself.
+ *
+ * Long-poll: GET ?since=n&timeout=s returns {"sequence": m, "changes": [...]} as soon as there are changes after
+ * n, or with no changes after the timeout (max. 30 s). Without 'since' it returns the current sequence no.
+ * immediately. Status 410 Gone means that the client must re-query the events and continue from the returned
+ * sequence no.
+ *
+ * Each stream and each waiting long-poll holds a servlet thread; so at most MAX_WAITING_REQUESTS of them are
+ * served at a time. Beyond that, streams are closed at once with a longer reconnection delay, and long-polls
+ * are answered with status 503 Service Unavailable and a Retry-After header.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@Singleton
+public class EventChangeFeedServlet extends HttpServlet {
+
+    private static final String EVENT_STREAM = "text/event-stream";
+
+    static final int MAX_CHANGES_PER_RESPONSE = 1000;
+    static final long DEFAULT_POLL_TIMEOUT_MILLIS = 25000;
+    static final long MAX_POLL_TIMEOUT_MILLIS = 30000;
+    static final long HEARTBEAT_INTERVAL_MILLIS = 15000;
+    static final long MAX_STREAM_DURATION_MILLIS = 300000;
+    static final long RECONNECT_DELAY_MILLIS = 2000;
+    static final int MAX_WAITING_REQUESTS = 50;
+    static final long BUSY_RETRY_DELAY_MILLIS = 30000;
+
+    private final EventChangeFeed eventChangeFeed;
+
+    private final Semaphore waitingRequests = new Semaphore(MAX_WAITING_REQUESTS);
+
+    @Inject
+    public EventChangeFeedServlet(EventChangeFeed eventChangeFeed) {
+        this.eventChangeFeed = eventChangeFeed;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!eventChangeFeed.isEnabled()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No event change log configured.");
+            return;
+        }
+
+        final Long since;
+        try {
+            String lastEventId = request.getHeader("Last-Event-ID");
+            String sinceParameter = lastEventId != null ? lastEventId : request.getParameter("since");
+            since = sinceParameter == null || sinceParameter.trim().isEmpty() ? null : Long.valueOf(sinceParameter.trim());
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Illegal sequence no.: " + e.getMessage());
+            return;
+        }
+
+        response.setHeader("Cache-Control", "no-cache");
+        try {
+            String accept = request.getHeader("Accept");
+            if (accept != null && accept.contains(EVENT_STREAM)) {
+                stream(since == null ? eventChangeFeed.getLastSequence() : since, response);
+            } else {
+                longPoll(since, pollTimeoutMillis(request), response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stream(long since, HttpServletResponse response) throws IOException, InterruptedException {
+        response.setContentType(EVENT_STREAM);
+        response.setCharacterEncoding(UTF_8.name());
+        ServletOutputStream out = response.getOutputStream();
+
+        if (!waitingRequests.tryAcquire()) {
+            write(out, "retry: " + BUSY_RETRY_DELAY_MILLIS + "\n\n");
+            return;
+        }
+        try {
+            write(out, "retry: " + RECONNECT_DELAY_MILLIS + "\n\n");
+            stream(since, out);
+        } finally {
+            waitingRequests.release();
+        }
+    }
+
+    private void stream(long since, ServletOutputStream out) throws IOException, InterruptedException {
+        final long endAtMillis = System.currentTimeMillis() + MAX_STREAM_DURATION_MILLIS;
+        long sequence = since;
+        while (System.currentTimeMillis() < endAtMillis) {
+            List<EventChange> changes = eventChangeFeed.awaitChangesAfter(sequence, MAX_CHANGES_PER_RESPONSE, HEARTBEAT_INTERVAL_MILLIS);
+            if (changes == null) {
+                sequence = eventChangeFeed.getLastSequence();
+                write(out, "id: " + sequence + "\nevent: reset\ndata: {\"sequence\":" + sequence + "}\n\n");
+            } else if (changes.isEmpty()) {
+                write(out, ": heartbeat\n\n");
+            } else {
+                StringBuilder messages = new StringBuilder();
+                for (EventChange change : changes) {
+                    messages.append("id: ").append(change.getSequence()).append('\n');
+                    messages.append("data: ").append(change.toJson()).append("\n\n");
+                    sequence = change.getSequence();
+                }
+                write(out, messages.toString());
+            }
+        }
+    }
+
+    private void longPoll(Long since, long timeoutMillis, HttpServletResponse response) throws IOException, InterruptedException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding(UTF_8.name());
+
+        if (since == null) {
+            write(response.getOutputStream(), "{\"sequence\":" + eventChangeFeed.getLastSequence() + ",\"changes\":[]}");
+            return;
+        }
+
+        if (!waitingRequests.tryAcquire()) {
+            response.setHeader("Retry-After", String.valueOf(BUSY_RETRY_DELAY_MILLIS / 1000));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many clients waiting for event changes.");
+            return;
+        }
+        final List<EventChange> changes;
+        try {
+            changes = eventChangeFeed.awaitChangesAfter(since, MAX_CHANGES_PER_RESPONSE, timeoutMillis);
+        } finally {
+            waitingRequests.release();
+        }
+        if (changes == null) {
+            response.setStatus(HttpServletResponse.SC_GONE);
+            write(response.getOutputStream(), "{\"sequence\":" + eventChangeFeed.getLastSequence() + ",\"changes\":[]}");
+            return;
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"sequence\":").append(changes.isEmpty() ? since : changes.get(changes.size() - 1).getSequence());
+        json.append(",\"changes\":[");
+        for (int i = 0; i < changes.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(changes.get(i).toJson());
+        }
+        json.append("]}");
+        write(response.getOutputStream(), json.toString());
+    }
+
+    private static long pollTimeoutMillis(HttpServletRequest request) {
+        String timeout = request.getParameter("timeout");
+        if (timeout == null) {
+            return DEFAULT_POLL_TIMEOUT_MILLIS;
+        }
+        try {
+            return Math.max(0, Math.min(MAX_POLL_TIMEOUT_MILLIS, Long.parseLong(timeout.trim()) * 1000));
+        } catch (NumberFormatException e) {
+            return DEFAULT_POLL_TIMEOUT_MILLIS;
+        }
+    }
+
+    private static void write(ServletOutputStream out, String text) throws IOException {
+        out.write(text.getBytes(UTF_8));
+        out.flush();
+    }
+}
@@ -0,0 +1,230 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.rest;
+
+import com.google.inject.Singleton;
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
+import dk.dma.ais.abnormal.event.db.domain.TrackingPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.EntityTag;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * A small cache of the results of the event queries, which the web UI polls: event types and most recent
+ * events. Each result is kept for a short time-to-live; concurrent requests for an expired result wait for one
+ * query to the database instead of issuing identical queries. The query runs in the requesting thread, outside
+ * of any lock of the cache, so a slow query for one key does not hold up requests for other keys.
+ *
+ * Each result carries an entity tag and a last-modified time for conditional GETs. They are derived from a
+ * fingerprint of the result, so when a reloaded result is unchanged, the tag and time are kept and polling
+ * clients continue to get 304 Not Modified.
+ *
+ * Events are written by the analyzer in another process, so new events are seen when the time-to-live
+ * expires. Changes made through this web application (like suppressing an event) call invalidate().
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@Singleton
+public final class EventQueryCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventQueryCache.class);
+
+    static final long EVENT_TYPES_TTL_MILLIS = 30000;
+    static final long RECENT_EVENTS_TTL_MILLIS = 5000;
+
+    /** Results for more keys than this (e.g. many different numbers of recent events) clear the cache */
+    private static final int MAX_ENTRIES = 64;
+
+    /** The loaded or loading result per key */
+    private final ConcurrentMap<String, FutureTask<Entry<?>>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongSupplier clock;
+
+    public EventQueryCache() {
+        this(System::currentTimeMillis);
+    }
+
+    EventQueryCache(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Return the cached result for key - or run query, if there is no cached result, it has expired,
+     * or the cache was invalidated since it was loaded.
+     *
+     * @param key identifies the query and its parameters.
+     * @param ttlMillis time-to-live of a loaded result.
+     * @param query the query to run.
+     * @param fingerprint a value which is equal for equal results (compared with equals()).
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Entry<T> get(String key, long ttlMillis, Supplier<T> query, Function<T, Object> fingerprint) {
+        if (entries.size() > MAX_ENTRIES) {
+            entries.clear();
+        }
+
+        while (true) {
+            final FutureTask<Entry<?>> current = entries.get(key);
+            Entry<T> cached = null;
+            if (current != null) {
+                if (!current.isDone()) {
+                    return (Entry<T>) await(current);
+                }
+                cached = (Entry<T>) await(current);
+                if (cached.generation == generation.get() && clock.getAsLong() < cached.expiresAtMillis) {
+                    return cached;
+                }
+            }
+
+            final Entry<T> previous = cached;
+            final FutureTask<Entry<?>> load = new FutureTask<>(() -> load(key, ttlMillis, query, fingerprint, previous));
+            final boolean loading = current == null ? entries.putIfAbsent(key, load) == null : entries.replace(key, current, load);
+            if (loading) {
+                load.run();
+                try {
+                    return (Entry<T>) await(load);
+                } catch (RuntimeException | Error e) {
+                    entries.remove(key, load);
+                    throw e;
+                }
+            }
+            // Another request started loading the key; so wait for that instead
+        }
+    }
+
+    private <T> Entry<T> load(String key, long ttlMillis, Supplier<T> query, Function<T, Object> fingerprint, Entry<T> cached) {
+        final long currentGeneration = generation.get();
+        final T value = query.get();
+        final long now = clock.getAsLong();
+        final Object newFingerprint = fingerprint.apply(value);
+        if (cached != null && cached.fingerprint.equals(newFingerprint)) {
+            return new Entry<>(value, newFingerprint, cached.entityTag, cached.lastModified, now + ttlMillis, currentGeneration);
+        }
+
+        // HTTP dates have a resolution of seconds; a change must move last-modified at least one second
+        final long lastModifiedMillis = cached == null ? now / 1000 * 1000 : Math.max(now / 1000 * 1000, cached.lastModified.getTime() + 1000);
+        final Date lastModified = new Date(lastModifiedMillis);
+        final EntityTag entityTag = new EntityTag(Integer.toHexString(newFingerprint.hashCode()) + "-" + Long.toHexString(now));
+        LOG.debug("Loaded " + key + ": " + entityTag);
+        return new Entry<>(value, newFingerprint, entityTag, lastModified, now + ttlMillis, currentGeneration);
+    }
+
+    /**
+     * Wait for a result to be loaded, and throw what the query threw if it failed.
+     */
+    private static Entry<?> await(Future<Entry<?>> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Drop all cached results, so that the next request of each runs its query.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /** @return a fingerprint of a list of events, which changes when events are added, ended, suppressed or tracked. */
+    static Object fingerprintOfEvents(List<Event> events) {
+        return events.stream().map(event -> Arrays.asList(
+            event.getId(),
+            event.getState(),
+            event.isSuppressed(),
+            event.getEndTime(),
+            event.getBehaviours().stream().mapToInt(behaviour -> behaviour.getTrackingPoints().size()).sum()
+        )).collect(toList());
+    }
+
+    /** @return a fingerprint of a list of event summaries, which changes when events are added, ended or tracked. */
+    static Object fingerprintOfEventSummaries(List<EventSummary> eventSummaries) {
+        return eventSummaries.stream().map(eventSummary -> {
+            TrackingPoint lastTrackingPoint = eventSummary.getLastTrackingPoint();
+            return Arrays.asList(
+                eventSummary.getId(),
+                eventSummary.getState(),
+                eventSummary.getEndTime(),
+                lastTrackingPoint == null ? null : lastTrackingPoint.getTimestamp()
+            );
+        }).collect(toList());
+    }
+
+    public static final class Entry<T> {
+        private final T value;
+        private final Object fingerprint;
+        private final EntityTag entityTag;
+        private final Date lastModified;
+        private final long expiresAtMillis;
+        private final long generation;
+
+        Entry(T value, Object fingerprint, EntityTag entityTag, Date lastModified, long expiresAtMillis, long generation) {
+            this.value = value;
+            this.fingerprint = fingerprint;
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+            this.expiresAtMillis = expiresAtMillis;
+            this.generation = generation;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public EntityTag getEntityTag() {
+            return entityTag;
+        }
+
+        public Date getLastModified() {
+            return lastModified;
+        }
+    }
+}
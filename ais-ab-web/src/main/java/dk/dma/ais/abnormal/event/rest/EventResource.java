@@ -20,6 +20,8 @@ import com.google.inject.Inject;
 import com.google.inject.servlet.RequestScoped;
 import dk.dma.ais.abnormal.event.db.EventRepository;
 import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.EventSummary;
+import dk.dma.ais.abnormal.event.db.feed.EventChange;
 import dk.dma.ais.abnormal.event.rest.parameters.DateParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +33,12 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import java.util.List;
 import java.util.Objects;
 
@@ -47,10 +54,14 @@ public class EventResource {
     }
 
     private EventRepository eventRepository;
+    private EventQueryCache eventQueryCache;
+    private EventChangeFeed eventChangeFeed;
 
     @Inject
-    public EventResource(EventRepository eventRepository) {
+    public EventResource(EventRepository eventRepository, EventQueryCache eventQueryCache, EventChangeFeed eventChangeFeed) {
         this.eventRepository = eventRepository;
+        this.eventQueryCache = eventQueryCache;
+        this.eventChangeFeed = eventChangeFeed;
     }
 
     @GET
@@ -76,6 +87,8 @@ public class EventResource {
             } else {
                 event.setSuppressed(true);
                 eventRepository.save(event);
+                eventQueryCache.invalidate();
+                eventChangeFeed.publish(EventChange.Type.SUPPRESSED, event);
                 LOG.debug("Event id " + eventId + " is now suppressed.");
             }
         } else {
@@ -84,21 +97,69 @@ public class EventResource {
             } else {
                 event.setSuppressed(false);
                 eventRepository.save(event);
+                eventQueryCache.invalidate();
+                eventChangeFeed.publish(EventChange.Type.UNSUPPRESSED, event);
                 LOG.debug("Event id " + eventId + " is now unsuppressed.");
             }
         }
     }
 
+    /**
+     * The event types. Supports conditional GET (If-None-Match, If-Modified-Since).
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/type")
-    public List<String> get() {
-        return eventRepository.getEventTypes();
+    public Response get(@Context Request request) {
+        EventQueryCache.Entry<List<String>> types = eventQueryCache.get("type", EventQueryCache.EVENT_TYPES_TTL_MILLIS, eventRepository::getEventTypes, t -> t);
+        return conditionalResponse(request, types, new GenericEntity<List<String>>(types.getValue()) {});
     }
 
+    /**
+     * Summaries of the most recent events or of the events matching the same criteria as the full event query -
+     * with the primary vessel and its last tracking point only. For list views and searches, which do not need
+     * the events' full tracking history.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/summary")
+    public Response getSummaries(
+        @Context Request request,
+        @QueryParam("from") DateParameter from,
+        @QueryParam("to") DateParameter to,
+        @QueryParam("type") String type,
+        @QueryParam("vessel") String vessel,
+        @QueryParam("numberOfRecentEvents") Integer numberOfRecentEvents,
+        @QueryParam("north") Double north,
+        @QueryParam("east") Double east,
+        @QueryParam("south") Double south,
+        @QueryParam("west") Double west
+    ) {
+        checkParameters(from, to, type, vessel, numberOfRecentEvents, north, east, south, west);
+
+        if (numberOfRecentEvents != null) {
+            EventQueryCache.Entry<List<EventSummary>> summaries = eventQueryCache.get(
+                "summary?numberOfRecentEvents=" + numberOfRecentEvents,
+                EventQueryCache.RECENT_EVENTS_TTL_MILLIS,
+                () -> eventRepository.findRecentEventSummaries(numberOfRecentEvents),
+                EventQueryCache::fingerprintOfEventSummaries
+            );
+            return conditionalResponse(request, summaries, new GenericEntity<List<EventSummary>>(summaries.getValue()) {});
+        } else if (type == null && vessel == null && north == null && from != null && to != null) {
+            return Response.ok(new GenericEntity<List<EventSummary>>(eventRepository.findEventSummariesByFromAndTo(from.value(), to.value())) {}).build();
+        } else {
+            return Response.ok(new GenericEntity<List<EventSummary>>(eventRepository.findEventSummariesByFromAndToAndTypeAndVesselAndArea(from == null ? null : from.value(), to == null ? null : to.value(), type, vessel, north, east, south, west)) {}).build();
+        }
+    }
+
+    /**
+     * Full events with all behaviours and tracking points. Searches, which list the matching events, should use
+     * /summary with the same parameters and only get the full events to be shown.
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Object get(
+        @Context Request request,
         @QueryParam("from") DateParameter from,
         @QueryParam("to") DateParameter to,
         @QueryParam("type") String type,
@@ -109,7 +170,26 @@ public class EventResource {
         @QueryParam("south") Double south,
         @QueryParam("west") Double west
     ) {
-        // Check validity of parameters and parameter combinations
+        checkParameters(from, to, type, vessel, numberOfRecentEvents, north, east, south, west);
+
+        // Figure out which service method to call
+        if (numberOfRecentEvents != null) {
+            EventQueryCache.Entry<List<Event>> events = eventQueryCache.get(
+                "event?numberOfRecentEvents=" + numberOfRecentEvents,
+                EventQueryCache.RECENT_EVENTS_TTL_MILLIS,
+                () -> eventRepository.findRecentEvents(numberOfRecentEvents),
+                EventQueryCache::fingerprintOfEvents
+            );
+            return conditionalResponse(request, events, new GenericEntity<List<Event>>(events.getValue()) {});
+        } else {
+            return eventRepository.findEventsByFromAndToAndTypeAndVesselAndArea(from == null ? null : from.value(), to == null ? null : to.value(), type, vessel, north, east, south, west);
+        }
+    }
+
+    /**
+     * Check validity of parameters and parameter combinations.
+     */
+    private static void checkParameters(DateParameter from, DateParameter to, String type, String vessel, Integer numberOfRecentEvents, Double north, Double east, Double south, Double west) {
         if (north != null || east != null || south != null || west != null ) {
             if (! (north != null && east != null && south != null && west != null)) {
                 throw new IllegalArgumentException("Most provide all of north, east, south, west.");
@@ -121,12 +201,24 @@ public class EventResource {
                 throw new IllegalArgumentException("Parameter 'numberOfRecentEvents' cannot be used in combination with other parameters.");
             }
         }
+    }
 
-        // Figure out which service method to call
-        if (numberOfRecentEvents != null) {
-            return eventRepository.findRecentEvents(numberOfRecentEvents);
-        } else {
-            return eventRepository.findEventsByFromAndToAndTypeAndVesselAndArea(from == null ? null : from.value(), to == null ? null : to.value(), type, vessel, north, east, south, west);
+    /**
+     * @return 304 Not Modified if the client's copy of the cached entry is current; otherwise 200 OK with the
+     *         entity. Clients must revalidate on each request.
+     */
+    private static Response conditionalResponse(Request request, EventQueryCache.Entry<?> entry, GenericEntity<?> entity) {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(entry.getLastModified(), entry.getEntityTag());
+        if (notModified != null) {
+            return notModified.cacheControl(cacheControl).build();
         }
+        return Response.ok(entity)
+            .tag(entry.getEntityTag())
+            .lastModified(entry.getLastModified())
+            .cacheControl(cacheControl)
+            .build();
     }
 }
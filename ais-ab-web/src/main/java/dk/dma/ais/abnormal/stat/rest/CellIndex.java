@@ -0,0 +1,158 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.stat.rest;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.grid.Cell;
+import dk.dma.enav.model.geometry.grid.Grid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A sorted index of the ids of all cells, which have data for at least one statistic in the
+ * statistic data repository.
+ *
+ * Cell ids are numbered row by row, so the cells of one grid row inside a longitude interval form a contiguous
+ * range of ids. cellsInArea() therefore finds the cells with data by one binary search per grid row of the
+ * area, and never looks at cells without data - unlike Grid.getCells(), which enumerates every cell of the area.
+ *
+ * The web application opens the repository read-only, so the index is built once on first use.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@Singleton
+public final class CellIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CellIndex.class);
+
+    private final StatisticDataRepository statisticsRepository;
+
+    private volatile Grid grid;
+    private volatile long[] cellIds;
+
+    @Inject
+    public CellIndex(StatisticDataRepository statisticsRepository) {
+        this.statisticsRepository = statisticsRepository;
+    }
+
+    public Grid getGrid() {
+        ensureLoaded();
+        return grid;
+    }
+
+    /** @return the number of cells with data. */
+    public int size() {
+        ensureLoaded();
+        return cellIds.length;
+    }
+
+    /**
+     * Find the cells with data, which touch the area [south; north) x [west; east).
+     *
+     * @return the cells ordered by cell id.
+     */
+    public List<Cell> cellsInArea(double north, double east, double south, double west) {
+        ensureLoaded();
+        final long[] cellIds = this.cellIds;
+        final Grid grid = this.grid;
+
+        final BoundingBox southWestCell = grid.getBoundingBoxOfCell(grid.getCell(south, west));
+        final double rowHeight = southWestCell.getMaxLat() - southWestCell.getMinLat();
+        final double columnWidth = southWestCell.getMaxLon() - southWestCell.getMinLon();
+        final double firstRowLatitude = southWestCell.getMinLat() + rowHeight / 2.0;
+        final double firstColumnLongitude = southWestCell.getMinLon() + columnWidth / 2.0;
+        final double lastColumnLongitude = Math.nextDown(east);
+
+        List<Cell> cells = new ArrayList<>();
+        for (int row = 0; firstRowLatitude + (row - 0.5) * rowHeight < north; row++) {
+            final double latitude = firstRowLatitude + row * rowHeight;
+            final long firstCellId = grid.getCell(latitude, firstColumnLongitude).getCellId();
+            final long lastCellId = grid.getCell(latitude, lastColumnLongitude).getCellId();
+
+            for (int i = lowerBound(cellIds, firstCellId); i < cellIds.length && cellIds[i] <= lastCellId; i++) {
+                Cell cell = grid.getCell(latitude, firstColumnLongitude + (cellIds[i] - firstCellId) * columnWidth);
+                if (cell.getCellId() == cellIds[i]) {
+                    cells.add(cell);
+                } else {
+                    LOG.warn("Cell " + cellIds[i] + " not found at expected position; skipped.");
+                }
+            }
+        }
+        return cells;
+    }
+
+    private void ensureLoaded() {
+        if (cellIds == null) {
+            synchronized (this) {
+                if (cellIds == null) {
+                    grid = Grid.create(statisticsRepository.getMetaData().getGridResolution());
+                    cellIds = sortedCellIdsWithData(statisticsRepository);
+                    LOG.info("Indexed " + cellIds.length + " cells with statistic data.");
+                }
+            }
+        }
+    }
+
+    /** @return the distinct ids of cells with data for any statistic in ascending order. */
+    static long[] sortedCellIdsWithData(StatisticDataRepository statisticsRepository) {
+        long[] cellIds = new long[1024];
+        int n = 0;
+        for (String statisticName : statisticsRepository.getStatisticNames()) {
+            Set<Long> cellsWithData = statisticsRepository.getCellsWithData(statisticName);
+            if (cellsWithData == null) {
+                continue;
+            }
+            for (Long cellId : cellsWithData) {
+                if (n == cellIds.length) {
+                    cellIds = Arrays.copyOf(cellIds, 2 * n);
+                }
+                cellIds[n++] = cellId;
+            }
+        }
+
+        Arrays.sort(cellIds, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || cellIds[i] != cellIds[distinct - 1]) {
+                cellIds[distinct++] = cellIds[i];
+            }
+        }
+        return Arrays.copyOf(cellIds, distinct);
+    }
+
+    /** @return the index of the first element of sorted which is >= key; sorted.length if none. */
+    static int lowerBound(long[] sorted, long key) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (sorted[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -31,14 +31,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -54,11 +62,76 @@ public class CellResource {
         LOG.debug(this.getClass().getSimpleName() + " created (" + this + " ).");
     }
 
+    /** Tiles do not change while the application runs, but a restart may load a new statistics file */
+    private static final int TILE_MAX_AGE_SECONDS = 3600;
+
     private StatisticDataRepository statisticsRepository;
+    private CellIndex cellIndex;
+    private CellTileCache cellTileCache;
 
     @Inject
-    public CellResource(StatisticDataRepository statisticsRepository) {
+    public CellResource(StatisticDataRepository statisticsRepository, CellIndex cellIndex, CellTileCache cellTileCache) {
         this.statisticsRepository = statisticsRepository;
+        this.cellIndex = cellIndex;
+        this.cellTileCache = cellTileCache;
+    }
+
+    /**
+     * Get the cells with statistic data in map tile z/x/y as compact, gzip compressed JSON (see CellTileCache).
+     * Zoom levels for which no tiles are served give 400 Bad Request, and tiles outside their zoom level give
+     * 404 Not Found.
+     */
+    @GET
+    @Path("/tile/{z}/{x}/{y}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCellTile(@PathParam("z") int z, @PathParam("x") int x, @PathParam("y") int y, @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding, @Context Request request) {
+        // http://localhost:8080/abnormal/rest/cell/tile/10/549/319
+        if (!CellTileCache.isSupportedZoom(z)) {
+            return Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN).entity("Zoom level must be between " + CellTileCache.MIN_ZOOM + " and " + CellTileCache.MAX_ZOOM + ", not " + z).build();
+        }
+        if (!CellTileCache.exists(z, x, y)) {
+            return Response.status(Response.Status.NOT_FOUND).type(MediaType.TEXT_PLAIN).entity("No tile " + x + "/" + y + " at zoom level " + z).build();
+        }
+        CellTileCache.Tile tile = cellTileCache.get(z, x, y);
+
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge(TILE_MAX_AGE_SECONDS);
+
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tile.getEntityTag());
+        if (notModified != null) {
+            return notModified.cacheControl(cacheControl).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+        }
+
+        Response.ResponseBuilder ok;
+        if (acceptsGzip(acceptEncoding)) {
+            ok = Response.ok(tile.getGzippedJson()).header("Content-Encoding", "gzip");
+        } else {
+            ok = Response.ok(tile.getJson());
+        }
+        return ok.tag(tile.getEntityTag()).cacheControl(cacheControl).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+    }
+
+    /**
+     * @return true if the value of an Accept-Encoding header allows a gzip compressed response.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] nameAndParameters = coding.split(";");
+            String name = nameAndParameters[0].trim();
+            if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name) || "*".equals(name)) {
+                for (int i = 1; i < nameAndParameters.length; i++) {
+                    String parameter = nameAndParameters[i].replace(" ", "");
+                    if (parameter.matches("[qQ]=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
     }
 
     @GET
@@ -99,21 +172,17 @@ public class CellResource {
         LOG.debug("Created grid with resolution " + gridResolution);
 
         LOG.debug("Looking for cells touching area bounded by " + north + " north, " + east + " east, " + south + " south, and " + west + " west.");
-        Position northWest = Position.create(north, west);
-        Position southEast = Position.create(south, east);
-        Area area = BoundingBox.create(northWest, southEast, CoordinateSystem.CARTESIAN);
-
-        return new CellsWrapper(loadCellsInArea(grid, area));
+        return new CellsWrapper(loadCellsInArea(grid, north, east, south, west));
     }
 
-    private Set<CellWrapper> loadCellsInArea(Grid grid, Area area) {
+    private Set<CellWrapper> loadCellsInArea(Grid grid, double north, double east, double south, double west) {
         // These are the statistics stored in the data set
         Set<String> statisticNames = statisticsRepository.getStatisticNames();
 
-        // Compute the cells contained inside the area
-        LOG.debug("Computing which cells are in the area.");
-        Set<Cell> cells = grid.getCells(area);
-        LOG.debug("There are " + cells.size() + " cells in the area.");
+        // Find the cells with data inside the area - cells without data are never looked up
+        LOG.debug("Looking up which cells with data are in the area.");
+        List<Cell> cells = cellIndex.cellsInArea(north, east, south, west);
+        LOG.debug("There are " + cells.size() + " cells with data in the area.");
 
         // Container to collect output data
         Set<CellWrapper> wrappedCells = new LinkedHashSet<>();
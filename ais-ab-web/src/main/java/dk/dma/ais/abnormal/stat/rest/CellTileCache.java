@@ -0,0 +1,284 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.stat.rest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
+import dk.dma.ais.abnormal.stat.db.data.StatisticData;
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.grid.Cell;
+import dk.dma.enav.model.geometry.grid.Grid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.EntityTag;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cell statistics for map tiles in the usual z/x/y (slippy map) numbering. Each tile is built once from the
+ * cells with data found through the CellIndex, encoded as compact JSON arrays, gzip compressed and kept in
+ * memory - so that repeated requests for a tile cost neither repository lookups nor compression. Concurrent
+ * requests for the same tile wait for one encoding of it, and the least recently used tiles are evicted when
+ * more than MAX_TILES are cached.
+ *
+ * A tile is encoded as:
+ *
+ * <pre>
+ * {"z":10,"x":549,"y":319,
+ *  "cells":[[cellId,north,east,south,west,[[statistic,key1,key2,...,value], ...]], ...],
+ *  "statistics":[["ShipTypeAndSizeStatistic","ThreeKeyMap"], ...]}
+ * </pre>
+ *
+ * where each value of a cell is prefixed by the index of its statistic in "statistics" and the keys leading to
+ * it in the statistic's nested data. The data type of a statistic is null if no cell in the tile has data for it. Cells on the edge of a tile are included in all tiles they touch.
+ *
+ * @author Thomas Borg Salling <tbsalling@tbsalling.dk>
+ */
+@Singleton
+public final class CellTileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CellTileCache.class);
+
+    /** Tiles at lower zoom levels cover too many cells to be served in one response */
+    static final int MIN_ZOOM = 8;
+    static final int MAX_ZOOM = 22;
+
+    /** More tiles than this evict the least recently used */
+    static final int MAX_TILES = 1024;
+
+    private final StatisticDataRepository statisticsRepository;
+    private final CellIndex cellIndex;
+    private final Cache<String, Tile> tiles = CacheBuilder.newBuilder().maximumSize(MAX_TILES).build();
+
+    @Inject
+    public CellTileCache(StatisticDataRepository statisticsRepository, CellIndex cellIndex) {
+        this.statisticsRepository = statisticsRepository;
+        this.cellIndex = cellIndex;
+    }
+
+    /**
+     * @return true if tiles are served at zoom level z.
+     */
+    static boolean isSupportedZoom(int z) {
+        return z >= MIN_ZOOM && z <= MAX_ZOOM;
+    }
+
+    /**
+     * @return true if there is a tile x/y at zoom level z.
+     */
+    static boolean exists(int z, int x, int y) {
+        return x >= 0 && x < (1 << z) && y >= 0 && y < (1 << z);
+    }
+
+    /**
+     * @return the tile z/x/y - encoded and compressed.
+     * @throws IllegalArgumentException if the tile does not exist, or its zoom level is not between MIN_ZOOM and MAX_ZOOM.
+     */
+    public Tile get(int z, int x, int y) {
+        if (!isSupportedZoom(z)) {
+            throw new IllegalArgumentException("Zoom level must be between " + MIN_ZOOM + " and " + MAX_ZOOM + ", not " + z);
+        }
+        if (!exists(z, x, y)) {
+            throw new IllegalArgumentException("No tile " + x + "/" + y + " at zoom level " + z);
+        }
+        final String key = z + "/" + x + "/" + y;
+        try {
+            return tiles.get(key, () -> {
+                Tile tile = encode(z, x, y);
+                LOG.debug("Encoded tile " + key + " with " + tile.getNumberOfCells() + " cells in " + tile.getGzippedJson().length + " bytes.");
+                return tile;
+            });
+        } catch (UncheckedExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Tile encode(int z, int x, int y) {
+        List<String> statisticNames = new ArrayList<>(statisticsRepository.getStatisticNames());
+        List<Cell> cells = cellIndex.cellsInArea(tileNorth(z, y), tileEast(z, x), tileSouth(z, y), tileWest(z, x));
+        Grid grid = cellIndex.getGrid();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CRC32 crc = new CRC32();
+        try (Writer json = new OutputStreamWriter(new CheckedOutputStream(new GZIPOutputStream(bytes), crc), StandardCharsets.UTF_8)) {
+            StatisticData[] statistics = new StatisticData[statisticNames.size()];
+            json.write("{\"z\":" + z + ",\"x\":" + x + ",\"y\":" + y + ",\"cells\":[");
+            boolean firstCell = true;
+            for (Cell cell : cells) {
+                List<Object[]> values = new ArrayList<>();
+                for (int i = 0; i < statistics.length; i++) {
+                    StatisticData statisticData = statisticsRepository.getStatisticData(statisticNames.get(i), cell.getCellId());
+                    if (statisticData != null) {
+                        statistics[i] = statisticData;
+                        flatten(i, statisticData.getData(), new ArrayList<>(), values);
+                    }
+                }
+
+                BoundingBox boundingBox = grid.getBoundingBoxOfCell(cell);
+                json.write(firstCell ? "[" : ",[");
+                firstCell = false;
+                json.write(cell.getCellId() + "," + boundingBox.getMaxLat() + "," + boundingBox.getMaxLon() + "," + boundingBox.getMinLat() + "," + boundingBox.getMinLon() + ",[");
+                for (int i = 0; i < values.size(); i++) {
+                    json.write(i == 0 ? "[" : ",[");
+                    Object[] value = values.get(i);
+                    for (int j = 0; j < value.length; j++) {
+                        if (j > 0) {
+                            json.write(',');
+                        }
+                        writeJsonValue(json, value[j]);
+                    }
+                    json.write(']');
+                }
+                json.write("]]");
+            }
+            json.write("],\"statistics\":[");
+            for (int i = 0; i < statistics.length; i++) {
+                json.write(i == 0 ? "[" : ",[");
+                writeJsonValue(json, statisticNames.get(i));
+                json.write(',');
+                writeJsonValue(json, statistics[i] == null ? null : statistics[i].getStatisticDataType());
+                json.write(']');
+            }
+            json.write("]}");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return new Tile(bytes.toByteArray(), new EntityTag(Long.toHexString(crc.getValue()), true), cells.size());
+    }
+
+    /**
+     * Flatten the nested maps of statistic data into one array per value: the statistic index, the keys
+     * leading to the value, and the value.
+     */
+    static void flatten(int statisticIndex, Object data, List<Object> keys, List<Object[]> values) {
+        if (data instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) data).entrySet()) {
+                keys.add(entry.getKey());
+                flatten(statisticIndex, entry.getValue(), keys, values);
+                keys.remove(keys.size() - 1);
+            }
+        } else if (data != null) {
+            Object[] value = new Object[keys.size() + 2];
+            value[0] = statisticIndex;
+            for (int i = 0; i < keys.size(); i++) {
+                value[i + 1] = keys.get(i);
+            }
+            value[value.length - 1] = data;
+            values.add(value);
+        }
+    }
+
+    private static void writeJsonValue(Writer json, Object value) throws IOException {
+        if (value == null) {
+            json.write("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.write(value.toString());
+        } else {
+            json.write('"');
+            String s = value.toString();
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    json.write('\\');
+                    json.write(c);
+                } else if (c < 0x20) {
+                    json.write(String.format("\\u%04x", (int) c));
+                } else {
+                    json.write(c);
+                }
+            }
+            json.write('"');
+        }
+    }
+
+    static double tileWest(int z, int x) {
+        return x * 360.0 / (1 << z) - 180.0;
+    }
+
+    static double tileEast(int z, int x) {
+        return tileWest(z, x + 1);
+    }
+
+    static double tileNorth(int z, int y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1.0 - 2.0 * y / (1 << z)))));
+    }
+
+    static double tileSouth(int z, int y) {
+        return tileNorth(z, y + 1);
+    }
+
+    public static final class Tile {
+        private final byte[] gzippedJson;
+        private final EntityTag entityTag;
+        private final int numberOfCells;
+
+        Tile(byte[] gzippedJson, EntityTag entityTag, int numberOfCells) {
+            this.gzippedJson = gzippedJson;
+            this.entityTag = entityTag;
+            this.numberOfCells = numberOfCells;
+        }
+
+        /** @return the gzip compressed JSON of the tile; must not be modified. */
+        public byte[] getGzippedJson() {
+            return gzippedJson;
+        }
+
+        /** @return the uncompressed JSON of the tile; for clients which do not accept gzip. */
+        public byte[] getJson() {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzippedJson))) {
+                ByteArrayOutputStream json = new ByteArrayOutputStream(4 * gzippedJson.length);
+                byte[] buffer = new byte[8192];
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    json.write(buffer, 0, n);
+                }
+                return json.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** @return a weak entity tag, which is the same for the compressed and uncompressed JSON. */
+        public EntityTag getEntityTag() {
+            return entityTag;
+        }
+
+        public int getNumberOfCells() {
+            return numberOfCells;
+        }
+    }
+}
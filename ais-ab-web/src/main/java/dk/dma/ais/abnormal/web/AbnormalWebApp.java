@@ -81,7 +81,10 @@ public class AbnormalWebApp extends AbstractDaemon {
                     userArguments.getEventDataDbPort(),
                     userArguments.getEventDataDbName(),
                     userArguments.getEventDataDbUsername(),
-                    userArguments.getEventDataDbPassword()
+                    userArguments.getEventDataDbPassword(),
+                    userArguments.getEventDataDbPoolMaxSize(),
+                    userArguments.getEventDataDbFetchSize(),
+                    userArguments.getEventChangeLog()
                     );
             injector = Guice.createInjector(module);
             AbnormalWebApp app = injector.getInstance(AbnormalWebApp.class);
@@ -25,8 +25,14 @@ import com.sun.jersey.api.core.PackagesResourceConfig;
 import com.sun.jersey.api.core.ResourceConfig;
 import com.sun.jersey.guice.spi.container.servlet.GuiceContainer;
 import dk.dma.ais.abnormal.event.db.EventRepository;
+import dk.dma.ais.abnormal.event.db.archive.ArchiveEventRepository;
+import dk.dma.ais.abnormal.event.db.file.EventFileRepository;
 import dk.dma.ais.abnormal.event.db.jpa.JpaEventRepository;
 import dk.dma.ais.abnormal.event.db.jpa.JpaSessionFactoryFactory;
+import dk.dma.ais.abnormal.event.db.jpa.JpaSettings;
+import dk.dma.ais.abnormal.event.rest.EventChangeFeed;
+import dk.dma.ais.abnormal.event.rest.EventChangeFeedServlet;
+import dk.dma.ais.abnormal.event.rest.EventQueryCache;
 import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
 import dk.dma.ais.abnormal.stat.db.mapdb.StatisticDataRepositoryMapDB;
 import org.hibernate.SessionFactory;
@@ -34,6 +40,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.List;
 
 
@@ -49,10 +58,13 @@ public final class RestModule extends ServletModule {
     private final String eventDataDbName;
     private final String eventDataDbUsername;
     private final String eventDataDbPassword;
+    private final Integer eventDataDbPoolMaxSize;
+    private final Integer eventDataDbFetchSize;
+    private final String eventChangeLog;
 
     private List<SessionFactory> sessionFactoryList = Lists.newArrayList();
 
-    public RestModule(String repositoryFilename, String pathToEventDatabase, String eventRepositoryType, String eventDataDbHost, Integer eventDataDbPort, String eventDataDbName, String eventDataDbUsername, String eventDataDbPassword) {
+    public RestModule(String repositoryFilename, String pathToEventDatabase, String eventRepositoryType, String eventDataDbHost, Integer eventDataDbPort, String eventDataDbName, String eventDataDbUsername, String eventDataDbPassword, Integer eventDataDbPoolMaxSize, Integer eventDataDbFetchSize, String eventChangeLog) {
         this.repositoryFilename = repositoryFilename;
         this.pathToEventDatabase = pathToEventDatabase;
         this.eventRepositoryType = eventRepositoryType;
@@ -61,6 +73,9 @@ public final class RestModule extends ServletModule {
         this.eventDataDbName = eventDataDbName;
         this.eventDataDbUsername = eventDataDbUsername;
         this.eventDataDbPassword = eventDataDbPassword;
+        this.eventDataDbPoolMaxSize = eventDataDbPoolMaxSize;
+        this.eventDataDbFetchSize = eventDataDbFetchSize;
+        this.eventChangeLog = eventChangeLog;
     }
 
     @Override
@@ -81,6 +96,8 @@ public final class RestModule extends ServletModule {
             }
         }
 
+        // Must precede /rest/* to take precedence over Jersey
+        serve("/rest/event/changes").with(EventChangeFeedServlet.class);
         serve("/rest/*").with( GuiceContainer.class );
     }
 
@@ -98,15 +115,38 @@ public final class RestModule extends ServletModule {
         return statisticsRepository;
     }
 
+    @Provides
+    @Singleton
+    EventChangeFeed provideEventChangeFeed(EventQueryCache eventQueryCache) {
+        if (eventChangeLog == null || eventChangeLog.trim().isEmpty()) {
+            return EventChangeFeed.disabled();
+        }
+        try {
+            return new EventChangeFeed(Paths.get(eventChangeLog), eventQueryCache::invalidate);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Provides
     @Singleton
     EventRepository provideEventRepository() {
+        if ("archive".equalsIgnoreCase(eventRepositoryType)) {
+            return new ArchiveEventRepository(Paths.get(pathToEventDatabase));
+        } else if ("file".equalsIgnoreCase(eventRepositoryType)) {
+            try {
+                return new EventFileRepository(Paths.get(pathToEventDatabase));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
         SessionFactory sessionFactory;
 
         if ("h2".equalsIgnoreCase(eventRepositoryType)) {
-            sessionFactory = JpaSessionFactoryFactory.newH2SessionFactory(new File(pathToEventDatabase));
+            sessionFactory = JpaSessionFactoryFactory.newH2SessionFactory(new File(pathToEventDatabase), jpaSettings(JpaSettings.forH2()));
         } else if ("pgsql".equalsIgnoreCase(eventRepositoryType)) {
-            sessionFactory = JpaSessionFactoryFactory.newPostgresSessionFactory(eventDataDbHost, eventDataDbPort, eventDataDbName, eventDataDbUsername, eventDataDbPassword);
+            sessionFactory = JpaSessionFactoryFactory.newPostgresSessionFactory(eventDataDbHost, eventDataDbPort, eventDataDbName, eventDataDbUsername, eventDataDbPassword, jpaSettings(JpaSettings.forPgsql()));
         } else {
             throw new IllegalArgumentException("eventRepositoryType: " + eventRepositoryType);
         }
@@ -116,6 +156,20 @@ public final class RestModule extends ServletModule {
         return new JpaEventRepository(sessionFactory, true);
     }
 
+    /**
+     * Override the given default JPA settings with the ones given as user arguments.
+     */
+    private JpaSettings jpaSettings(JpaSettings settings) {
+        if (eventDataDbPoolMaxSize != null) {
+            settings.maxPoolSize(eventDataDbPoolMaxSize);
+        }
+        if (eventDataDbFetchSize != null) {
+            settings.fetchSize(eventDataDbFetchSize);
+        }
+        LOG.info("Event database settings: " + settings);
+        return settings;
+    }
+
     @Override
     protected void finalize() {
         LOG.info("Closing database session factories.");
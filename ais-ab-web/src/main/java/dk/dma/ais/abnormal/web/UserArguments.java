@@ -32,7 +32,7 @@ public class UserArguments {
 
     // -- Repository type choice
 
-    @Parameter(names = "-eventDataRepositoryType", description = "Type of repository used to hold event data ('h2', 'pgsql').", required = true)
+    @Parameter(names = "-eventDataRepositoryType", description = "Type of repository used to hold event data ('h2', 'pgsql', 'archive', 'file').", required = true)
     private String eventDataRepositoryType;
 
     // -- Postgres specific args
@@ -52,11 +52,24 @@ public class UserArguments {
     @Parameter(names = "-eventDataDbName", description = "Database name to use for the event database with the RDBMS host.", required = false)
     private String eventDataDbName;
 
-    // -- H2 specific args
+    // -- H2 and Postgres specific args
 
-    @Parameter(names = "-eventDataDbFile", description = "Name of RDBMS file to hold event data.", required = false)
+    @Parameter(names = "-eventDataDbPoolMaxSize", description = "Max. no. of pooled connections to the event database (default 32).", required = false)
+    private Integer eventDataDbPoolMaxSize;
+
+    @Parameter(names = "-eventDataDbFetchSize", description = "No. of rows fetched from the event database per round trip (default: JDBC driver default).", required = false)
+    private Integer eventDataDbFetchSize;
+
+    // -- H2, archive and file specific args
+
+    @Parameter(names = "-eventDataDbFile", description = "Name of RDBMS file to hold event data (h2), of the directory of the columnar event archive (archive), or of the binary event log or CSV file (file).", required = false)
     private String eventDataDbFile;
 
+    // -- Change feed
+
+    @Parameter(names = "-eventChangeLog", description = "Name of the event change log file written by the analyzer (events.changes.file); served as a change feed.", required = false)
+    private String eventChangeLog;
+
     public void setHelp(boolean help) {
         this.help = help;
     }
@@ -97,7 +110,19 @@ public class UserArguments {
         return eventDataDbName;
     }
 
+    public Integer getEventDataDbPoolMaxSize() {
+        return eventDataDbPoolMaxSize;
+    }
+
+    public Integer getEventDataDbFetchSize() {
+        return eventDataDbFetchSize;
+    }
+
     public String getEventDataDbFile() {
         return eventDataDbFile;
     }
+
+    public String getEventChangeLog() {
+        return eventChangeLog;
+    }
 }
@@ -38,8 +38,11 @@ public final class WebAppModule extends AbstractModule {
     private final String eventDataDbName;
     private final String eventDataDbUsername;
     private final String eventDataDbPassword;
+    private final Integer eventDataDbPoolMaxSize;
+    private final Integer eventDataDbFetchSize;
+    private final String eventChangeLog;
 
-    public WebAppModule(int port, String repositoryName, String pathToEventDatabase, String eventRepositoryType, String eventDataDbHost, Integer eventDataDbPort, String eventDataDbName, String eventDataDbUsername, String eventDataDbPassword) {
+    public WebAppModule(int port, String repositoryName, String pathToEventDatabase, String eventRepositoryType, String eventDataDbHost, Integer eventDataDbPort, String eventDataDbName, String eventDataDbUsername, String eventDataDbPassword, Integer eventDataDbPoolMaxSize, Integer eventDataDbFetchSize, String eventChangeLog) {
         this.port = port;
         this.repositoryName = repositoryName;
         this.pathToEventDatabase = pathToEventDatabase;
@@ -49,6 +52,9 @@ public final class WebAppModule extends AbstractModule {
         this.eventDataDbName = eventDataDbName;
         this.eventDataDbUsername = eventDataDbUsername;
         this.eventDataDbPassword = eventDataDbPassword;
+        this.eventDataDbPoolMaxSize = eventDataDbPoolMaxSize;
+        this.eventDataDbFetchSize = eventDataDbFetchSize;
+        this.eventChangeLog = eventChangeLog;
     }
 
     @Override
@@ -69,7 +75,10 @@ public final class WebAppModule extends AbstractModule {
                     eventDataDbPort,
                     eventDataDbName,
                     eventDataDbUsername,
-                    eventDataDbPassword);
+                    eventDataDbPassword,
+                    eventDataDbPoolMaxSize,
+                    eventDataDbFetchSize,
+                    eventChangeLog);
         } catch (Exception e) {
             LOG.error(e.getMessage(), e);
         }
@@ -52,6 +52,9 @@ public class WebServer {
     private final String eventDataDbName;
     private final String eventDataDbUsername;
     private final String eventDataDbPassword;
+    private final Integer eventDataDbPoolMaxSize;
+    private final Integer eventDataDbFetchSize;
+    private final String eventChangeLog;
 
     public WebServer(
             int port,
@@ -62,7 +65,10 @@ public class WebServer {
             Integer eventDataDbPort,
             String eventDataDbName,
             String eventDataDbUsername,
-            String eventDataDbPassword
+            String eventDataDbPassword,
+            Integer eventDataDbPoolMaxSize,
+            Integer eventDataDbFetchSize,
+            String eventChangeLog
         ) {
         server = new Server(port);
         this.context = new ServletContextHandler(ServletContextHandler.SESSIONS);
@@ -74,6 +80,9 @@ public class WebServer {
         this.eventDataDbName = eventDataDbName;
         this.eventDataDbUsername = eventDataDbUsername;
         this.eventDataDbPassword = eventDataDbPassword;
+        this.eventDataDbPoolMaxSize = eventDataDbPoolMaxSize;
+        this.eventDataDbFetchSize = eventDataDbFetchSize;
+        this.eventChangeLog = eventChangeLog;
     }
 
     /**
@@ -133,7 +142,10 @@ public class WebServer {
                         eventDataDbPort,
                         eventDataDbName,
                         eventDataDbUsername,
-                        eventDataDbPassword
+                        eventDataDbPassword,
+                        eventDataDbPoolMaxSize,
+                        eventDataDbFetchSize,
+                        eventChangeLog
                 ));
             }
         });
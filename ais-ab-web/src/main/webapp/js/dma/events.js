@@ -137,13 +137,17 @@ var eventModule = {
         eventModule.searchResults = new Array();
     },
 
+    /**
+     * Add an event or an event summary (from the /summary resource) to the search results.
+     */
     addSearchResult: function(event) {
         try {
+            var vessel = event.behaviours ? event.behaviours[0].vessel : event.vessel;
             var eventStart = eventModule.formatTimestamp(event.startTime);
             var eventType = event.eventType.replace('Event', '');
-            var shipType = event.behaviours[0].vessel.type;
-            var shipLength = event.behaviours[0].vessel.toBow + event.behaviours[0].vessel.toStern;
-            var shipName = event.behaviours[0].vessel.name;
+            var shipType = vessel.type;
+            var shipLength = vessel.toBow + vessel.toStern;
+            var shipName = vessel.name;
 
             var searchResultHtml = "<tr id='event-search-result-event-" + event.id + "'>";
             searchResultHtml += "<td class='glyphicon-1'><span id='result-remove-" + event.id + "' class='glyphicon glyphicon-remove-sign' data-toggle='tooltip' title='Permanently suppress event'></span></td>";
@@ -160,7 +164,7 @@ var eventModule = {
             $('#event-search-modal .search-results .search-data tbody').append(searchResultHtml);
 
             $("#event-search-modal .search-results #result-show-" + event.id).on("click", function () {
-                eventModule.visualizeEvent(event);
+                eventModule.visualizeSearchResult(event);
                 $('#event-search-modal').modal('hide');
             });
 
@@ -205,7 +209,7 @@ var eventModule = {
 
             var start_time = new Date();
 
-            var eventRequest = eventModule.eventResourceService + "?" + $.param(queryParams);
+            var eventRequest = eventModule.eventResourceService + "/summary?" + $.param(queryParams);
 
             $.getJSON(eventRequest).done(function (events) {
                 $.each(events, function (idx, event) {
@@ -315,10 +319,22 @@ var eventModule = {
 
     visualizeAllSearchResults: function() {
         $.each(eventModule.searchResults, function(i, event) {
-            eventModule.visualizeEvent(event);
+            eventModule.visualizeSearchResult(event);
         });
     },
 
+    /**
+     * Search results found by criteria are event summaries without tracking points; the full event is
+     * loaded when it is shown.
+     */
+    visualizeSearchResult: function(event) {
+        if (event.behaviours) {
+            eventModule.visualizeEvent(event);
+        } else {
+            eventModule.visualizeEventId(event.id);
+        }
+    },
+
     visualizeEventId: function(eventId)  {
         var eventResourceService = "/abnormal/rest/event";
         var eventResource = eventResourceService + "/" + eventId;
@@ -5,7 +5,7 @@ var tickerModule = {
     },
 
     reloadTickerData: function() {
-        $.get('/abnormal/rest/event?numberOfRecentEvents=5', function(events) {
+        $.get('/abnormal/rest/event/summary?numberOfRecentEvents=5', function(events) {
 
             $("#ticker").empty();
 
@@ -32,20 +32,23 @@ var tickerModule = {
         });
     },
 
-    eventToString: function(event) {
-        var bounds = eventModule.computeEventExtent(event);
+    eventToString: function(eventSummary) {
+        var trackingPoint = eventSummary.lastTrackingPoint;
 
-        var s = eventModule.formatTimestamp(event.startTime) + ": "
-                + (event.state == 'ONGOING' ? "Ongoing " : "Past ")
-                + eventModule.camelCaseToSentenceCase(event.eventType).toLowerCase() + " event involving "
-                + event.behaviours[0].vessel.name + " "
-                + "(" + event.behaviours[0].vessel.callsign + ") "
-                + " near "
+        var s = eventModule.formatTimestamp(eventSummary.startTime) + ": "
+                + (eventSummary.state == 'ONGOING' ? "Ongoing " : "Past ")
+                + eventModule.camelCaseToSentenceCase(eventSummary.eventType).toLowerCase() + " event involving "
+                + eventSummary.vessel.name + " "
+                + "(" + eventSummary.vessel.callsign + ") ";
+
+        if (trackingPoint) {
+            s += " near "
                 + "["
-                + OpenLayers.Util.getFormattedLonLat(bounds.getCenterLonLat().lat, 'lat', 'dms')
+                + OpenLayers.Util.getFormattedLonLat(trackingPoint.latitude, 'lat', 'dms')
                 + ", "
-                + OpenLayers.Util.getFormattedLonLat(bounds.getCenterLonLat().lon, 'lon', 'dms')
+                + OpenLayers.Util.getFormattedLonLat(trackingPoint.longitude, 'lon', 'dms')
                 + "] ";
+        }
 
         return s;
     }
@@ -0,0 +1,85 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.rest;
+
+import dk.dma.ais.abnormal.event.db.domain.Event;
+import dk.dma.ais.abnormal.event.db.domain.builders.DriftEventBuilder;
+import dk.dma.ais.abnormal.event.db.feed.EventChange;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventChangeFeedTest {
+
+    @Test
+    public void clientsResumeFromTheirLastSequence() throws IOException, InterruptedException {
+        Path file = Files.createTempDirectory("eventchangefeed").resolve("changes.log");
+        AtomicInteger numberOfNotifications = new AtomicInteger();
+        EventChangeFeed sut = new EventChangeFeed(file, numberOfNotifications::incrementAndGet);
+        assertEquals(0, sut.getLastSequence());
+        assertTrue(sut.awaitChangesAfter(0, 10, 10).isEmpty());
+
+        Event event = DriftEventBuilder.DriftEvent().title("Drift").state(Event.State.PAST).startTime(LocalDateTime.of(2017, 1, 22, 10, 0)).getEvent();
+        sut.publish(EventChange.Type.SUPPRESSED, event);
+        sut.publish(EventChange.Type.UNSUPPRESSED, event);
+
+        assertEquals(2, sut.getLastSequence());
+        assertTrue(numberOfNotifications.get() > 0);
+        assertEquals(Arrays.asList(1L, 2L), sequences(sut.awaitChangesAfter(0, 10, 10)));
+        assertEquals(Arrays.asList(2L), sequences(sut.awaitChangesAfter(1, 10, 10)));
+        assertEquals(Arrays.asList(1L), sequences(sut.awaitChangesAfter(0, 1, 10)));
+        assertNull(sut.awaitChangesAfter(3, 10, 10));
+    }
+
+    @Test
+    public void maintainedChangesDoNotNotify() throws IOException {
+        Path file = Files.createTempDirectory("eventchangefeed").resolve("changes.log");
+        AtomicInteger numberOfNotifications = new AtomicInteger();
+        EventChangeFeed sut = new EventChangeFeed(file, numberOfNotifications::incrementAndGet);
+
+        Event event = DriftEventBuilder.DriftEvent().title("Drift").state(Event.State.ONGOING).startTime(LocalDateTime.of(2017, 1, 22, 10, 0)).getEvent();
+        sut.publish(EventChange.Type.MAINTAINED, event);
+        assertEquals(1, sut.getLastSequence());
+        assertEquals(0, numberOfNotifications.get());
+
+        sut.publish(EventChange.Type.SUPPRESSED, event);
+        assertEquals(2, sut.getLastSequence());
+        assertTrue(numberOfNotifications.get() > 0);
+    }
+
+    @Test
+    public void disabled() {
+        assertFalse(EventChangeFeed.disabled().isEnabled());
+    }
+
+    private static List<Long> sequences(List<EventChange> changes) {
+        return changes.stream().map(EventChange::getSequence).collect(toList());
+    }
+}
@@ -0,0 +1,153 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package dk.dma.ais.abnormal.event.rest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EventQueryCacheTest {
+
+    private long now = 1000000;
+    private final EventQueryCache cache = new EventQueryCache(() -> now);
+    private final AtomicInteger numberOfQueries = new AtomicInteger();
+    private final List<String> types = new ArrayList<>(Arrays.asList("DriftEvent"));
+
+    @Test
+    public void resultIsCachedUntilExpired() {
+        EventQueryCache.Entry<List<String>> entry1 = get();
+        now += 999;
+        EventQueryCache.Entry<List<String>> entry2 = get();
+
+        assertEquals(1, numberOfQueries.get());
+        assertTrue(entry1 == entry2);
+
+        now += 1;
+        get();
+        assertEquals(2, numberOfQueries.get());
+    }
+
+    @Test
+    public void unchangedResultKeepsEntityTagAndLastModified() {
+        EventQueryCache.Entry<List<String>> entry1 = get();
+        now += 5000;
+        EventQueryCache.Entry<List<String>> entry2 = get();
+
+        assertEquals(2, numberOfQueries.get());
+        assertEquals(entry1.getEntityTag(), entry2.getEntityTag());
+        assertEquals(entry1.getLastModified(), entry2.getLastModified());
+    }
+
+    @Test
+    public void changedResultChangesEntityTagAndLastModified() {
+        EventQueryCache.Entry<List<String>> entry1 = get();
+        types.add("SuddenSpeedChangeEvent");
+        now += 1000;
+        EventQueryCache.Entry<List<String>> entry2 = get();
+
+        assertEquals(Arrays.asList("DriftEvent", "SuddenSpeedChangeEvent"), entry2.getValue());
+        assertNotEquals(entry1.getEntityTag(), entry2.getEntityTag());
+        assertTrue(entry2.getLastModified().after(entry1.getLastModified()));
+    }
+
+    @Test
+    public void invalidateReloads() {
+        get();
+        types.add("SuddenSpeedChangeEvent");
+        cache.invalidate();
+        EventQueryCache.Entry<List<String>> entry = get();
+
+        assertEquals(2, numberOfQueries.get());
+        assertEquals(2, entry.getValue().size());
+    }
+
+    @Test
+    public void slowQueryHoldsUpOnlyRequestsForTheSameKey() throws Exception {
+        final CountDownLatch queryStarted = new CountDownLatch(1);
+        final CountDownLatch queryMayReturn = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<EventQueryCache.Entry<List<String>>> slow1 = executor.submit(() -> cache.get("slow", 1000, () -> {
+                numberOfQueries.incrementAndGet();
+                queryStarted.countDown();
+                awaitQuietly(queryMayReturn);
+                return new ArrayList<>(types);
+            }, t -> t));
+            queryStarted.await();
+            Future<EventQueryCache.Entry<List<String>>> slow2 = executor.submit(() -> cache.get("slow", 1000, () -> {
+                numberOfQueries.incrementAndGet();
+                return new ArrayList<>(types);
+            }, t -> t));
+
+            get();
+            assertEquals(2, numberOfQueries.get());
+            assertFalse(slow2.isDone());
+
+            queryMayReturn.countDown();
+            assertTrue(slow1.get(10, TimeUnit.SECONDS) == slow2.get(10, TimeUnit.SECONDS));
+            assertEquals(2, numberOfQueries.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedQueryIsRunAgain() {
+        try {
+            cache.get("type", 1000, () -> {
+                throw new IllegalStateException("Database unavailable");
+            }, t -> t);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Database unavailable", e.getMessage());
+        }
+
+        assertEquals(singletonList("DriftEvent"), get().getValue());
+        assertEquals(1, numberOfQueries.get());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private EventQueryCache.Entry<List<String>> get() {
+        return cache.get("type", 1000, () -> {
+            numberOfQueries.incrementAndGet();
+            return new ArrayList<>(types);
+        }, t -> t);
+    }
+}
@@ -0,0 +1,198 @@
+/* Copyright (c) 2011 Danish Maritime Authority
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package dk.dma.ais.abnormal.stat.rest;
+
+import dk.dma.ais.abnormal.stat.db.StatisticDataRepository;
+import dk.dma.ais.abnormal.stat.db.data.DatasetMetaData;
+import dk.dma.ais.abnormal.stat.db.data.ShipTypeAndSizeStatisticData;
+import dk.dma.ais.abnormal.stat.db.mapdb.StatisticDataRepositoryMapDB;
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.geometry.grid.Cell;
+import dk.dma.enav.model.geometry.grid.Grid;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CellTileCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Grid grid = Grid.create(0.05);
+    private final Set<Long> cellIdsWithData = new TreeSet<>();
+
+    private StatisticDataRepository repository;
+    private CellIndex cellIndex;
+    private CellTileCache cellTileCache;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = new StatisticDataRepositoryMapDB(folder.newFile("test").getAbsolutePath());
+        repository.openForWrite(true);
+        repository.putMetaData(new DatasetMetaData(0.05, 10));
+
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            Cell cell = grid.getCell(54.5 + random.nextDouble() * 2.0, 9.5 + random.nextDouble() * 3.0);
+            ShipTypeAndSizeStatisticData statistics = ShipTypeAndSizeStatisticData.create();
+            statistics.setValue(1, 2, ShipTypeAndSizeStatisticData.STAT_SHIP_COUNT, 7 + i);
+            repository.putStatisticData("ShipTypeAndSizeStatistic", cell.getCellId(), statistics);
+            cellIdsWithData.add(cell.getCellId());
+        }
+
+        cellIndex = new CellIndex(repository);
+        cellTileCache = new CellTileCache(repository, cellIndex);
+    }
+
+    @Test
+    public void sortedCellIdsWithData() {
+        long[] expected = cellIdsWithData.stream().mapToLong(Long::longValue).toArray();
+        assertArrayEquals(expected, CellIndex.sortedCellIdsWithData(repository));
+        assertEquals(expected.length, cellIndex.size());
+    }
+
+    @Test
+    public void lowerBound() {
+        long[] sorted = {2, 4, 4, 8};
+        assertEquals(0, CellIndex.lowerBound(sorted, 1));
+        assertEquals(0, CellIndex.lowerBound(sorted, 2));
+        assertEquals(1, CellIndex.lowerBound(sorted, 3));
+        assertEquals(1, CellIndex.lowerBound(sorted, 4));
+        assertEquals(3, CellIndex.lowerBound(sorted, 5));
+        assertEquals(4, CellIndex.lowerBound(sorted, 9));
+    }
+
+    @Test
+    public void cellsInAreaAreTheCellsWithDataTouchingTheArea() {
+        double[][] areas = {
+            {56.01, 11.01, 55.01, 10.01},
+            {55.52, 10.73, 55.21, 10.08},
+            {57.01, 13.01, 54.01, 9.01},
+            {50.01, 5.01, 49.01, 4.01}
+        };
+        for (double[] area : areas) {
+            List<Long> expected = new ArrayList<>();
+            for (Cell cell : grid.getCells(BoundingBox.create(Position.create(area[0], area[3]), Position.create(area[2], area[1]), CoordinateSystem.CARTESIAN))) {
+                BoundingBox boundingBox = grid.getBoundingBoxOfCell(cell);
+                if (cellIdsWithData.contains(cell.getCellId()) && boundingBox.getMinLat() < area[0] && boundingBox.getMinLon() < area[1]) {
+                    expected.add(cell.getCellId());
+                }
+            }
+            expected.sort(null);
+
+            List<Long> actual = new ArrayList<>();
+            cellIndex.cellsInArea(area[0], area[1], area[2], area[3]).forEach(cell -> actual.add(cell.getCellId()));
+
+            assertEquals(Arrays.toString(area), expected, actual);
+        }
+    }
+
+    @Test
+    public void tileIsEncodedOnceAsCompactGzippedJson() {
+        CellTileCache.Tile tile = cellTileCache.get(8, 135, 80);
+
+        assertTrue(tile == cellTileCache.get(8, 135, 80));
+        assertTrue(tile.getNumberOfCells() > 0);
+        assertTrue(tile.getEntityTag().isWeak());
+        assertEquals(0x1f, tile.getGzippedJson()[0] & 0xff);
+        assertEquals(0x8b, tile.getGzippedJson()[1] & 0xff);
+
+        String json = new String(tile.getJson(), StandardCharsets.UTF_8);
+        assertTrue(json, json.startsWith("{\"z\":8,\"x\":135,\"y\":80,\"cells\":[["));
+        assertTrue(json, json.endsWith("],\"statistics\":[[\"ShipTypeAndSizeStatistic\",\"ThreeKeyMap\"]]}"));
+        assertTrue(json, json.contains(",[[0,1,2,\"shipCount\","));
+    }
+
+    @Test
+    public void concurrentRequestsForATileShareOneEncoding() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CellTileCache.Tile>> tiles = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tiles.add(executor.submit(() -> cellTileCache.get(9, 271, 160)));
+            }
+            for (Future<CellTileCache.Tile> tile : tiles) {
+                assertTrue(tiles.get(0).get() == tile.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void tileBounds() {
+        assertEquals(-180.0, CellTileCache.tileWest(0, 0), 1e-9);
+        assertEquals(180.0, CellTileCache.tileEast(0, 0), 1e-9);
+        assertEquals(85.0511287798, CellTileCache.tileNorth(0, 0), 1e-9);
+        assertEquals(-85.0511287798, CellTileCache.tileSouth(0, 0), 1e-9);
+        assertEquals(0.0, CellTileCache.tileSouth(1, 0), 1e-9);
+        assertEquals(9.84375, CellTileCache.tileWest(8, 135), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zoomLevelBelowMinimumIsRejected() {
+        cellTileCache.get(CellTileCache.MIN_ZOOM - 1, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tileOutsideZoomLevelIsRejected() {
+        cellTileCache.get(8, 256, 0);
+    }
+
+    @Test
+    public void unsupportedZoomLevelIsBadRequest() {
+        CellResource cellResource = new CellResource(repository, cellIndex, cellTileCache);
+        assertEquals(400, cellResource.getCellTile(CellTileCache.MAX_ZOOM + 1, 0, 0, null, null).getStatus());
+    }
+
+    @Test
+    public void tileOutsideZoomLevelIsNotFound() {
+        CellResource cellResource = new CellResource(repository, cellIndex, cellTileCache);
+        assertEquals(404, cellResource.getCellTile(8, 0, -1, null, null).getStatus());
+        assertEquals(404, cellResource.getCellTile(8, 256, 0, null, null).getStatus());
+    }
+
+    @Test
+    public void acceptsGzip() {
+        assertTrue(CellResource.acceptsGzip("gzip, deflate"));
+        assertTrue(CellResource.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(CellResource.acceptsGzip("*"));
+        assertFalse(CellResource.acceptsGzip(null));
+        assertFalse(CellResource.acceptsGzip("identity"));
+        assertFalse(CellResource.acceptsGzip("gzip;q=0"));
+        assertFalse(CellResource.acceptsGzip("gzip; q=0.000"));
+    }
+}